@@ -0,0 +1,29 @@
+#!/bin/sh
+#
+# Writes the Vespa snapshot of one or more config hosts as JSON without starting the web
+# application, e.g. ./snapshot.sh --pretty http://localhost:19071
+#
+# The first run resolves the class path and records the classes the snapshot loads in a shared
+# archive; later runs map that archive instead of loading and verifying the classes again. Class
+# data sharing only archives classes from jars, hence the jar of target/classes.
+
+dir="$(cd "$(dirname "$0")" && pwd)"
+out="$dir/target/snapshot"
+mkdir -p "$out"
+
+if [ ! -f "$out/classpath" ] || [ "$dir/pom.xml" -nt "$out/classpath" ]; then
+  mvn -q -f "$dir/pom.xml" -Dskip.npm -Dskip.installnodenpm -Dskip.webpack \
+    compile dependency:build-classpath -Dmdep.outputFile="$out/classpath" \
+    -Dmdep.includeScope=runtime >&2 || exit 2
+fi
+if [ ! -f "$out/vispana.jar" ] || [ -n "$(find "$dir/target/classes" -newer "$out/vispana.jar" -print -quit)" ]; then
+  rm -f "$out/vispana.jar" "$out/snapshot.jsa"
+  jar --create --file "$out/vispana.jar" -C "$dir/target/classes" com \
+    -C "$dir/target/classes" logback-snapshot.xml || exit 2
+fi
+
+exec java --enable-preview \
+  -XX:+AutoCreateSharedArchive -XX:SharedArchiveFile="$out/snapshot.jsa" \
+  -XX:TieredStopAtLevel=1 -XX:+UseSerialGC \
+  -cp "$out/vispana.jar:$(cat "$out/classpath")" \
+  com.vispana.SnapshotMain "$@"
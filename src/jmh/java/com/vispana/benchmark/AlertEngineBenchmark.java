@@ -0,0 +1,50 @@
+package com.vispana.benchmark;
+
+import com.vispana.api.model.VispanaRoot;
+import com.vispana.api.model.alerts.Alert;
+import com.vispana.vespa.alerts.AlertEngine;
+import com.vispana.vespa.alerts.AlertRules;
+import com.vispana.vespa.state.VespaStateClient;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One alert evaluation of an overview snapshot, as the poller runs it for every config host at
+ * every interval. The snapshot is the same each time, as with a fleet in a steady state.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+public class AlertEngineBenchmark {
+
+  @Param({"10", "100", "400", "2000"})
+  int hosts;
+
+  private VispanaRoot snapshot;
+  private AlertEngine engine;
+  private final Instant takenAt = Instant.now();
+
+  @Setup
+  public void setUp() {
+    try (var fixture = VespaFixture.start(hosts)) {
+      snapshot = new VespaStateClient().vespaState(fixture.configHost());
+    }
+    engine = new AlertEngine(AlertRules.DEFAULT);
+  }
+
+  @Benchmark
+  public List<Alert> evaluate() {
+    return engine.evaluate("http://localhost/", snapshot, takenAt);
+  }
+}
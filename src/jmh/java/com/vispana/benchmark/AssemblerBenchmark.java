@@ -0,0 +1,69 @@
+package com.vispana.benchmark;
+
+import com.vispana.api.model.VespaVersion;
+import com.vispana.api.model.config.ConfigNodes;
+import com.vispana.api.model.container.ContainerNodes;
+import com.vispana.api.model.content.ContentNodes;
+import com.vispana.client.vespa.model.MetricsNode;
+import com.vispana.vespa.state.assemblers.ConfigNodesAssembler;
+import com.vispana.vespa.state.assemblers.ContainerAssembler;
+import com.vispana.vespa.state.assemblers.ContentAssembler;
+import java.util.Map;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The assemblers behind the overview, each fetching its config from the fixture over loopback HTTP
+ * and combining it with already fetched metrics, as one overview request does.
+ */
+@State(Scope.Benchmark)
+// the HTTP round trips take about half a minute to reach a steady rate on one core
+@Warmup(iterations = 20, time = 2)
+public class AssemblerBenchmark {
+
+  // the app package path of the content assembler, in use since 8.323
+  private static final VespaVersion VESPA_VERSION = new VespaVersion(8, 400, 0);
+
+  @Param({"10", "100", "400", "2000"})
+  int hosts;
+
+  private VespaFixture fixture;
+  private Map<String, MetricsNode> metrics;
+
+  @Setup
+  public void setUp() {
+    fixture = VespaFixture.start(hosts);
+    metrics = fixture.metrics();
+  }
+
+  @TearDown
+  public void tearDown() {
+    fixture.close();
+  }
+
+  @Benchmark
+  public ContentNodes content() {
+    return ContentAssembler.assemble(
+        fixture.configHost(),
+        VESPA_VERSION,
+        metrics,
+        fixture.appUrl(),
+        fixture.applicationPackage(),
+        fixture.configHostName());
+  }
+
+  @Benchmark
+  public ContainerNodes container() {
+    return ContainerAssembler.assemble(fixture.configHost(), metrics);
+  }
+
+  @Benchmark
+  public ConfigNodes configNodes() {
+    return ConfigNodesAssembler.assemble(fixture.configHost(), metrics);
+  }
+}
@@ -0,0 +1,119 @@
+package com.vispana.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the allocation profiler and compares throughput and allocation per
+ * operation with the baseline kept in the repository. Takes the usual JMH command line options,
+ * e.g. {@code -p hosts=400 Assembler}.
+ */
+public class BenchmarkRunner {
+
+  static final Path RESULT = Path.of("target", "jmh-result.json");
+  static final Path BASELINE = Path.of("src", "jmh", "baselines", "baseline.json");
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+  public static void main(String[] args)
+      throws CommandLineOptionException, RunnerException, IOException {
+    Files.createDirectories(RESULT.getParent());
+    var options =
+        new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .addProfiler(GCProfiler.class)
+            .resultFormat(ResultFormatType.JSON)
+            .result(RESULT.toString())
+            .build();
+    new Runner(options).run();
+    withoutHostFields(RESULT);
+
+    if (Files.exists(BASELINE)) {
+      compare(read(BASELINE), read(RESULT));
+    } else {
+      System.out.println("No baseline at " + BASELINE + "; copy " + RESULT + " there to make one");
+    }
+  }
+
+  /**
+   * Drops what only describes the machine the benchmarks ran on, such as the path of its JVM, so
+   * the result can be copied over the baseline as is.
+   */
+  private static void withoutHostFields(Path file) throws IOException {
+    var results = MAPPER.readTree(file.toFile());
+    for (JsonNode result : results) {
+      ((ObjectNode) result).remove("jvm");
+    }
+    MAPPER.writerWithDefaultPrettyPrinter().writeValue(file.toFile(), results);
+  }
+
+  private static void compare(Map<String, JsonNode> baseline, Map<String, JsonNode> current) {
+    System.out.printf(
+        "%n%-70s %14s %-6s %8s %14s %8s%n",
+        "Benchmark", "score", "unit", "vs base", "B/op", "vs base");
+    current.forEach(
+        (name, result) -> {
+          double score = result.at("/primaryMetric/score").asDouble();
+          double allocation = allocation(result);
+          var base = baseline.get(name);
+          System.out.printf(
+              "%-70s %14.1f %-6s %8s %14.0f %8s%n",
+              name,
+              score,
+              result.at("/primaryMetric/scoreUnit").asText(),
+              base == null ? "new" : change(base.at("/primaryMetric/score").asDouble(), score),
+              allocation,
+              base == null ? "" : change(allocation(base), allocation));
+        });
+  }
+
+  private static double allocation(JsonNode result) {
+    var secondary = result.path("secondaryMetrics");
+    // older JMH versions prefix secondary metric names with a middle dot
+    var metric =
+        secondary.has(ALLOCATION) ? secondary.get(ALLOCATION) : secondary.get("·" + ALLOCATION);
+    return metric == null ? Double.NaN : metric.path("score").asDouble();
+  }
+
+  private static String change(double before, double after) {
+    if (before == 0 || Double.isNaN(before) || Double.isNaN(after)) {
+      return "-";
+    }
+    return String.format("%+.1f%%", (after - before) * 100 / before);
+  }
+
+  /** Results by benchmark and parameters, e.g. {@code MetricsBenchmark.parse hosts=400}. */
+  private static Map<String, JsonNode> read(Path file) throws IOException {
+    Map<String, JsonNode> results = new LinkedHashMap<>();
+    for (JsonNode result : MAPPER.readTree(file.toFile())) {
+      var name =
+          new StringBuilder(
+              result.path("benchmark").asText().replace("com.vispana.benchmark.", ""));
+      result
+          .path("params")
+          .fields()
+          .forEachRemaining(
+              param ->
+                  name.append(' ')
+                      .append(param.getKey())
+                      .append('=')
+                      .append(param.getValue().asText()));
+      results.put(name.toString(), result);
+    }
+    return results;
+  }
+}
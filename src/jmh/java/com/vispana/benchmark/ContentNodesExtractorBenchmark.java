@@ -0,0 +1,52 @@
+package com.vispana.benchmark;
+
+import com.vispana.api.model.apppackage.ApplicationPackage;
+import com.vispana.client.vespa.model.content.Node;
+import com.vispana.vespa.state.helpers.ContentNodesExtractor;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Content nodes from services.xml and hosts.xml: the first overview of a generation parses both,
+ * later ones reuse the parsed topology.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+public class ContentNodesExtractorBenchmark {
+
+  @Param({"10", "100", "400", "2000"})
+  int hosts;
+
+  private VespaFixture fixture;
+  private long generation;
+
+  @Setup
+  public void setUp() {
+    fixture = VespaFixture.create(hosts);
+  }
+
+  @Benchmark
+  public List<Node> newGeneration() {
+    // a generation not seen before, so the package is parsed again
+    var appPackage = fixture.applicationPackage();
+    var redeployed =
+        new ApplicationPackage(
+            String.valueOf(++generation),
+            appPackage.servicesContent(),
+            appPackage.hostsContent(),
+            appPackage.queryProfilesContent(),
+            appPackage.queryProfileTypesContent());
+    return ContentNodesExtractor.contentNodesFromAppPackage(redeployed, fixture.configHostName());
+  }
+
+  @Benchmark
+  public List<Node> sameGeneration() {
+    return ContentNodesExtractor.contentNodesFromAppPackage(
+        fixture.applicationPackage(), fixture.configHostName());
+  }
+}
@@ -0,0 +1,57 @@
+package com.vispana.benchmark;
+
+import static com.vispana.vespa.state.helpers.ProcessStatus.processStatus;
+import static com.vispana.vespa.state.helpers.SystemMetrics.systemMetrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vispana.client.vespa.model.MetricsNode;
+import com.vispana.client.vespa.model.MetricsSchema;
+import java.io.IOException;
+import java.util.Map;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Processing of one metrics proxy response: parsing it, then host metrics and process status. */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+public class MetricsBenchmark {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  @Param({"10", "100", "400", "2000"})
+  int hosts;
+
+  private byte[] metricsJson;
+  private Map<String, MetricsNode> metrics;
+
+  @Setup
+  public void setUp() {
+    var fixture = VespaFixture.create(hosts);
+    metricsJson = fixture.metricsJson();
+    metrics = fixture.metrics();
+  }
+
+  @Benchmark
+  public MetricsSchema parse() throws IOException {
+    return MAPPER.readValue(metricsJson, MetricsSchema.class);
+  }
+
+  @Benchmark
+  public void systemMetricsOfAllHosts(Blackhole blackhole) {
+    for (MetricsNode node : metrics.values()) {
+      blackhole.consume(systemMetrics(node));
+    }
+  }
+
+  @Benchmark
+  public void processStatusOfAllHosts(Blackhole blackhole) {
+    for (String host : metrics.keySet()) {
+      blackhole.consume(processStatus(host, metrics));
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package com.vispana.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vispana.api.model.apppackage.ApplicationPackage;
+import com.vispana.client.vespa.model.MetricsNode;
+import com.vispana.client.vespa.model.MetricsSchema;
+import com.vispana.simulator.SimulatorTopology;
+import com.vispana.simulator.VespaSimulator;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * A simulated Vespa deployment of a given number of hosts, laid out by {@link
+ * SimulatorTopology#ofHosts}. Every response is rendered once up front, so a benchmark measures
+ * Vispana's side of the exchange and not the fixture.
+ */
+final class VespaFixture implements AutoCloseable {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final int hosts;
+  private final VespaSimulator simulator;
+  private final ApplicationPackage applicationPackage;
+
+  private VespaFixture(int hosts) {
+    this.hosts = hosts;
+    this.simulator = new VespaSimulator(SimulatorTopology.ofHosts(hosts), hosts);
+    this.applicationPackage =
+        new ApplicationPackage(
+            String.valueOf(simulator.generation()),
+            simulator.packageFile("services.xml"),
+            simulator.packageFile("hosts.xml"),
+            Map.of(),
+            Map.of());
+  }
+
+  /** A fixture that is only used in memory, without an HTTP server. */
+  static VespaFixture create(int hosts) {
+    return new VespaFixture(hosts);
+  }
+
+  /** A fixture served on an ephemeral loopback port. */
+  static VespaFixture start(int hosts) {
+    var fixture = new VespaFixture(hosts);
+    fixture.simulator.start();
+    return fixture;
+  }
+
+  int hosts() {
+    return hosts;
+  }
+
+  /** With a trailing slash, as the overview endpoint receives it. */
+  String configHost() {
+    return simulator.configHost();
+  }
+
+  String appUrl() {
+    return simulator.appUrl();
+  }
+
+  String configHostName() {
+    return simulator.topology().configHostNames().getFirst();
+  }
+
+  ApplicationPackage applicationPackage() {
+    return applicationPackage;
+  }
+
+  byte[] metricsJson() {
+    return simulator.metricsJson();
+  }
+
+  Map<String, MetricsNode> metrics() {
+    try {
+      return MAPPER.readValue(simulator.metricsJson(), MetricsSchema.class).getNodes().stream()
+          .collect(Collectors.toMap(MetricsNode::getHostname, node -> node));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void close() {
+    simulator.close();
+  }
+}
@@ -0,0 +1,89 @@
+package com.vispana.loadtest;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** Latencies of every request, by endpoint, kept in full so percentiles are exact. */
+final class LatencyRecorder {
+
+  private final Map<String, Samples> samples = new ConcurrentHashMap<>();
+
+  /** Latency percentiles in milliseconds, throughput in requests per second. */
+  record EndpointResult(
+      String endpoint,
+      long requests,
+      long errors,
+      double throughput,
+      double p50Ms,
+      double p90Ms,
+      double p99Ms,
+      double maxMs) {}
+
+  void record(String endpoint, long nanos, boolean failed) {
+    samples.computeIfAbsent(endpoint, name -> new Samples()).add(nanos, failed);
+  }
+
+  Map<String, EndpointResult> results(double seconds) {
+    Map<String, EndpointResult> results = new TreeMap<>();
+    samples.forEach(
+        (endpoint, endpointSamples) ->
+            results.put(endpoint, endpointSamples.result(endpoint, seconds)));
+    return results;
+  }
+
+  private static final class Samples {
+    // a lock rather than a monitor to not pin the virtual threads of the sessions
+    private final ReentrantLock lock = new ReentrantLock();
+    private long[] nanos = new long[1024];
+    private int count;
+    private long errors;
+
+    void add(long latency, boolean failed) {
+      lock.lock();
+      try {
+        if (count == nanos.length) {
+          nanos = Arrays.copyOf(nanos, count * 2);
+        }
+        nanos[count++] = latency;
+        if (failed) {
+          errors++;
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    EndpointResult result(String endpoint, double seconds) {
+      long[] sorted;
+      long errorCount;
+      lock.lock();
+      try {
+        sorted = Arrays.copyOf(nanos, count);
+        errorCount = errors;
+      } finally {
+        lock.unlock();
+      }
+      Arrays.sort(sorted);
+      return new EndpointResult(
+          endpoint,
+          sorted.length,
+          errorCount,
+          sorted.length / seconds,
+          percentile(sorted, 0.50),
+          percentile(sorted, 0.90),
+          percentile(sorted, 0.99),
+          sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+      if (sorted.length == 0) {
+        return 0;
+      }
+      int index = (int) Math.ceil(quantile * sorted.length) - 1;
+      return sorted[Math.max(0, index)] / 1e6;
+    }
+  }
+}
@@ -0,0 +1,184 @@
+package com.vispana.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.vispana.Main;
+import com.vispana.simulator.EndpointBehavior;
+import com.vispana.simulator.SimulatedEndpoint;
+import com.vispana.simulator.SimulatorTopology;
+import com.vispana.simulator.VespaSimulator;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Simulates concurrent dashboard users against a Vispana server backed by a {@link VespaSimulator},
+ * and reports throughput and latency percentiles by endpoint. Vispana is started in this JVM unless
+ * {@code --target} points at one running elsewhere on this machine. Options:
+ *
+ * <pre>
+ *   --users 50             concurrent sessions (default 50)
+ *   --duration 60s         how long to run after ramping up (default 60s)
+ *   --ramp-up 10s          time over which sessions start (default 10s)
+ *   --refresh 15s          overview refresh interval, the UI's shortest (default 15s)
+ *   --think-time 3s        mean pause between user actions (default 3s)
+ *   --hosts 200            size of the simulated deployment (default 200)
+ *   --vespa-latency 20ms   latency of every simulated Vespa endpoint (default 0)
+ *   --target URL           a running Vispana to test instead of an in-process one
+ * </pre>
+ */
+public class LoadTest {
+
+  static final Path RESULT = Path.of("target", "loadtest-result.json");
+
+  record Settings(
+      String target,
+      String configHost,
+      String containerHost,
+      List<String> schemas,
+      Duration refresh,
+      Duration thinkTime) {}
+
+  public static void main(String[] args) throws Exception {
+    int users = 50;
+    Duration duration = Duration.ofSeconds(60);
+    Duration rampUp = Duration.ofSeconds(10);
+    Duration refresh = Duration.ofSeconds(15);
+    Duration thinkTime = Duration.ofSeconds(3);
+    int hosts = 200;
+    Duration vespaLatency = Duration.ZERO;
+    String target = null;
+
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      String value = args[i + 1];
+      switch (args[i]) {
+        case "--users" -> users = Integer.parseInt(value);
+        case "--duration" -> duration = duration(value);
+        case "--ramp-up" -> rampUp = duration(value);
+        case "--refresh" -> refresh = duration(value);
+        case "--think-time" -> thinkTime = duration(value);
+        case "--hosts" -> hosts = Integer.parseInt(value);
+        case "--vespa-latency" -> vespaLatency = duration(value);
+        case "--target" -> target = value.replaceAll("/+$", "");
+        default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+      }
+    }
+
+    var topology = SimulatorTopology.ofHosts(hosts);
+    try (var simulator = new VespaSimulator(topology).start()) {
+      for (SimulatedEndpoint endpoint : SimulatedEndpoint.values()) {
+        simulator.behave(endpoint, EndpointBehavior.IMMEDIATE.withLatency(vespaLatency));
+      }
+      ConfigurableApplicationContext vispana = null;
+      if (target == null) {
+        vispana = startVispana();
+        target =
+            "http://localhost:"
+                + ((ServletWebServerApplicationContext) vispana).getWebServer().getPort();
+      }
+      try {
+        var schemas =
+            topology.contentClusters().stream().flatMap(c -> c.schemas().stream()).toList();
+        var settings =
+            new Settings(
+                target,
+                simulator.configHost(),
+                simulator.containerHost(),
+                schemas,
+                refresh,
+                thinkTime);
+        System.out.printf(
+            "%d users against %s for %s, %d simulated Vespa hosts%n",
+            users, target, duration, topology.hosts());
+        var recorder = run(settings, users, rampUp, duration);
+        report(recorder.results(rampUp.plus(duration).toMillis() / 1000.0));
+      } finally {
+        if (vispana != null) {
+          vispana.close();
+        }
+      }
+    }
+  }
+
+  private static ConfigurableApplicationContext startVispana() throws IOException {
+    // restarting in a new class loader would start a second server
+    System.setProperty("spring.devtools.restart.enabled", "false");
+    var mirror = Files.createTempDirectory("vispana-loadtest");
+    return SpringApplication.run(
+        Main.class,
+        "--server.port=0",
+        "--vispana.apppackage.mirror.cache-dir=" + mirror,
+        "--logging.level.root=WARN");
+  }
+
+  private static LatencyRecorder run(
+      Settings settings, int users, Duration rampUp, Duration duration)
+      throws InterruptedException {
+    var recorder = new LatencyRecorder();
+    long deadline = System.nanoTime() + rampUp.plus(duration).toNanos();
+    long startInterval = users > 1 ? rampUp.toNanos() / (users - 1) : 0;
+    // browsers talk HTTP/1.1 to a plain-text server
+    try (var httpClient =
+            HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        var sessions = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int user = 0; user < users; user++) {
+        sessions.submit(new UserSession(httpClient, recorder, settings, deadline, user));
+        if (user + 1 < users) {
+          Thread.sleep(Duration.ofNanos(startInterval));
+        }
+      }
+      // closed in reverse order: waits for every session to finish, then for the client
+    }
+    return recorder;
+  }
+
+  private static void report(Map<String, LatencyRecorder.EndpointResult> results)
+      throws IOException {
+    System.out.printf(
+        "%n%-16s %9s %7s %9s %9s %9s %9s %9s%n",
+        "Endpoint", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "max ms");
+    List<LatencyRecorder.EndpointResult> rows = new ArrayList<>(results.values());
+    for (var row : rows) {
+      System.out.printf(
+          Locale.ROOT,
+          "%-16s %9d %7d %9.1f %9.1f %9.1f %9.1f %9.1f%n",
+          row.endpoint(),
+          row.requests(),
+          row.errors(),
+          row.throughput(),
+          row.p50Ms(),
+          row.p90Ms(),
+          row.p99Ms(),
+          row.maxMs());
+    }
+    Files.createDirectories(RESULT.getParent());
+    new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(RESULT.toFile(), rows);
+    System.out.println("\nResults written to " + RESULT);
+  }
+
+  private static Duration duration(String value) {
+    if (value.endsWith("ms")) {
+      return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+    }
+    if (value.endsWith("m")) {
+      return Duration.ofMinutes(Long.parseLong(value.substring(0, value.length() - 1)));
+    }
+    if (value.endsWith("s")) {
+      return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+    }
+    return Duration.ofSeconds(Long.parseLong(value));
+  }
+}
@@ -0,0 +1,231 @@
+package com.vispana.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * One dashboard user: opens the overview, keeps polling it at the UI refresh interval and in
+ * between switches tabs, pages through file previews, browses the package explorer, searches it and
+ * now and then downloads the package.
+ */
+final class UserSession implements Runnable {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  // how often a user does what between overview refreshes, out of 100
+  private static final int TAB_SWITCH = 40;
+  private static final int PREVIEW = 25;
+  private static final int EXPLORER = 20;
+  private static final int SEARCH = 12;
+
+  private final HttpClient httpClient;
+  private final LatencyRecorder recorder;
+  private final LoadTest.Settings settings;
+  private final long deadline;
+  private final Random random;
+  private final List<String> files = new ArrayList<>();
+  private final List<String> directories = new ArrayList<>();
+
+  UserSession(
+      HttpClient httpClient,
+      LatencyRecorder recorder,
+      LoadTest.Settings settings,
+      long deadline,
+      long seed) {
+    this.httpClient = httpClient;
+    this.recorder = recorder;
+    this.settings = settings;
+    this.deadline = deadline;
+    this.random = new Random(seed);
+  }
+
+  @Override
+  public void run() {
+    try {
+      overview();
+      explorerRoot();
+      long nextRefresh = System.nanoTime() + settings.refresh().toNanos();
+      while (System.nanoTime() < deadline) {
+        think();
+        if (System.nanoTime() >= nextRefresh) {
+          overview();
+          nextRefresh += settings.refresh().toNanos();
+        }
+        int action = random.nextInt(100);
+        if (action < TAB_SWITCH) {
+          tabSwitch();
+        } else if (action < TAB_SWITCH + PREVIEW) {
+          preview();
+        } else if (action < TAB_SWITCH + PREVIEW + EXPLORER) {
+          explore();
+        } else if (action < TAB_SWITCH + PREVIEW + EXPLORER + SEARCH) {
+          search();
+        } else {
+          download();
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void overview() {
+    get("overview", "/api/overview?config_host=" + encode(settings.configHost()));
+  }
+
+  /** The schema tab loads the rank profiles and runs the default query; the others are local. */
+  private void tabSwitch() {
+    String schema = settings.schemas().get(random.nextInt(settings.schemas().size()));
+    get(
+        "rank-profiles",
+        "/api/schema/rank-profiles?config_host="
+            + encode(settings.configHost())
+            + "&schema="
+            + encode(schema));
+    post(
+        "query",
+        "/api/query?container_host=" + encode(settings.containerHost()),
+        "{\"yql\":\"select * from " + schema + " where true\",\"hits\":15}");
+  }
+
+  /** Opens a file and pages through its first pages, as scrolling the preview does. */
+  private void preview() {
+    if (files.isEmpty()) {
+      return;
+    }
+    String file = files.get(random.nextInt(files.size()));
+    long offset = 0;
+    int pages = 1 + random.nextInt(3);
+    for (int page = 0; page < pages; page++) {
+      var response =
+          get(
+              "file",
+              "/api/apppackage/file?config_host="
+                  + encode(settings.configHost())
+                  + "&file_path="
+                  + encode(file)
+                  + "&max_bytes=4096&offset="
+                  + offset);
+      if (response == null || !response.path("truncated").asBoolean()) {
+        return;
+      }
+      offset = response.path("nextOffset").asLong();
+    }
+  }
+
+  private void explorerRoot() {
+    var tree = get("tree", "/api/apppackage/tree?config_host=" + encode(settings.configHost()));
+    if (tree != null) {
+      collect(tree.path("root"));
+    }
+  }
+
+  private void explore() {
+    if (directories.isEmpty()) {
+      explorerRoot();
+      return;
+    }
+    get(
+        "tree-directory",
+        "/api/apppackage/tree?config_host="
+            + encode(settings.configHost())
+            + "&path="
+            + encode(directories.get(random.nextInt(directories.size()))));
+  }
+
+  private void search() {
+    String term = random.nextBoolean() ? "rank-profile" : "field";
+    get(
+        "search",
+        "/api/apppackage/search?config_host=" + encode(settings.configHost()) + "&q=" + term);
+  }
+
+  private void download() {
+    var request =
+        HttpRequest.newBuilder(
+                uri("/api/apppackage/download?config_host=" + encode(settings.configHost())))
+            .build();
+    send("download", request, HttpResponse.BodyHandlers.discarding());
+  }
+
+  private void collect(JsonNode node) {
+    for (JsonNode child : node.path("children")) {
+      String path = child.path("path").asText();
+      if (child.path("isFile").asBoolean(child.path("file").asBoolean())) {
+        files.add(path);
+      } else {
+        directories.add(path);
+        collect(child);
+      }
+    }
+  }
+
+  private JsonNode get(String endpoint, String pathAndQuery) {
+    return json(send(endpoint, HttpRequest.newBuilder(uri(pathAndQuery)).build(), ofBytes()));
+  }
+
+  private JsonNode post(String endpoint, String pathAndQuery, String body) {
+    var request =
+        HttpRequest.newBuilder(uri(pathAndQuery))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+    return json(send(endpoint, request, ofBytes()));
+  }
+
+  /** Sends a request and records its latency; the body, or null when it failed. */
+  private <T> T send(String endpoint, HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+    long start = System.nanoTime();
+    try {
+      var response = httpClient.send(request, handler);
+      boolean failed = response.statusCode() >= 400;
+      recorder.record(endpoint, System.nanoTime() - start, failed);
+      return failed ? null : response.body();
+    } catch (IOException e) {
+      recorder.record(endpoint, System.nanoTime() - start, true);
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+  }
+
+  private void think() throws InterruptedException {
+    long min = settings.thinkTime().toMillis() / 2;
+    Thread.sleep(Duration.ofMillis(min + random.nextLong(Math.max(1, min * 2))));
+  }
+
+  private URI uri(String pathAndQuery) {
+    return URI.create(settings.target() + pathAndQuery);
+  }
+
+  private static HttpResponse.BodyHandler<byte[]> ofBytes() {
+    return HttpResponse.BodyHandlers.ofByteArray();
+  }
+
+  private static JsonNode json(byte[] body) {
+    if (body == null) {
+      return null;
+    }
+    try {
+      return MAPPER.readTree(body);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private static String encode(String value) {
+    return URLEncoder.encode(value, StandardCharsets.UTF_8);
+  }
+}
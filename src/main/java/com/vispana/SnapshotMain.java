@@ -0,0 +1,165 @@
+package com.vispana;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.vispana.api.model.VispanaRoot;
+import com.vispana.vespa.state.VespaStateClient;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.StructuredTaskScope.Subtask;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Writes the snapshot the overview page is built from as JSON, without starting the web
+ * application, for cron jobs and CI checks. Runs the assemblers directly and keeps the class
+ * loading to what they need, so with a shared class archive (see {@code snapshot.sh}) it is done in
+ * well under a second plus the time Vespa takes to answer. Options:
+ *
+ * <pre>
+ *   --output state.json            file to write to (default standard output)
+ *   --pretty                       indent the JSON
+ *   --timeout 30s                  give up on config hosts that take longer (default 60s)
+ * </pre>
+ *
+ * followed by one or more config hosts, e.g. {@code http://cfg-0:19071}. With one config host the
+ * snapshot is written as is, with several as an object keyed by config host. Exits with 1 if any
+ * config host could not be read, after writing the ones that could, and with 2 on bad usage.
+ */
+public class SnapshotMain {
+
+  static final int FAILED = 1;
+  static final int USAGE = 2;
+
+  private static final ObjectMapper MAPPER =
+      new ObjectMapper().configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+  public static void main(String[] args) {
+    // keep the standard output for the snapshot; Spring Boot's logging setup never runs here
+    if (System.getProperty("logback.configurationFile") == null) {
+      System.setProperty("logback.configurationFile", "logback-snapshot.xml");
+    }
+    System.exit(run(args, System.out, System.err));
+  }
+
+  static int run(String[] args, PrintStream out, PrintStream err) {
+    Path output = null;
+    boolean pretty = false;
+    Duration timeout = Duration.ofSeconds(60);
+    List<String> configHosts = new ArrayList<>();
+
+    try {
+      for (int i = 0; i < args.length; i++) {
+        switch (args[i]) {
+          case "--pretty" -> pretty = true;
+          case "--output" -> output = Path.of(value(args, ++i));
+          case "--timeout" -> timeout =
+              Duration.parse("PT" + value(args, ++i).toUpperCase(Locale.ROOT));
+          default -> {
+            if (args[i].startsWith("--")) {
+              throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+            configHosts.add(args[i].endsWith("/") ? args[i] : args[i] + "/");
+          }
+        }
+      }
+      if (configHosts.isEmpty()) {
+        throw new IllegalArgumentException("No config host given");
+      }
+    } catch (IllegalArgumentException | DateTimeParseException e) {
+      err.println(e.getMessage());
+      err.println("Usage: SnapshotMain [--output file] [--pretty] [--timeout 60s] config-host...");
+      return USAGE;
+    }
+
+    Map<String, VispanaRoot> snapshots = new LinkedHashMap<>();
+    boolean failed = snapshot(configHosts, timeout, snapshots, err);
+
+    ObjectWriter writer = pretty ? MAPPER.writerWithDefaultPrettyPrinter() : MAPPER.writer();
+    Object json = configHosts.size() == 1 ? snapshots.get(configHosts.getFirst()) : snapshots;
+    if (json != null) {
+      try {
+        if (output == null) {
+          writer.writeValue((OutputStream) out, json);
+          out.println();
+        } else {
+          try (var stream = Files.newOutputStream(output)) {
+            writer.writeValue(stream, json);
+          }
+        }
+      } catch (IOException e) {
+        err.println("Failed to write the snapshot: " + e);
+        return FAILED;
+      }
+    }
+    return failed ? FAILED : 0;
+  }
+
+  /**
+   * Reads every config host concurrently into {@code snapshots}, in the order given, and returns
+   * whether any of them failed.
+   */
+  private static boolean snapshot(
+      List<String> configHosts,
+      Duration timeout,
+      Map<String, VispanaRoot> snapshots,
+      PrintStream err) {
+    var client = new VespaStateClient();
+    try (var scope = new StructuredTaskScope<VispanaRoot>()) {
+      Map<String, Subtask<VispanaRoot>> subtasks = new LinkedHashMap<>();
+      configHosts.forEach(host -> subtasks.put(host, scope.fork(() -> client.vespaState(host))));
+      try {
+        scope.joinUntil(Instant.now().plus(timeout));
+      } catch (TimeoutException e) {
+        scope.shutdown();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        scope.shutdown();
+      }
+
+      boolean failed = false;
+      for (var entry : subtasks.entrySet()) {
+        var subtask = entry.getValue();
+        switch (subtask.state()) {
+          case SUCCESS -> snapshots.put(entry.getKey(), subtask.get());
+          case FAILED -> {
+            failed = true;
+            err.println("Failed to read " + entry.getKey() + ": " + cause(subtask.exception()));
+          }
+          case UNAVAILABLE -> {
+            failed = true;
+            err.println("Timed out reading " + entry.getKey() + " after " + timeout);
+          }
+        }
+      }
+      return failed;
+    }
+  }
+
+  private static String value(String[] args, int i) {
+    if (i >= args.length) {
+      throw new IllegalArgumentException("Missing value for " + args[i - 1]);
+    }
+    return args[i];
+  }
+
+  /** The failure without the plain {@link RuntimeException}s the state client wraps it in. */
+  private static Throwable cause(Throwable throwable) {
+    while (throwable.getClass() == RuntimeException.class && throwable.getCause() != null) {
+      throwable = throwable.getCause();
+    }
+    return throwable;
+  }
+}
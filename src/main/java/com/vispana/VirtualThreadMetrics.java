@@ -0,0 +1,70 @@
+package com.vispana;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.time.Duration;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Virtual thread health from JFR events: how often and how long virtual threads pinned their
+ * carrier, and how often one could not be scheduled. Requests run on virtual threads, so a carrier
+ * pool choked by pinning stalls Vispana while the JVM's thread counts look fine.
+ */
+@Component
+public class VirtualThreadMetrics implements MeterBinder, AutoCloseable {
+
+  private static final Logger logger = LoggerFactory.getLogger(VirtualThreadMetrics.class);
+
+  private static final String PINNED = "jdk.VirtualThreadPinned";
+  private static final String SUBMIT_FAILED = "jdk.VirtualThreadSubmitFailed";
+
+  private final boolean enabled;
+  private final Duration pinnedThreshold;
+  private RecordingStream recordingStream;
+
+  public VirtualThreadMetrics(
+      @Value("${vispana.metrics.virtual-threads.enabled:true}") boolean enabled,
+      @Value("${vispana.metrics.virtual-threads.pinned-threshold:20ms}") Duration pinnedThreshold) {
+    this.enabled = enabled;
+    this.pinnedThreshold = pinnedThreshold;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    if (!enabled) {
+      return;
+    }
+    var pinned =
+        Timer.builder("jvm.threads.virtual.pinned")
+            .description("Virtual threads that pinned their carrier for longer than the threshold")
+            .register(registry);
+    var submitFailed =
+        Counter.builder("jvm.threads.virtual.submit.failed")
+            .description("Virtual threads that could not be started or unparked")
+            .register(registry);
+    try {
+      recordingStream = new RecordingStream();
+      recordingStream.enable(PINNED).withThreshold(pinnedThreshold);
+      recordingStream.enable(SUBMIT_FAILED);
+      recordingStream.onEvent(PINNED, event -> pinned.record(event.getDuration()));
+      recordingStream.onEvent(SUBMIT_FAILED, event -> submitFailed.increment());
+      recordingStream.startAsync();
+    } catch (RuntimeException e) {
+      // JFR may be unavailable, e.g. in some native or restricted runtimes
+      logger.warn("Virtual thread metrics unavailable: {}", e.toString());
+    }
+  }
+
+  @Override
+  public void close() {
+    if (recordingStream != null) {
+      recordingStream.close();
+    }
+  }
+}
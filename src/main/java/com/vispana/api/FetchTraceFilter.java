@@ -0,0 +1,56 @@
+package com.vispana.api;
+
+import com.vispana.vespa.state.FetchTraceStore;
+import com.vispana.vespa.state.helpers.FetchTrace;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Traces the calls to Vespa behind every API request. The trace id goes out in the {@value
+ * #TRACE_HEADER} header before the body, and {@code /api/debug/trace} returns the waterfall.
+ */
+@Component
+public class FetchTraceFilter extends OncePerRequestFilter {
+
+  public static final String TRACE_HEADER = "X-Vispana-Trace-Id";
+
+  private final FetchTraceStore fetchTraceStore;
+
+  public FetchTraceFilter(FetchTraceStore fetchTraceStore) {
+    this.fetchTraceStore = fetchTraceStore;
+  }
+
+  @Override
+  protected boolean shouldNotFilter(HttpServletRequest request) {
+    String path = request.getRequestURI();
+    return !path.startsWith("/api/") || path.startsWith("/api/debug/");
+  }
+
+  @Override
+  protected void doFilterInternal(
+      HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    var trace = new FetchTrace(request.getMethod() + " " + request.getRequestURI());
+    response.setHeader(TRACE_HEADER, trace.id());
+    try {
+      ScopedValue.where(FetchTrace.CURRENT, trace)
+          .call(
+              () -> {
+                filterChain.doFilter(request, response);
+                return null;
+              });
+    } catch (ServletException | IOException | RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new ServletException(e);
+    } finally {
+      trace.finish();
+      fetchTraceStore.add(trace);
+    }
+  }
+}
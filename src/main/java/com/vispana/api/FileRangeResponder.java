@@ -0,0 +1,122 @@
+package com.vispana.api;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Pattern;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+/**
+ * Serves a local file as a download with a known Content-Length and support for single HTTP byte
+ * ranges, so interrupted downloads can be resumed. The bytes are sent with {@link
+ * FileChannel#transferTo}, never passing through the heap, and are all written when {@link #serve}
+ * returns: the connector's sendfile is not used, as it reads the file only after the handler
+ * returned, when the caller may no longer keep it from being deleted.
+ */
+public class FileRangeResponder {
+
+  private static final Pattern BYTE_RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
+  /** An inclusive byte range; {@code partial} is false when the whole file is sent. */
+  record ByteRange(long start, long end, boolean partial) {
+    long length() {
+      return end - start + 1;
+    }
+  }
+
+  /** Returns the number of bytes sent. */
+  public static long serve(
+      Path file,
+      String filename,
+      String etag,
+      HttpServletRequest request,
+      HttpServletResponse response)
+      throws IOException {
+    long size = Files.size(file);
+    String quotedEtag = "\"" + etag + "\"";
+
+    response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+    response.setHeader(
+        HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"");
+    response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+    response.setHeader(HttpHeaders.ETAG, quotedEtag);
+
+    // a range is only valid against the same file it was computed from
+    String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+    String rangeHeader =
+        ifRange == null || ifRange.equals(quotedEtag) ? request.getHeader(HttpHeaders.RANGE) : null;
+    ByteRange range = requestedRange(rangeHeader, size);
+
+    if (range == null) {
+      response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+      response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+      return 0;
+    }
+    if (range.partial()) {
+      response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+      response.setHeader(
+          HttpHeaders.CONTENT_RANGE, "bytes " + range.start() + "-" + range.end() + "/" + size);
+    }
+    response.setContentLengthLong(range.length());
+    if ("HEAD".equals(request.getMethod()) || range.length() == 0) {
+      return 0;
+    }
+
+    try (var channel = FileChannel.open(file, StandardOpenOption.READ);
+        var out = Channels.newChannel(response.getOutputStream())) {
+      long position = range.start();
+      long remaining = range.length();
+      while (remaining > 0) {
+        long sent = channel.transferTo(position, remaining, out);
+        position += sent;
+        remaining -= sent;
+      }
+    }
+    return range.length();
+  }
+
+  /**
+   * The range asked for by a Range header: the whole file when there is no header or it is not a
+   * single byte range (which servers may ignore), and null when the range is not satisfiable.
+   */
+  static ByteRange requestedRange(String rangeHeader, long size) {
+    var whole = new ByteRange(0, size - 1, false);
+    if (rangeHeader == null) {
+      return whole;
+    }
+    var matcher = BYTE_RANGE.matcher(rangeHeader.trim());
+    if (!matcher.matches() || (matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+      return whole;
+    }
+
+    long start;
+    long end;
+    try {
+      if (matcher.group(1).isEmpty()) {
+        // suffix range: the last N bytes
+        long suffix = Long.parseLong(matcher.group(2));
+        if (suffix == 0) {
+          return null;
+        }
+        start = Math.max(0, size - suffix);
+        end = size - 1;
+      } else {
+        start = Long.parseLong(matcher.group(1));
+        end = matcher.group(2).isEmpty() ? size - 1 : Long.parseLong(matcher.group(2));
+      }
+    } catch (NumberFormatException e) {
+      return whole;
+    }
+
+    if (start >= size || start > end) {
+      return null;
+    }
+    return new ByteRange(start, Math.min(end, size - 1), true);
+  }
+}
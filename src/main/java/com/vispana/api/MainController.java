@@ -1,16 +1,55 @@
 package com.vispana.api;
 
 import com.vispana.api.model.VispanaRoot;
+import com.vispana.api.model.alerts.Alert;
+import com.vispana.api.model.apppackage.AppPackageChangeSummary;
+import com.vispana.api.model.apppackage.AppPackageFilePage;
+import com.vispana.api.model.apppackage.AppPackageSearchResult;
+import com.vispana.api.model.content.RankProfiles;
+import com.vispana.api.model.history.HistorySample;
+import com.vispana.api.model.query.ContainerNodeStats;
+import com.vispana.api.model.query.QueryClientStats;
+import com.vispana.api.model.query.QueryTraceTimeline;
+import com.vispana.api.model.query.RankProfileComparison;
+import com.vispana.api.model.query.ReplayComparison;
+import com.vispana.api.model.query.ReplayRun;
+import com.vispana.api.model.query.ReplayStatus;
+import com.vispana.api.model.trace.FetchWaterfall;
+import com.vispana.vespa.alerts.AlertManager;
+import com.vispana.vespa.query.ContainerClusterRouter;
+import com.vispana.vespa.query.QueryLogReplayer;
+import com.vispana.vespa.query.QueryResponseParser;
+import com.vispana.vespa.query.QueryTraceAnalyzer;
+import com.vispana.vespa.query.RankProfileComparator;
 import com.vispana.vespa.query.VespaQueryClient;
+import com.vispana.vespa.state.FetchTraceStore;
+import com.vispana.vespa.state.RankProfileCache;
+import com.vispana.vespa.state.SnapshotHistory;
+import com.vispana.vespa.state.SnapshotPoller;
 import com.vispana.vespa.state.VespaStateClient;
 import com.vispana.vespa.state.helpers.AppPackageFetcher;
+import com.vispana.vespa.state.helpers.AppPackageFileReader;
 import com.vispana.vespa.state.helpers.AppPackageFilesystem;
+import com.vispana.vespa.state.helpers.AppPackageMirror;
+import com.vispana.vespa.state.helpers.AppPackageSearchIndex;
 import com.vispana.vespa.state.helpers.ApplicationUrlFetcher;
-import java.util.Arrays;
-import java.util.HashMap;
+import com.vispana.vespa.state.helpers.ArchiveFormat;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -19,6 +58,8 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
@@ -27,15 +68,54 @@ public class MainController {
   private final VespaStateClient vespaStateClient;
   private final VespaQueryClient vespaQueryClient;
   private final AppPackageFetcher appPackageFetcher;
+  private final AppPackageMirror appPackageMirror;
+  private final AppPackageSearchIndex appPackageSearchIndex;
+  private final QueryLogReplayer queryLogReplayer;
+  private final RankProfileComparator rankProfileComparator;
+  private final ContainerClusterRouter containerClusterRouter;
+  private final RankProfileCache rankProfileCache;
+  private final FetchTraceStore fetchTraceStore;
+  private final AlertManager alertManager;
+  private final SnapshotHistory snapshotHistory;
+  private final SnapshotPoller snapshotPoller;
+  private final MeterRegistry meterRegistry;
+  private final int maxConcurrentListings;
+  private final int maxFileBytes;
 
   @Autowired
   public MainController(
       VespaStateClient vespaStateClient,
       VespaQueryClient vespaQueryClient,
-      AppPackageFetcher appPackageFetcher) {
+      AppPackageFetcher appPackageFetcher,
+      AppPackageMirror appPackageMirror,
+      AppPackageSearchIndex appPackageSearchIndex,
+      QueryLogReplayer queryLogReplayer,
+      RankProfileComparator rankProfileComparator,
+      ContainerClusterRouter containerClusterRouter,
+      RankProfileCache rankProfileCache,
+      FetchTraceStore fetchTraceStore,
+      AlertManager alertManager,
+      SnapshotHistory snapshotHistory,
+      SnapshotPoller snapshotPoller,
+      MeterRegistry meterRegistry,
+      @Value("${vispana.apppackage.max-concurrent-listings:16}") int maxConcurrentListings,
+      @Value("${vispana.apppackage.file.max-bytes:1048576}") int maxFileBytes) {
     this.vespaStateClient = vespaStateClient;
     this.vespaQueryClient = vespaQueryClient;
-    this.appPackageFetcher = new AppPackageFetcher();
+    this.appPackageFetcher = appPackageFetcher;
+    this.appPackageMirror = appPackageMirror;
+    this.appPackageSearchIndex = appPackageSearchIndex;
+    this.queryLogReplayer = queryLogReplayer;
+    this.rankProfileComparator = rankProfileComparator;
+    this.containerClusterRouter = containerClusterRouter;
+    this.rankProfileCache = rankProfileCache;
+    this.fetchTraceStore = fetchTraceStore;
+    this.alertManager = alertManager;
+    this.snapshotHistory = snapshotHistory;
+    this.snapshotPoller = snapshotPoller;
+    this.meterRegistry = meterRegistry;
+    this.maxConcurrentListings = maxConcurrentListings;
+    this.maxFileBytes = maxFileBytes;
   }
 
   @GetMapping(
@@ -43,98 +123,447 @@ public class MainController {
       produces = {"application/json"})
   @ResponseBody
   public VispanaRoot root(@RequestParam(name = "config_host") String configHost) {
-    return vespaStateClient.vespaState(configHost);
+    var root = vespaStateClient.vespaState(configHost);
+    // only a config host that answered, so a mistyped one is not polled for the next hour
+    snapshotPoller.opened(configHost);
+    return root;
+  }
+
+  /**
+   * The alerts currently firing for the config hosts the poller watches, of one config host or of
+   * all of them.
+   */
+  @GetMapping(
+      value = "/api/alerts",
+      produces = {"application/json"})
+  @ResponseBody
+  public List<Alert> alerts(
+      @RequestParam(name = "config_host", required = false) String configHost) {
+    return alertManager.active(configHost);
+  }
+
+  /**
+   * The derived rates and container thread pool usage of the latest snapshots the poller took of a
+   * config host, oldest first.
+   */
+  @GetMapping(
+      value = "/api/history",
+      produces = {"application/json"})
+  @ResponseBody
+  public List<HistorySample> history(@RequestParam(name = "config_host") String configHost) {
+    return snapshotHistory.history(configHost);
+  }
+
+  /**
+   * The calls to Vespa behind an earlier API request, by the id in its {@value
+   * FetchTraceFilter#TRACE_HEADER} header; the latest traced request when no id is given.
+   */
+  @GetMapping(
+      value = "/api/debug/trace",
+      produces = {"application/json"})
+  @ResponseBody
+  public FetchWaterfall fetchTrace(
+      @RequestParam(name = "trace_id", required = false) String traceId) {
+    return fetchTraceStore
+        .waterfall(traceId)
+        .orElseThrow(
+            () -> new ResponseStatusException(HttpStatus.NOT_FOUND, "No trace " + traceId));
+  }
+
+  @GetMapping(
+      value = "/api/schema/rank-profiles",
+      produces = {"application/json"})
+  @ResponseBody
+  public RankProfiles rankProfiles(
+      @RequestParam(name = "config_host") String configHost,
+      @RequestParam(name = "schema") String schemaName) {
+    return rankProfileCache.rankProfiles(configHost, schemaName);
   }
 
   @PostMapping(
       value = "/api/query",
       produces = {"application/json"})
   @ResponseBody
-  public String query(
+  public DeferredResult<String> query(
+      @RequestParam(name = "container_host") String containerHost,
+      @RequestParam(name = "timeout_ms", required = false) Long timeoutMs,
+      @RequestBody String query) {
+    var deadline =
+        timeoutMs != null ? Duration.ofMillis(timeoutMs) : VespaQueryClient.DEFAULT_DEADLINE;
+    return deferred(vespaQueryClient.queryAsync(containerHost, query, deadline), deadline);
+  }
+
+  /**
+   * Answers with the query's result once Vespa sent it, without holding the request thread, and
+   * cancels the upstream query when the client disconnects or the deadline passes.
+   */
+  private DeferredResult<String> deferred(CompletableFuture<String> response, Duration deadline) {
+    // the async timeout only fires if Vespa ignored its own timeout and the local one as well
+    var result = new DeferredResult<String>(deadline.plusSeconds(5).toMillis());
+    response.whenComplete(
+        (body, throwable) -> {
+          if (throwable == null) {
+            result.setResult(body);
+          } else {
+            result.setErrorResult(throwable.getCause() != null ? throwable.getCause() : throwable);
+          }
+        });
+    result.onTimeout(
+        () -> {
+          vespaQueryClient.cancel(response);
+          result.setErrorResult(
+              new ResponseStatusException(
+                  HttpStatus.GATEWAY_TIMEOUT, "Query did not complete within the deadline"));
+        });
+    // raised by the servlet container when the client disconnects before the answer is ready
+    result.onError(throwable -> vespaQueryClient.cancel(response));
+    return result;
+  }
+
+  /** Counters for proxied queries: in flight, completed, failed, timed out and abandoned. */
+  @GetMapping(
+      value = "/api/query/stats",
+      produces = {"application/json"})
+  @ResponseBody
+  public QueryClientStats queryStats() {
+    return vespaQueryClient.stats();
+  }
+
+  /**
+   * Sends the query to one of the healthy nodes of a container cluster, picked by fewest
+   * outstanding requests or by latency EWMA, instead of to a single fixed container.
+   */
+  @PostMapping(
+      value = "/api/query/cluster",
+      produces = {"application/json"})
+  @ResponseBody
+  public DeferredResult<String> queryCluster(
+      @RequestParam(name = "config_host") String configHost,
+      @RequestParam(name = "cluster") String clusterName,
+      @RequestParam(name = "strategy", defaultValue = "ewma") String strategy,
+      @RequestParam(name = "timeout_ms", required = false) Long timeoutMs,
+      @RequestBody String query) {
+    ContainerClusterRouter.Strategy routing;
+    try {
+      routing = ContainerClusterRouter.Strategy.parseFrom(strategy);
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+    var deadline =
+        timeoutMs != null ? Duration.ofMillis(timeoutMs) : VespaQueryClient.DEFAULT_DEADLINE;
+    return deferred(
+        containerClusterRouter.queryAsync(configHost, clusterName, routing, query, deadline),
+        deadline);
+  }
+
+  /** Routing statistics for every node of a container cluster. */
+  @GetMapping(
+      value = "/api/query/cluster/stats",
+      produces = {"application/json"})
+  @ResponseBody
+  public List<ContainerNodeStats> queryClusterStats(
+      @RequestParam(name = "config_host") String configHost,
+      @RequestParam(name = "cluster") String clusterName) {
+    return containerClusterRouter.stats(configHost, clusterName);
+  }
+
+  /**
+   * Runs the query with tracing enabled and returns the trace as a timeline: searcher chain steps,
+   * per content node phase timings and the slowest node and phase.
+   */
+  @PostMapping(
+      value = "/api/query/trace",
+      produces = {"application/json"})
+  @ResponseBody
+  public QueryTraceTimeline traceQuery(
       @RequestParam(name = "container_host") String containerHost, @RequestBody String query) {
-    return vespaQueryClient.query(containerHost, query);
+    var response = vespaQueryClient.query(containerHost, QueryTraceAnalyzer.withTracing(query));
+    return QueryTraceAnalyzer.analyze(QueryResponseParser.parse(response));
+  }
+
+  /**
+   * Runs the same query with each of the given rank profiles in parallel and returns per-profile
+   * latency and totalCount together with the overlap and rank correlation of their top-K hits.
+   */
+  @PostMapping(
+      value = "/api/query/compare",
+      produces = {"application/json"})
+  @ResponseBody
+  public RankProfileComparison compareRankProfiles(
+      @RequestParam(name = "container_host") String containerHost,
+      @RequestParam(name = "profiles") List<String> profiles,
+      @RequestParam(name = "top_k", defaultValue = "10") int topK,
+      @RequestBody String query) {
+    return rankProfileComparator.compare(containerHost, query, profiles, topK);
+  }
+
+  /**
+   * Replays a JSONL query log sent as the request body (one query per line) at a fixed rate. The
+   * body is streamed to a temporary file, so large logs are never held in memory at once, and
+   * replayed in the background; poll {@code GET /api/query/replay} with the returned id.
+   */
+  @PostMapping(
+      value = "/api/query/replay",
+      produces = {"application/json"})
+  @ResponseBody
+  public ResponseEntity<ReplayStatus> replayQueries(
+      @RequestParam(name = "container_host") String containerHost,
+      @RequestParam(name = "qps", defaultValue = "10") double queriesPerSecond,
+      InputStream queryLog) {
+    if (queriesPerSecond <= 0) {
+      throw new ResponseStatusException(
+          HttpStatus.BAD_REQUEST, "Queries per second must be positive");
+    }
+    return ResponseEntity.accepted()
+        .body(queryLogReplayer.start(containerHost, queryLog, queriesPerSecond));
+  }
+
+  /** A replay started earlier: how many queries were sent so far and the run once it is done. */
+  @GetMapping(
+      value = "/api/query/replay",
+      produces = {"application/json"})
+  @ResponseBody
+  public ReplayStatus replayStatus(@RequestParam(name = "id") String replayId) {
+    return queryLogReplayer
+        .status(replayId)
+        .orElseThrow(
+            () -> new ResponseStatusException(HttpStatus.NOT_FOUND, "No replay " + replayId));
+  }
+
+  /** Compares two previous replay runs query by query, biggest latency regressions first. */
+  @GetMapping(
+      value = "/api/query/replay/compare",
+      produces = {"application/json"})
+  @ResponseBody
+  public ReplayComparison compareReplays(
+      @RequestParam(name = "baseline") String baselineRunId,
+      @RequestParam(name = "candidate") String candidateRunId) {
+    return QueryLogReplayer.compare(replayRun(baselineRunId), replayRun(candidateRunId));
+  }
+
+  private ReplayRun replayRun(String runId) {
+    return queryLogReplayer
+        .run(runId)
+        .orElseThrow(
+            () -> new ResponseStatusException(HttpStatus.NOT_FOUND, "No finished replay " + runId));
   }
 
   /**
    * Returns the file tree structure for the application package. This endpoint only returns
-   * metadata (paths, names) - no file content.
+   * metadata (paths, names) - no file content. When {@code path} is given only that directory is
+   * listed, so the explorer can expand directories on demand instead of crawling everything. Served
+   * from the local mirror of the deployed generation when it is available.
    */
   @GetMapping(
       value = "/api/apppackage/tree",
       produces = {"application/json"})
   @ResponseBody
   public AppPackageFilesystem.FileTree getAppPackageTree(
-      @RequestParam(name = "config_host") String configHost) {
+      @RequestParam(name = "config_host") String configHost,
+      @RequestParam(name = "path", required = false) String path) {
 
-    AppPackageFilesystem.FileTree tree = AppPackageFilesystem.buildFileTree(configHost);
+    var lease = appPackageMirror.tryLease(configHost);
+    if (lease.isPresent()) {
+      try (var mirrored = lease.get()) {
+        var snapshot = mirrored.snapshot();
+        return path != null ? snapshot.listDirectory(path) : snapshot.getTree();
+      }
+    }
+
+    if (path != null) {
+      return AppPackageFilesystem.listDirectory(configHost, path);
+    }
+
+    AppPackageFilesystem.FileTree tree =
+        AppPackageFilesystem.buildFileTree(configHost, maxConcurrentListings);
 
     return tree;
   }
 
   /**
-   * Returns (file_url,file_content) pair for a single file from the application package. Called
-   * on-demand when user clicks on a file in the UI.
+   * Returns a page of a single file from the application package: its URL and at most {@code
+   * max_bytes} of content from a byte {@code offset}, or from a {@code line} when given. Binary
+   * files are detected from their first bytes and returned as a placeholder. Called on-demand when
+   * user clicks on a file in the UI, and again with {@code nextOffset} to page through large files.
    */
   @GetMapping(
       value = "/api/apppackage/file",
       produces = {"application/json"})
   @ResponseBody
-  public HashMap<String, String> getAppPackageFile(
+  public AppPackageFilePage getAppPackageFile(
       @RequestParam(name = "config_host") String configHost,
-      @RequestParam(name = "file_path") String filePath) {
+      @RequestParam(name = "file_path") String filePath,
+      @RequestParam(name = "offset", defaultValue = "0") long offset,
+      @RequestParam(name = "line", required = false) Long line,
+      @RequestParam(name = "max_bytes", required = false) Integer maxBytes)
+      throws IOException {
 
-    HashMap<String, String> file_Url_Content = new HashMap<>();
+    int pageBytes = maxBytes == null ? maxFileBytes : Math.clamp(maxBytes, 1, maxFileBytes);
 
-    // Build file full URL
-    String appUrl = ApplicationUrlFetcher.fetch(configHost);
-    String fileUrl = appUrl + "/content/" + filePath;
-    file_Url_Content.put("url", fileUrl);
-
-    // If file is NON human-readable, return placeholder
-    List<String> nonReadableFormats = Arrays.asList("jar", "zip", "class");
-    String fileExtension = getLastElement(filePath, "\\.");
-    if (nonReadableFormats.contains(fileExtension) || filePath.contains("models/")) {
-      file_Url_Content.put("content", "// Binary file: Not displayable as text");
-      return file_Url_Content;
+    // Read from the mirror when it has the file
+    var lease = appPackageMirror.tryLease(configHost);
+    if (lease.isPresent()) {
+      try (var mirrored = lease.get()) {
+        var snapshot = mirrored.snapshot();
+        String fileUrl = snapshot.getAppUrl() + "/content/" + filePath;
+        var blob = snapshot.blob(filePath);
+        if (blob.isPresent()) {
+          try (var content = Files.newInputStream(blob.get())) {
+            return AppPackageFileReader.readPage(
+                fileUrl, content, Files.size(blob.get()), offset, line, pageBytes);
+          }
+        }
+        return AppPackageFileReader.readPage(fileUrl, offset, line, pageBytes);
+      }
     }
 
-    // Get file content
-    String content = AppPackageFilesystem.getFileContent(fileUrl);
-    file_Url_Content.put("content", content);
+    // Build file full URL
+    String fileUrl = ApplicationUrlFetcher.fetch(configHost) + "/content/" + filePath;
+    return AppPackageFileReader.readPage(fileUrl, offset, line, pageBytes);
+  }
 
-    return file_Url_Content;
+  /**
+   * What changed in the application package with the deployed generation, compared to the one
+   * mirrored before it: added, changed and removed files, and what syncing the mirror cost.
+   */
+  @GetMapping(
+      value = "/api/apppackage/changes",
+      produces = {"application/json"})
+  @ResponseBody
+  public AppPackageChangeSummary appPackageChanges(
+      @RequestParam(name = "config_host") String configHost) {
+    try (var mirrored =
+        appPackageMirror
+            .tryLease(configHost)
+            .orElseThrow(
+                () ->
+                    new ResponseStatusException(
+                        HttpStatus.SERVICE_UNAVAILABLE,
+                        "Change tracking needs the application package mirror, which is not"
+                            + " ready yet"))) {
+      return mirrored.snapshot().getChanges();
+    }
   }
 
   /**
-   * Downloads the entire application package as a ZIP archive. Uses streaming to handle large
-   * packages (up to several GB) without OOM errors.
+   * Searches the text files of the deployed application package: {@code symbol} finds lines with
+   * all words of the query as whole tokens, {@code substring} finds the query anywhere. Answered
+   * from an index over the local mirror, built once per generation.
+   */
+  @GetMapping(
+      value = "/api/apppackage/search",
+      produces = {"application/json"})
+  @ResponseBody
+  public AppPackageSearchResult searchAppPackage(
+      @RequestParam(name = "config_host") String configHost,
+      @RequestParam(name = "q") String query,
+      @RequestParam(name = "mode", defaultValue = "symbol") String mode,
+      @RequestParam(name = "case_sensitive", defaultValue = "false") boolean caseSensitive,
+      @RequestParam(name = "limit", defaultValue = "200") int limit) {
+    AppPackageSearchIndex.Mode searchMode;
+    try {
+      searchMode = AppPackageSearchIndex.Mode.parseFrom(mode);
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+    try (var mirrored =
+        appPackageMirror
+            .tryLease(configHost)
+            .orElseThrow(
+                () ->
+                    new ResponseStatusException(
+                        HttpStatus.SERVICE_UNAVAILABLE,
+                        "Searching needs the application package mirror, which is not ready yet"))) {
+      return appPackageSearchIndex.search(
+          mirrored.snapshot(), query, searchMode, caseSensitive, Math.clamp(limit, 1, 10_000));
+    }
+  }
+
+  /**
+   * Downloads the entire application package as a ZIP (default), tar.gz or tar.zst archive. Uses
+   * streaming to handle large packages (up to several GB) without OOM errors. With the mirror, the
+   * archive is built once per generation and format in the background and, once built, served with
+   * its length and HTTP Range support, so downloads can be resumed.
    */
   @GetMapping(value = "/api/apppackage/download")
   public ResponseEntity<StreamingResponseBody> downloadAppPackage(
-      @RequestParam(name = "config_host") String configHost) {
+      @RequestParam(name = "config_host") String configHost,
+      @RequestParam(name = "format", defaultValue = "zip") String formatName,
+      HttpServletRequest request,
+      HttpServletResponse response)
+      throws IOException {
+
+    ArchiveFormat format;
+    try {
+      format = ArchiveFormat.parseFrom(formatName);
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+    var filename = "vespa-app-package." + format.getFileExtension();
+
+    var lease = appPackageMirror.tryLease(configHost);
+    if (lease.isPresent()) {
+      // the file is sent before the lease is released, so it cannot be cleaned up mid-download
+      try (var mirrored = lease.get()) {
+        var archive = appPackageMirror.tryArchive(mirrored, format);
+        if (archive.isPresent()) {
+          var etag = mirrored.snapshot().getKey() + "." + format.getFileExtension();
+          long sent = FileRangeResponder.serve(archive.get(), filename, etag, request, response);
+          archiveBytes(format, "mirror").increment(sent);
+          // response already written
+          return null;
+        }
+      }
+    }
 
     StreamingResponseBody stream =
         outputStream -> {
+          var counted = new CountingOutputStream(outputStream);
           try {
-            appPackageFetcher.streamAppPackageAsZip(configHost, outputStream);
+            appPackageFetcher.streamAppPackage(configHost, format, counted);
           } catch (Exception e) {
             throw new RuntimeException("Failed to stream app package", e);
+          } finally {
+            archiveBytes(format, "config-server").increment(counted.bytes);
           }
         };
 
     HttpHeaders headers = new HttpHeaders();
     headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-    headers.setContentDispositionFormData("attachment", "vespa-app-package.zip");
+    headers.setContentDispositionFormData("attachment", filename);
     // Content-Length is not set - using chunked transfer encoding for streaming
 
     return ResponseEntity.ok().headers(headers).body(stream);
   }
 
-  private String getLastElement(String string, String delimiter) {
-    String[] result = string.split(delimiter);
-    if (result.length > 0) {
-      return result[result.length - 1];
+  private Counter archiveBytes(ArchiveFormat format, String source) {
+    return Counter.builder("vispana.apppackage.archive.sent")
+        .description("Bytes of application package archives downloaded from Vispana")
+        .baseUnit("bytes")
+        .tags("format", format.getFileExtension(), "source", source)
+        .register(meterRegistry);
+  }
+
+  /** Counts the bytes written. */
+  private static class CountingOutputStream extends FilterOutputStream {
+
+    private long bytes;
+
+    CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int value) throws IOException {
+      out.write(value);
+      bytes++;
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+      // FilterOutputStream would write these one byte at a time
+      out.write(buffer, offset, length);
+      bytes += length;
     }
-    return "";
   }
 }
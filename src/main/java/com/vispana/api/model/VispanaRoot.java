@@ -4,10 +4,16 @@ import com.vispana.api.model.apppackage.ApplicationPackage;
 import com.vispana.api.model.config.ConfigNodes;
 import com.vispana.api.model.container.ContainerNodes;
 import com.vispana.api.model.content.ContentNodes;
+import com.vispana.api.model.saturation.ClusterSaturation;
+import com.vispana.api.model.throughput.ClusterThroughput;
+import java.util.List;
 
 public record VispanaRoot(
     ConfigNodes config,
     ContainerNodes container,
     ContentNodes content,
     ApplicationPackage applicationPackage,
-    VespaVersion vespaVersion) {}
+    VespaVersion vespaVersion,
+    // empty until a content cluster has been seen in two metrics snapshots
+    List<ClusterThroughput> throughput,
+    List<ClusterSaturation> saturation) {}
@@ -0,0 +1,15 @@
+package com.vispana.api.model.alerts;
+
+import java.time.Instant;
+
+// An alert on a host, a service on a host (host/service), a cluster or a schema (cluster/schema);
+// value and threshold are those of the snapshot that changed its state
+public record Alert(
+    String configHost,
+    AlertKind kind,
+    String subject,
+    AlertState state,
+    double value,
+    double threshold,
+    String message,
+    Instant since) {}
@@ -0,0 +1,13 @@
+package com.vispana.api.model.alerts;
+
+public enum AlertKind {
+  // a host's disk or memory usage, in percent
+  DISK_USAGE,
+  MEMORY_USAGE,
+  // nodes of a content cluster whose state the cluster controller has not yet converged
+  NOT_CONVERGED,
+  // a service on a host that is not up
+  SERVICE_DOWN,
+  // the document count of a schema fell between two snapshots, in percent
+  DOC_COUNT_DROP
+}
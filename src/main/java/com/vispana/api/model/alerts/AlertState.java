@@ -0,0 +1,6 @@
+package com.vispana.api.model.alerts;
+
+public enum AlertState {
+  FIRING,
+  RESOLVED
+}
@@ -0,0 +1,19 @@
+package com.vispana.api.model.apppackage;
+
+import java.util.List;
+
+// What changed in the application package between the previously mirrored generation (null for
+// the first one) and this one, and what syncing it cost. syncMode is "incremental" when only
+// changed files were downloaded, "full" when every file was.
+public record AppPackageChangeSummary(
+    Long fromGeneration,
+    long toGeneration,
+    String syncMode,
+    List<String> added,
+    List<String> changed,
+    List<String> removed,
+    int unchanged,
+    int filesDownloaded,
+    long bytesDownloaded,
+    long bytesReused,
+    double durationMs) {}
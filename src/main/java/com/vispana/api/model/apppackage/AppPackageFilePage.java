@@ -0,0 +1,14 @@
+package com.vispana.api.model.apppackage;
+
+// A page of an application package file: at most the requested number of bytes from an offset.
+// line and nextLine are only set when paging by line; size is null when not known up front.
+public record AppPackageFilePage(
+    String url,
+    String content,
+    boolean binary,
+    long offset,
+    Long line,
+    long nextOffset,
+    Long nextLine,
+    Long size,
+    boolean truncated) {}
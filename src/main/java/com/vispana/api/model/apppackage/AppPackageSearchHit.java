@@ -0,0 +1,4 @@
+package com.vispana.api.model.apppackage;
+
+// One match: 1-based line and column, and the text of the line
+public record AppPackageSearchHit(String path, int line, int column, String text) {}
@@ -0,0 +1,12 @@
+package com.vispana.api.model.apppackage;
+
+import java.util.List;
+
+public record AppPackageSearchResult(
+    String query,
+    String mode,
+    long generation,
+    int filesIndexed,
+    boolean truncated,
+    double tookMs,
+    List<AppPackageSearchHit> hits) {}
@@ -1,5 +1,6 @@
 package com.vispana.api.model.apppackage;
 
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlElementWrapper;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
@@ -9,18 +10,19 @@ import java.util.List;
 
 @JacksonXmlRootElement(localName = "hosts")
 public class Hosts {
+
+  private static final ObjectReader READER = new XmlMapper().readerFor(Hosts.class);
+
   @JacksonXmlElementWrapper(useWrapping = false)
   @JacksonXmlProperty(localName = "host")
   List<Host> hosts;
 
   public static Hosts fromXml(String xml) {
-    XmlMapper xmlMapper = new XmlMapper();
-
     try {
       if (xml == null || xml.isEmpty()) {
         return new Hosts();
       }
-      return xmlMapper.readValue(xml, Hosts.class);
+      return READER.readValue(xml);
     } catch (IOException e) {
       throw new RuntimeException("Failed to parse Hosts xml", e);
     }
@@ -1,6 +1,7 @@
 package com.vispana.api.model.apppackage;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
@@ -9,16 +10,19 @@ import java.io.IOException;
 @JacksonXmlRootElement(localName = "services")
 public class Services {
 
+  // readers are immutable and thread-safe, so one is shared instead of a mapper per parse
+  private static final ObjectReader READER =
+      new XmlMapper()
+          // To ignore parts off service xml that we don't need
+          .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+          .readerFor(Services.class);
+
   @JacksonXmlProperty(localName = "content")
   private Content content;
 
   public static Services fromXml(String xml) {
-    XmlMapper xmlMapper = new XmlMapper();
-    // To ignore parts off service xml that we don't need
-    xmlMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-
     try {
-      return xmlMapper.readValue(xml, Services.class);
+      return READER.readValue(xml);
     } catch (IOException e) {
       throw new RuntimeException("Failed to parse Services xml", e);
     }
@@ -0,0 +1,6 @@
+package com.vispana.api.model.content;
+
+import java.util.Map;
+
+// The rank profiles of a schema at an application generation: profile name -> profile content
+public record RankProfiles(String schemaName, long generation, Map<String, String> rankProfiles) {}
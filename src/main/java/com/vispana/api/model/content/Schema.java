@@ -1,6 +1,4 @@
 package com.vispana.api.model.content;
 
-import java.util.Map;
-
-public record Schema(
-    String schemaName, String schemaContent, Map<String, String> schemaRankProfiles) {}
+// Rank profiles are served separately, see RankProfiles
+public record Schema(String schemaName, String schemaContent) {}
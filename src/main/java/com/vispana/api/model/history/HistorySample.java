@@ -0,0 +1,10 @@
+package com.vispana.api.model.history;
+
+import com.vispana.api.model.saturation.ClusterSaturation;
+import com.vispana.api.model.throughput.ClusterThroughput;
+import java.time.Instant;
+import java.util.List;
+
+// what is kept of one polled snapshot
+public record HistorySample(
+    Instant takenAt, List<ClusterThroughput> throughput, List<ClusterSaturation> saturation) {}
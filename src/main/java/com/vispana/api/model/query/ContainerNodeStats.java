@@ -0,0 +1,9 @@
+package com.vispana.api.model.query;
+
+public record ContainerNodeStats(
+    String url,
+    boolean healthy,
+    int outstandingRequests,
+    long requests,
+    long errors,
+    double ewmaLatencyMs) {}
@@ -0,0 +1,30 @@
+package com.vispana.api.model.query;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+public record LatencySummary(
+    int count, double meanMs, double p50Ms, double p90Ms, double p99Ms, double maxMs) {
+
+  public static LatencySummary of(Collection<Double> latenciesMs) {
+    if (latenciesMs.isEmpty()) {
+      return new LatencySummary(0, 0, 0, 0, 0, 0);
+    }
+    var sorted = latenciesMs.stream().mapToDouble(Double::doubleValue).toArray();
+    Arrays.sort(sorted);
+    var mean = Arrays.stream(sorted).average().orElse(0);
+    return new LatencySummary(
+        sorted.length,
+        mean,
+        percentile(sorted, 50),
+        percentile(sorted, 90),
+        percentile(sorted, 99),
+        sorted[sorted.length - 1]);
+  }
+
+  // nearest-rank percentile over an already sorted array
+  private static double percentile(double[] sorted, double percentile) {
+    var rank = (int) Math.ceil(percentile / 100 * sorted.length);
+    return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+  }
+}
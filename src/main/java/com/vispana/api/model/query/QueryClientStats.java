@@ -0,0 +1,4 @@
+package com.vispana.api.model.query;
+
+public record QueryClientStats(
+    long inFlight, long completed, long failed, long timedOut, long abandoned) {}
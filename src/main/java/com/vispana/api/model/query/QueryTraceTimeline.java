@@ -0,0 +1,17 @@
+package com.vispana.api.model.query;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Structured view of a Vespa query trace. {@code phasesMs} holds the slowest content node's time
+ * for each phase, plus the container-side summary fetch.
+ */
+public record QueryTraceTimeline(
+    double totalMs,
+    List<TraceSearcherStep> searchers,
+    List<TraceContentNode> contentNodes,
+    Map<String, Double> phasesMs,
+    TraceSearcherStep slowestSearcher,
+    TraceContentNode slowestContentNode,
+    String slowestPhase) {}
@@ -0,0 +1,6 @@
+package com.vispana.api.model.query;
+
+import java.util.List;
+
+public record RankProfileComparison(
+    int topK, List<RankProfileResult> profiles, List<RankProfilePairComparison> pairs) {}
@@ -0,0 +1,9 @@
+package com.vispana.api.model.query;
+
+/**
+ * How similar the top-K hits of two rank profiles are. {@code overlap} is the share of top-K ids
+ * found in both lists; {@code kendallTau} is the rank correlation over those shared ids, and is
+ * null when fewer than two ids are shared.
+ */
+public record RankProfilePairComparison(
+    String profile, String otherProfile, int sharedHits, double overlap, Double kendallTau) {}
@@ -0,0 +1,6 @@
+package com.vispana.api.model.query;
+
+import java.util.List;
+
+public record RankProfileResult(
+    String profile, double latencyMs, long totalCount, List<String> topHitIds, String error) {}
@@ -0,0 +1,14 @@
+package com.vispana.api.model.query;
+
+import java.util.List;
+
+public record ReplayComparison(
+    String baselineRunId,
+    String candidateRunId,
+    LatencySummary baselineLatency,
+    LatencySummary candidateLatency,
+    double p50DeltaMs,
+    double p99DeltaMs,
+    int comparedQueries,
+    int hitCountChanges,
+    List<ReplayQueryDiff> queries) {}
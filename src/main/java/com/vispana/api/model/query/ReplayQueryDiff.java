@@ -0,0 +1,11 @@
+package com.vispana.api.model.query;
+
+public record ReplayQueryDiff(
+    int index,
+    String query,
+    double baselineLatencyMs,
+    double candidateLatencyMs,
+    double latencyDeltaMs,
+    long baselineTotalCount,
+    long candidateTotalCount,
+    boolean hitCountChanged) {}
@@ -0,0 +1,15 @@
+package com.vispana.api.model.query;
+
+public record ReplayQueryResult(
+    int index,
+    String query,
+    double latencyMs,
+    double scheduleLagMs,
+    long totalCount,
+    int hitCount,
+    String error) {
+
+  public boolean failed() {
+    return error != null;
+  }
+}
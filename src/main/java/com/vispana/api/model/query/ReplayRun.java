@@ -0,0 +1,13 @@
+package com.vispana.api.model.query;
+
+import java.util.List;
+
+public record ReplayRun(
+    String id,
+    String containerHost,
+    double queriesPerSecond,
+    long startedAt,
+    double durationMs,
+    int errors,
+    LatencySummary latency,
+    List<ReplayQueryResult> results) {}
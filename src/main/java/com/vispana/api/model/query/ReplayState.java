@@ -0,0 +1,7 @@
+package com.vispana.api.model.query;
+
+public enum ReplayState {
+  RUNNING,
+  DONE,
+  FAILED
+}
@@ -0,0 +1,10 @@
+package com.vispana.api.model.query;
+
+// a replay started in the background; the run is set once it is done, the error once it failed
+public record ReplayStatus(
+    String id,
+    ReplayState state,
+    String containerHost,
+    int queriesSent,
+    String error,
+    ReplayRun run) {}
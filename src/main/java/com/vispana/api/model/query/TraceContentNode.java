@@ -0,0 +1,6 @@
+package com.vispana.api.model.query;
+
+import java.util.Map;
+
+public record TraceContentNode(
+    int distributionKey, double durationMs, Map<String, Double> phasesMs, String slowestPhase) {}
@@ -0,0 +1,8 @@
+package com.vispana.api.model.query;
+
+/**
+ * One searcher invocation in the container's search chain. {@code durationMs} includes the
+ * searchers called further down the chain, {@code selfMs} does not.
+ */
+public record TraceSearcherStep(
+    String searcher, String chain, int depth, double startMs, double durationMs, double selfMs) {}
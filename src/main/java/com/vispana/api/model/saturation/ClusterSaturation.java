@@ -0,0 +1,12 @@
+package com.vispana.api.model.saturation;
+
+import java.util.List;
+
+// the worst pool and queue of any node of a container cluster, since one starved node slows down
+// every query routed to it, and the rejections of all of them
+public record ClusterSaturation(
+    String cluster,
+    Double rejectedPerSecond,
+    double peakUtilization,
+    double peakQueueFill,
+    List<NodeSaturation> nodes) {}
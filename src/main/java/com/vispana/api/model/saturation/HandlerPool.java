@@ -0,0 +1,6 @@
+package com.vispana.api.model.saturation;
+
+// one jdisc handler pool of a container, e.g. search-handler or default-pool, with its own work
+// queue; pools are never added up, as an idle one would hide a saturated one
+public record HandlerPool(
+    String name, PoolUsage threads, QueueUsage queue, double rejectedPerSecond) {}
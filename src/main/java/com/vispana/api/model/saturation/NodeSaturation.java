@@ -0,0 +1,42 @@
+package com.vispana.api.model.saturation;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Comparator;
+import java.util.List;
+
+// the jdisc handler pools and the Jetty HTTP pool of a container; no pools and a null HTTP pool for
+// what the node does not report
+public record NodeSaturation(String hostname, List<HandlerPool> handlerPools, PoolUsage httpPool) {
+
+  /** The handler pool closest to starving: the busiest, then the one with the fullest queue. */
+  @JsonProperty
+  public HandlerPool worstPool() {
+    return handlerPools.stream()
+        .max(
+            Comparator.comparingDouble((HandlerPool pool) -> pool.threads().utilization())
+                .thenComparingDouble(pool -> pool.queue().fill()))
+        .orElse(null);
+  }
+
+  /** The utilization of the busiest pool, handler or HTTP, which is the one to starve first. */
+  @JsonProperty
+  public double peakUtilization() {
+    var worst = worstPool();
+    return Math.max(
+        worst == null ? 0 : worst.threads().utilization(),
+        httpPool == null ? 0 : httpPool.utilization());
+  }
+
+  @JsonProperty
+  public double peakQueueFill() {
+    return handlerPools.stream().mapToDouble(pool -> pool.queue().fill()).max().orElse(0);
+  }
+
+  /** Rejections of all handler pools; null when the node reports none. */
+  @JsonProperty
+  public Double rejectedPerSecond() {
+    return handlerPools.isEmpty()
+        ? null
+        : handlerPools.stream().mapToDouble(HandlerPool::rejectedPerSecond).sum();
+  }
+}
@@ -0,0 +1,16 @@
+package com.vispana.api.model.saturation;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// busy threads against the threads a pool may grow to, at their peak in the metrics period
+public record PoolUsage(long active, long size) {
+
+  @JsonProperty
+  public double utilization() {
+    return size == 0 ? 0 : (double) active / size;
+  }
+
+  public PoolUsage plus(PoolUsage other) {
+    return new PoolUsage(active + other.active, size + other.size);
+  }
+}
@@ -0,0 +1,16 @@
+package com.vispana.api.model.saturation;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// tasks waiting for a thread against what the work queue holds, at their peak in the metrics period
+public record QueueUsage(long size, long capacity) {
+
+  @JsonProperty
+  public double fill() {
+    return capacity == 0 ? 0 : (double) size / capacity;
+  }
+
+  public QueueUsage plus(QueueUsage other) {
+    return new QueueUsage(size + other.size, capacity + other.capacity);
+  }
+}
@@ -0,0 +1,7 @@
+package com.vispana.api.model.throughput;
+
+import java.util.Map;
+
+// the throughput of a content cluster, in total and by schema
+public record ClusterThroughput(
+    String cluster, Throughput total, Map<String, Throughput> schemas) {}
@@ -0,0 +1,20 @@
+package com.vispana.api.model.throughput;
+
+// per second over the latest metrics period; document growth is negative when shrinking and null
+// until two snapshots have been seen
+public record Throughput(
+    double feedOpsPerSecond, double queriesPerSecond, Double documentGrowthPerSecond) {
+
+  public Throughput plus(Throughput other) {
+    Double growth = documentGrowthPerSecond;
+    if (growth == null) {
+      growth = other.documentGrowthPerSecond;
+    } else if (other.documentGrowthPerSecond != null) {
+      growth += other.documentGrowthPerSecond;
+    }
+    return new Throughput(
+        feedOpsPerSecond + other.feedOpsPerSecond,
+        queriesPerSecond + other.queriesPerSecond,
+        growth);
+  }
+}
@@ -0,0 +1,21 @@
+package com.vispana.api.model.trace;
+
+/**
+ * One call to Vespa. Times are relative to the start of the Vispana request: {@code waitMs} until
+ * the response headers arrived, {@code readMs} blocked reading the body and {@code parseMs} the
+ * rest, spent deserializing it. {@code status} is -1 when no response arrived.
+ */
+public record FetchSpan(
+    String template,
+    String url,
+    String host,
+    String source,
+    int status,
+    long bytes,
+    double startMs,
+    double durationMs,
+    double waitMs,
+    double readMs,
+    double parseMs,
+    boolean criticalPath,
+    String error) {}
@@ -0,0 +1,18 @@
+package com.vispana.api.model.trace;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * The calls to Vespa made while serving one Vispana request, in start order. {@code fetchMs} sums
+ * their durations; {@code criticalPathMs} is the chain of calls that ran one after the other and
+ * bounded the request.
+ */
+public record FetchWaterfall(
+    String traceId,
+    String request,
+    Instant startedAt,
+    double durationMs,
+    double fetchMs,
+    double criticalPathMs,
+    List<FetchSpan> spans) {}
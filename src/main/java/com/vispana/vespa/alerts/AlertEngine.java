@@ -0,0 +1,350 @@
+package com.vispana.vespa.alerts;
+
+import com.vispana.api.model.HostMetrics;
+import com.vispana.api.model.Status;
+import com.vispana.api.model.VispanaRoot;
+import com.vispana.api.model.alerts.Alert;
+import com.vispana.api.model.alerts.AlertKind;
+import com.vispana.api.model.alerts.AlertState;
+import com.vispana.api.model.content.ContentCluster;
+import com.vispana.api.model.content.ContentData;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Evaluates the {@link AlertRules} on consecutive snapshots of each config host and returns only
+ * the alerts that changed state, so an alert is delivered once when it fires and once when it
+ * resolves however many snapshots it spans. Only subjects that breach a threshold or already have
+ * an alert get any state, which keeps an evaluation of a healthy fleet to a walk over its nodes.
+ *
+ * <p>Not thread-safe; snapshots of one config host must be evaluated in order.
+ */
+public class AlertEngine {
+
+  private final AlertRules rules;
+  private final Map<String, HostState> configHosts = new HashMap<>();
+
+  public AlertEngine(AlertRules rules) {
+    this.rules = rules;
+  }
+
+  /** The alerts that fired or resolved with this snapshot. */
+  public List<Alert> evaluate(String configHost, VispanaRoot snapshot, Instant takenAt) {
+    var state = configHosts.computeIfAbsent(configHost, HostState::new);
+    var evaluation = new Evaluation(state, takenAt);
+
+    // a host with several roles is listed once per role, but breaches once per snapshot
+    Map<String, HostSample> hosts = new LinkedHashMap<>();
+    for (var cluster : snapshot.config().clusters()) {
+      for (var node : cluster.nodes()) {
+        sample(hosts, node.host().hostname(), node.hostMetrics(), node.processesStatus());
+      }
+    }
+    for (var cluster : snapshot.container().clusters()) {
+      for (var node : cluster.nodes()) {
+        sample(hosts, node.host().hostname(), node.hostMetrics(), node.processesStatus());
+      }
+    }
+    for (var cluster : snapshot.content().clusters()) {
+      for (var node : cluster.nodes()) {
+        sample(hosts, node.host().hostname(), node.hostMetrics(), node.processesStatus());
+      }
+    }
+    hosts.forEach((hostname, host) -> evaluation.host(hostname, host.metrics, host.services));
+    for (var cluster : snapshot.content().clusters()) {
+      evaluation.cluster(cluster);
+    }
+    return evaluation.finish();
+  }
+
+  private static void sample(
+      Map<String, HostSample> hosts,
+      String hostname,
+      HostMetrics metrics,
+      Map<String, Status> services) {
+    var host = hosts.computeIfAbsent(hostname, name -> new HostSample());
+    if (host.metrics == null) {
+      host.metrics = metrics;
+    }
+    if (services != null) {
+      if (host.services == null) {
+        host.services = new LinkedHashMap<>();
+      }
+      // a service reported by several roles is down if any of them says so
+      services.forEach(
+          (service, status) ->
+              host.services.merge(
+                  service, status, (seen, other) -> seen == Status.UP ? other : seen));
+    }
+  }
+
+  /** The alerts currently firing, of every config host. */
+  public List<Alert> active() {
+    List<Alert> active = new ArrayList<>();
+    for (var state : configHosts.values()) {
+      for (var trackers : state.trackers.values()) {
+        for (var tracker : trackers.values()) {
+          if (tracker.firing) {
+            active.add(tracker.alert(state.configHost, AlertState.FIRING));
+          }
+        }
+      }
+    }
+    return active;
+  }
+
+  /** What is known of one config host across snapshots. */
+  private static final class HostState {
+    private final String configHost;
+    private final Map<AlertKind, Map<String, Tracker>> trackers = new EnumMap<>(AlertKind.class);
+    // cluster/schema -> documents in the previous snapshot
+    private final Map<String, Long> documents = new HashMap<>();
+    private long generation;
+
+    private HostState(String configHost) {
+      this.configHost = configHost;
+      for (var kind : AlertKind.values()) {
+        trackers.put(kind, new HashMap<>());
+      }
+    }
+  }
+
+  /** What the roles of one host report about it in a snapshot. */
+  private static final class HostSample {
+    private HostMetrics metrics;
+    private Map<String, Status> services;
+  }
+
+  /** The condition of one subject: consecutive breaches or clean snapshots, and whether firing. */
+  private static final class Tracker {
+    private final AlertKind kind;
+    private final String subject;
+    private int breaches;
+    private int clean;
+    private boolean firing;
+    private double value;
+    private double threshold;
+    private Instant since;
+    private long generation;
+
+    private Tracker(AlertKind kind, String subject) {
+      this.kind = kind;
+      this.subject = subject;
+    }
+
+    private Alert alert(String configHost, AlertState state) {
+      return new Alert(configHost, kind, subject, state, value, threshold, message(state), since);
+    }
+
+    private String message(AlertState state) {
+      String condition =
+          switch (kind) {
+            case DISK_USAGE -> String.format("Disk usage of %s is %.1f%%", subject, value);
+            case MEMORY_USAGE -> String.format("Memory usage of %s is %.1f%%", subject, value);
+            case NOT_CONVERGED -> String.format(
+                "%.0f nodes of %s have not converged", value, subject);
+            case SERVICE_DOWN -> String.format("%s is not up", subject);
+            case DOC_COUNT_DROP -> String.format(
+                "Documents of %s dropped by %.1f%%", subject, value);
+          };
+      return state == AlertState.FIRING ? condition : "Resolved: " + condition;
+    }
+  }
+
+  /** One snapshot being evaluated. */
+  private final class Evaluation {
+    private final HostState state;
+    private final Instant takenAt;
+    private final List<Alert> changes = new ArrayList<>(0);
+    // cluster/schema of the document counts still listed; the others are forgotten
+    private final Set<String> documentSubjects = new HashSet<>();
+
+    private Evaluation(HostState state, Instant takenAt) {
+      this.state = state;
+      this.takenAt = takenAt;
+      state.generation++;
+    }
+
+    private void host(String hostname, HostMetrics metrics, Map<String, Status> services) {
+      if (metrics == null) {
+        // still listed, just not measured this time: its alerts are neither renewed nor resolved
+        keep(AlertKind.DISK_USAGE, hostname);
+        keep(AlertKind.MEMORY_USAGE, hostname);
+      } else {
+        level(
+            AlertKind.DISK_USAGE,
+            hostname,
+            metrics.diskUsage(),
+            rules.diskFirePercent(),
+            rules.diskClearPercent());
+        level(
+            AlertKind.MEMORY_USAGE,
+            hostname,
+            metrics.memoryUsage(),
+            rules.memoryFirePercent(),
+            rules.memoryClearPercent());
+      }
+      if (services == null) {
+        keepAll(AlertKind.SERVICE_DOWN, hostname + "/");
+        return;
+      }
+      boolean tracked = !state.trackers.get(AlertKind.SERVICE_DOWN).isEmpty();
+      for (var service : services.entrySet()) {
+        boolean down = service.getValue() != Status.UP;
+        if (down || tracked) {
+          level(AlertKind.SERVICE_DOWN, hostname + "/" + service.getKey(), down ? 1 : 0, 0.5, 0.5);
+        }
+      }
+    }
+
+    private void cluster(ContentCluster cluster) {
+      if (cluster.overview() == null) {
+        keep(AlertKind.NOT_CONVERGED, cluster.name());
+      } else {
+        level(AlertKind.NOT_CONVERGED, cluster.name(), cluster.overview().notYetConverged(), 0, 0);
+      }
+      String prefix = cluster.name() + "/";
+      if (cluster.contentData() == null) {
+        keepAll(AlertKind.DOC_COUNT_DROP, prefix);
+        for (String subject : state.documents.keySet()) {
+          if (subject.startsWith(prefix)) {
+            documentSubjects.add(subject);
+          }
+        }
+        return;
+      }
+      for (ContentData data : cluster.contentData()) {
+        String subject = prefix + data.schema().schemaName();
+        documentSubjects.add(subject);
+        long documents = data.maxDocPerGroup();
+        Long previous = state.documents.put(subject, documents);
+        double drop =
+            previous == null || previous == 0 ? 0 : (previous - documents) * 100.0 / previous;
+        trend(AlertKind.DOC_COUNT_DROP, subject, drop, rules.docCountDropPercent());
+      }
+    }
+
+    /** A condition that holds while the value is above the fire threshold. */
+    private void level(AlertKind kind, String subject, double value, double fire, double clear) {
+      boolean breach = value > fire;
+      var tracker = tracker(kind, subject, breach);
+      if (tracker == null) {
+        return;
+      }
+      if (breach) {
+        tracker.clean = 0;
+        tracker.breaches++;
+        if (!tracker.firing && tracker.breaches >= rules.breachesToFire()) {
+          fire(tracker, value, fire);
+        }
+      } else if (value <= clear) {
+        tracker.breaches = 0;
+        tracker.clean++;
+        if (tracker.firing && tracker.clean >= rules.cleanToResolve()) {
+          resolve(tracker, value);
+        }
+      } else {
+        // between the thresholds: neither towards firing nor towards resolving
+        tracker.breaches = 0;
+        tracker.clean = 0;
+      }
+    }
+
+    /** A change between snapshots, which fires at once and resolves once it stops. */
+    private void trend(AlertKind kind, String subject, double value, double fire) {
+      boolean breach = value > fire;
+      var tracker = tracker(kind, subject, breach);
+      if (tracker == null) {
+        return;
+      }
+      if (breach) {
+        tracker.clean = 0;
+        if (!tracker.firing) {
+          fire(tracker, value, fire);
+        }
+      } else if (tracker.firing && ++tracker.clean >= rules.cleanToResolve()) {
+        resolve(tracker, value);
+      }
+    }
+
+    /** Keeps the tracker of a subject that is listed but has no data in this snapshot. */
+    private void keep(AlertKind kind, String subject) {
+      var tracker = state.trackers.get(kind).get(subject);
+      if (tracker != null) {
+        tracker.generation = state.generation;
+      }
+    }
+
+    /** Keeps the trackers of every subject starting with the prefix, as {@link #keep} does. */
+    private void keepAll(AlertKind kind, String prefix) {
+      for (var tracker : state.trackers.get(kind).values()) {
+        if (tracker.subject.startsWith(prefix)) {
+          tracker.generation = state.generation;
+        }
+      }
+    }
+
+    /**
+     * The tracker of a subject, created on its first breach; null if it has none and needs none.
+     */
+    private Tracker tracker(AlertKind kind, String subject, boolean breach) {
+      var trackers = state.trackers.get(kind);
+      var tracker = trackers.get(subject);
+      if (tracker == null) {
+        if (!breach) {
+          return null;
+        }
+        tracker = new Tracker(kind, subject);
+        trackers.put(subject, tracker);
+      }
+      tracker.generation = state.generation;
+      return tracker;
+    }
+
+    private void fire(Tracker tracker, double value, double threshold) {
+      tracker.firing = true;
+      tracker.value = value;
+      tracker.threshold = threshold;
+      tracker.since = takenAt;
+      changes.add(tracker.alert(state.configHost, AlertState.FIRING));
+    }
+
+    private void resolve(Tracker tracker, double value) {
+      tracker.firing = false;
+      tracker.value = value;
+      tracker.since = takenAt;
+      changes.add(tracker.alert(state.configHost, AlertState.RESOLVED));
+    }
+
+    /**
+     * Drops the trackers of subjects missing from this snapshot, e.g. of a removed host, resolving
+     * their alerts, as well as the trackers that are back to normal and the document counts of
+     * removed schemas.
+     */
+    private List<Alert> finish() {
+      state.documents.keySet().retainAll(documentSubjects);
+      for (var trackers : state.trackers.values()) {
+        for (Iterator<Tracker> it = trackers.values().iterator(); it.hasNext(); ) {
+          var tracker = it.next();
+          if (tracker.generation != state.generation) {
+            if (tracker.firing) {
+              resolve(tracker, tracker.value);
+            }
+            it.remove();
+          } else if (!tracker.firing && tracker.breaches == 0) {
+            it.remove();
+          }
+        }
+      }
+      return changes;
+    }
+  }
+}
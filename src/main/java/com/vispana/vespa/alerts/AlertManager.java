@@ -0,0 +1,147 @@
+package com.vispana.vespa.alerts;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vispana.api.model.VispanaRoot;
+import com.vispana.api.model.alerts.Alert;
+import com.vispana.api.model.alerts.AlertState;
+import com.vispana.vespa.state.SnapshotListener;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.net.URI;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs the {@link AlertEngine} on every snapshot the poller takes, logs the alerts that fire or
+ * resolve and delivers them to the configured webhooks.
+ */
+@Component
+public class AlertManager implements SnapshotListener, MeterBinder, AutoCloseable {
+
+  private static final Logger logger = LoggerFactory.getLogger(AlertManager.class);
+
+  private final AlertEngine engine;
+  private final WebhookNotifier notifier;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final LongAdder evaluations = new LongAdder();
+  private final LongAdder evaluationNanos = new LongAdder();
+  private final LongAdder fired = new LongAdder();
+  private final LongAdder resolved = new LongAdder();
+
+  public AlertManager(AlertRules rules, WebhookNotifier notifier) {
+    this.engine = new AlertEngine(rules);
+    this.notifier = notifier;
+  }
+
+  @Autowired
+  public AlertManager(
+      ObjectMapper objectMapper,
+      @Value("${vispana.alerts.disk.fire-percent:85}") double diskFirePercent,
+      @Value("${vispana.alerts.disk.clear-percent:80}") double diskClearPercent,
+      @Value("${vispana.alerts.memory.fire-percent:90}") double memoryFirePercent,
+      @Value("${vispana.alerts.memory.clear-percent:85}") double memoryClearPercent,
+      @Value("${vispana.alerts.doc-count-drop.percent:10}") double docCountDropPercent,
+      @Value("${vispana.alerts.breaches-to-fire:2}") int breachesToFire,
+      @Value("${vispana.alerts.clean-to-resolve:2}") int cleanToResolve,
+      @Value("${vispana.alerts.webhooks:}") List<String> webhooks) {
+    this(
+        new AlertRules(
+            diskFirePercent,
+            diskClearPercent,
+            memoryFirePercent,
+            memoryClearPercent,
+            docCountDropPercent,
+            breachesToFire,
+            cleanToResolve),
+        new WebhookNotifier(
+            webhooks.stream()
+                .map(String::strip)
+                .filter(url -> !url.isEmpty())
+                .map(URI::create)
+                .toList(),
+            objectMapper));
+  }
+
+  @Override
+  public void onSnapshot(String configHost, VispanaRoot snapshot, Instant takenAt) {
+    List<Alert> changes;
+    lock.lock();
+    try {
+      long started = System.nanoTime();
+      changes = engine.evaluate(configHost, snapshot, takenAt);
+      evaluationNanos.add(System.nanoTime() - started);
+      evaluations.increment();
+    } finally {
+      lock.unlock();
+    }
+    for (var alert : changes) {
+      if (alert.state() == AlertState.FIRING) {
+        fired.increment();
+        logger.warn("{} ({})", alert.message(), configHost);
+      } else {
+        resolved.increment();
+        logger.info("{} ({})", alert.message(), configHost);
+      }
+    }
+    notifier.send(changes);
+  }
+
+  /** The alerts currently firing, of one config host or of all when null, newest first. */
+  public List<Alert> active(String configHost) {
+    List<Alert> active;
+    lock.lock();
+    try {
+      active = engine.active();
+    } finally {
+      lock.unlock();
+    }
+    return active.stream()
+        .filter(alert -> configHost == null || alert.configHost().equals(configHost))
+        .sorted(Comparator.comparing(Alert::since).reversed())
+        .toList();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    FunctionTimer.builder(
+            "vispana.alerts.evaluation",
+            this,
+            manager -> manager.evaluations.sum(),
+            manager -> manager.evaluationNanos.sum(),
+            TimeUnit.NANOSECONDS)
+        .description("Alert rule evaluations of a snapshot")
+        .register(registry);
+    Gauge.builder("vispana.alerts.active", this, manager -> manager.active(null).size())
+        .description("Alerts currently firing")
+        .register(registry);
+    FunctionCounter.builder("vispana.alerts.changes", fired, LongAdder::sum)
+        .tag("state", "firing")
+        .register(registry);
+    FunctionCounter.builder("vispana.alerts.changes", resolved, LongAdder::sum)
+        .tag("state", "resolved")
+        .register(registry);
+    FunctionCounter.builder("vispana.alerts.webhooks", notifier, WebhookNotifier::delivered)
+        .tag("outcome", "delivered")
+        .register(registry);
+    FunctionCounter.builder("vispana.alerts.webhooks", notifier, WebhookNotifier::failed)
+        .tag("outcome", "failed")
+        .register(registry);
+  }
+
+  @Override
+  public void close() {
+    notifier.close();
+  }
+}
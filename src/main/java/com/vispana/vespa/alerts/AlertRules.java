@@ -0,0 +1,28 @@
+package com.vispana.vespa.alerts;
+
+/**
+ * Thresholds of the alert engine. Usage alerts fire above their fire percentage and resolve only at
+ * or below the lower clear percentage, so a value hovering around one threshold does not flap.
+ * Level conditions must hold for {@code breachesToFire} consecutive snapshots before firing; a
+ * document count drop fires on the snapshot it is seen in. Every alert resolves after {@code
+ * cleanToResolve} consecutive snapshots without the condition.
+ */
+public record AlertRules(
+    double diskFirePercent,
+    double diskClearPercent,
+    double memoryFirePercent,
+    double memoryClearPercent,
+    double docCountDropPercent,
+    int breachesToFire,
+    int cleanToResolve) {
+
+  public static final AlertRules DEFAULT = new AlertRules(85, 80, 90, 85, 10, 2, 2);
+
+  public AlertRules {
+    if (diskClearPercent > diskFirePercent || memoryClearPercent > memoryFirePercent) {
+      throw new IllegalArgumentException("Clear percentages must not be above fire percentages");
+    }
+    breachesToFire = Math.max(1, breachesToFire);
+    cleanToResolve = Math.max(1, cleanToResolve);
+  }
+}
@@ -0,0 +1,140 @@
+package com.vispana.vespa.alerts;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vispana.api.model.alerts.Alert;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Posts alert changes as {@code {"alerts": [...]}} to webhook targets. Deliveries run one at a time
+ * on their own thread, so a slow target never holds up an evaluation and a target receives an
+ * alert's resolution after its firing; a failed delivery is retried with backoff, then dropped. At
+ * most {@value #MAX_PENDING} deliveries wait behind the one in progress, so a dead target drops
+ * changes rather than piling up retries.
+ */
+public class WebhookNotifier implements AutoCloseable {
+
+  private static final Logger logger = LoggerFactory.getLogger(WebhookNotifier.class);
+
+  private static final int ATTEMPTS = 3;
+  private static final Duration BACKOFF = Duration.ofSeconds(1);
+  static final int MAX_PENDING = 100;
+
+  private final List<URI> targets;
+  private final ObjectMapper objectMapper;
+  private final Duration backoff;
+  private final HttpClient httpClient =
+      HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+  private final ThreadPoolExecutor executor;
+  private final LongAdder delivered = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+
+  public WebhookNotifier(List<URI> targets, ObjectMapper objectMapper) {
+    this(targets, objectMapper, BACKOFF, MAX_PENDING);
+  }
+
+  WebhookNotifier(List<URI> targets, ObjectMapper objectMapper, Duration backoff, int maxPending) {
+    this.targets = List.copyOf(targets);
+    this.objectMapper = objectMapper;
+    this.backoff = backoff;
+    this.executor =
+        new ThreadPoolExecutor(
+            1,
+            1,
+            0,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(maxPending),
+            Thread.ofVirtual().name("alert-webhooks").factory(),
+            (delivery, executor) -> {
+              if (!executor.isShutdown()) {
+                failed.increment();
+                logger.warn("Dropped alerts, {} deliveries are pending already", maxPending);
+              }
+            });
+  }
+
+  public void send(List<Alert> alerts) {
+    if (alerts.isEmpty() || targets.isEmpty()) {
+      return;
+    }
+    byte[] body;
+    try {
+      body = objectMapper.writeValueAsBytes(Map.of("alerts", alerts));
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Failed to serialize alerts", e);
+    }
+    for (URI target : targets) {
+      executor.execute(() -> deliver(target, body));
+    }
+  }
+
+  private void deliver(URI target, byte[] body) {
+    var request =
+        HttpRequest.newBuilder(target)
+            .timeout(Duration.ofSeconds(10))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+            .build();
+    String problem = null;
+    for (int attempt = 1; attempt <= ATTEMPTS; attempt++) {
+      try {
+        int status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        if (status / 100 == 2) {
+          delivered.increment();
+          return;
+        }
+        problem = "status " + status;
+      } catch (IOException e) {
+        problem = e.toString();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      if (attempt < ATTEMPTS) {
+        try {
+          Thread.sleep(backoff.multipliedBy(1L << (attempt - 1)));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+    failed.increment();
+    logger.warn("Dropped alerts for {} after {} attempts: {}", target, ATTEMPTS, problem);
+  }
+
+  public long delivered() {
+    return delivered.sum();
+  }
+
+  public long failed() {
+    return failed.sum();
+  }
+
+  /** Waits briefly for pending deliveries, then abandons them. */
+  @Override
+  public void close() {
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+        executor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,266 @@
+package com.vispana.vespa.query;
+
+import com.vispana.api.model.Status;
+import com.vispana.api.model.container.ContainerCluster;
+import com.vispana.api.model.container.ContainerNode;
+import com.vispana.api.model.query.ContainerNodeStats;
+import com.vispana.vespa.state.assemblers.ContainerAssembler;
+import com.vispana.vespa.state.helpers.MetricsFetcher;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Spreads queries over every healthy node of a container cluster instead of a single host. Nodes
+ * are picked either by fewest outstanding requests or by an EWMA of their latency weighted by
+ * outstanding requests, so a slow or busy node gets less traffic.
+ *
+ * <p>The cluster topology is fetched when a config host is first queried. After that an expired
+ * topology keeps being used while a fresh one is fetched in the background, so queries never wait
+ * for the config server and metrics proxies.
+ */
+@Component
+public class ContainerClusterRouter {
+
+  public enum Strategy {
+    LEAST_OUTSTANDING,
+    EWMA;
+
+    public static Strategy parseFrom(String strategy) {
+      return switch (strategy.toLowerCase()) {
+        case "least_outstanding", "least-outstanding" -> LEAST_OUTSTANDING;
+        case "ewma" -> EWMA;
+        default -> throw new IllegalArgumentException("Unknown routing strategy: " + strategy);
+      };
+    }
+  }
+
+  private static final Logger logger = LoggerFactory.getLogger(ContainerClusterRouter.class);
+
+  // how long the cluster topology is trusted before it is fetched again
+  private static final Duration TOPOLOGY_TTL = Duration.ofSeconds(30);
+  // a node that failed to answer is skipped for this long
+  private static final long EJECTION_MILLIS = TimeUnit.SECONDS.toMillis(10);
+  private static final double EWMA_ALPHA = 0.2;
+
+  private final VespaQueryClient vespaQueryClient;
+  private final Function<String, List<ContainerCluster>> topologyFetcher;
+  private final long topologyTtlMillis;
+  private final Map<String, CachedTopology> topologies = new ConcurrentHashMap<>();
+  private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+  private final Map<String, NodeState> nodes = new ConcurrentHashMap<>();
+
+  @Autowired
+  public ContainerClusterRouter(VespaQueryClient vespaQueryClient) {
+    this(vespaQueryClient, ContainerClusterRouter::fetchTopology, TOPOLOGY_TTL);
+  }
+
+  ContainerClusterRouter(
+      VespaQueryClient vespaQueryClient,
+      Function<String, List<ContainerCluster>> topologyFetcher,
+      Duration topologyTtl) {
+    this.vespaQueryClient = vespaQueryClient;
+    this.topologyFetcher = topologyFetcher;
+    this.topologyTtlMillis = topologyTtl.toMillis();
+  }
+
+  public String query(
+      String configHost, String clusterName, Strategy strategy, String query, Duration deadline) {
+    var response = queryAsync(configHost, clusterName, strategy, query, deadline);
+    try {
+      return response.get();
+    } catch (InterruptedException e) {
+      vespaQueryClient.cancel(response);
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while querying Vespa", e);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof RuntimeException cause
+          ? cause
+          : new RuntimeException("Error querying Vespa." + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Sends the query to the chosen node without blocking. Cancelling the returned future through
+   * {@link VespaQueryClient#cancel} aborts the upstream request.
+   */
+  public CompletableFuture<String> queryAsync(
+      String configHost, String clusterName, Strategy strategy, String query, Duration deadline) {
+    var candidates = healthyNodes(configHost, clusterName);
+    if (candidates.isEmpty()) {
+      throw new RuntimeException("No healthy container found in cluster: " + clusterName);
+    }
+    var node = choose(candidates, strategy);
+    node.outstanding.incrementAndGet();
+    var start = System.nanoTime();
+    var response = vespaQueryClient.queryAsync(node.url, query, deadline);
+    var routed =
+        response.whenComplete(
+            (body, throwable) -> {
+              // runs before callers see the result, so node stats are never behind
+              node.outstanding.decrementAndGet();
+              var failure =
+                  throwable instanceof CompletionException ? throwable.getCause() : throwable;
+              if (failure == null) {
+                node.recordSuccess((System.nanoTime() - start) / 1_000_000d);
+              } else if (failure instanceof VespaQueryException e) {
+                node.recordFailure(e.isNodeFailure());
+              }
+              // a query cancelled because its caller went away says nothing about the node
+            });
+    // cancelling a dependent stage does not reach the request on its own
+    routed.whenComplete(
+        (body, throwable) -> {
+          if (throwable instanceof CancellationException) {
+            response.cancel(true);
+          }
+        });
+    return routed;
+  }
+
+  public List<ContainerNodeStats> stats(String configHost, String clusterName) {
+    return clusterNodes(configHost, clusterName).stream()
+        .map(this::nodeState)
+        .map(NodeState::stats)
+        .toList();
+  }
+
+  static NodeState choose(List<NodeState> candidates, Strategy strategy) {
+    Comparator<NodeState> comparator =
+        switch (strategy) {
+          case LEAST_OUTSTANDING -> Comparator.<NodeState>comparingInt(
+                  node -> node.outstanding.get())
+              .thenComparingDouble(NodeState::ewmaLatencyMs);
+          case EWMA -> Comparator.comparingDouble(NodeState::score);
+        };
+    var best = candidates.stream().min(comparator).orElseThrow();
+    // break ties randomly so equally good nodes share the load
+    var tied = candidates.stream().filter(node -> comparator.compare(node, best) == 0).toList();
+    return tied.get(ThreadLocalRandom.current().nextInt(tied.size()));
+  }
+
+  private List<NodeState> healthyNodes(String configHost, String clusterName) {
+    var now = System.currentTimeMillis();
+    return clusterNodes(configHost, clusterName).stream()
+        .filter(ContainerClusterRouter::isUp)
+        .map(this::nodeState)
+        .filter(node -> node.ejectedUntil <= now)
+        .toList();
+  }
+
+  private List<ContainerNode> clusterNodes(String configHost, String clusterName) {
+    var topology = topologies.get(configHost);
+    if (topology == null) {
+      // only the first query of a config host waits for its topology; fetched outside the map so
+      // a slow config server does not block other config hosts, and the newer fetch wins
+      topology = store(configHost, topologyFetcher.apply(configHost));
+    } else if (topology.fetchedAt() + topologyTtlMillis < System.currentTimeMillis()
+        && refreshing.add(configHost)) {
+      Thread.ofVirtual().name("topology-refresh").start(() -> refresh(configHost));
+    }
+    return topology.clusters().stream()
+        .filter(cluster -> cluster.name().equals(clusterName))
+        .findFirst()
+        .map(ContainerCluster::nodes)
+        .orElseThrow(() -> new RuntimeException("Unknown container cluster: " + clusterName));
+  }
+
+  private void refresh(String configHost) {
+    try {
+      store(configHost, topologyFetcher.apply(configHost));
+    } catch (RuntimeException e) {
+      // the expired topology stays in use, and the next query tries again
+      logger.warn("Could not refresh the container topology of {}", configHost, e);
+    } finally {
+      refreshing.remove(configHost);
+    }
+  }
+
+  private CachedTopology store(String configHost, List<ContainerCluster> clusters) {
+    return topologies.merge(
+        configHost,
+        new CachedTopology(clusters, System.currentTimeMillis()),
+        (cached, fresh) -> cached.fetchedAt() > fresh.fetchedAt() ? cached : fresh);
+  }
+
+  private static List<ContainerCluster> fetchTopology(String configHost) {
+    var metrics = MetricsFetcher.fetchMetrics(configHost);
+    return ContainerAssembler.assemble(configHost, metrics).clusters();
+  }
+
+  private NodeState nodeState(ContainerNode node) {
+    var url = "http://" + node.host().hostname() + ":" + node.host().port();
+    return nodes.computeIfAbsent(url, NodeState::new);
+  }
+
+  private static boolean isUp(ContainerNode node) {
+    return node.host().port() > 0 && !node.processesStatus().containsValue(Status.DOWN);
+  }
+
+  private record CachedTopology(List<ContainerCluster> clusters, long fetchedAt) {}
+
+  static class NodeState {
+    final String url;
+    final AtomicInteger outstanding = new AtomicInteger();
+    final AtomicLong requests = new AtomicLong();
+    final AtomicLong errors = new AtomicLong();
+    private volatile double ewmaLatencyMs;
+    private volatile long ejectedUntil;
+
+    NodeState(String url) {
+      this.url = url;
+    }
+
+    double ewmaLatencyMs() {
+      return ewmaLatencyMs;
+    }
+
+    // expected wait if one more request is sent; untried nodes score 0 and get probed first
+    double score() {
+      return ewmaLatencyMs * (outstanding.get() + 1);
+    }
+
+    synchronized void recordSuccess(double latencyMs) {
+      requests.incrementAndGet();
+      ewmaLatencyMs =
+          ewmaLatencyMs == 0
+              ? latencyMs
+              : EWMA_ALPHA * latencyMs + (1 - EWMA_ALPHA) * ewmaLatencyMs;
+    }
+
+    // only a node that could not answer is ejected, not one that rejected a malformed query
+    void recordFailure(boolean nodeFailure) {
+      requests.incrementAndGet();
+      errors.incrementAndGet();
+      if (nodeFailure) {
+        ejectedUntil = System.currentTimeMillis() + EJECTION_MILLIS;
+      }
+    }
+
+    ContainerNodeStats stats() {
+      return new ContainerNodeStats(
+          url,
+          ejectedUntil <= System.currentTimeMillis(),
+          outstanding.get(),
+          requests.get(),
+          errors.get(),
+          ewmaLatencyMs);
+    }
+  }
+}
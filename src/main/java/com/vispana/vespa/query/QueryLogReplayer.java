@@ -0,0 +1,350 @@
+package com.vispana.vespa.query;
+
+import com.vispana.api.model.query.LatencySummary;
+import com.vispana.api.model.query.ReplayComparison;
+import com.vispana.api.model.query.ReplayQueryDiff;
+import com.vispana.api.model.query.ReplayQueryResult;
+import com.vispana.api.model.query.ReplayRun;
+import com.vispana.api.model.query.ReplayState;
+import com.vispana.api.model.query.ReplayStatus;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Replays a JSONL query log (one Vespa query body per line) against a container. The log is read
+ * line by line, so arbitrarily large logs can be replayed without holding them in memory.
+ *
+ * <p>Scheduling is open-loop: query {@code i} is sent at {@code start + i / qps} regardless of how
+ * long earlier queries take, so a slow container shows up as higher latency instead of silently
+ * lowering the offered load.
+ *
+ * <p>Replays started with {@link #start} run in the background and are polled by id. The latest
+ * replays are kept so they can be compared afterwards, as long as their results stay within {@code
+ * vispana.replay.max-retained-results}.
+ */
+@Component
+public class QueryLogReplayer {
+
+  private static final Logger logger = LoggerFactory.getLogger(QueryLogReplayer.class);
+
+  // replay runs kept around so they can be compared afterwards
+  private static final int MAX_STORED_RUNS = 20;
+
+  private final VespaQueryClient vespaQueryClient;
+  private final long maxRetainedResults;
+  private final ReentrantLock lock = new ReentrantLock();
+  // oldest first
+  private final Map<String, Replay> replays = new LinkedHashMap<>();
+
+  @Autowired
+  public QueryLogReplayer(
+      VespaQueryClient vespaQueryClient,
+      @Value("${vispana.replay.max-retained-results:100000}") long maxRetainedResults) {
+    this.vespaQueryClient = vespaQueryClient;
+    this.maxRetainedResults = maxRetainedResults;
+  }
+
+  /**
+   * Copies the log to a temporary file, as the request body is gone once the request returns, and
+   * replays it in the background. The returned status has the id to poll {@link #status} with.
+   */
+  public ReplayStatus start(String containerHost, InputStream queryLog, double queriesPerSecond) {
+    checkRate(queriesPerSecond);
+    Path spooled = null;
+    try {
+      spooled = Files.createTempFile("vispana-replay-", ".jsonl");
+      Files.copy(queryLog, spooled, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      deleteQuietly(spooled);
+      throw new UncheckedIOException("Failed to read query log", e);
+    }
+
+    var replay = register(containerHost);
+    var log = spooled;
+    Thread.ofVirtual()
+        .name("query-replay-" + replay.id)
+        .start(
+            () -> {
+              try (var input = Files.newInputStream(log)) {
+                finish(replay, run(replay, input, queriesPerSecond), null);
+              } catch (Exception e) {
+                logger.warn("Replay {} against {} failed", replay.id, containerHost, e);
+                finish(replay, null, Objects.requireNonNullElse(e.getMessage(), e.toString()));
+              } finally {
+                deleteQuietly(log);
+              }
+            });
+    return replay.status();
+  }
+
+  /** Replays the log in the calling thread and keeps the run like {@link #start} does. */
+  public ReplayRun replay(String containerHost, InputStream queryLog, double queriesPerSecond) {
+    checkRate(queriesPerSecond);
+    var replay = register(containerHost);
+    try {
+      var run = run(replay, queryLog, queriesPerSecond);
+      finish(replay, run, null);
+      return run;
+    } catch (RuntimeException e) {
+      finish(replay, null, Objects.requireNonNullElse(e.getMessage(), e.toString()));
+      throw e;
+    }
+  }
+
+  /** A replay that is running or still kept. */
+  public Optional<ReplayStatus> status(String replayId) {
+    lock.lock();
+    try {
+      return Optional.ofNullable(replays.get(replayId)).map(Replay::status);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** The run of a replay that is done and still kept. */
+  public Optional<ReplayRun> run(String replayId) {
+    return status(replayId).map(ReplayStatus::run);
+  }
+
+  private ReplayRun run(Replay replay, InputStream queryLog, double queriesPerSecond) {
+    var intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / queriesPerSecond);
+    var startedAt = System.currentTimeMillis();
+    var start = System.nanoTime();
+    var pending = new ArrayList<Future<ReplayQueryResult>>();
+
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor();
+        var reader = new BufferedReader(new InputStreamReader(queryLog, StandardCharsets.UTF_8))) {
+      String line;
+      var index = 0;
+      while ((line = reader.readLine()) != null) {
+        if (line.isBlank()) {
+          continue;
+        }
+        var scheduledAt = start + index * intervalNanos;
+        waitUntil(scheduledAt);
+        var query = line;
+        var queryIndex = index;
+        pending.add(
+            executor.submit(() -> execute(replay.containerHost, queryIndex, query, scheduledAt)));
+        replay.sent.incrementAndGet();
+        index++;
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to read query log", e);
+    }
+
+    var results = pending.stream().map(QueryLogReplayer::await).toList();
+    var durationMs = (System.nanoTime() - start) / 1_000_000d;
+    var run =
+        summarize(
+            replay.id, replay.containerHost, queriesPerSecond, startedAt, durationMs, results);
+    logger.info(
+        "Replayed {} queries against {} in {} ms ({} errors)",
+        results.size(),
+        replay.containerHost,
+        (long) durationMs,
+        run.errors());
+    return run;
+  }
+
+  private Replay register(String containerHost) {
+    var replay = new Replay(UUID.randomUUID().toString(), containerHost);
+    lock.lock();
+    try {
+      replays.put(replay.id, replay);
+      return replay;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Records how a replay ended and forgets the oldest finished ones beyond the run and result
+   * limits. The replay that just finished is kept even when it alone is over the result limit, so
+   * it can be polled at least once.
+   */
+  private void finish(Replay replay, ReplayRun run, String error) {
+    lock.lock();
+    try {
+      replay.run = run;
+      replay.error = error;
+      long retained = replays.values().stream().mapToLong(Replay::results).sum();
+      var oldest = replays.values().iterator();
+      while ((replays.size() > MAX_STORED_RUNS || retained > maxRetainedResults)
+          && oldest.hasNext()) {
+        var candidate = oldest.next();
+        if (candidate != replay && candidate.status().state() != ReplayState.RUNNING) {
+          retained -= candidate.results();
+          oldest.remove();
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public static ReplayComparison compare(ReplayRun baseline, ReplayRun candidate) {
+    var candidateResults = new LinkedHashMap<Integer, ReplayQueryResult>();
+    candidate.results().forEach(result -> candidateResults.put(result.index(), result));
+
+    var diffs = new ArrayList<ReplayQueryDiff>();
+    for (var before : baseline.results()) {
+      var after = candidateResults.get(before.index());
+      if (after == null || before.failed() || after.failed()) {
+        continue;
+      }
+      diffs.add(
+          new ReplayQueryDiff(
+              before.index(),
+              before.query(),
+              before.latencyMs(),
+              after.latencyMs(),
+              after.latencyMs() - before.latencyMs(),
+              before.totalCount(),
+              after.totalCount(),
+              before.totalCount() != after.totalCount()));
+    }
+    // biggest regressions first
+    diffs.sort(Comparator.comparingDouble(ReplayQueryDiff::latencyDeltaMs).reversed());
+
+    var hitCountChanges = (int) diffs.stream().filter(ReplayQueryDiff::hitCountChanged).count();
+    return new ReplayComparison(
+        baseline.id(),
+        candidate.id(),
+        baseline.latency(),
+        candidate.latency(),
+        candidate.latency().p50Ms() - baseline.latency().p50Ms(),
+        candidate.latency().p99Ms() - baseline.latency().p99Ms(),
+        diffs.size(),
+        hitCountChanges,
+        diffs);
+  }
+
+  private ReplayQueryResult execute(
+      String containerHost, int index, String query, long scheduledAt) {
+    var sentAt = System.nanoTime();
+    var scheduleLagMs = (sentAt - scheduledAt) / 1_000_000d;
+    try {
+      var response = QueryResponseParser.parse(vespaQueryClient.query(containerHost, query));
+      var latencyMs = (System.nanoTime() - sentAt) / 1_000_000d;
+      return new ReplayQueryResult(
+          index,
+          query,
+          latencyMs,
+          scheduleLagMs,
+          QueryResponseParser.totalCount(response),
+          QueryResponseParser.hitCount(response),
+          null);
+    } catch (Exception e) {
+      var latencyMs = (System.nanoTime() - sentAt) / 1_000_000d;
+      return new ReplayQueryResult(index, query, latencyMs, scheduleLagMs, 0, 0, e.getMessage());
+    }
+  }
+
+  private static ReplayRun summarize(
+      String id,
+      String containerHost,
+      double queriesPerSecond,
+      long startedAt,
+      double durationMs,
+      List<ReplayQueryResult> results) {
+    var errors = (int) results.stream().filter(ReplayQueryResult::failed).count();
+    var latency =
+        LatencySummary.of(
+            results.stream()
+                .filter(result -> !result.failed())
+                .map(ReplayQueryResult::latencyMs)
+                .toList());
+    return new ReplayRun(
+        id, containerHost, queriesPerSecond, startedAt, durationMs, errors, latency, results);
+  }
+
+  private static void checkRate(double queriesPerSecond) {
+    if (queriesPerSecond <= 0) {
+      throw new IllegalArgumentException("Queries per second must be positive");
+    }
+  }
+
+  private static void deleteQuietly(Path file) {
+    if (file == null) {
+      return;
+    }
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      logger.warn("Could not delete {}", file, e);
+    }
+  }
+
+  private static void waitUntil(long nanoTime) {
+    long remaining;
+    while ((remaining = nanoTime - System.nanoTime()) > 0) {
+      LockSupport.parkNanos(remaining);
+      if (Thread.currentThread().isInterrupted()) {
+        throw new RuntimeException("Query replay was interrupted");
+      }
+    }
+  }
+
+  private static ReplayQueryResult await(Future<ReplayQueryResult> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for replayed queries", e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException("Replayed query failed unexpectedly", e.getCause());
+    }
+  }
+
+  /** A replay as it runs; guarded by the replayer's lock once it is registered. */
+  private static final class Replay {
+    private final String id;
+    private final String containerHost;
+    private final AtomicInteger sent = new AtomicInteger();
+    private ReplayRun run;
+    private String error;
+
+    private Replay(String id, String containerHost) {
+      this.id = id;
+      this.containerHost = containerHost;
+    }
+
+    private ReplayStatus status() {
+      var state =
+          run != null ? ReplayState.DONE : error != null ? ReplayState.FAILED : ReplayState.RUNNING;
+      return new ReplayStatus(id, state, containerHost, sent.get(), error, run);
+    }
+
+    private long results() {
+      return run == null ? 0 : run.results().size();
+    }
+  }
+}
@@ -0,0 +1,43 @@
+package com.vispana.vespa.query;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Extracts the few fields Vispana needs out of a raw Vespa search response. */
+public class QueryResponseParser {
+
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  public static JsonNode parse(String response) {
+    try {
+      return objectMapper.readTree(response);
+    } catch (Exception e) {
+      throw new RuntimeException("Failed to parse Vespa query response", e);
+    }
+  }
+
+  public static long totalCount(JsonNode response) {
+    return response.path("root").path("fields").path("totalCount").asLong(0);
+  }
+
+  public static int hitCount(JsonNode response) {
+    return response.path("root").path("children").size();
+  }
+
+  /** Ids of the first {@code limit} hits, in rank order. Hits without an id are skipped. */
+  public static List<String> hitIds(JsonNode response, int limit) {
+    var ids = new ArrayList<String>();
+    for (var hit : response.path("root").path("children")) {
+      if (ids.size() >= limit) {
+        break;
+      }
+      var id = hit.path("id");
+      if (id.isTextual()) {
+        ids.add(id.asText());
+      }
+    }
+    return ids;
+  }
+}
@@ -0,0 +1,250 @@
+package com.vispana.vespa.query;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.vispana.api.model.query.QueryTraceTimeline;
+import com.vispana.api.model.query.TraceContentNode;
+import com.vispana.api.model.query.TraceSearcherStep;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns the nested trace of a Vespa query response into a timeline: searcher chain steps from the
+ * container side and per-phase timings for every content node that reported a trace.
+ *
+ * <p>Container timings need {@code trace.timestamps=true}; content node timings need a trace level
+ * high enough for proton to report its match threads. Missing parts are left empty.
+ */
+public class QueryTraceAnalyzer {
+
+  public static final String QUERY_SETUP = "query_setup";
+  public static final String MATCH_FIRST_PHASE = "match_first_phase";
+  public static final String SECOND_PHASE = "second_phase";
+  public static final String RESULT_PROCESSING = "result_processing";
+  public static final String SUMMARY_FETCH = "summary_fetch";
+
+  // proton traces "nothing more happening" with these, which closes the running phase
+  private static final String END_OF_PHASE = "end";
+
+  private static final int DEFAULT_TRACE_LEVEL = 5;
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  /** Enables tracing on the query unless the caller already picked a trace level. */
+  public static String withTracing(String query) {
+    try {
+      var node = (ObjectNode) objectMapper.readTree(query);
+      if (!node.has("tracelevel") && !node.has("trace.level") && !node.has("trace")) {
+        node.put("trace.level", DEFAULT_TRACE_LEVEL);
+      }
+      if (!node.has("trace")) {
+        node.put("trace.timestamps", true);
+      }
+      return objectMapper.writeValueAsString(node);
+    } catch (Exception e) {
+      throw new IllegalArgumentException("Query must be a JSON object", e);
+    }
+  }
+
+  public static QueryTraceTimeline analyze(JsonNode response) {
+    var containerEvents = new ArrayList<ContainerEvent>();
+    var contentNodes = new ArrayList<TraceContentNode>();
+    walk(response.path("trace"), containerEvents, contentNodes);
+
+    var searchers = searcherSteps(containerEvents);
+    var summaryFetchMs = summaryFetchMs(containerEvents);
+
+    var phases = new LinkedHashMap<String, Double>();
+    for (var node : contentNodes) {
+      node.phasesMs().forEach((phase, ms) -> phases.merge(phase, ms, Math::max));
+    }
+    if (summaryFetchMs > 0) {
+      phases.merge(SUMMARY_FETCH, summaryFetchMs, Math::max);
+    }
+
+    var totalMs =
+        containerEvents.isEmpty()
+            ? 0
+            : containerEvents.getLast().timestampMs() - containerEvents.getFirst().timestampMs();
+    var slowestSearcher =
+        searchers.stream().max(Comparator.comparingDouble(TraceSearcherStep::selfMs)).orElse(null);
+    var slowestNode =
+        contentNodes.stream()
+            .max(Comparator.comparingDouble(TraceContentNode::durationMs))
+            .orElse(null);
+    return new QueryTraceTimeline(
+        totalMs, searchers, contentNodes, phases, slowestSearcher, slowestNode, slowest(phases));
+  }
+
+  private record ContainerEvent(double timestampMs, String message) {}
+
+  private record TraceEvent(double timestampMs, String event) {}
+
+  private static void walk(
+      JsonNode node, List<ContainerEvent> containerEvents, List<TraceContentNode> contentNodes) {
+    if (node.isArray()) {
+      node.forEach(child -> walk(child, containerEvents, contentNodes));
+      return;
+    }
+    if (!node.isObject()) {
+      return;
+    }
+    if (node.has("distribution-key")) {
+      contentNodes.add(contentNode(node));
+      return;
+    }
+    var message = node.get("message");
+    var timestamp = node.get("timestamp");
+    if (message != null && message.isTextual() && timestamp != null && timestamp.isNumber()) {
+      containerEvents.add(new ContainerEvent(timestamp.asDouble(), message.asText()));
+    }
+    node.forEach(child -> walk(child, containerEvents, contentNodes));
+  }
+
+  private static List<TraceSearcherStep> searcherSteps(List<ContainerEvent> events) {
+    var steps = new ArrayList<TraceSearcherStep>();
+    Deque<Frame> stack = new ArrayDeque<>();
+    for (var event : events) {
+      if (event.message().startsWith("Invoke searcher '")) {
+        stack.push(new Frame(quoted(event.message()), event.timestampMs(), stack.size()));
+      } else if (event.message().startsWith("Return searcher '") && !stack.isEmpty()) {
+        var frame = stack.pop();
+        var duration = event.timestampMs() - frame.startMs;
+        if (!stack.isEmpty()) {
+          stack.peek().childMs += duration;
+        }
+        var nameAndChain = frame.name.split(" in ", 2);
+        steps.add(
+            new TraceSearcherStep(
+                nameAndChain[0],
+                nameAndChain.length > 1 ? nameAndChain[1] : "",
+                frame.depth,
+                frame.startMs,
+                duration,
+                duration - frame.childMs));
+      }
+    }
+    steps.sort(Comparator.comparingDouble(TraceSearcherStep::startMs));
+    return steps;
+  }
+
+  private static class Frame {
+    final String name;
+    final double startMs;
+    final int depth;
+    double childMs;
+
+    Frame(String name, double startMs, int depth) {
+      this.name = name;
+      this.startMs = startMs;
+      this.depth = depth;
+    }
+  }
+
+  // time from each "fill" dispatch until the container logged anything else
+  private static double summaryFetchMs(List<ContainerEvent> events) {
+    var total = 0d;
+    for (int i = 0; i + 1 < events.size(); i++) {
+      if (events.get(i).message().contains("fill to dispatch")) {
+        total += events.get(i + 1).timestampMs() - events.get(i).timestampMs();
+      }
+    }
+    return total;
+  }
+
+  private static TraceContentNode contentNode(JsonNode node) {
+    var sequences = new ArrayList<List<TraceEvent>>();
+    collectSequences(node, sequences);
+
+    // match threads run in parallel, so each phase costs as much as its slowest sequence
+    var phases = new LinkedHashMap<String, Double>();
+    for (var sequence : sequences) {
+      phaseDurations(sequence).forEach((phase, ms) -> phases.merge(phase, ms, Math::max));
+    }
+
+    var durationMs =
+        node.has("duration_ms")
+            ? node.get("duration_ms").asDouble()
+            : phases.values().stream().mapToDouble(Double::doubleValue).sum();
+    return new TraceContentNode(
+        node.get("distribution-key").asInt(), durationMs, phases, slowest(phases));
+  }
+
+  private static void collectSequences(JsonNode node, List<List<TraceEvent>> sequences) {
+    if (node.isArray()) {
+      var sequence = new ArrayList<TraceEvent>();
+      for (var element : node) {
+        if (element.has("event") && element.has("timestamp_ms")) {
+          sequence.add(
+              new TraceEvent(
+                  element.get("timestamp_ms").asDouble(), element.get("event").asText()));
+        }
+      }
+      if (!sequence.isEmpty()) {
+        sequence.sort(Comparator.comparingDouble(TraceEvent::timestampMs));
+        sequences.add(sequence);
+      }
+    }
+    node.forEach(child -> collectSequences(child, sequences));
+  }
+
+  private static Map<String, Double> phaseDurations(List<TraceEvent> sequence) {
+    var phases = new LinkedHashMap<String, Double>();
+    String current = null;
+    for (int i = 0; i < sequence.size(); i++) {
+      var phase = phaseOf(sequence.get(i).event());
+      if (phase != null) {
+        current = END_OF_PHASE.equals(phase) ? null : phase;
+      }
+      if (current != null && i + 1 < sequence.size()) {
+        var ms = sequence.get(i + 1).timestampMs() - sequence.get(i).timestampMs();
+        phases.merge(current, ms, Double::sum);
+      }
+    }
+    return phases;
+  }
+
+  /** Phase started by a proton trace event, or null when the event does not change phase. */
+  static String phaseOf(String event) {
+    var lower = event.toLowerCase();
+    if (lower.contains("query setup")) {
+      return lower.startsWith("complete") ? END_OF_PHASE : QUERY_SETUP;
+    }
+    if (lower.contains("second phase")) {
+      return SECOND_PHASE;
+    }
+    if (lower.contains("first phase") || lower.contains("matchthread::match")) {
+      return MATCH_FIRST_PHASE;
+    }
+    if (lower.contains("result processing")
+        || lower.contains("thread merge")
+        || lower.contains("result set")) {
+      return RESULT_PROCESSING;
+    }
+    if (lower.contains("docsum") || lower.contains("summary")) {
+      return SUMMARY_FETCH;
+    }
+    if (lower.endsWith("done") || lower.startsWith("complete")) {
+      return END_OF_PHASE;
+    }
+    return null;
+  }
+
+  private static String slowest(Map<String, Double> phases) {
+    return phases.entrySet().stream()
+        .max(Map.Entry.comparingByValue())
+        .map(Map.Entry::getKey)
+        .orElse(null);
+  }
+
+  private static String quoted(String message) {
+    var start = message.indexOf('\'');
+    var end = message.lastIndexOf('\'');
+    return end > start ? message.substring(start + 1, end) : message;
+  }
+}
@@ -0,0 +1,153 @@
+package com.vispana.vespa.query;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.vispana.api.model.query.RankProfileComparison;
+import com.vispana.api.model.query.RankProfilePairComparison;
+import com.vispana.api.model.query.RankProfileResult;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.StructuredTaskScope;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs the same query once per rank profile, concurrently, and diffs the top-K hits of every pair
+ * of profiles.
+ */
+@Component
+public class RankProfileComparator {
+
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  private final VespaQueryClient vespaQueryClient;
+
+  @Autowired
+  public RankProfileComparator(VespaQueryClient vespaQueryClient) {
+    this.vespaQueryClient = vespaQueryClient;
+  }
+
+  public RankProfileComparison compare(
+      String containerHost, String query, List<String> profiles, int topK) {
+    if (profiles.isEmpty()) {
+      throw new IllegalArgumentException("At least one rank profile is required");
+    }
+    if (topK <= 0) {
+      throw new IllegalArgumentException("top_k must be positive");
+    }
+
+    List<RankProfileResult> results;
+    try (var scope = new StructuredTaskScope<RankProfileResult>()) {
+      // a failing profile is reported in its own result, so the others are never cancelled
+      var forks =
+          profiles.stream()
+              .map(
+                  profile ->
+                      scope.fork(
+                          () ->
+                              execute(
+                                  containerHost, withProfile(query, profile, topK), profile, topK)))
+              .toList();
+      scope.join();
+      results = forks.stream().map(StructuredTaskScope.Subtask::get).toList();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while comparing rank profiles", e);
+    }
+
+    var pairs = new ArrayList<RankProfilePairComparison>();
+    for (int i = 0; i < results.size(); i++) {
+      for (int j = i + 1; j < results.size(); j++) {
+        var result = results.get(i);
+        var other = results.get(j);
+        if (result.error() == null && other.error() == null) {
+          pairs.add(pair(result, other, topK));
+        }
+      }
+    }
+    return new RankProfileComparison(topK, results, pairs);
+  }
+
+  private RankProfileResult execute(String containerHost, String query, String profile, int topK) {
+    var start = System.nanoTime();
+    try {
+      var response = QueryResponseParser.parse(vespaQueryClient.query(containerHost, query));
+      var latencyMs = (System.nanoTime() - start) / 1_000_000d;
+      return new RankProfileResult(
+          profile,
+          latencyMs,
+          QueryResponseParser.totalCount(response),
+          QueryResponseParser.hitIds(response, topK),
+          null);
+    } catch (Exception e) {
+      var latencyMs = (System.nanoTime() - start) / 1_000_000d;
+      return new RankProfileResult(profile, latencyMs, 0, List.of(), e.getMessage());
+    }
+  }
+
+  /** Sets the rank profile on a copy of the query, honouring both flat and nested syntax. */
+  static String withProfile(String query, String profile, int topK) {
+    try {
+      var node = (ObjectNode) objectMapper.readTree(query);
+      node.remove("ranking.profile");
+      if (node.path("ranking").isObject()) {
+        ((ObjectNode) node.get("ranking")).put("profile", profile);
+      } else {
+        // "ranking" as a plain string is an alias for the profile name
+        node.remove("ranking");
+        node.put("ranking.profile", profile);
+      }
+      if (node.path("hits").asInt(0) < topK) {
+        node.put("hits", topK);
+      }
+      return objectMapper.writeValueAsString(node);
+    } catch (Exception e) {
+      throw new IllegalArgumentException("Query must be a JSON object", e);
+    }
+  }
+
+  static RankProfilePairComparison pair(
+      RankProfileResult result, RankProfileResult other, int topK) {
+    var ranks = new HashMap<String, Integer>();
+    for (int i = 0; i < other.topHitIds().size(); i++) {
+      ranks.putIfAbsent(other.topHitIds().get(i), i);
+    }
+
+    // ranks in the other list, ordered by rank in this list
+    var sharedRanks = new ArrayList<Integer>();
+    for (var id : result.topHitIds()) {
+      var rank = ranks.get(id);
+      if (rank != null) {
+        sharedRanks.add(rank);
+      }
+    }
+
+    var overlap = (double) sharedRanks.size() / topK;
+    return new RankProfilePairComparison(
+        result.profile(), other.profile(), sharedRanks.size(), overlap, kendallTau(sharedRanks));
+  }
+
+  /**
+   * Kendall's tau between the identity ranking and {@code ranks}. Ids are unique, so there are no
+   * ties and tau-a is enough.
+   */
+  static Double kendallTau(List<Integer> ranks) {
+    var n = ranks.size();
+    if (n < 2) {
+      return null;
+    }
+    var concordant = 0;
+    var discordant = 0;
+    for (int i = 0; i < n; i++) {
+      for (int j = i + 1; j < n; j++) {
+        if (ranks.get(i) < ranks.get(j)) {
+          concordant++;
+        } else {
+          discordant++;
+        }
+      }
+    }
+    return (concordant - discordant) / (n * (n - 1) / 2d);
+  }
+}
@@ -1,44 +1,283 @@
 package com.vispana.vespa.query;
 
-import static org.springframework.http.MediaType.APPLICATION_JSON;
-
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.vispana.api.model.query.QueryClientStats;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
 import java.nio.channels.UnresolvedAddressException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.commons.lang.exception.ExceptionUtils;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.ResourceAccessException;
-import org.springframework.web.client.RestClient;
 
+/**
+ * Proxies queries to a Vespa container. Every query carries a deadline: it is enforced locally on
+ * the HTTP exchange and caps the query {@code timeout} the query asks Vespa for, and a query nobody
+ * waits for any more can be cancelled, which aborts the upstream request instead of letting it run
+ * on.
+ */
 @Component
-public class VespaQueryClient {
+public class VespaQueryClient implements MeterBinder {
+
+  public static final Duration DEFAULT_DEADLINE = Duration.ofSeconds(10);
 
-  private static final RestClient restClient = RestClient.create();
+  // time Vespa gets on top of its own timeout to send back a (timed out) result
+  private static final Duration RESPONSE_GRACE = Duration.ofSeconds(1);
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+  private static final HttpClient httpClient =
+      HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+  private final AtomicLong inFlight = new AtomicLong();
+  private final AtomicLong completed = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong timedOut = new AtomicLong();
+  private final AtomicLong abandoned = new AtomicLong();
+  private final LongAdder bytesSent = new LongAdder();
+  private final LongAdder bytesReceived = new LongAdder();
 
   public String query(String vespaContainerHost, String query) {
+    return query(vespaContainerHost, query, DEFAULT_DEADLINE);
+  }
+
+  public String query(String vespaContainerHost, String query, Duration deadline) {
+    var response = queryAsync(vespaContainerHost, query, deadline);
     try {
-      return restClient
-          .post()
-          .uri(vespaContainerHost + "/search/")
-          .contentType(APPLICATION_JSON)
-          .body(query)
-          .retrieve()
-          .body(String.class);
-    } catch (ResourceAccessException e) {
-      var exception = ExceptionUtils.getRootCause(e);
-      if (exception instanceof UnresolvedAddressException) {
-        var message =
-            "Failed to reach to Vespa container for host: '"
-                + vespaContainerHost
-                + "'.\n"
-                + "Vespa clusters may have internal access to this address, please check if "
-                + "the host is reachable from Vispana. If not, you may configure a routing "
-                + "address in Vispana's configuration pointing to a reachable address (e.g"
-                + "., a load balancer or a k8s service).";
-        throw new RuntimeException(message);
-      } else {
-        throw e;
+      return response.get();
+    } catch (InterruptedException e) {
+      cancel(response);
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while querying Vespa", e);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof RuntimeException cause
+          ? cause
+          : new RuntimeException("Error querying Vespa." + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Sends the query without blocking. Cancelling the returned future through {@link
+   * #cancel(CompletableFuture)} aborts the request to Vespa.
+   */
+  public CompletableFuture<String> queryAsync(
+      String vespaContainerHost, String query, Duration deadline) {
+    var requestBody = HttpRequest.BodyPublishers.ofString(withDeadline(query, deadline));
+    var request =
+        HttpRequest.newBuilder(URI.create(vespaContainerHost + "/search/"))
+            .header("Content-Type", "application/json")
+            .timeout(deadline.plus(RESPONSE_GRACE))
+            .POST(requestBody)
+            .build();
+
+    inFlight.incrementAndGet();
+    bytesSent.add(requestBody.contentLength());
+    var exchange = httpClient.sendAsync(request, this::countingBody);
+    var response =
+        exchange
+            .thenApply(
+                httpResponse -> {
+                  if (httpResponse.statusCode() >= 400) {
+                    throw new VespaQueryException(
+                        "Error querying Vespa."
+                            + httpResponse.statusCode()
+                            + ": "
+                            + httpResponse.body(),
+                        httpResponse.statusCode(),
+                        null);
+                  }
+                  return httpResponse.body();
+                })
+            .exceptionally(
+                throwable -> {
+                  throw toQueryException(vespaContainerHost, throwable);
+                })
+            .whenComplete(
+                (body, throwable) -> {
+                  // runs before callers see the result, so stats are never behind
+                  inFlight.decrementAndGet();
+                  if (throwable == null) {
+                    completed.incrementAndGet();
+                  } else if (!exchange.isCancelled()) {
+                    failed.incrementAndGet();
+                  }
+                });
+    // cancelling a dependent stage does not reach the exchange on its own
+    response.whenComplete(
+        (body, throwable) -> {
+          if (throwable instanceof CancellationException) {
+            exchange.cancel(true);
+          }
+        });
+    return response;
+  }
+
+  /** Cancels a query whose caller went away, counting it as abandoned. */
+  public void cancel(CompletableFuture<String> query) {
+    if (query.cancel(true)) {
+      abandoned.incrementAndGet();
+    }
+  }
+
+  public QueryClientStats stats() {
+    return new QueryClientStats(
+        inFlight.get(), completed.get(), failed.get(), timedOut.get(), abandoned.get());
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("vispana.query.in_flight", inFlight, AtomicLong::get)
+        .description("Queries proxied to Vespa that have not completed")
+        .register(registry);
+    outcomeCounter(registry, "completed", completed);
+    outcomeCounter(registry, "failed", failed);
+    outcomeCounter(registry, "timed_out", timedOut);
+    outcomeCounter(registry, "abandoned", abandoned);
+    FunctionCounter.builder("vispana.query.proxied", bytesSent, LongAdder::sum)
+        .description("Bytes of queries proxied to Vespa and of their results")
+        .baseUnit("bytes")
+        .tag("direction", "sent")
+        .register(registry);
+    FunctionCounter.builder("vispana.query.proxied", bytesReceived, LongAdder::sum)
+        .description("Bytes of queries proxied to Vespa and of their results")
+        .baseUnit("bytes")
+        .tag("direction", "received")
+        .register(registry);
+  }
+
+  private static void outcomeCounter(MeterRegistry registry, String outcome, AtomicLong count) {
+    FunctionCounter.builder("vispana.query.requests", count, AtomicLong::get)
+        .description("Queries proxied to Vespa")
+        .tag("outcome", outcome)
+        .register(registry);
+  }
+
+  /** The response body as a string, counting its bytes as they arrive. */
+  private HttpResponse.BodySubscriber<String> countingBody(HttpResponse.ResponseInfo info) {
+    var strings = HttpResponse.BodyHandlers.ofString().apply(info);
+    return new HttpResponse.BodySubscriber<>() {
+      @Override
+      public CompletionStage<String> getBody() {
+        return strings.getBody();
+      }
+
+      @Override
+      public void onSubscribe(Flow.Subscription subscription) {
+        strings.onSubscribe(subscription);
       }
+
+      @Override
+      public void onNext(List<ByteBuffer> buffers) {
+        for (ByteBuffer buffer : buffers) {
+          bytesReceived.add(buffer.remaining());
+        }
+        strings.onNext(buffers);
+      }
+
+      @Override
+      public void onError(Throwable throwable) {
+        strings.onError(throwable);
+      }
+
+      @Override
+      public void onComplete() {
+        strings.onComplete();
+      }
+    };
+  }
+
+  /**
+   * Lowers a Vespa query timeout that is longer than the deadline to the deadline. A query without
+   * a timeout keeps Vespa's default, which is far below any deadline, rather than being given the
+   * whole deadline to hold container threads with. Queries that are not JSON objects are passed on
+   * untouched and left for Vespa to reject.
+   */
+  static String withDeadline(String query, Duration deadline) {
+    JsonNode node;
+    try {
+      node = objectMapper.readTree(query);
     } catch (Exception e) {
-      throw new RuntimeException("Error querying Vespa." + e.getMessage(), e);
+      return query;
+    }
+    if (!(node instanceof ObjectNode queryObject)) {
+      return query;
+    }
+    var requested = parseTimeout(queryObject.get("timeout"));
+    if (requested == null || requested.compareTo(deadline) <= 0) {
+      return query;
+    }
+    queryObject.put("timeout", deadline.toMillis() + "ms");
+    try {
+      return objectMapper.writeValueAsString(queryObject);
+    } catch (Exception e) {
+      return query;
+    }
+  }
+
+  /** Vespa timeouts are seconds when unitless, otherwise suffixed with ms or s. */
+  static Duration parseTimeout(JsonNode timeout) {
+    if (timeout == null || timeout.isNull()) {
+      return null;
+    }
+    if (timeout.isNumber()) {
+      return Duration.ofMillis((long) (timeout.asDouble() * 1000));
+    }
+    var value = timeout.asText().trim().toLowerCase();
+    try {
+      if (value.endsWith("ms")) {
+        return Duration.ofMillis((long) Double.parseDouble(value.substring(0, value.length() - 2)));
+      }
+      if (value.endsWith("s")) {
+        value = value.substring(0, value.length() - 1);
+      }
+      return Duration.ofMillis((long) (Double.parseDouble(value) * 1000));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private RuntimeException toQueryException(String vespaContainerHost, Throwable throwable) {
+    var exception =
+        throwable instanceof CompletionException && throwable.getCause() != null
+            ? throwable.getCause()
+            : throwable;
+    if (exception instanceof VespaQueryException queryException) {
+      return queryException;
+    }
+    if (exception instanceof HttpTimeoutException) {
+      timedOut.incrementAndGet();
+      return new VespaQueryException(
+          "Vespa container '" + vespaContainerHost + "' did not answer within the deadline.",
+          0,
+          exception);
+    }
+    if (ExceptionUtils.getRootCause(exception) instanceof UnresolvedAddressException) {
+      var message =
+          "Failed to reach to Vespa container for host: '"
+              + vespaContainerHost
+              + "'.\n"
+              + "Vespa clusters may have internal access to this address, please check if "
+              + "the host is reachable from Vispana. If not, you may configure a routing "
+              + "address in Vispana's configuration pointing to a reachable address (e.g"
+              + "., a load balancer or a k8s service).";
+      return new VespaQueryException(message, 0, exception);
     }
+    return new VespaQueryException("Error querying Vespa." + exception.getMessage(), 0, exception);
   }
 }
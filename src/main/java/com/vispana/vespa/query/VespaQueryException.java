@@ -0,0 +1,29 @@
+package com.vispana.vespa.query;
+
+/**
+ * A query Vespa did not answer successfully, either because the container could not be reached in
+ * time or because it answered with an HTTP error status.
+ */
+public class VespaQueryException extends RuntimeException {
+
+  // 0 when the container did not answer at all
+  private final int statusCode;
+
+  public VespaQueryException(String message, int statusCode, Throwable cause) {
+    super(message, cause);
+    this.statusCode = statusCode;
+  }
+
+  public int statusCode() {
+    return statusCode;
+  }
+
+  /**
+   * Whether the container itself is at fault: unreachable, too slow or failing with a 5xx. A 4xx is
+   * an answer to a query it could not accept, such as malformed YQL, and says nothing of its
+   * health.
+   */
+  public boolean isNodeFailure() {
+    return statusCode == 0 || statusCode >= 500;
+  }
+}
@@ -0,0 +1,55 @@
+package com.vispana.vespa.state;
+
+import com.vispana.api.model.trace.FetchWaterfall;
+import com.vispana.vespa.state.helpers.FetchTrace;
+import java.util.LinkedHashMap;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/** The most recent request traces that called Vespa, for the debug endpoint to look up. */
+@Component
+public class FetchTraceStore {
+
+  private final int maxTraces;
+
+  // in insertion order, so the eldest trace is dropped first
+  private final LinkedHashMap<String, FetchTrace> traces = new LinkedHashMap<>();
+  private final ReentrantLock lock = new ReentrantLock();
+  private FetchTrace latest;
+
+  public FetchTraceStore(@Value("${vispana.trace.max-traces:50}") int maxTraces) {
+    this.maxTraces = maxTraces;
+  }
+
+  public void add(FetchTrace trace) {
+    if (trace.isEmpty()) {
+      return;
+    }
+    lock.lock();
+    try {
+      traces.put(trace.id(), trace);
+      latest = trace;
+      var iterator = traces.entrySet().iterator();
+      while (traces.size() > maxTraces && iterator.hasNext()) {
+        iterator.next();
+        iterator.remove();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** The waterfall of a trace, or of the latest one when {@code traceId} is null. */
+  public Optional<FetchWaterfall> waterfall(String traceId) {
+    FetchTrace trace;
+    lock.lock();
+    try {
+      trace = traceId == null ? latest : traces.get(traceId);
+    } finally {
+      lock.unlock();
+    }
+    return Optional.ofNullable(trace).map(FetchTrace::waterfall);
+  }
+}
@@ -0,0 +1,225 @@
+package com.vispana.vespa.state;
+
+import static com.vispana.vespa.state.helpers.Request.requestGet;
+import static com.vispana.vespa.state.helpers.Request.requestGetWithDefaultValue;
+
+import com.vispana.api.model.content.RankProfiles;
+import com.vispana.client.vespa.model.ApplicationSchema;
+import com.vispana.vespa.state.helpers.ApplicationUrlFetcher;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Rank profiles of a schema, fetched from the application package the first time they are asked for
+ * and kept for as long as the generation is deployed. The cache is bounded by the size of the
+ * profiles it holds and evicts the least recently used schema first.
+ */
+@Component
+public class RankProfileCache implements MeterBinder {
+
+  private static final Logger logger = LoggerFactory.getLogger(RankProfileCache.class);
+
+  private static final String PROFILE_SUFFIX = ".profile";
+
+  private final long maxBytes;
+
+  // (application, generation, schema) -> profiles, in access order for LRU eviction
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  // a lock rather than a monitor to not pin virtual threads
+  private final ReentrantLock lock = new ReentrantLock();
+  private long bytes;
+  // loads in progress, so concurrent requests for the same schema fetch it once
+  private final Map<Key, CompletableFuture<RankProfiles>> loading = new ConcurrentHashMap<>();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  private record Key(String appUrl, long generation, String schemaName) {}
+
+  private record Entry(RankProfiles rankProfiles, long bytes) {}
+
+  public RankProfileCache(
+      @Value("${vispana.rank-profiles.cache.max-bytes:16777216}") long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  public RankProfiles rankProfiles(String configHost, String schemaName) {
+    String appUrl = ApplicationUrlFetcher.fetch(configHost);
+    long generation = requestGet(appUrl, ApplicationSchema.class).getGeneration();
+    var key = new Key(appUrl, generation, schemaName);
+
+    var cached = get(key);
+    if (cached != null) {
+      hits.increment();
+      return cached;
+    }
+    misses.increment();
+
+    var pending = new CompletableFuture<RankProfiles>();
+    var existing = loading.putIfAbsent(key, pending);
+    if (existing != null) {
+      try {
+        return existing.join();
+      } catch (CompletionException e) {
+        throw e.getCause() instanceof RuntimeException cause ? cause : e;
+      }
+    }
+    try {
+      var rankProfiles = fetch(appUrl, generation, schemaName);
+      put(key, rankProfiles);
+      pending.complete(rankProfiles);
+      return rankProfiles;
+    } catch (RuntimeException e) {
+      pending.completeExceptionally(e);
+      throw e;
+    } finally {
+      loading.remove(key, pending);
+    }
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    FunctionCounter.builder("cache.gets", hits, LongAdder::sum)
+        .tags("cache", "rank-profiles", "result", "hit")
+        .register(registry);
+    FunctionCounter.builder("cache.gets", misses, LongAdder::sum)
+        .tags("cache", "rank-profiles", "result", "miss")
+        .register(registry);
+    FunctionCounter.builder("cache.evictions", evictions, LongAdder::sum)
+        .tag("cache", "rank-profiles")
+        .register(registry);
+    Gauge.builder("cache.size", this, RankProfileCache::size)
+        .tag("cache", "rank-profiles")
+        .register(registry);
+    Gauge.builder("vispana.rank-profiles.cached", this, RankProfileCache::cachedBytes)
+        .description("Bytes of rank profile content cached")
+        .baseUnit("bytes")
+        .register(registry);
+  }
+
+  private int size() {
+    lock.lock();
+    try {
+      return entries.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Bytes of rank profile content currently cached. */
+  long cachedBytes() {
+    lock.lock();
+    try {
+      return bytes;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private RankProfiles get(Key key) {
+    lock.lock();
+    try {
+      var entry = entries.get(key);
+      return entry == null ? null : entry.rankProfiles();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void put(Key key, RankProfiles rankProfiles) {
+    long size = sizeOf(rankProfiles);
+    if (size > maxBytes) {
+      logger.debug("Rank profiles of {} too large to cache: {} bytes", key.schemaName(), size);
+      return;
+    }
+    lock.lock();
+    try {
+      // entries of other generations of the application will never be asked for again
+      removeIf(
+          other -> other.appUrl().equals(key.appUrl()) && other.generation() != key.generation());
+      var previous = entries.put(key, new Entry(rankProfiles, size));
+      bytes += size - (previous == null ? 0 : previous.bytes());
+      // least recently used first
+      for (Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+          bytes > maxBytes && it.hasNext(); ) {
+        var eldest = it.next();
+        bytes -= eldest.getValue().bytes();
+        it.remove();
+        evictions.increment();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void removeIf(Predicate<Key> predicate) {
+    for (var it = entries.entrySet().iterator(); it.hasNext(); ) {
+      var entry = it.next();
+      if (predicate.test(entry.getKey())) {
+        bytes -= entry.getValue().bytes();
+        it.remove();
+        evictions.increment();
+      }
+    }
+  }
+
+  /** Lists schemas/<schema>/ and fetches its profiles concurrently. */
+  private static RankProfiles fetch(String appUrl, long generation, String schemaName) {
+    var rankProfilesUrl = appUrl + "/content/schemas/" + schemaName + "/";
+    List<String> rankProfileUrls =
+        requestGetWithDefaultValue(rankProfilesUrl, List.class, List.of());
+
+    Map<String, String> rankProfiles = Collections.synchronizedMap(new TreeMap<>());
+    try (var scope = new StructuredTaskScope.ShutdownOnFailure()) {
+      for (String rankProfileUrl : rankProfileUrls) {
+        // Extract name from URL: get last part and remove ".profile"
+        String[] urlParts = rankProfileUrl.split("/");
+        String fileName = urlParts[urlParts.length - 1];
+        if (!fileName.endsWith(PROFILE_SUFFIX)) {
+          continue;
+        }
+        scope.fork(
+            () ->
+                rankProfiles.put(
+                    fileName.substring(0, fileName.length() - PROFILE_SUFFIX.length()),
+                    requestGet(rankProfileUrl, String.class)));
+      }
+      scope
+          .join()
+          .throwIfFailed(
+              throwable ->
+                  new RuntimeException(
+                      "Failed to fetch rank profiles of schema " + schemaName, throwable));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted fetching rank profiles of " + schemaName, e);
+    }
+    return new RankProfiles(schemaName, generation, new TreeMap<>(rankProfiles));
+  }
+
+  // chars are two bytes; names and overhead are small next to the profiles
+  private static long sizeOf(RankProfiles rankProfiles) {
+    return rankProfiles.rankProfiles().entrySet().stream()
+        .mapToLong(entry -> 2L * (entry.getKey().length() + entry.getValue().length()))
+        .sum();
+  }
+}
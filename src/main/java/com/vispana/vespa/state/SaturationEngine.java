@@ -0,0 +1,129 @@
+package com.vispana.vespa.state;
+
+import static com.vispana.vespa.state.ThroughputEngine.orZero;
+
+import com.vispana.api.model.container.ContainerCluster;
+import com.vispana.api.model.container.ContainerNodes;
+import com.vispana.api.model.saturation.ClusterSaturation;
+import com.vispana.api.model.saturation.HandlerPool;
+import com.vispana.api.model.saturation.NodeSaturation;
+import com.vispana.api.model.saturation.PoolUsage;
+import com.vispana.api.model.saturation.QueueUsage;
+import com.vispana.client.vespa.model.MetricsNode;
+import com.vispana.client.vespa.model.Values;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reduces the thread pool metrics of every container to how close it is to running out of threads:
+ * utilization and work queue fill of each jdisc handler pool ({@code jdisc.thread_pool.*}, one per
+ * {@code threadpool} dimension), utilization of the Jetty pool ({@code serverActiveThreads}, {@code
+ * serverThreadPoolSize}) and how many tasks per second were rejected because a queue was full.
+ * Peaks of the metrics period are used, as a pool that was exhausted for a moment already made
+ * queries wait. Pools are kept apart, so a saturated search handler is not averaged away by an idle
+ * default pool.
+ */
+public class SaturationEngine {
+
+  // the metrics proxy aggregates over one minute unless configured otherwise; counts are of that
+  // window, not running totals
+  public static final Duration DEFAULT_METRICS_PERIOD = Duration.ofMinutes(1);
+  // read from the additional properties: the generated Values already has as many fields as javac
+  // compiles its equals() with a default stack
+  private static final String REJECTED_TASKS = "jdisc.thread_pool.rejected_tasks.count";
+
+  private final double metricsPeriodSeconds;
+
+  public SaturationEngine(Duration metricsPeriod) {
+    this.metricsPeriodSeconds = metricsPeriod.toMillis() / 1000.0;
+  }
+
+  public List<ClusterSaturation> derive(
+      ContainerNodes containers, Map<String, MetricsNode> vespaMetrics) {
+    List<ClusterSaturation> saturation = new ArrayList<>();
+    for (var cluster : containers.clusters()) {
+      saturation.add(cluster(cluster, vespaMetrics));
+    }
+    return saturation;
+  }
+
+  private ClusterSaturation cluster(
+      ContainerCluster cluster, Map<String, MetricsNode> vespaMetrics) {
+    Double rejected = null;
+    double peakUtilization = 0;
+    double peakQueueFill = 0;
+    List<NodeSaturation> nodes = new ArrayList<>(cluster.nodes().size());
+    for (var container : cluster.nodes()) {
+      String hostname = container.host().hostname();
+      var node = node(hostname, vespaMetrics.get(hostname));
+      nodes.add(node);
+      if (node.rejectedPerSecond() != null) {
+        rejected =
+            rejected == null ? node.rejectedPerSecond() : rejected + node.rejectedPerSecond();
+      }
+      peakUtilization = Math.max(peakUtilization, node.peakUtilization());
+      peakQueueFill = Math.max(peakQueueFill, node.peakQueueFill());
+    }
+    return new ClusterSaturation(cluster.name(), rejected, peakUtilization, peakQueueFill, nodes);
+  }
+
+  private NodeSaturation node(String hostname, MetricsNode metrics) {
+    if (metrics == null || metrics.getServices() == null) {
+      return new NodeSaturation(hostname, List.of(), null);
+    }
+    Map<String, HandlerPool> pools = new TreeMap<>();
+    PoolUsage http = null;
+    for (var service : metrics.getServices()) {
+      if (service.getMetrics() == null) {
+        continue;
+      }
+      for (var metric : service.getMetrics()) {
+        var values = metric.getValues();
+        if (values == null) {
+          continue;
+        }
+        if (values.getJdiscThreadPoolMaxAllowedSizeMax() != null) {
+          String name =
+              metric.getDimensions() == null ? null : metric.getDimensions().getThreadpool();
+          var pool = handlerPool(name == null ? "default" : name, values);
+          pools.merge(pool.name(), pool, SaturationEngine::plus);
+        }
+        if (values.getServerThreadPoolSizeMax() != null) {
+          var pool =
+              new PoolUsage(
+                  orZero(values.getServerActiveThreadsMax()), values.getServerThreadPoolSizeMax());
+          http = http == null ? pool : http.plus(pool);
+        }
+      }
+    }
+    return new NodeSaturation(hostname, List.copyOf(pools.values()), http);
+  }
+
+  private HandlerPool handlerPool(String name, Values values) {
+    long rejected =
+        values.getAdditionalProperties().get(REJECTED_TASKS) instanceof Number count
+            ? count.longValue()
+            : 0;
+    return new HandlerPool(
+        name,
+        new PoolUsage(
+            orZero(values.getJdiscThreadPoolActiveThreadsMax()),
+            values.getJdiscThreadPoolMaxAllowedSizeMax()),
+        new QueueUsage(
+            orZero(values.getJdiscThreadPoolWorkQueueSizeMax()),
+            orZero(values.getJdiscThreadPoolWorkQueueCapacityMax())),
+        rejected / metricsPeriodSeconds);
+  }
+
+  // the same pool reported by more than one service of a host
+  private static HandlerPool plus(HandlerPool pool, HandlerPool other) {
+    return new HandlerPool(
+        pool.name(),
+        pool.threads().plus(other.threads()),
+        pool.queue().plus(other.queue()),
+        pool.rejectedPerSecond() + other.rejectedPerSecond());
+  }
+}
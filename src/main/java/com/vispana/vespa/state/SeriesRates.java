@@ -0,0 +1,53 @@
+package com.vispana.vespa.state;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-second change of gauges, such as the documents of one schema in one group, between their two
+ * latest samples. Samples are timed by the timestamps the metrics proxy reports: a sample with the
+ * timestamp of the previous one is the same proxy snapshot fetched again, so reading faster than
+ * the proxy updates keeps the last change rather than dropping to zero.
+ *
+ * <p>Not thread-safe.
+ */
+class SeriesRates {
+
+  private final Map<String, Series> series = new HashMap<>();
+  private long generation;
+
+  /** Starts a snapshot; series not sampled before {@link #finish} are forgotten. */
+  void begin() {
+    generation++;
+  }
+
+  /**
+   * Takes a sample of a gauge at a time in milliseconds and returns its change per second, or null
+   * until the gauge has two samples.
+   */
+  Double sample(String key, long at, long value) {
+    var latest = series.computeIfAbsent(key, k -> new Series());
+    latest.generation = generation;
+    if (at <= latest.at) {
+      return latest.rate;
+    }
+    if (latest.at != Long.MIN_VALUE) {
+      latest.rate = (value - latest.value) / ((at - latest.at) / 1000.0);
+    }
+    latest.at = at;
+    latest.value = value;
+    return latest.rate;
+  }
+
+  /** Forgets the series missing from this snapshot, so one that comes back starts over. */
+  void finish() {
+    series.values().removeIf(latest -> latest.generation != generation);
+  }
+
+  private static final class Series {
+    private long at = Long.MIN_VALUE;
+    private long value;
+    private Double rate;
+    private long generation;
+  }
+}
@@ -0,0 +1,59 @@
+package com.vispana.vespa.state;
+
+import com.vispana.api.model.VispanaRoot;
+import com.vispana.api.model.history.HistorySample;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the derived rates and container saturation of the latest polled snapshots of each config
+ * host, so the trend over the last hour or so is there when the page opens. Only what the charts
+ * need is kept of a snapshot; the oldest sample is dropped once a config host has {@code
+ * vispana.history.size} of them.
+ */
+@Component
+public class SnapshotHistory implements SnapshotListener {
+
+  private final int size;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Map<String, ArrayDeque<HistorySample>> configHosts = new HashMap<>();
+
+  public SnapshotHistory(@Value("${vispana.history.size:120}") int size) {
+    if (size < 1) {
+      throw new IllegalArgumentException("vispana.history.size must be positive: " + size);
+    }
+    this.size = size;
+  }
+
+  @Override
+  public void onSnapshot(String configHost, VispanaRoot snapshot, Instant takenAt) {
+    var sample = new HistorySample(takenAt, snapshot.throughput(), snapshot.saturation());
+    lock.lock();
+    try {
+      var samples = configHosts.computeIfAbsent(configHost, host -> new ArrayDeque<>(size));
+      if (samples.size() == size) {
+        samples.removeFirst();
+      }
+      samples.addLast(sample);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** The samples of a config host, oldest first; empty if the poller does not watch it. */
+  public List<HistorySample> history(String configHost) {
+    lock.lock();
+    try {
+      var samples = configHosts.get(configHost);
+      return samples == null ? List.of() : List.copyOf(samples);
+    } finally {
+      lock.unlock();
+    }
+  }
+}
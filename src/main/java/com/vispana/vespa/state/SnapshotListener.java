@@ -0,0 +1,10 @@
+package com.vispana.vespa.state;
+
+import com.vispana.api.model.VispanaRoot;
+import java.time.Instant;
+
+/** Receives every overview snapshot the {@link SnapshotPoller} takes, in order per config host. */
+public interface SnapshotListener {
+
+  void onSnapshot(String configHost, VispanaRoot snapshot, Instant takenAt);
+}
@@ -0,0 +1,191 @@
+package com.vispana.vespa.state;
+
+import com.vispana.api.model.VispanaRoot;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Takes an overview snapshot of each configured config host at a fixed interval, whether or not
+ * anyone has the page open, and hands it to the {@link SnapshotListener}s. Config hosts are polled
+ * concurrently; a poll that fails is skipped and tried again at the next interval.
+ *
+ * <p>Config hosts opened in the UI are polled as well, until none has opened them for {@link
+ * #OPENED_HOST_TTL}, so history and alerts work without configuring any. At most {@value
+ * #MAX_OPENED_HOSTS} of them are polled, the most recently opened.
+ */
+@Component
+public class SnapshotPoller implements MeterBinder, AutoCloseable {
+
+  private static final Logger logger = LoggerFactory.getLogger(SnapshotPoller.class);
+
+  static final Duration OPENED_HOST_TTL = Duration.ofHours(1);
+  static final int MAX_OPENED_HOSTS = 16;
+
+  private final VespaStateClient vespaStateClient;
+  private final List<SnapshotListener> listeners;
+  private final List<String> configHosts;
+  private final boolean pollOpenedHosts;
+  // config host opened in the UI -> when it was last opened, in System.nanoTime()
+  private final Map<String, Long> openedHosts = new ConcurrentHashMap<>();
+  private final Duration interval;
+  private final LongAdder snapshots = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+  private volatile Thread thread;
+
+  public SnapshotPoller(
+      VespaStateClient vespaStateClient,
+      List<SnapshotListener> listeners,
+      @Value("${vispana.poller.config-hosts:}") List<String> configHosts,
+      @Value("${vispana.poller.opened-hosts:true}") boolean pollOpenedHosts,
+      @Value("${vispana.poller.interval:30s}") Duration interval) {
+    this.vespaStateClient = vespaStateClient;
+    this.listeners = List.copyOf(listeners);
+    this.configHosts =
+        configHosts.stream()
+            .map(String::strip)
+            .filter(host -> !host.isEmpty())
+            .map(SnapshotPoller::normalize)
+            .toList();
+    this.pollOpenedHosts = pollOpenedHosts;
+    this.interval = interval;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    if ((configHosts.isEmpty() && !pollOpenedHosts) || thread != null) {
+      return;
+    }
+    if (pollOpenedHosts) {
+      logger.info("Polling {} and config hosts opened in the UI every {}", configHosts, interval);
+    } else {
+      logger.info("Polling {} every {}", configHosts, interval);
+    }
+    thread = Thread.ofVirtual().name("snapshot-poller").start(this::run);
+  }
+
+  /**
+   * Polls a config host opened in the UI from the next interval on, unless it is polled already.
+   */
+  public void opened(String configHost) {
+    String host = normalize(configHost);
+    if (!pollOpenedHosts || configHosts.contains(host)) {
+      return;
+    }
+    openedHosts.put(host, System.nanoTime());
+    while (openedHosts.size() > MAX_OPENED_HOSTS) {
+      openedHosts.entrySet().stream()
+          .min(Map.Entry.comparingByValue())
+          .ifPresent(oldest -> openedHosts.remove(oldest.getKey(), oldest.getValue()));
+    }
+  }
+
+  /** The configured config hosts followed by those opened in the UI recently enough. */
+  public List<String> configHosts() {
+    long expired = System.nanoTime() - OPENED_HOST_TTL.toNanos();
+    openedHosts.values().removeIf(openedAt -> openedAt - expired < 0);
+    if (openedHosts.isEmpty()) {
+      return configHosts;
+    }
+    List<String> hosts = new ArrayList<>(configHosts);
+    hosts.addAll(new TreeSet<>(openedHosts.keySet()));
+    return hosts;
+  }
+
+  // the overview endpoint receives config hosts with a trailing slash
+  private static String normalize(String configHost) {
+    return configHost.endsWith("/") ? configHost : configHost + "/";
+  }
+
+  /** Polls every config host once and waits until the listeners have seen the snapshots. */
+  public void poll() {
+    try (var scope = new StructuredTaskScope<Void>()) {
+      for (String configHost : configHosts()) {
+        scope.fork(
+            () -> {
+              poll(configHost);
+              return null;
+            });
+      }
+      scope.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void poll(String configHost) {
+    VispanaRoot snapshot;
+    try {
+      snapshot = vespaStateClient.vespaState(configHost);
+    } catch (RuntimeException e) {
+      failures.increment();
+      logger.warn("Failed to poll {}: {}", configHost, e.toString());
+      return;
+    }
+    snapshots.increment();
+    var takenAt = Instant.now();
+    for (var listener : listeners) {
+      try {
+        listener.onSnapshot(configHost, snapshot, takenAt);
+      } catch (RuntimeException e) {
+        logger.warn(
+            "{} failed on a snapshot of {}", listener.getClass().getSimpleName(), configHost, e);
+      }
+    }
+  }
+
+  private void run() {
+    long next = System.nanoTime();
+    while (thread != null) {
+      poll();
+      next += interval.toNanos();
+      long wait = next - System.nanoTime();
+      if (wait < 0) {
+        // a poll took longer than the interval; start the next one now, without catching up
+        next = System.nanoTime();
+        continue;
+      }
+      try {
+        Thread.sleep(Duration.ofNanos(wait));
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    FunctionCounter.builder("vispana.poller.snapshots", snapshots, LongAdder::sum)
+        .tag("outcome", "success")
+        .description("Overview snapshots taken by the poller")
+        .register(registry);
+    FunctionCounter.builder("vispana.poller.snapshots", failures, LongAdder::sum)
+        .tag("outcome", "failure")
+        .description("Overview snapshots taken by the poller")
+        .register(registry);
+  }
+
+  @Override
+  public void close() {
+    var running = thread;
+    thread = null;
+    if (running != null) {
+      running.interrupt();
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package com.vispana.vespa.state;
+
+import com.vispana.api.model.content.ContentCluster;
+import com.vispana.api.model.content.ContentNodes;
+import com.vispana.api.model.throughput.ClusterThroughput;
+import com.vispana.api.model.throughput.Throughput;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Derives per-second throughput of the content clusters from the searchnode metrics: feed
+ * operations and queries from the rates the metrics proxy reports for its period, document growth
+ * from the active documents of consecutive snapshots (see {@link SeriesRates}). Every group holds
+ * the whole corpus and answers the queries dispatched to it on all of its nodes, so feed operations
+ * and documents are summed over the nodes of a group and taken from the fullest group, as the
+ * document counts of the content page are, while queries are taken from the busiest node of each
+ * group and summed over the groups.
+ */
+public class ThroughputEngine {
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Map<String, SeriesRates> configHosts = new HashMap<>();
+
+  /** The throughput of every content cluster whose searchnodes report documents. */
+  public List<ClusterThroughput> derive(String configHost, ContentNodes content, Instant takenAt) {
+    lock.lock();
+    try {
+      var rates = configHosts.computeIfAbsent(configHost, host -> new SeriesRates());
+      rates.begin();
+      List<ClusterThroughput> throughput = new ArrayList<>();
+      for (var cluster : content.clusters()) {
+        var derived = cluster(rates, cluster, takenAt.toEpochMilli());
+        if (derived != null) {
+          throughput.add(derived);
+        }
+      }
+      rates.finish();
+      return throughput;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static ClusterThroughput cluster(SeriesRates rates, ContentCluster cluster, long now) {
+    // schema -> group -> what the nodes of the group report for it
+    Map<String, Map<String, GroupSample>> samples = new TreeMap<>();
+    for (var node : cluster.nodes()) {
+      if (node.otherMetrics() == null || node.otherMetrics().getServices() == null) {
+        continue;
+      }
+      String group = node.group() == null ? "" : node.group().key().key();
+      for (var service : node.otherMetrics().getServices()) {
+        if (service.getMetrics() == null) {
+          continue;
+        }
+        long at = service.getTimestamp() != null ? service.getTimestamp() * 1000 : now;
+        for (var metric : service.getMetrics()) {
+          String schema =
+              metric.getDimensions() == null ? null : metric.getDimensions().getDocumenttype();
+          var values = metric.getValues();
+          if (schema == null || values == null) {
+            continue;
+          }
+          var sample =
+              samples
+                  .computeIfAbsent(schema, key -> new TreeMap<>())
+                  .computeIfAbsent(group, key -> new GroupSample());
+          sample.at = Math.max(sample.at, at);
+          sample.feedOps += orZero(values.getContentProtonDocumentdbFeedingCommitOperationsRate());
+          sample.queries =
+              Math.max(
+                  sample.queries, orZero(values.getContentProtonDocumentdbMatchingQueriesRate()));
+          sample.documents += orZero(values.getContentProtonDocumentdbDocumentsActiveLast());
+        }
+      }
+    }
+    if (samples.isEmpty()) {
+      return null;
+    }
+
+    Throughput total = null;
+    Map<String, Throughput> schemas = new TreeMap<>();
+    for (var schema : samples.entrySet()) {
+      double feedOps = 0;
+      double queries = 0;
+      GroupSample fullest = null;
+      Double growth = null;
+      for (var group : schema.getValue().entrySet()) {
+        var sample = group.getValue();
+        Double rate =
+            rates.sample(
+                cluster.name() + "/" + schema.getKey() + "/" + group.getKey(),
+                sample.at,
+                sample.documents);
+        feedOps = Math.max(feedOps, sample.feedOps);
+        queries += sample.queries;
+        if (fullest == null || sample.documents > fullest.documents) {
+          fullest = sample;
+          growth = rate;
+        }
+      }
+      var throughput = new Throughput(feedOps, queries, growth);
+      schemas.put(schema.getKey(), throughput);
+      total = total == null ? throughput : total.plus(throughput);
+    }
+    return new ClusterThroughput(cluster.name(), total, schemas);
+  }
+
+  static long orZero(Long value) {
+    return value == null ? 0 : value;
+  }
+
+  static double orZero(Double value) {
+    return value == null ? 0 : value;
+  }
+
+  private static final class GroupSample {
+    private long at = Long.MIN_VALUE;
+    private double feedOps;
+    private double queries;
+    private long documents;
+  }
+}
@@ -8,12 +8,29 @@ import com.vispana.vespa.state.assemblers.ContentAssembler;
 import com.vispana.vespa.state.helpers.ApplicationUrlFetcher;
 import com.vispana.vespa.state.helpers.MetricsFetcher;
 import com.vispana.vespa.state.helpers.VespaVersionFetcher;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.concurrent.StructuredTaskScope;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 @Component
 public class VespaStateClient {
 
+  // rates between the snapshots of every caller, the poller's and the overview page's alike
+  private final ThroughputEngine throughputEngine = new ThroughputEngine();
+  private final SaturationEngine saturationEngine;
+
+  public VespaStateClient() {
+    this(SaturationEngine.DEFAULT_METRICS_PERIOD);
+  }
+
+  @Autowired
+  public VespaStateClient(@Value("${vispana.metrics-proxy.period:60s}") Duration metricsPeriod) {
+    this.saturationEngine = new SaturationEngine(metricsPeriod);
+  }
+
   public VispanaRoot vespaState(String configHost) {
 
     try (var scope = new StructuredTaskScope.ShutdownOnFailure()) {
@@ -58,7 +75,17 @@ public class VespaStateClient {
       var containerNodes = containerFork.get();
       var contentNodes = contentFork.get();
 
-      return new VispanaRoot(configNodes, containerNodes, contentNodes, appPackage, vespaVersion);
+      var throughput = throughputEngine.derive(configHost, contentNodes, Instant.now());
+      var saturation = saturationEngine.derive(containerNodes, vespaMetrics);
+
+      return new VispanaRoot(
+          configNodes,
+          containerNodes,
+          contentNodes,
+          appPackage,
+          vespaVersion,
+          throughput,
+          saturation);
     } catch (Throwable t) {
       // Since this application is not meant to be exposed outside a perimeter, jut throw
       // the exception to ease debugging
@@ -3,7 +3,6 @@ package com.vispana.vespa.state.assemblers;
 import static com.vispana.vespa.state.helpers.ContentNodesExtractor.contentNodesFromAppPackage;
 import static com.vispana.vespa.state.helpers.ProcessStatus.processStatus;
 import static com.vispana.vespa.state.helpers.Request.requestGet;
-import static com.vispana.vespa.state.helpers.Request.requestGetWithDefaultValue;
 import static com.vispana.vespa.state.helpers.SystemMetrics.systemMetrics;
 import static java.util.stream.Collectors.groupingBy;
 
@@ -95,37 +94,14 @@ public class ContentAssembler {
               var schemaUrl = appUrl + "/content/schemas/" + schemaName + ".sd";
               var schemaContent = requestGet(schemaUrl, String.class);
 
-              // Get schema's rank-profiles
-              var rankProfilesUrl = appUrl + "/content/schemas/" + schemaName + "/";
-              List<String> rankProfilesUrlsList =
-                  requestGetWithDefaultValue(rankProfilesUrl, List.class, List.of());
-              Map<String, String> schemaRankProfiles;
-              if (!rankProfilesUrlsList.isEmpty()) {
-                schemaRankProfiles =
-                    rankProfilesUrlsList.stream()
-                        .collect(
-                            Collectors.toMap(
-                                rankProfileUrl -> {
-                                  // Extract name from URL: get last part and remove ".profile"
-                                  String[] urlParts = rankProfileUrl.split("/");
-                                  return urlParts[urlParts.length - 1].replace(".profile", "");
-                                },
-                                rankProfileUrl -> {
-                                  // Fetch content from the rank profile URL
-                                  return requestGet(rankProfileUrl, String.class);
-                                }));
-              } else {
-                schemaRankProfiles = Map.of();
-              }
-
+              // rank profiles are not part of the overview; they are loaded on demand
               var contentNodeByGroup =
                   contentNodes.stream()
                       .collect(groupingBy(contentNode -> contentNode.group().key()));
 
               var schemaDocCounts = countDocuments(schemaName, contentNodeByGroup);
 
-              return new ContentData(
-                  new Schema(schemaName, schemaContent, schemaRankProfiles), schemaDocCounts);
+              return new ContentData(new Schema(schemaName, schemaContent), schemaDocCounts);
             })
         .toList();
   }
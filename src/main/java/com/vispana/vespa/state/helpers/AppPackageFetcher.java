@@ -1,16 +1,21 @@
 package com.vispana.vespa.state.helpers;
 
-import static com.vispana.vespa.state.helpers.Request.requestGetWithDefaultValue;
+import static com.vispana.vespa.state.helpers.Request.requestGetStreaming;
 
 import java.io.*;
-import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.io.ByteArrayResource;
-import org.springframework.core.io.Resource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -22,12 +27,57 @@ public class AppPackageFetcher {
   // 8KB = good balance between memory usage and speed
   private static final int BUFFER_SIZE = 8192;
 
-  public AppPackageFetcher() {}
+  private static final int DEFAULT_PREFETCH_FILES = 8;
+  private static final long DEFAULT_MAX_IN_MEMORY_BYTES = 4 * 1024 * 1024;
+
+  // files downloaded ahead of the ZIP writer; bounds how far the download may run ahead
+  private final int prefetchFiles;
+  // a prefetched file larger than this is spilled to a temp file instead of kept in memory
+  private final long maxInMemoryBytes;
+  private final int maxConcurrentListings;
+  private final PackageArchiveWriter.Settings archiveSettings;
+
+  public AppPackageFetcher() {
+    this(
+        DEFAULT_PREFETCH_FILES,
+        DEFAULT_MAX_IN_MEMORY_BYTES,
+        AppPackageFilesystem.DEFAULT_MAX_CONCURRENT_LISTINGS,
+        PackageArchiveWriter.Settings.DEFAULT);
+  }
+
+  public AppPackageFetcher(
+      int prefetchFiles,
+      long maxInMemoryBytes,
+      int maxConcurrentListings,
+      PackageArchiveWriter.Settings archiveSettings) {
+    this.prefetchFiles = Math.max(1, prefetchFiles);
+    this.maxInMemoryBytes = maxInMemoryBytes;
+    this.maxConcurrentListings = maxConcurrentListings;
+    this.archiveSettings = archiveSettings;
+  }
+
+  @Autowired
+  public AppPackageFetcher(
+      @Value("${vispana.apppackage.zip.prefetch-files:8}") int prefetchFiles,
+      @Value("${vispana.apppackage.zip.max-in-memory-bytes:4194304}") long maxInMemoryBytes,
+      @Value("${vispana.apppackage.max-concurrent-listings:16}") int maxConcurrentListings,
+      @Value("${vispana.apppackage.archive.deflate-level:-1}") int deflateLevel,
+      @Value("${vispana.apppackage.archive.zstd-level:3}") int zstdLevel) {
+    this(
+        prefetchFiles,
+        maxInMemoryBytes,
+        maxConcurrentListings,
+        new PackageArchiveWriter.Settings(deflateLevel, zstdLevel));
+  }
 
   /**
    * Streams the application package as ZIP directly to the output stream. This avoids loading the
    * entire package into memory - suitable for large packages.
    *
+   * <p>Files are downloaded by a pool of virtual threads up to {@code prefetchFiles} ahead of the
+   * writer, which drains them into the ZIP in order. Per-file latency is thereby overlapped instead
+   * of added up, while at most {@code prefetchFiles * maxInMemoryBytes} is held in memory.
+   *
    * @param configHost the Vespa config host
    * @param outputStream the stream to write the ZIP to
    * @throws IOException on IO problems
@@ -35,148 +85,203 @@ public class AppPackageFetcher {
    */
   public void streamAppPackageAsZip(String configHost, OutputStream outputStream)
       throws IOException, InterruptedException {
-    String appUrl = ApplicationUrlFetcher.fetch(configHost);
-    String contentUrl = appUrl + "/content/";
+    streamAppPackage(configHost, ArchiveFormat.ZIP, outputStream);
+  }
 
-    // We'll use a queue for BFS traversal of "folders"
-    Queue<String> queue = new LinkedList<>();
-    queue.add(contentUrl);
+  /** Like {@link #streamAppPackageAsZip}, in any of the supported archive formats. */
+  public void streamAppPackage(String configHost, ArchiveFormat format, OutputStream outputStream)
+      throws IOException, InterruptedException {
+    String contentUrl = ApplicationUrlFetcher.fetch(configHost) + "/content/";
+    List<AppPackageFilesystem.FileNode> entries = packageEntries(configHost);
 
     // Stream directly to output - never hold entire ZIP in memory
-    try (ZipOutputStream zos = new ZipOutputStream(outputStream)) {
-      // Keep a set of zip entries already added to avoid duplicates (especially
-      // directories)
-      Set<String> addedEntries = new HashSet<>();
-
-      while (!queue.isEmpty()) {
-        String currentUrl = queue.poll();
-
-        // GET the current URL. Expect a JSON array of strings (either files or
-        // subfolders).
-        List<String> entries = requestGetWithDefaultValue(currentUrl, List.class, List.of());
-
-        for (String entryUrlOrPath : entries) {
-          // Vespa may return absolute URLs or relative paths. Resolve to an absolute URL.
-          String resolvedUrl = resolveUrl(currentUrl, entryUrlOrPath);
-
-          boolean isDirectory = entryUrlOrPath.endsWith("/");
-
-          // Determine zip path: remove contentUrl prefix from resolvedUrl
-          String zipPath = toZipPath(contentUrl, resolvedUrl, isDirectory);
-
-          // Ensure directories are explicitly present in the ZIP (use trailing slash)
-          if (isDirectory) {
-            if (!addedEntries.contains(zipPath)) {
-              ZipEntry dirEntry = new ZipEntry(zipPath);
-              zos.putNextEntry(dirEntry);
-              zos.closeEntry();
-              addedEntries.add(zipPath);
-            }
-            // enqueue directory for further listing
-            queue.add(resolvedUrl);
-          } else {
-            logger.debug("Streaming file: {}", zipPath);
-
-            // Ensure parent directories exist in ZIP
-            createParentDirsInZip(zos, zipPath, addedEntries);
-
-            // Create ZIP entry for this file
-            ZipEntry fileEntry = new ZipEntry(zipPath);
-            zos.putNextEntry(fileEntry);
-
-            // Stream the file in chunks
-            // Using the generic requestGetWithDefaultValue with InputStream.class
-            try (InputStream fileStream =
-                requestGetWithDefaultValue(
-                        resolvedUrl, Resource.class, new ByteArrayResource(new byte[0]))
-                    .getInputStream()) {
-              byte[] buffer = new byte[BUFFER_SIZE];
-              int bytesRead;
-
-              // Keep reading chunks from remote into buffer until file is done
-              while ((bytesRead = fileStream.read(buffer)) != -1) {
-                // Write this chunk to ZIP (which streams to browser)
-                zos.write(buffer, 0, bytesRead);
-              }
-
-              logger.debug("Finished streaming: {}", zipPath);
-            } catch (Exception e) {
-              logger.warn("Failed to stream file {}: {}", zipPath, e.getMessage());
-              // Continue with other files even if one fails
-            }
-
-            zos.closeEntry();
-            addedEntries.add(zipPath);
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor();
+        PackageArchiveWriter archive =
+            PackageArchiveWriter.open(format, outputStream, archiveSettings)) {
+      Deque<Future<PrefetchedFile>> window = new ArrayDeque<>();
+      Iterator<AppPackageFilesystem.FileNode> pending = entries.iterator();
+
+      try {
+        fillWindow(window, pending, contentUrl, executor);
+        while (!window.isEmpty()) {
+          try (PrefetchedFile file = await(window.poll())) {
+            // a slot is free again: start the next download before writing this one
+            fillWindow(window, pending, contentUrl, executor);
+            writeEntry(archive, file);
           }
         }
-      } // end traversal
+      } finally {
+        // on failure, release whatever is still buffered or downloading
+        window.forEach(future -> future.cancel(true));
+        window.forEach(AppPackageFetcher::discard);
+      }
 
-      zos.finish();
+      archive.finish();
     }
   }
 
-  // Helpers
-  private String resolveUrl(String currentUrl, String entry) {
-    // If entry looks like a full URL, return it
-    if (entry.startsWith("http://") || entry.startsWith("https://")) {
-      return entry;
+  /** Directories and files of the package in pre-order, so parents always come first. */
+  private List<AppPackageFilesystem.FileNode> packageEntries(String configHost) {
+    var tree = AppPackageFilesystem.buildFileTree(configHost, maxConcurrentListings);
+    var entries = new ArrayList<AppPackageFilesystem.FileNode>();
+    collectEntries(tree.getRoot(), entries);
+    return entries;
+  }
+
+  private static void collectEntries(
+      AppPackageFilesystem.FileNode directory, List<AppPackageFilesystem.FileNode> entries) {
+    for (var child : directory.getChildren().values()) {
+      entries.add(child);
+      if (!child.isFile()) {
+        collectEntries(child, entries);
+      }
+    }
+  }
+
+  private void fillWindow(
+      Deque<Future<PrefetchedFile>> window,
+      Iterator<AppPackageFilesystem.FileNode> pending,
+      String contentUrl,
+      ExecutorService executor) {
+    while (window.size() < prefetchFiles && pending.hasNext()) {
+      var entry = pending.next();
+      if (entry.isFile()) {
+        window.add(executor.submit(() -> prefetch(contentUrl, entry.getPath())));
+      } else {
+        window.add(CompletableFuture.completedFuture(PrefetchedFile.directory(entry.getPath())));
+      }
     }
-    // If entry is absolute path that starts with '/', try to construct using
-    // currentUrl's host
+  }
+
+  private PrefetchedFile prefetch(String contentUrl, String zipPath) {
+    logger.debug("Prefetching file: {}", zipPath);
     try {
-      if (entry.startsWith("/")) {
-        URI baseUri = URI.create(currentUrl);
-        URI resolved = baseUri.resolve(entry);
-        return resolved.toString();
+      var file =
+          requestGetStreaming(
+              contentUrl + zipPath, body -> PrefetchedFile.read(zipPath, body, maxInMemoryBytes));
+      if (Thread.currentThread().isInterrupted()) {
+        // the export was aborted while downloading; nobody will write or discard this file
+        file.close();
       }
-      // Otherwise assume it's relative to currentUrl (which should be a folder URL)
-      URI baseUri = URI.create(currentUrl);
-      URI resolved = baseUri.resolve(entry);
-      return resolved.toString();
+      return file;
     } catch (Exception e) {
-      // fallback: concatenate
-      if (currentUrl.endsWith("/")) return currentUrl + entry;
-      else return currentUrl + "/" + entry;
+      logger.warn("Failed to stream file {}: {}", zipPath, e.getMessage());
+      // Continue with other files even if one fails
+      return PrefetchedFile.empty(zipPath);
     }
   }
 
-  private String toZipPath(String contentUrl, String resolvedUrl, boolean isDirectory) {
-    String zipPath;
-    // If resolvedUrl starts with contentUrl, remove contentUrl
-    if (resolvedUrl.startsWith(contentUrl)) {
-      zipPath = resolvedUrl.substring(contentUrl.length());
+  private static void writeEntry(PackageArchiveWriter archive, PrefetchedFile file)
+      throws IOException {
+    if (file.isDirectory) {
+      archive.putDirectory(file.zipPath);
     } else {
-      // Otherwise take last path segments (fallback). Use entire path after host.
+      archive.putFile(file.zipPath, file.size, file.crc, file::open);
+      logger.debug("Finished streaming: {}", file.zipPath);
+    }
+  }
+
+  private static PrefetchedFile await(Future<PrefetchedFile> future)
+      throws IOException, InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to prefetch file", e.getCause());
+    }
+  }
+
+  private static void discard(Future<PrefetchedFile> future) {
+    if (future.state() == Future.State.SUCCESS) {
+      future.resultNow().close();
+    }
+  }
+
+  /** A downloaded file waiting to be written: held in memory, or spilled to disk when large. */
+  static final class PrefetchedFile implements Closeable {
+    final String zipPath;
+    final boolean isDirectory;
+    final long size;
+    final long crc;
+    private final byte[] memory;
+    private final Path spill;
+
+    private PrefetchedFile(
+        String zipPath, boolean isDirectory, long size, long crc, byte[] memory, Path spill) {
+      this.zipPath = zipPath;
+      this.isDirectory = isDirectory;
+      this.size = size;
+      this.crc = crc;
+      this.memory = memory;
+      this.spill = spill;
+    }
+
+    static PrefetchedFile directory(String zipPath) {
+      return new PrefetchedFile(zipPath, true, 0, 0, new byte[0], null);
+    }
+
+    static PrefetchedFile empty(String zipPath) {
+      return new PrefetchedFile(zipPath, false, 0, 0, new byte[0], null);
+    }
+
+    static PrefetchedFile read(String zipPath, InputStream body, long maxInMemoryBytes)
+        throws IOException {
+      var crc = new CRC32();
+      var memory = new ByteArrayOutputStream();
+      byte[] buffer = new byte[BUFFER_SIZE];
+      long size = 0;
+      int bytesRead;
+      OutputStream spillStream = null;
+      Path spill = null;
       try {
-        URI uri = URI.create(resolvedUrl);
-        String path = uri.getPath();
-        // strip leading slash
-        if (path.startsWith("/")) path = path.substring(1);
-        zipPath = path;
-      } catch (Exception e) {
-        // as last resort use full URL but sanitize
-        zipPath = resolvedUrl.replaceAll("[:/?#]+", "_");
+        while ((bytesRead = body.read(buffer)) != -1) {
+          crc.update(buffer, 0, bytesRead);
+          size += bytesRead;
+          if (spillStream == null && size > maxInMemoryBytes) {
+            spill = Files.createTempFile("vispana-zip-", ".part");
+            spillStream = new BufferedOutputStream(Files.newOutputStream(spill), BUFFER_SIZE);
+            memory.writeTo(spillStream);
+            memory = null;
+          }
+          if (spillStream != null) {
+            spillStream.write(buffer, 0, bytesRead);
+          } else {
+            memory.write(buffer, 0, bytesRead);
+          }
+        }
+      } catch (IOException e) {
+        if (spill != null) {
+          Files.deleteIfExists(spill);
+        }
+        throw e;
+      } finally {
+        if (spillStream != null) {
+          spillStream.close();
+        }
       }
+      return new PrefetchedFile(
+          zipPath,
+          false,
+          size,
+          crc.getValue(),
+          memory == null ? null : memory.toByteArray(),
+          spill);
     }
-    // Ensure directories end with '/'
-    if (isDirectory && !zipPath.endsWith("/")) zipPath += "/";
-    return zipPath;
-  }
 
-  private void createParentDirsInZip(ZipOutputStream zos, String zipPath, Set<String> addedEntries)
-      throws IOException {
-    int lastSlash = zipPath.lastIndexOf('/');
-    if (lastSlash <= 0) return;
-
-    for (int i = 0; i <= lastSlash; i++) {
-      char c = (i < zipPath.length()) ? zipPath.charAt(i) : '/';
-      if (c == '/') {
-        String dir = zipPath.substring(0, i + 1);
-        if (!addedEntries.contains(dir)) {
-          ZipEntry dirEntry = new ZipEntry(dir);
-          zos.putNextEntry(dirEntry);
-          zos.closeEntry();
-          addedEntries.add(dir);
+    InputStream open() throws IOException {
+      return spill != null ? Files.newInputStream(spill) : new ByteArrayInputStream(memory);
+    }
+
+    boolean isSpilled() {
+      return spill != null;
+    }
+
+    @Override
+    public void close() {
+      if (spill != null) {
+        try {
+          Files.deleteIfExists(spill);
+        } catch (IOException e) {
+          logger.warn("Failed to delete spill file {}", spill, e);
         }
       }
     }
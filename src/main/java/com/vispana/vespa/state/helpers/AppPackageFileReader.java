@@ -0,0 +1,179 @@
+package com.vispana.vespa.state.helpers;
+
+import static com.vispana.vespa.state.helpers.Request.requestGetStreaming;
+
+import com.vispana.api.model.apppackage.AppPackageFilePage;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads application package files for display one page at a time, so a file of any size is never
+ * held in memory as a whole. Binary files are recognised from their first bytes rather than their
+ * name, and pages can start at a byte offset or at a line.
+ */
+public class AppPackageFileReader {
+
+  private static final Logger logger = LoggerFactory.getLogger(AppPackageFileReader.class);
+
+  public static final String BINARY_PLACEHOLDER = "// Binary file: Not displayable as text";
+
+  // bytes looked at to tell binary from text
+  static final int SNIFF_BYTES = 8192;
+
+  /** Reads a page of a file on the config server, streaming it instead of buffering it whole. */
+  public static AppPackageFilePage readPage(String fileUrl, long offset, Long line, int maxBytes) {
+    logger.debug("Reading {} bytes of {} from offset {} line {}", maxBytes, fileUrl, offset, line);
+    try {
+      return requestGetStreaming(
+          fileUrl, body -> readPage(fileUrl, body, null, offset, line, maxBytes));
+    } catch (Exception e) {
+      logger.error("Error fetching file content from: {}", fileUrl, e);
+      return new AppPackageFilePage(
+          fileUrl,
+          "// Error reading file: " + e.getMessage(),
+          false,
+          offset,
+          line,
+          offset,
+          line,
+          null,
+          false);
+    }
+  }
+
+  /**
+   * Reads a page of {@code content}, which starts at the beginning of the file. When {@code line}
+   * is given the page starts at that (0-based) line and {@code offset} is ignored. A truncated page
+   * ends after its last complete line, or on a character boundary when a single line is longer than
+   * the page.
+   */
+  public static AppPackageFilePage readPage(
+      String url, InputStream content, Long size, long offset, Long line, int maxBytes)
+      throws IOException {
+    var in = new BufferedInputStream(content, SNIFF_BYTES);
+    in.mark(SNIFF_BYTES);
+    byte[] head = in.readNBytes(SNIFF_BYTES);
+    in.reset();
+    if (isBinary(head, head.length < SNIFF_BYTES)) {
+      return new AppPackageFilePage(
+          url, BINARY_PLACEHOLDER, true, 0, line == null ? null : 0L, 0, null, size, false);
+    }
+
+    long start = line == null ? skipBytes(in, Math.max(0, offset)) : skipLines(in, line);
+    byte[] page = in.readNBytes(Math.max(1, maxBytes) + 1);
+    boolean truncated = page.length > maxBytes;
+    int length = truncated ? pageEnd(page, maxBytes) : page.length;
+
+    Long nextLine = line == null ? null : line + countNewlines(page, length);
+    return new AppPackageFilePage(
+        url,
+        new String(page, 0, length, StandardCharsets.UTF_8),
+        false,
+        start,
+        line,
+        start + length,
+        nextLine,
+        size,
+        truncated);
+  }
+
+  /**
+   * Text has no NUL bytes and is valid UTF-8; a sequence cut off at the end of a partial sample
+   * does not count against it.
+   */
+  static boolean isBinary(byte[] head, boolean wholeFile) {
+    for (byte b : head) {
+      if (b == 0) {
+        return true;
+      }
+    }
+    int length = wholeFile ? head.length : characterBoundary(head, head.length);
+    var decoder =
+        StandardCharsets.UTF_8
+            .newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+    try {
+      decoder.decode(ByteBuffer.wrap(head, 0, length));
+      return false;
+    } catch (CharacterCodingException e) {
+      return true;
+    }
+  }
+
+  private static long skipBytes(InputStream in, long offset) throws IOException {
+    long skipped = 0;
+    while (skipped < offset) {
+      long n = in.skip(offset - skipped);
+      if (n <= 0) {
+        // skip may stop early without being at the end; read to tell
+        if (in.read() == -1) {
+          break;
+        }
+        n = 1;
+      }
+      skipped += n;
+    }
+    return skipped;
+  }
+
+  private static long skipLines(InputStream in, long lines) throws IOException {
+    long position = 0;
+    long newlines = 0;
+    while (newlines < lines) {
+      int b = in.read();
+      if (b == -1) {
+        break;
+      }
+      position++;
+      if (b == '\n') {
+        newlines++;
+      }
+    }
+    return position;
+  }
+
+  /** Where a page that does not fit should end: after its last newline, or on a character. */
+  private static int pageEnd(byte[] page, int maxBytes) {
+    for (int i = maxBytes - 1; i >= 0; i--) {
+      if (page[i] == '\n') {
+        return i + 1;
+      }
+    }
+    int boundary = characterBoundary(page, maxBytes);
+    // a page must make progress even if it cannot end on a boundary
+    return boundary > 0 ? boundary : maxBytes;
+  }
+
+  /** The largest length not splitting a UTF-8 sequence, looking at the last few bytes only. */
+  private static int characterBoundary(byte[] bytes, int length) {
+    for (int i = length - 1; i >= Math.max(0, length - 4); i--) {
+      int b = bytes[i] & 0xFF;
+      if (b < 0x80) {
+        return length;
+      }
+      if (b >= 0xC0) {
+        int sequenceLength = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : 2;
+        return i + sequenceLength <= length ? length : i;
+      }
+    }
+    return length;
+  }
+
+  private static long countNewlines(byte[] bytes, int length) {
+    long count = 0;
+    for (int i = 0; i < length; i++) {
+      if (bytes[i] == '\n') {
+        count++;
+      }
+    }
+    return count;
+  }
+}
@@ -1,10 +1,14 @@
 package com.vispana.vespa.state.helpers;
 
+import static com.vispana.vespa.state.helpers.Request.requestGet;
 import static com.vispana.vespa.state.helpers.Request.requestGetWithDefaultValue;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -90,30 +94,23 @@ public class AppPackageFilesystem {
     }
   }
 
+  /** Directory listings allowed in flight at once when no limit is configured. */
+  public static final int DEFAULT_MAX_CONCURRENT_LISTINGS = 16;
+
   /**
-   * Recursively builds the file tree structure by listing directories. Does NOT download file
-   * contents - only builds the tree structure.
+   * Builds the file tree structure by listing directories. Does NOT download file contents - only
+   * builds the tree structure. Sibling directories are listed concurrently, so the tree takes
+   * roughly as long as its deepest path instead of the sum of all listings.
    */
-  public static FileTree buildFileTree(String configHost) {
+  public static FileTree buildFileTree(String configHost, int maxConcurrentListings) {
     logger.info("Building file tree from configHost: {}", configHost);
     String appUrl = ApplicationUrlFetcher.fetch(configHost);
 
     String contentUrl = appUrl + "/content/";
     logger.info("Content URL: {}", contentUrl);
 
-    Map<String, FileNode> rootChildren = new HashMap<>();
-    int[] counters = new int[2]; // [files, directories]
-
     try {
-      // Start recursive traversal
-      traverseDirectory(contentUrl, contentUrl, rootChildren, counters);
-
-      FileNode root = new FileNode("content", "/", false, rootChildren);
-      logger.info(
-          "Successfully built file tree: {} files, {} directories", counters[0], counters[1]);
-
-      return new FileTree(root, counters[0], counters[1]);
-
+      return crawl(new Crawl(contentUrl, maxConcurrentListings, false));
     } catch (Exception e) {
       logger.error("Error building file tree from: {}", contentUrl, e);
       return new FileTree(new FileNode("content", "/", false, new HashMap<>()), 0, 0);
@@ -121,57 +118,228 @@ public class AppPackageFilesystem {
   }
 
   /**
-   * Recursively traverses directories and builds the tree. Note: This makes HTTP calls for each
-   * directory, but doesn't download file contents. Edge case: If there are thousands of
-   * directories, this could still be slow but won't OOM.
+   * Like {@link #buildFileTree(String, int)} for an already resolved application URL, but fails
+   * instead of skipping directories that cannot be listed, so an incomplete tree is never mistaken
+   * for the whole package.
+   */
+  static FileTree crawlFileTree(String appUrl, int maxConcurrentListings) throws Exception {
+    return crawl(new Crawl(appUrl + "/content/", maxConcurrentListings, true));
+  }
+
+  private static FileTree crawl(Crawl crawl) throws Exception {
+    Map<String, FileNode> rootChildren = new TreeMap<>();
+
+    // Start recursive traversal
+    traverseDirectory(crawl.baseUrl, rootChildren, crawl);
+
+    FileNode root = new FileNode("content", "/", false, rootChildren);
+    logger.info(
+        "Successfully built file tree: {} files, {} directories",
+        crawl.files.get(),
+        crawl.directories.get());
+
+    return new FileTree(root, crawl.files.get(), crawl.directories.get());
+  }
+
+  /** State shared by all directory tasks of one crawl. */
+  private static class Crawl {
+    private final String baseUrl;
+    // bounds the listings in flight, not the tasks: a task waiting on its children holds no permit
+    private final Semaphore listings;
+    private final AtomicInteger files = new AtomicInteger();
+    private final AtomicInteger directories = new AtomicInteger();
+    // fail on a listing error instead of treating the directory as empty
+    private final boolean strict;
+
+    Crawl(String baseUrl, int maxConcurrentListings, boolean strict) {
+      this.baseUrl = baseUrl;
+      this.listings = new Semaphore(Math.max(1, maxConcurrentListings));
+      this.strict = strict;
+    }
+
+    List<String> list(String directoryUrl) throws InterruptedException {
+      listings.acquire();
+      try {
+        logger.debug("Fetching directory listing from: {}", directoryUrl);
+        List<String> entries =
+            strict
+                ? List.of(requestGet(directoryUrl, String[].class))
+                : requestGetWithDefaultValue(directoryUrl, List.class, List.of());
+        logger.debug("Found {} entries at {}", entries.size(), directoryUrl);
+        return entries;
+      } finally {
+        listings.release();
+      }
+    }
+  }
+
+  /**
+   * Lists a directory and traverses its subdirectories concurrently, each in its own virtual
+   * thread. Virtual threads are scheduled on a work-stealing pool, so deep and wide branches keep
+   * all carriers busy. Each directory task is the only writer of its own children map, and the join
+   * makes those writes visible to the parent; sorted maps keep the output deterministic.
    */
   private static void traverseDirectory(
-      String currentUrl, String baseUrl, Map<String, FileNode> parentChildren, int[] counters) {
+      String currentUrl, Map<String, FileNode> parentChildren, Crawl crawl) throws Exception {
 
     // Get list of entries in current directory
-    logger.debug("Fetching directory listing from: {}", currentUrl);
-    List<String> entries = requestGetWithDefaultValue(currentUrl, List.class, List.of());
-    logger.debug("Found {} entries at {}", entries.size(), currentUrl);
+    List<String> entries = crawl.list(currentUrl);
+
+    try (var scope = new StructuredTaskScope.ShutdownOnFailure()) {
+      for (String entry : entries) {
+        FileNode node = entryNode(currentUrl, crawl.baseUrl, entry);
+        parentChildren.put(node.getName(), node);
+
+        if (!node.isFile()) {
+          crawl.directories.incrementAndGet();
+
+          // Traverse subdirectory concurrently with its siblings
+          String resolvedUrl = resolveUrl(currentUrl, entry);
+          scope.fork(
+              () -> {
+                traverseDirectory(resolvedUrl, node.getChildren(), crawl);
+                return null;
+              });
+
+        } else {
+          crawl.files.incrementAndGet();
+        }
+      }
+      scope.join().throwIfFailed();
+    }
+  }
+
+  /**
+   * Lists a single directory of the application package, without descending into it. Directories in
+   * the result have no children; they are listed on demand with another call. {@code path} is
+   * relative to the package root, and empty for the root itself.
+   */
+  public static FileTree listDirectory(String configHost, String path) {
+    String relativePath = normalizeDirectoryPath(path);
+    String contentUrl = ApplicationUrlFetcher.fetch(configHost) + "/content/";
+    String directoryUrl = contentUrl + relativePath;
+
+    logger.debug("Fetching directory listing from: {}", directoryUrl);
+    List<String> entries = requestGetWithDefaultValue(directoryUrl, List.class, List.of());
 
+    Map<String, FileNode> children = new TreeMap<>();
+    int files = 0;
     for (String entry : entries) {
-      // Vespa returns either full URLs or relative paths
-      String resolvedUrl = resolveUrl(currentUrl, entry);
-      boolean isDirectory = entry.endsWith("/");
-
-      // Extract the name (last segment of path)
-      String name = extractName(entry);
-
-      // Calculate relative path from base
-      String relativePath = resolvedUrl.substring(baseUrl.length());
-
-      logger.debug(
-          "Entry: '{}' | isDirectory: {} | name: '{}' | relativePath: '{}'",
-          entry,
-          isDirectory,
-          name,
-          relativePath);
-
-      if (isDirectory) {
-        // Create directory node
-        Map<String, FileNode> children = new HashMap<>();
-        FileNode dirNode = new FileNode(name, relativePath, false, children);
-        parentChildren.put(name, dirNode);
-        counters[1]++; // increment directory count
-
-        logger.debug("Created DIRECTORY node: {}", name);
-
-        // Recursively traverse subdirectory
-        traverseDirectory(resolvedUrl, baseUrl, children, counters);
-
-      } else {
-        // Create file node (no content)
-        FileNode fileNode = new FileNode(name, relativePath, true, null);
-        parentChildren.put(name, fileNode);
-        counters[0]++; // increment file count
-
-        logger.debug("Created FILE node: {}", name);
+      FileNode node = entryNode(directoryUrl, contentUrl, entry);
+      children.put(node.getName(), node);
+      files += node.isFile() ? 1 : 0;
+    }
+
+    String name = relativePath.isEmpty() ? "content" : extractName(relativePath);
+    FileNode directory =
+        new FileNode(name, relativePath.isEmpty() ? "/" : relativePath, false, children);
+    return new FileTree(directory, files, children.size() - files);
+  }
+
+  /**
+   * Lists a single directory of an already built tree, in the same shape as {@link
+   * #listDirectory(String, String)}: subdirectories are returned without their children.
+   */
+  public static FileTree listDirectory(FileTree tree, String path) {
+    String relativePath = normalizeDirectoryPath(path);
+    FileNode directory = tree.getRoot();
+    for (String segment : relativePath.split("/")) {
+      if (segment.isEmpty()) {
+        continue;
       }
+      directory = directory.getChildren().get(segment);
+      if (directory == null || directory.isFile()) {
+        throw new IllegalArgumentException("No such directory in the application package: " + path);
+      }
+    }
+
+    Map<String, FileNode> children = new TreeMap<>();
+    int files = 0;
+    for (FileNode child : directory.getChildren().values()) {
+      children.put(
+          child.getName(),
+          child.isFile()
+              ? child
+              : new FileNode(child.getName(), child.getPath(), false, new TreeMap<>()));
+      files += child.isFile() ? 1 : 0;
+    }
+    return new FileTree(
+        new FileNode(directory.getName(), directory.getPath(), false, children),
+        files,
+        children.size() - files);
+  }
+
+  /**
+   * Rebuilds a tree from the relative paths of its directories ("schemas/") and files
+   * ("schemas/music.sd"), as stored by the application package mirror.
+   */
+  static FileTree treeFromPaths(Collection<String> directoryPaths, Collection<String> filePaths) {
+    FileNode root = new FileNode("content", "/", false, new TreeMap<>());
+    for (String directoryPath : directoryPaths) {
+      directoryNode(root, directoryPath);
+    }
+    for (String filePath : filePaths) {
+      int lastSlash = filePath.lastIndexOf('/');
+      FileNode parent =
+          lastSlash < 0 ? root : directoryNode(root, filePath.substring(0, lastSlash + 1));
+      String name = filePath.substring(lastSlash + 1);
+      parent.addChild(name, new FileNode(name, filePath, true, null));
     }
+    return new FileTree(root, filePaths.size(), directoryPaths.size());
+  }
+
+  private static FileNode directoryNode(FileNode root, String directoryPath) {
+    FileNode directory = root;
+    int start = 0;
+    for (int end = directoryPath.indexOf('/'); end >= 0; end = directoryPath.indexOf('/', start)) {
+      String name = directoryPath.substring(start, end);
+      String path = directoryPath.substring(0, end + 1);
+      directory =
+          directory
+              .getChildren()
+              .computeIfAbsent(name, n -> new FileNode(n, path, false, new TreeMap<>()));
+      start = end + 1;
+    }
+    return directory;
+  }
+
+  /** Creates the (content-less) node for one entry of a directory listing. */
+  private static FileNode entryNode(String currentUrl, String baseUrl, String entry) {
+    // Vespa returns either full URLs or relative paths
+    String resolvedUrl = resolveUrl(currentUrl, entry);
+    boolean isDirectory = entry.endsWith("/");
+
+    // Extract the name (last segment of path)
+    String name = extractName(entry);
+
+    // Calculate relative path from base
+    String relativePath = resolvedUrl.substring(baseUrl.length());
+
+    logger.debug(
+        "Entry: '{}' | isDirectory: {} | name: '{}' | relativePath: '{}'",
+        entry,
+        isDirectory,
+        name,
+        relativePath);
+
+    return isDirectory
+        ? new FileNode(name, relativePath, false, new TreeMap<>())
+        : new FileNode(name, relativePath, true, null);
+  }
+
+  /** Turns "/", "schemas" or "/schemas/" into "" or "schemas/", rejecting parent references. */
+  static String normalizeDirectoryPath(String path) {
+    String normalized = path == null ? "" : path.trim();
+    while (normalized.startsWith("/")) {
+      normalized = normalized.substring(1);
+    }
+    if (Arrays.asList(normalized.split("/")).contains("..")) {
+      throw new IllegalArgumentException("Path must stay inside the application package: " + path);
+    }
+    if (!normalized.isEmpty() && !normalized.endsWith("/")) {
+      normalized += "/";
+    }
+    return normalized;
   }
 
   /** Resolves relative URLs to absolute URLs */
@@ -195,27 +363,4 @@ public class AppPackageFilesystem {
     int lastSlash = cleaned.lastIndexOf('/');
     return lastSlash >= 0 ? cleaned.substring(lastSlash + 1) : cleaned;
   }
-
-  /**
-   * Fetches the content of a single file. This is called on-demand when user clicks on a file in
-   * the UI.
-   */
-  public static String getFileContent(String fileUrl) {
-    logger.info("Fetching file content from: {}", fileUrl);
-
-    try {
-      // Try to get as String (for text files)
-      String content = requestGetWithDefaultValue(fileUrl, String.class, "");
-      if (content.isEmpty()) {
-        logger.warn("File content is empty or unreadable: {}", fileUrl);
-        return "// Empty file or could not read as text";
-      }
-      logger.info("Successfully fetched file content ({} chars)", content.length());
-      return content;
-
-    } catch (Exception e) {
-      logger.error("Error fetching file content from: {}", fileUrl, e);
-      return "// Error reading file: " + e.getMessage();
-    }
-  }
 }
@@ -0,0 +1,770 @@
+package com.vispana.vespa.state.helpers;
+
+import static com.vispana.vespa.state.helpers.Request.requestGet;
+import static com.vispana.vespa.state.helpers.Request.requestGetStreaming;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vispana.api.model.apppackage.AppPackageChangeSummary;
+import com.vispana.client.vespa.model.ApplicationSchema;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Mirrors the application package to a local cache directory, so the tree, file and ZIP endpoints
+ * do not go back to the config server on every call. The package only changes on redeploy, so a
+ * mirror is keyed by application and generation and is replaced only once the generation changes.
+ *
+ * <p>File contents are stored once per SHA-256 under {@code blobs/}, which lets generations share
+ * unchanged files; {@code manifests/} maps the paths of each generation to their blobs and {@code
+ * archives/} holds the exports, built per format in the background on first download. Manifests are
+ * written last, so a mirror interrupted half-way is simply done again and survives restarts once
+ * complete.
+ *
+ * <p>Requests never wait for a mirror: a new generation is mirrored in the background and requests
+ * go to the config server until it is complete. Readers hold a {@link Lease} on the generation they
+ * read, and files of replaced generations are only deleted once no lease is left on them.
+ */
+@Component
+public class AppPackageMirror implements MeterBinder {
+
+  private static final Logger logger = LoggerFactory.getLogger(AppPackageMirror.class);
+  private static final ObjectMapper objectMapper =
+      new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+  private static final int DEFAULT_CONCURRENT_DOWNLOADS = 8;
+
+  private final boolean enabled;
+  private final Path blobDir;
+  private final Path manifestDir;
+  private final Path archiveDir;
+  private final Path tmpDir;
+  private final int concurrentDownloads;
+  private final int maxConcurrentListings;
+  private final PackageArchiveWriter.Settings archiveSettings;
+
+  // snapshot key -> snapshot; completed by the background mirror of that generation
+  private final Map<String, CompletableFuture<AppPackageSnapshot>> snapshots =
+      new ConcurrentHashMap<>();
+  // application prefix -> key of the newest generation mirrored; the others are cleaned up
+  private final Map<String, String> currentKeys = new ConcurrentHashMap<>();
+  // mirroring and every lease hold the read lock, the first while writing blobs not yet referenced
+  // by any manifest, the others while reading the blobs of their generation, so the clean-up of
+  // replaced generations (write lock) removes neither
+  private final ReadWriteLock blobLock = new ReentrantReadWriteLock();
+  private final AtomicBoolean cleanUpPending = new AtomicBoolean();
+  private final LongAdder snapshotHits = new LongAdder();
+  private final LongAdder snapshotMisses = new LongAdder();
+  private final LongAdder bytesDownloaded = new LongAdder();
+  private final LongAdder bytesReused = new LongAdder();
+
+  AppPackageMirror(Path cacheDir) {
+    this(
+        true,
+        cacheDir.toString(),
+        DEFAULT_CONCURRENT_DOWNLOADS,
+        AppPackageFilesystem.DEFAULT_MAX_CONCURRENT_LISTINGS,
+        PackageArchiveWriter.Settings.DEFAULT.deflateLevel(),
+        PackageArchiveWriter.Settings.DEFAULT.zstdLevel());
+  }
+
+  @Autowired
+  public AppPackageMirror(
+      @Value("${vispana.apppackage.mirror.enabled:true}") boolean enabled,
+      @Value("${vispana.apppackage.mirror.cache-dir:${java.io.tmpdir}/vispana-apppackage}")
+          String cacheDir,
+      @Value("${vispana.apppackage.mirror.concurrent-downloads:8}") int concurrentDownloads,
+      @Value("${vispana.apppackage.max-concurrent-listings:16}") int maxConcurrentListings,
+      @Value("${vispana.apppackage.archive.deflate-level:-1}") int deflateLevel,
+      @Value("${vispana.apppackage.archive.zstd-level:3}") int zstdLevel) {
+    this.enabled = enabled;
+    Path root = Path.of(cacheDir);
+    this.blobDir = root.resolve("blobs");
+    this.manifestDir = root.resolve("manifests");
+    this.archiveDir = root.resolve("archives");
+    this.tmpDir = root.resolve("tmp");
+    this.concurrentDownloads = Math.max(1, concurrentDownloads);
+    this.maxConcurrentListings = maxConcurrentListings;
+    this.archiveSettings = new PackageArchiveWriter.Settings(deflateLevel, zstdLevel);
+  }
+
+  /**
+   * A lease on the mirror of the currently deployed generation, to be closed once done reading it.
+   * Empty when mirroring is disabled, failed or is still in progress, in which case callers go to
+   * the config server directly; a generation not mirrored yet starts mirroring in the background.
+   */
+  public Optional<Lease> tryLease(String configHost) {
+    if (!enabled) {
+      return Optional.empty();
+    }
+    try {
+      String appUrl = ApplicationUrlFetcher.fetch(configHost);
+      long generation = requestGet(appUrl, ApplicationSchema.class).getGeneration();
+      var mirrored = mirrorInBackground(appUrl, generation);
+      if (!mirrored.isDone() || mirrored.isCompletedExceptionally()) {
+        return Optional.empty();
+      }
+      return lease(mirrored.join());
+    } catch (RuntimeException e) {
+      logger.warn("Application package mirror unavailable, using config server: {}", e.toString());
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * The mirror of the currently deployed generation, waiting for it to be mirrored if need be. Only
+   * the generation is fetched when it is already mirrored; otherwise the package is mirrored first,
+   * once, however many callers ask.
+   */
+  AppPackageSnapshot snapshot(String configHost) {
+    String appUrl = ApplicationUrlFetcher.fetch(configHost);
+    long generation = requestGet(appUrl, ApplicationSchema.class).getGeneration();
+    return await(mirrorInBackground(appUrl, generation));
+  }
+
+  /** The mirror of a generation, started on a virtual thread unless it is mirrored already. */
+  private CompletableFuture<AppPackageSnapshot> mirrorInBackground(String appUrl, long generation) {
+    String key = snapshotKey(appUrl, generation);
+    var pending = new CompletableFuture<AppPackageSnapshot>();
+    var existing = snapshots.putIfAbsent(key, pending);
+    if (existing != null) {
+      snapshotHits.increment();
+      return existing;
+    }
+
+    snapshotMisses.increment();
+    Thread.ofVirtual()
+        .name("apppackage-mirror-" + key)
+        .start(
+            () -> {
+              try {
+                var snapshot = load(appUrl, generation, key);
+                evictOtherGenerations(snapshot);
+                pending.complete(snapshot);
+              } catch (RuntimeException e) {
+                logger.warn("Failed to mirror application package {}: {}", appUrl, e.toString());
+                // let the next request try again
+                snapshots.remove(key, pending);
+                pending.completeExceptionally(e);
+              }
+            });
+    return pending;
+  }
+
+  /**
+   * Leases a snapshot unless it was replaced by a newer generation in the meantime. The read lock
+   * is taken before checking, and replaced generations leave the map before they are cleaned up
+   * under the write lock, so a snapshot found here keeps its files until the lease is closed.
+   */
+  private Optional<Lease> lease(AppPackageSnapshot snapshot) {
+    blobLock.readLock().lock();
+    var mirrored = snapshots.get(snapshot.getKey());
+    if (mirrored == null || !mirrored.isDone() || mirrored.join() != snapshot) {
+      blobLock.readLock().unlock();
+      return Optional.empty();
+    }
+    return Optional.of(new Lease(snapshot));
+  }
+
+  /**
+   * Keeps the files of a snapshot from being cleaned up while it is read. Closed by the thread that
+   * took it.
+   */
+  public final class Lease implements AutoCloseable {
+
+    private final AppPackageSnapshot snapshot;
+    private boolean closed;
+
+    private Lease(AppPackageSnapshot snapshot) {
+      this.snapshot = snapshot;
+    }
+
+    public AppPackageSnapshot snapshot() {
+      return snapshot;
+    }
+
+    @Override
+    public void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      blobLock.readLock().unlock();
+      // the last reader of a replaced generation does the clean-up it held back
+      cleanUp();
+    }
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    FunctionCounter.builder("cache.gets", snapshotHits, LongAdder::sum)
+        .tags("cache", "apppackage-snapshots", "result", "hit")
+        .register(registry);
+    FunctionCounter.builder("cache.gets", snapshotMisses, LongAdder::sum)
+        .tags("cache", "apppackage-snapshots", "result", "miss")
+        .register(registry);
+    Gauge.builder("cache.size", snapshots, Map::size)
+        .tag("cache", "apppackage-snapshots")
+        .register(registry);
+    FunctionCounter.builder("vispana.apppackage.mirror.synced", bytesDownloaded, LongAdder::sum)
+        .description("Bytes of mirrored files, downloaded or reused from earlier generations")
+        .baseUnit("bytes")
+        .tag("source", "downloaded")
+        .register(registry);
+    FunctionCounter.builder("vispana.apppackage.mirror.synced", bytesReused, LongAdder::sum)
+        .description("Bytes of mirrored files, downloaded or reused from earlier generations")
+        .baseUnit("bytes")
+        .tag("source", "reused")
+        .register(registry);
+  }
+
+  /**
+   * The export of a leased snapshot in the given format, when it is built already. Otherwise it is
+   * built in the background, once however many callers ask, and the caller serves the download from
+   * the config server meanwhile rather than waiting for the whole archive.
+   */
+  public Optional<Path> tryArchive(Lease lease, ArchiveFormat format) {
+    var snapshot = lease.snapshot();
+    Path archive = archivePath(snapshot, format);
+    if (Files.exists(archive)) {
+      return Optional.of(archive);
+    }
+    if (snapshot.archivesBuilding.add(format)) {
+      Thread.ofVirtual()
+          .name("apppackage-archive-" + snapshot.getKey() + "." + format.getFileExtension())
+          .start(
+              () -> {
+                // a lease of its own, as a lease is released by the thread that took it
+                try (var building = lease(snapshot).orElse(null)) {
+                  if (building != null) {
+                    archive(snapshot, format);
+                  }
+                } catch (IOException | RuntimeException e) {
+                  logger.warn(
+                      "Failed to build {} export for {}: {}",
+                      format,
+                      snapshot.getKey(),
+                      e.toString());
+                } finally {
+                  snapshot.archivesBuilding.remove(format);
+                }
+              });
+    }
+    return Optional.empty();
+  }
+
+  /** The export of a snapshot in the given format, built from the mirrored blobs on first use. */
+  Path archive(AppPackageSnapshot snapshot, ArchiveFormat format) throws IOException {
+    Path archive = archivePath(snapshot, format);
+    snapshot.archiveLock.lock();
+    try {
+      if (Files.exists(archive)) {
+        return archive;
+      }
+      Files.createDirectories(archiveDir);
+      Path partial = Files.createTempFile(tmpDir(), snapshot.getKey(), ".part");
+      try {
+        try (var out = Files.newOutputStream(partial);
+            var writer = PackageArchiveWriter.open(format, out, archiveSettings)) {
+          writeEntries(writer, snapshot.getTree().getRoot(), snapshot);
+          writer.finish();
+        }
+        Files.move(partial, archive, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(partial);
+      }
+      logger.info(
+          "Built {} export for {} ({} bytes)", format, snapshot.getKey(), Files.size(archive));
+      return archive;
+    } finally {
+      snapshot.archiveLock.unlock();
+    }
+  }
+
+  private Path archivePath(AppPackageSnapshot snapshot, ArchiveFormat format) {
+    return archiveDir.resolve(snapshot.getKey() + "." + format.getFileExtension());
+  }
+
+  private static void writeEntries(
+      PackageArchiveWriter writer,
+      AppPackageFilesystem.FileNode directory,
+      AppPackageSnapshot snapshot)
+      throws IOException {
+    for (var child : directory.getChildren().values()) {
+      if (child.isFile()) {
+        Path blob = snapshot.blobs().get(child.getPath());
+        writer.putFile(child.getPath(), Files.size(blob), -1, () -> Files.newInputStream(blob));
+      } else {
+        writer.putDirectory(child.getPath());
+        writeEntries(writer, child, snapshot);
+      }
+    }
+  }
+
+  private AppPackageSnapshot load(String appUrl, long generation, String key) {
+    blobLock.readLock().lock();
+    try {
+      Path manifestFile = manifestDir.resolve(key + ".json");
+      var manifest = readManifest(manifestFile);
+      if (manifest.isEmpty()) {
+        var mirrored = mirror(appUrl, generation);
+        writeManifest(manifestFile, mirrored);
+        manifest = Optional.of(mirrored);
+      }
+      return snapshot(manifest.get(), key);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to mirror application package " + appUrl, e);
+    } finally {
+      blobLock.readLock().unlock();
+    }
+  }
+
+  private AppPackageSnapshot snapshot(Manifest manifest, String key) {
+    var blobs = new HashMap<String, Path>();
+    manifest.files().forEach((path, sha) -> blobs.put(path, blobPath(sha)));
+    var tree =
+        AppPackageFilesystem.treeFromPaths(manifest.directories(), manifest.files().keySet());
+    return new AppPackageSnapshot(
+        manifest.appUrl(), manifest.generation(), key, tree, blobs, manifest.changes());
+  }
+
+  /**
+   * Brings the blob store up to date with the package. When the config server lists the package
+   * with per-file MD5s, only files whose content is not stored yet are downloaded, so a redeploy
+   * costs its changed files. Otherwise the package is crawled and every file downloaded.
+   */
+  private Manifest mirror(String appUrl, long generation) throws IOException {
+    logger.info("Mirroring application package {} at generation {}", appUrl, generation);
+    long start = System.nanoTime();
+    String contentUrl = appUrl + "/content/";
+
+    var previous = previousManifest(appUrl, generation);
+    var listing = hashedListing(contentUrl);
+    boolean incremental = listing.isPresent();
+    if (listing.isEmpty()) {
+      listing = Optional.of(crawledListing(appUrl));
+    }
+    // content already stored, by MD5, from any generation mirrored before
+    var storedByMd5 = storedByMd5();
+
+    Map<String, String> files = new ConcurrentHashMap<>();
+    Map<String, String> md5s = new ConcurrentHashMap<>();
+    var downloaded = new AtomicLong();
+    var filesDownloaded = new AtomicInteger();
+    var reused = new AtomicLong();
+    var downloads = new Semaphore(concurrentDownloads);
+    try (var scope = new StructuredTaskScope.ShutdownOnFailure()) {
+      for (var file : listing.get().md5ByPath().entrySet()) {
+        String path = file.getKey();
+        String md5 = file.getValue();
+        String storedSha = md5 == null ? null : storedByMd5.get(md5);
+        if (storedSha != null && Files.exists(blobPath(storedSha))) {
+          files.put(path, storedSha);
+          md5s.put(path, md5);
+          reused.addAndGet(Files.size(blobPath(storedSha)));
+          continue;
+        }
+        scope.fork(
+            () -> {
+              downloads.acquire();
+              try {
+                var blob = requestGetStreaming(contentUrl + path, this::storeBlob);
+                files.put(path, blob.sha());
+                md5s.put(path, blob.md5());
+                downloaded.addAndGet(blob.size());
+                filesDownloaded.incrementAndGet();
+              } finally {
+                downloads.release();
+              }
+              return null;
+            });
+      }
+      scope.join().throwIfFailed();
+    } catch (Exception e) {
+      throw new IOException("Failed to download application package " + appUrl, e);
+    }
+
+    var changes =
+        changes(
+            previous,
+            generation,
+            incremental ? "incremental" : "full",
+            files,
+            filesDownloaded.get(),
+            downloaded.get(),
+            reused.get(),
+            (System.nanoTime() - start) / 1_000_000.0);
+    bytesDownloaded.add(changes.bytesDownloaded());
+    bytesReused.add(reused.get());
+    logger.info(
+        "Mirrored {} files of {} ({} sync): {} added, {} changed, {} removed, {} bytes downloaded",
+        files.size(),
+        appUrl,
+        changes.syncMode(),
+        changes.added().size(),
+        changes.changed().size(),
+        changes.removed().size(),
+        changes.bytesDownloaded());
+    return new Manifest(
+        appUrl,
+        generation,
+        listing.get().directories(),
+        new TreeMap<>(files),
+        new TreeMap<>(md5s),
+        changes);
+  }
+
+  /** The paths of a package and, when known, the MD5 of each file. */
+  private record Listing(List<String> directories, Map<String, String> md5ByPath) {}
+
+  /** One entry of a {@code return=status} listing. */
+  private record StatusEntry(String name, String md5, String status) {}
+
+  /**
+   * Lists the whole package with the MD5 of every file in one request, or returns empty when the
+   * config server does not provide them.
+   */
+  private Optional<Listing> hashedListing(String contentUrl) {
+    StatusEntry[] entries;
+    try {
+      entries =
+          objectMapper.readValue(
+              requestGet(contentUrl + "?recursive=true&return=status", String.class),
+              StatusEntry[].class);
+    } catch (Exception e) {
+      logger.debug(
+          "No hashed listing of {}, falling back to a full fetch: {}", contentUrl, e.toString());
+      return Optional.empty();
+    }
+
+    var directories = new TreeSet<String>();
+    var md5ByPath = new TreeMap<String, String>();
+    for (var entry : entries) {
+      if (entry.name() == null || !entry.name().startsWith(contentUrl)) {
+        return Optional.empty();
+      }
+      String path = entry.name().substring(contentUrl.length());
+      if (path.isEmpty()) {
+        continue;
+      }
+      if (path.endsWith("/")) {
+        directories.add(path);
+        continue;
+      }
+      if (entry.md5() == null || entry.md5().isBlank()) {
+        return Optional.empty();
+      }
+      md5ByPath.put(path, entry.md5().toLowerCase(Locale.ROOT));
+      // listings may leave out directories; every parent of a file is one
+      for (int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', slash + 1)) {
+        directories.add(path.substring(0, slash + 1));
+      }
+    }
+    return Optional.of(new Listing(List.copyOf(directories), md5ByPath));
+  }
+
+  private Listing crawledListing(String appUrl) throws IOException {
+    AppPackageFilesystem.FileTree tree;
+    try {
+      tree = AppPackageFilesystem.crawlFileTree(appUrl, maxConcurrentListings);
+    } catch (Exception e) {
+      throw new IOException("Failed to list application package " + appUrl, e);
+    }
+    var directories = new ArrayList<String>();
+    var filePaths = new ArrayList<String>();
+    collectPaths(tree.getRoot(), directories, filePaths);
+    var md5ByPath = new TreeMap<String, String>();
+    filePaths.forEach(path -> md5ByPath.put(path, null));
+    return new Listing(directories, md5ByPath);
+  }
+
+  private static AppPackageChangeSummary changes(
+      Optional<Manifest> previous,
+      long generation,
+      String syncMode,
+      Map<String, String> files,
+      int filesDownloaded,
+      long bytesDownloaded,
+      long bytesReused,
+      double durationMs) {
+    Map<String, String> before = previous.map(Manifest::files).orElse(Map.of());
+    var added = new ArrayList<String>();
+    var changed = new ArrayList<String>();
+    int unchanged = 0;
+    for (var file : new TreeMap<>(files).entrySet()) {
+      String previousSha = before.get(file.getKey());
+      if (previousSha == null) {
+        added.add(file.getKey());
+      } else if (!previousSha.equals(file.getValue())) {
+        changed.add(file.getKey());
+      } else {
+        unchanged++;
+      }
+    }
+    var removed =
+        before.keySet().stream().filter(path -> !files.containsKey(path)).sorted().toList();
+    return new AppPackageChangeSummary(
+        previous.map(Manifest::generation).orElse(null),
+        generation,
+        syncMode,
+        added,
+        changed,
+        removed,
+        unchanged,
+        filesDownloaded,
+        bytesDownloaded,
+        bytesReused,
+        durationMs);
+  }
+
+  /** The manifest of the newest generation of the application mirrored before this one. */
+  private Optional<Manifest> previousManifest(String appUrl, long generation) throws IOException {
+    Manifest newest = null;
+    for (var manifest : manifests(appPrefix(appUrl))) {
+      if (manifest.generation() < generation
+          && (newest == null || manifest.generation() > newest.generation())) {
+        newest = manifest;
+      }
+    }
+    return Optional.ofNullable(newest);
+  }
+
+  private Map<String, String> storedByMd5() throws IOException {
+    var storedByMd5 = new HashMap<String, String>();
+    for (var manifest : manifests("")) {
+      manifest.md5s().forEach((path, md5) -> storedByMd5.put(md5, manifest.files().get(path)));
+    }
+    return storedByMd5;
+  }
+
+  /** Every complete manifest whose file name starts with the prefix. */
+  private List<Manifest> manifests(String prefix) throws IOException {
+    if (!Files.isDirectory(manifestDir)) {
+      return List.of();
+    }
+    var manifests = new ArrayList<Manifest>();
+    try (Stream<Path> files = Files.list(manifestDir)) {
+      for (Path file : files.toList()) {
+        if (file.getFileName().toString().startsWith(prefix)) {
+          readManifest(file).ifPresent(manifests::add);
+        }
+      }
+    }
+    return manifests;
+  }
+
+  private static void collectPaths(
+      AppPackageFilesystem.FileNode directory, List<String> directories, List<String> files) {
+    for (var child : directory.getChildren().values()) {
+      if (child.isFile()) {
+        files.add(child.getPath());
+      } else {
+        directories.add(child.getPath());
+        collectPaths(child, directories, files);
+      }
+    }
+  }
+
+  /** A file as stored in the blob store. */
+  record StoredBlob(String sha, String md5, long size) {}
+
+  /** Stores a file in the blob store, identified by its SHA-256; identical content is kept once. */
+  StoredBlob storeBlob(InputStream content) throws IOException {
+    Path partial = Files.createTempFile(tmpDir(), "blob-", ".part");
+    try {
+      var md5 = new DigestInputStream(content, digest("MD5"));
+      var sha256 = new DigestInputStream(md5, sha256());
+      long size = Files.copy(sha256, partial, StandardCopyOption.REPLACE_EXISTING);
+      String sha = HexFormat.of().formatHex(sha256.getMessageDigest().digest());
+
+      Path blob = blobPath(sha);
+      if (!Files.exists(blob)) {
+        Files.createDirectories(blob.getParent());
+        Files.move(partial, blob, StandardCopyOption.ATOMIC_MOVE);
+      }
+      return new StoredBlob(sha, HexFormat.of().formatHex(md5.getMessageDigest().digest()), size);
+    } finally {
+      Files.deleteIfExists(partial);
+    }
+  }
+
+  private Path blobPath(String sha) {
+    return blobDir.resolve(sha.substring(0, 2)).resolve(sha);
+  }
+
+  private Path tmpDir() throws IOException {
+    return Files.createDirectories(tmpDir);
+  }
+
+  /**
+   * Drops every other generation of the snapshot's application: from memory right away, so no new
+   * lease is taken on them, and from disk once no lease or mirror in progress holds the blobs.
+   */
+  private void evictOtherGenerations(AppPackageSnapshot current) {
+    String prefix = appPrefix(current.getAppUrl());
+    currentKeys.put(prefix, current.getKey());
+    snapshots.keySet().removeIf(key -> key.startsWith(prefix) && !key.equals(current.getKey()));
+    cleanUpPending.set(true);
+    cleanUp();
+  }
+
+  /**
+   * Deletes the manifests and exports of replaced generations and the blobs no remaining manifest
+   * refers to. Skipped while the blobs are in use; whoever releases them last tries again.
+   */
+  private void cleanUp() {
+    if (!cleanUpPending.get() || !blobLock.writeLock().tryLock()) {
+      return;
+    }
+    try {
+      cleanUpPending.set(false);
+      for (Path dir : List.of(manifestDir, archiveDir)) {
+        if (!Files.isDirectory(dir)) {
+          continue;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+          for (Path file : files.toList()) {
+            if (isReplaced(file.getFileName().toString())) {
+              Files.deleteIfExists(file);
+            }
+          }
+        }
+      }
+      removeUnreferencedBlobs();
+    } catch (IOException e) {
+      logger.warn("Failed to clean up old application package generations", e);
+    } finally {
+      blobLock.writeLock().unlock();
+    }
+  }
+
+  /** Whether a manifest or export belongs to a generation older than the one mirrored last. */
+  private boolean isReplaced(String fileName) {
+    for (var current : currentKeys.entrySet()) {
+      if (fileName.startsWith(current.getKey())) {
+        return !fileName.startsWith(current.getValue() + ".");
+      }
+    }
+    return false;
+  }
+
+  private void removeUnreferencedBlobs() throws IOException {
+    if (!Files.isDirectory(manifestDir) || !Files.isDirectory(blobDir)) {
+      return;
+    }
+    var referenced = new HashSet<String>();
+    try (Stream<Path> manifests = Files.list(manifestDir)) {
+      for (Path manifestFile : manifests.toList()) {
+        readManifest(manifestFile).ifPresent(m -> referenced.addAll(m.files().values()));
+      }
+    }
+    try (Stream<Path> blobs = Files.walk(blobDir)) {
+      for (Path blob : blobs.filter(Files::isRegularFile).toList()) {
+        if (!referenced.contains(blob.getFileName().toString())) {
+          Files.deleteIfExists(blob);
+        }
+      }
+    }
+  }
+
+  /** The manifest, when present and all its blobs are still there. */
+  private Optional<Manifest> readManifest(Path manifestFile) throws IOException {
+    if (!Files.exists(manifestFile)) {
+      return Optional.empty();
+    }
+    var manifest = objectMapper.readValue(manifestFile.toFile(), Manifest.class);
+    boolean complete = manifest.files().values().stream().allMatch(s -> Files.exists(blobPath(s)));
+    return complete ? Optional.of(manifest) : Optional.empty();
+  }
+
+  private void writeManifest(Path manifestFile, Manifest manifest) throws IOException {
+    Files.createDirectories(manifestDir);
+    Path partial = Files.createTempFile(tmpDir(), "manifest-", ".json");
+    try {
+      objectMapper.writeValue(partial.toFile(), manifest);
+      Files.move(partial, manifestFile, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(partial);
+    }
+  }
+
+  static String snapshotKey(String appUrl, long generation) {
+    return appPrefix(appUrl) + generation;
+  }
+
+  private static String appPrefix(String appUrl) {
+    byte[] hash = sha256().digest(appUrl.getBytes(StandardCharsets.UTF_8));
+    return HexFormat.of().formatHex(hash, 0, 8) + "-";
+  }
+
+  private static MessageDigest sha256() {
+    return digest("SHA-256");
+  }
+
+  private static MessageDigest digest(String algorithm) {
+    try {
+      return MessageDigest.getInstance(algorithm);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(algorithm + " not available", e);
+    }
+  }
+
+  private static AppPackageSnapshot await(CompletableFuture<AppPackageSnapshot> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * What is stored per generation: its directories, per file path the blob's SHA-256 and MD5, and
+   * what changed since the generation before.
+   */
+  record Manifest(
+      String appUrl,
+      long generation,
+      List<String> directories,
+      Map<String, String> files,
+      Map<String, String> md5s,
+      AppPackageChangeSummary changes) {
+
+    Manifest {
+      // manifests written before MD5s and changes were recorded
+      md5s = md5s == null ? Map.of() : md5s;
+    }
+  }
+}
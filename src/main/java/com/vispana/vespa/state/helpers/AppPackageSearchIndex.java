@@ -0,0 +1,350 @@
+package com.vispana.vespa.state.helpers;
+
+import com.vispana.api.model.apppackage.AppPackageSearchHit;
+import com.vispana.api.model.apppackage.AppPackageSearchResult;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Full-text index over the text files of a mirrored application package generation: schemas, rank
+ * profiles, query profiles and the like.
+ *
+ * <p>Symbol queries are answered from an inverted index (token to files, and per file to line and
+ * column). Substring queries only scan the files containing every trigram of the query. Files are
+ * indexed per blob, so when the generation changes only the files whose content changed are indexed
+ * again.
+ */
+@Component
+public class AppPackageSearchIndex {
+
+  private static final Logger logger = LoggerFactory.getLogger(AppPackageSearchIndex.class);
+
+  private static final Pattern TOKEN = Pattern.compile("[\\p{L}\\p{N}_]+");
+  // longer lines are cut in the hits
+  private static final int MAX_HIT_TEXT = 300;
+
+  public enum Mode {
+    SYMBOL,
+    SUBSTRING;
+
+    public static Mode parseFrom(String name) {
+      try {
+        return Mode.valueOf(name.trim().toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException(
+            "Unknown search mode: " + name + ", expected one of symbol, substring");
+      }
+    }
+  }
+
+  // larger files are not indexed
+  private final long maxFileBytes;
+
+  // snapshot key -> index of that generation; only the latest generation of an application is kept
+  private final Map<String, CompletableFuture<GenerationIndex>> generations =
+      new ConcurrentHashMap<>();
+  // blob SHA-256 -> index of that content, shared by all paths and generations having it
+  private final Map<String, FileIndex> fileIndexes = new ConcurrentHashMap<>();
+  private final AtomicInteger filesIndexed = new AtomicInteger();
+
+  public AppPackageSearchIndex(
+      @Value("${vispana.apppackage.search.max-file-bytes:4194304}") long maxFileBytes) {
+    this.maxFileBytes = maxFileBytes;
+  }
+
+  public AppPackageSearchResult search(
+      AppPackageSnapshot snapshot, String query, Mode mode, boolean caseSensitive, int limit) {
+    long start = System.nanoTime();
+    var index = index(snapshot);
+    var hits = new ArrayList<AppPackageSearchHit>();
+    boolean complete =
+        switch (mode) {
+          case SYMBOL -> index.searchSymbol(query, limit, hits);
+          case SUBSTRING -> index.searchSubstring(query, caseSensitive, limit, hits);
+        };
+    return new AppPackageSearchResult(
+        query,
+        mode.name().toLowerCase(Locale.ROOT),
+        snapshot.getGeneration(),
+        index.files.size(),
+        !complete,
+        (System.nanoTime() - start) / 1_000_000.0,
+        hits);
+  }
+
+  /** Files indexed since startup; files reused from an earlier generation are not counted. */
+  int filesIndexed() {
+    return filesIndexed.get();
+  }
+
+  private GenerationIndex index(AppPackageSnapshot snapshot) {
+    var pending = new CompletableFuture<GenerationIndex>();
+    var existing = generations.putIfAbsent(snapshot.getKey(), pending);
+    if (existing != null) {
+      try {
+        return existing.join();
+      } catch (CompletionException e) {
+        throw e.getCause() instanceof RuntimeException cause ? cause : e;
+      }
+    }
+
+    try {
+      var index = build(snapshot);
+      pending.complete(index);
+      evictOtherGenerations(snapshot);
+      return index;
+    } catch (RuntimeException e) {
+      generations.remove(snapshot.getKey(), pending);
+      pending.completeExceptionally(e);
+      throw e;
+    }
+  }
+
+  private GenerationIndex build(AppPackageSnapshot snapshot) {
+    long start = System.nanoTime();
+    int before = filesIndexed.get();
+    var files = new TreeMap<String, FileIndex>();
+    var shas = new HashSet<String>();
+    for (var entry : snapshot.blobs().entrySet()) {
+      Path blob = entry.getValue();
+      String sha = blob.getFileName().toString();
+      shas.add(sha);
+      var fileIndex = fileIndexes.computeIfAbsent(sha, s -> read(blob));
+      if (fileIndex != FileIndex.NOT_TEXT) {
+        files.put(entry.getKey(), fileIndex);
+      }
+    }
+    logger.info(
+        "Indexed {} text files of {} ({} new) in {} ms",
+        files.size(),
+        snapshot.getKey(),
+        filesIndexed.get() - before,
+        (System.nanoTime() - start) / 1_000_000);
+    return new GenerationIndex(snapshot.getAppUrl(), shas, files);
+  }
+
+  private FileIndex read(Path blob) {
+    try {
+      if (Files.size(blob) > maxFileBytes) {
+        return FileIndex.NOT_TEXT;
+      }
+      byte[] head;
+      try (InputStream in = Files.newInputStream(blob)) {
+        head = in.readNBytes(AppPackageFileReader.SNIFF_BYTES);
+      }
+      if (AppPackageFileReader.isBinary(head, head.length < AppPackageFileReader.SNIFF_BYTES)) {
+        return FileIndex.NOT_TEXT;
+      }
+      filesIndexed.incrementAndGet();
+      return FileIndex.of(Files.readAllLines(blob, StandardCharsets.UTF_8));
+    } catch (MalformedInputException e) {
+      // valid UTF-8 at the start only
+      return FileIndex.NOT_TEXT;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to index " + blob, e);
+    }
+  }
+
+  private void evictOtherGenerations(AppPackageSnapshot current) {
+    generations
+        .entrySet()
+        .removeIf(
+            entry ->
+                !entry.getKey().equals(current.getKey())
+                    && entry.getValue().isDone()
+                    && !entry.getValue().isCompletedExceptionally()
+                    && entry.getValue().join().appUrl.equals(current.getAppUrl()));
+    var referenced = new HashSet<String>();
+    for (var generation : generations.values()) {
+      if (!generation.isDone()) {
+        // still being built and adding to the shared indexes; prune another time
+        return;
+      }
+      if (!generation.isCompletedExceptionally()) {
+        referenced.addAll(generation.join().shas);
+      }
+    }
+    fileIndexes.keySet().retainAll(referenced);
+  }
+
+  static List<String> tokens(String text) {
+    var matcher = TOKEN.matcher(text);
+    var tokens = new ArrayList<String>();
+    while (matcher.find()) {
+      tokens.add(matcher.group().toLowerCase(Locale.ROOT));
+    }
+    return tokens;
+  }
+
+  /** Three lower-cased characters packed into a long; 16 bits each. */
+  private static long[] trigramsOf(String text) {
+    String lower = text.toLowerCase(Locale.ROOT);
+    if (lower.length() < 3) {
+      return new long[0];
+    }
+    long[] trigrams = new long[lower.length() - 2];
+    for (int i = 0; i < trigrams.length; i++) {
+      trigrams[i] =
+          ((long) lower.charAt(i) << 32) | ((long) lower.charAt(i + 1) << 16) | lower.charAt(i + 2);
+    }
+    return Arrays.stream(trigrams).sorted().distinct().toArray();
+  }
+
+  private static AppPackageSearchHit hit(String path, List<String> lines, int line, int column) {
+    String text = lines.get(line);
+    if (text.length() > MAX_HIT_TEXT) {
+      int from = Math.max(0, Math.min(column, text.length() - MAX_HIT_TEXT));
+      text = text.substring(from, from + MAX_HIT_TEXT);
+    }
+    return new AppPackageSearchHit(path, line + 1, column + 1, text);
+  }
+
+  /** The index of one file's content. */
+  private record FileIndex(
+      List<String> lines, Map<String, long[]> positionsByToken, long[] trigrams) {
+
+    // marks binary and oversized content, which is not indexed
+    static final FileIndex NOT_TEXT = new FileIndex(List.of(), Map.of(), new long[0]);
+
+    static FileIndex of(List<String> lines) {
+      var positions = new HashMap<String, List<Long>>();
+      for (int line = 0; line < lines.size(); line++) {
+        var matcher = TOKEN.matcher(lines.get(line));
+        while (matcher.find()) {
+          positions
+              .computeIfAbsent(matcher.group().toLowerCase(Locale.ROOT), t -> new ArrayList<>())
+              .add(((long) line << 32) | matcher.start());
+        }
+      }
+      var positionsByToken =
+          positions.entrySet().stream()
+              .collect(
+                  Collectors.toUnmodifiableMap(
+                      Map.Entry::getKey,
+                      e -> e.getValue().stream().mapToLong(Long::longValue).toArray()));
+      return new FileIndex(
+          List.copyOf(lines), positionsByToken, trigramsOf(String.join("\n", lines)));
+    }
+
+    boolean hasTrigrams(long[] query) {
+      for (long trigram : query) {
+        if (Arrays.binarySearch(trigrams, trigram) < 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private static final class GenerationIndex {
+    private final String appUrl;
+    // content of every file, text or not
+    private final Set<String> shas;
+    // path -> file, sorted so hits come in path order
+    private final SortedMap<String, FileIndex> files;
+    // token -> paths of the files containing it
+    private final Map<String, List<String>> pathsByToken;
+
+    GenerationIndex(String appUrl, Set<String> shas, SortedMap<String, FileIndex> files) {
+      this.appUrl = appUrl;
+      this.shas = shas;
+      this.files = files;
+      var pathsByToken = new HashMap<String, List<String>>();
+      files.forEach(
+          (path, file) ->
+              file.positionsByToken()
+                  .keySet()
+                  .forEach(
+                      token ->
+                          pathsByToken.computeIfAbsent(token, t -> new ArrayList<>()).add(path)));
+      this.pathsByToken = pathsByToken;
+    }
+
+    /**
+     * Lines containing every token of the query as a whole word, case-insensitively; hits point at
+     * the first token. Returns false when stopped at the limit.
+     */
+    boolean searchSymbol(String query, int limit, List<AppPackageSearchHit> hits) {
+      var tokens = tokens(query);
+      if (tokens.isEmpty()) {
+        return true;
+      }
+      for (String path : pathsByToken.getOrDefault(tokens.getFirst(), List.of())) {
+        var file = files.get(path);
+        var linesWithAll = linesWithAll(file, tokens.subList(1, tokens.size()));
+        for (long position : file.positionsByToken().get(tokens.getFirst())) {
+          int line = (int) (position >>> 32);
+          if (linesWithAll == null || linesWithAll.contains(line)) {
+            if (hits.size() == limit) {
+              return false;
+            }
+            hits.add(hit(path, file.lines(), line, (int) position));
+          }
+        }
+      }
+      return true;
+    }
+
+    /** Lines having all the tokens, or null when there are none to check. */
+    private static Set<Integer> linesWithAll(FileIndex file, List<String> tokens) {
+      Set<Integer> lines = null;
+      for (String token : tokens) {
+        var tokenLines = new HashSet<Integer>();
+        for (long position : file.positionsByToken().getOrDefault(token, new long[0])) {
+          tokenLines.add((int) (position >>> 32));
+        }
+        if (lines == null) {
+          lines = tokenLines;
+        } else {
+          lines.retainAll(tokenLines);
+        }
+      }
+      return lines;
+    }
+
+    /** Every occurrence of the query; returns false when stopped at the limit. */
+    boolean searchSubstring(
+        String query, boolean caseSensitive, int limit, List<AppPackageSearchHit> hits) {
+      if (query.isEmpty()) {
+        return true;
+      }
+      long[] queryTrigrams = trigramsOf(query);
+      String needle = caseSensitive ? query : query.toLowerCase(Locale.ROOT);
+      for (var entry : files.entrySet()) {
+        var file = entry.getValue();
+        if (!file.hasTrigrams(queryTrigrams)) {
+          continue;
+        }
+        for (int line = 0; line < file.lines().size(); line++) {
+          String text = file.lines().get(line);
+          String haystack = caseSensitive ? text : text.toLowerCase(Locale.ROOT);
+          for (int column = haystack.indexOf(needle);
+              column >= 0;
+              column = haystack.indexOf(needle, column + 1)) {
+            if (hits.size() == limit) {
+              return false;
+            }
+            hits.add(hit(entry.getKey(), file.lines(), line, column));
+          }
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package com.vispana.vespa.state.helpers;
+
+import com.vispana.api.model.apppackage.AppPackageChangeSummary;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One generation of an application package as mirrored on local disk: its file tree and, for every
+ * file, the content-addressed blob holding its bytes. A snapshot never changes; a redeploy produces
+ * a new one.
+ */
+public class AppPackageSnapshot {
+
+  private final String appUrl;
+  private final long generation;
+  private final String key;
+  private final AppPackageFilesystem.FileTree tree;
+  // relative file path -> blob file
+  private final Map<String, Path> blobs;
+  private final AppPackageChangeSummary changes;
+  // held while an export is built; a lock rather than a monitor to not pin virtual threads
+  final ReentrantLock archiveLock = new ReentrantLock();
+  // formats whose export is being built in the background
+  final Set<ArchiveFormat> archivesBuilding = ConcurrentHashMap.newKeySet();
+
+  AppPackageSnapshot(
+      String appUrl,
+      long generation,
+      String key,
+      AppPackageFilesystem.FileTree tree,
+      Map<String, Path> blobs,
+      AppPackageChangeSummary changes) {
+    this.appUrl = appUrl;
+    this.generation = generation;
+    this.key = key;
+    this.tree = tree;
+    this.blobs = Map.copyOf(blobs);
+    this.changes = changes;
+  }
+
+  public String getAppUrl() {
+    return appUrl;
+  }
+
+  public long getGeneration() {
+    return generation;
+  }
+
+  /** Identifies the application and generation; stable across restarts, so usable as an ETag. */
+  public String getKey() {
+    return key;
+  }
+
+  /** What changed since the generation mirrored before; null for mirrors without a record. */
+  public AppPackageChangeSummary getChanges() {
+    return changes;
+  }
+
+  public AppPackageFilesystem.FileTree getTree() {
+    return tree;
+  }
+
+  public AppPackageFilesystem.FileTree listDirectory(String path) {
+    return AppPackageFilesystem.listDirectory(tree, path);
+  }
+
+  /** The local copy of a file, or empty when the package has no such file. */
+  public Optional<Path> blob(String filePath) {
+    String relativePath = filePath.startsWith("/") ? filePath.substring(1) : filePath;
+    return Optional.ofNullable(blobs.get(relativePath));
+  }
+
+  Map<String, Path> blobs() {
+    return blobs;
+  }
+}
@@ -0,0 +1,171 @@
+package com.vispana.vespa.state.helpers;
+
+import com.vispana.api.model.apppackage.ApplicationPackage;
+import com.vispana.api.model.apppackage.Group;
+import com.vispana.api.model.apppackage.Host;
+import com.vispana.api.model.apppackage.Hosts;
+import com.vispana.api.model.apppackage.Services;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The content nodes of an application as declared in services.xml and hosts.xml, parsed once per
+ * deployed package. Host aliases are indexed, so resolving a node's host is a hash lookup rather
+ * than a scan over every host.
+ *
+ * <p>A topology never changes after it is built and is shared between concurrent overviews.
+ */
+public final class ApplicationTopology {
+
+  // overviews of a handful of applications can be open at once; older packages are not needed
+  private static final int MAX_CACHED = 8;
+  private static final Map<CacheKey, ApplicationTopology> CACHE =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CacheKey, ApplicationTopology> eldest) {
+          return size() > MAX_CACHED;
+        }
+      };
+  // a lock rather than a monitor to not pin virtual threads
+  private static final ReentrantLock CACHE_LOCK = new ReentrantLock();
+  private static final Counter CACHE_HITS =
+      Metrics.counter("cache.gets", "cache", "application-topology", "result", "hit");
+  private static final Counter CACHE_MISSES =
+      Metrics.counter("cache.gets", "cache", "application-topology", "result", "miss");
+
+  /**
+   * A content node; {@code hostName} is null when the application has no hosts.xml and runs on the
+   * config host.
+   */
+  public record ContentNode(
+      long groupKey, long distributionKey, String hostAlias, String hostName) {}
+
+  // the generation alone does not identify a topology across config hosts, so the sources are
+  // digested in; the key does not keep the sources themselves alive
+  private record CacheKey(String generation, String sourcesDigest) {}
+
+  private final List<ContentNode> nodes;
+  private final Map<String, String> hostNameByAlias;
+
+  private ApplicationTopology(List<ContentNode> nodes, Map<String, String> hostNameByAlias) {
+    this.nodes = List.copyOf(nodes);
+    this.hostNameByAlias = Map.copyOf(hostNameByAlias);
+  }
+
+  /** The topology of a package, parsed on first use and then served from memory. */
+  public static ApplicationTopology of(ApplicationPackage appPackage) {
+    var key =
+        new CacheKey(
+            appPackage.appPackageGeneration(),
+            digest(
+                appPackage.servicesContent(),
+                Objects.requireNonNullElse(appPackage.hostsContent(), "")));
+    CACHE_LOCK.lock();
+    try {
+      var cached = CACHE.get(key);
+      if (cached != null) {
+        CACHE_HITS.increment();
+        return cached;
+      }
+    } finally {
+      CACHE_LOCK.unlock();
+    }
+
+    CACHE_MISSES.increment();
+    // parsed outside the lock; a concurrent parse of the same package yields an equal topology
+    var topology = parse(appPackage.servicesContent(), appPackage.hostsContent());
+    CACHE_LOCK.lock();
+    try {
+      var raced = CACHE.putIfAbsent(key, topology);
+      return raced != null ? raced : topology;
+    } finally {
+      CACHE_LOCK.unlock();
+    }
+  }
+
+  private static String digest(String servicesContent, String hostsContent) {
+    MessageDigest sha256;
+    try {
+      sha256 = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+    sha256.update(servicesContent.getBytes(StandardCharsets.UTF_8));
+    // separates the sources, so moving text from one to the other changes the digest
+    sha256.update((byte) 0);
+    sha256.update(hostsContent.getBytes(StandardCharsets.UTF_8));
+    return HexFormat.of().formatHex(sha256.digest());
+  }
+
+  static ApplicationTopology parse(String servicesContent, String hostsContent) {
+    Services services = Services.fromXml(servicesContent);
+    Hosts hosts = Hosts.fromXml(hostsContent);
+
+    if (services.getContent() == null) {
+      throw new RuntimeException("No content found in services xml");
+    }
+
+    Map<String, String> hostNameByAlias = new HashMap<>();
+    for (Host host : hosts.getHosts()) {
+      // the first declaration of an alias wins
+      if (host.getAlias() != null) {
+        hostNameByAlias.putIfAbsent(host.getAlias(), host.getName());
+      }
+    }
+
+    List<ContentNode> nodes = new ArrayList<>();
+    // content can not have both groups and nodes
+    if (services.getContent().hasNodes()) {
+      for (var node : services.getContent().getNodes()) {
+        nodes.add(contentNode(new Group(), node, hostNameByAlias));
+      }
+    } else {
+      for (var group : services.getContent().getGroups()) {
+        for (var node : group.getNodes()) {
+          nodes.add(contentNode(group, node, hostNameByAlias));
+        }
+      }
+    }
+    return new ApplicationTopology(nodes, hostNameByAlias);
+  }
+
+  private static ContentNode contentNode(
+      Group group,
+      com.vispana.api.model.apppackage.Node appPackNode,
+      Map<String, String> hostNameByAlias) {
+    String hostAlias = appPackNode.getHostAlias();
+    String hostName = null;
+    if (!hostNameByAlias.isEmpty()) {
+      hostName = hostNameByAlias.get(hostAlias);
+      if (hostName == null) {
+        throw new RuntimeException("Failed to find host for alias: " + hostAlias);
+      }
+    }
+    return new ContentNode(
+        Long.parseLong(group.getDistributionKey()),
+        Long.parseLong(appPackNode.getDistributionKey()),
+        hostAlias,
+        hostName);
+  }
+
+  /** Content nodes in declaration order. */
+  public List<ContentNode> getNodes() {
+    return nodes;
+  }
+
+  /** The host name of an alias in hosts.xml, or null when there is no such alias. */
+  public String hostName(String hostAlias) {
+    return hostNameByAlias.get(hostAlias);
+  }
+}
@@ -0,0 +1,32 @@
+package com.vispana.vespa.state.helpers;
+
+import java.util.Arrays;
+
+/** The archive formats the application package can be downloaded as. */
+public enum ArchiveFormat {
+  ZIP("zip", "zip"),
+  TAR_GZ("tar.gz", "tar.gz"),
+  TAR_ZST("tar.zst", "tar.zst");
+
+  private final String name;
+  private final String fileExtension;
+
+  ArchiveFormat(String name, String fileExtension) {
+    this.name = name;
+    this.fileExtension = fileExtension;
+  }
+
+  public String getFileExtension() {
+    return fileExtension;
+  }
+
+  public static ArchiveFormat parseFrom(String name) {
+    return Arrays.stream(values())
+        .filter(format -> format.name.equalsIgnoreCase(name.trim()))
+        .findFirst()
+        .orElseThrow(
+            () ->
+                new IllegalArgumentException(
+                    "Unknown archive format: " + name + ", expected one of zip, tar.gz, tar.zst"));
+  }
+}
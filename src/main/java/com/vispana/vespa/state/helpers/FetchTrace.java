@@ -0,0 +1,150 @@
+package com.vispana.vespa.state.helpers;
+
+import com.vispana.api.model.trace.FetchSpan;
+import com.vispana.api.model.trace.FetchWaterfall;
+import java.net.URI;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * The calls to Vespa made while serving one Vispana request. Bound to {@link #CURRENT} around the
+ * request; tasks forked in a {@code StructuredTaskScope} inherit the binding, so the calls of every
+ * assembler land in the same trace. Calls made from other threads are not recorded.
+ */
+public final class FetchTrace {
+
+  public static final ScopedValue<FetchTrace> CURRENT = ScopedValue.newInstance();
+
+  private static final Pattern APPLICATION = Pattern.compile("/tenant/[^/]+/application/[^/]+");
+  private static final Pattern CONTENT = Pattern.compile("(/content/).+");
+  private static final Pattern CONFIG_ID =
+      Pattern.compile(
+          "^(/config/v\\d/(?:tenant/\\{tenant}/application/\\{application}/)?(?!tenant/)[^/]+/).+");
+
+  private final String id;
+  private final String request;
+  private final Instant startedAt = Instant.now();
+  private final long startNanos = System.nanoTime();
+  private final Queue<Call> calls = new ConcurrentLinkedQueue<>();
+  private volatile long endNanos;
+
+  /** A call as the interceptor saw it, in {@link System#nanoTime()}. */
+  record Call(
+      URI uri,
+      String source,
+      int status,
+      long bytes,
+      long startNanos,
+      long headersNanos,
+      long readNanos,
+      long endNanos,
+      String error) {}
+
+  public FetchTrace(String request) {
+    this.id = HexFormat.of().toHexDigits(ThreadLocalRandom.current().nextLong());
+    this.request = request;
+  }
+
+  public String id() {
+    return id;
+  }
+
+  public boolean isEmpty() {
+    return calls.isEmpty();
+  }
+
+  public void finish() {
+    endNanos = System.nanoTime();
+  }
+
+  void add(Call call) {
+    calls.add(call);
+  }
+
+  public FetchWaterfall waterfall() {
+    var sorted = new ArrayList<>(calls);
+    sorted.sort(Comparator.comparingLong(Call::startNanos));
+    long end = endNanos != 0 ? endNanos : System.nanoTime();
+    var critical = criticalPath(sorted);
+
+    List<FetchSpan> spans = new ArrayList<>(sorted.size());
+    long fetchNanos = 0;
+    long criticalPathNanos = 0;
+    for (Call call : sorted) {
+      long duration = call.endNanos() - call.startNanos();
+      long wait = call.headersNanos() - call.startNanos();
+      fetchNanos += duration;
+      if (critical.contains(call)) {
+        criticalPathNanos += duration;
+      }
+      spans.add(
+          new FetchSpan(
+              template(call.uri().getRawPath()),
+              call.uri().toString(),
+              call.uri().getAuthority(),
+              call.source(),
+              call.status(),
+              call.bytes(),
+              millis(call.startNanos() - startNanos),
+              millis(duration),
+              millis(wait),
+              millis(call.readNanos()),
+              millis(Math.max(0, duration - wait - call.readNanos())),
+              critical.contains(call),
+              call.error()));
+    }
+    return new FetchWaterfall(
+        id,
+        request,
+        startedAt,
+        millis(end - startNanos),
+        millis(fetchNanos),
+        millis(criticalPathNanos),
+        spans);
+  }
+
+  /**
+   * Walks back from the call that finished last, each time to the latest call that had finished
+   * before the current one started: the calls that had to wait for each other.
+   */
+  private static Set<Call> criticalPath(List<Call> calls) {
+    Set<Call> path = new HashSet<>();
+    var current = calls.stream().max(Comparator.comparingLong(Call::endNanos)).orElse(null);
+    while (current != null) {
+      path.add(current);
+      long start = current.startNanos();
+      current =
+          calls.stream()
+              .filter(call -> call.endNanos() <= start)
+              .max(Comparator.comparingLong(Call::endNanos))
+              .orElse(null);
+    }
+    return path;
+  }
+
+  /**
+   * The path with the parts that vary between deployments replaced, so calls to the same API group
+   * together: {@code /config/v1/cloud.config.cluster-info/{id}}.
+   */
+  static String template(String path) {
+    // config hosts are given with a trailing slash and joined with paths that start with one
+    String template = path.replaceAll("/{2,}", "/");
+    template =
+        APPLICATION.matcher(template).replaceFirst("/tenant/{tenant}/application/{application}");
+    template = CONTENT.matcher(template).replaceFirst("$1{path}");
+    return CONFIG_ID.matcher(template).replaceFirst("$1{id}");
+  }
+
+  private static double millis(long nanos) {
+    return Math.round(nanos / 100_000.0) / 10.0;
+  }
+}
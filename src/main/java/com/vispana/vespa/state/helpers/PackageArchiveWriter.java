@@ -0,0 +1,241 @@
+package com.vispana.vespa.state.helpers;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes application package entries to a ZIP, tar.gz or tar.zst archive. Entries must be added
+ * parents first, as they are listed by the file tree.
+ *
+ * <p>In a ZIP every file is compressed on its own, so files that are already compressed (models,
+ * jars, images) are sniffed and STORED instead of deflated again for no gain. A tar stream is
+ * compressed as a whole; zstd compresses with several threads, which keeps large exports limited by
+ * I/O rather than CPU.
+ */
+public abstract class PackageArchiveWriter implements Closeable {
+
+  private static final Logger logger = LoggerFactory.getLogger(PackageArchiveWriter.class);
+
+  // bytes of a file looked at to decide whether it is worth compressing
+  static final int SNIFF_BYTES = 64 * 1024;
+  // a sample that deflates to more than this fraction of its size is stored as is
+  private static final double MIN_SAVING_RATIO = 0.9;
+
+  /** Compression levels: deflate 0-9 for ZIP and tar.gz, zstd 1-22 for tar.zst. */
+  public record Settings(int deflateLevel, int zstdLevel) {
+    public static final Settings DEFAULT = new Settings(Deflater.DEFAULT_COMPRESSION, 3);
+  }
+
+  /** The bytes of a file; may be opened more than once. */
+  @FunctionalInterface
+  public interface Content {
+    InputStream open() throws IOException;
+  }
+
+  public static PackageArchiveWriter open(
+      ArchiveFormat format, OutputStream outputStream, Settings settings) throws IOException {
+    return switch (format) {
+      case ZIP -> new Zip(outputStream, settings.deflateLevel());
+      case TAR_GZ -> {
+        var parameters = new GzipParameters();
+        parameters.setCompressionLevel(settings.deflateLevel());
+        yield new Tar(new GzipCompressorOutputStream(outputStream, parameters));
+      }
+      case TAR_ZST -> {
+        var zstd = new ZstdOutputStream(outputStream, settings.zstdLevel());
+        // 0 keeps compression on the calling thread
+        zstd.setWorkers(Runtime.getRuntime().availableProcessors() / 2);
+        yield new Tar(zstd);
+      }
+    };
+  }
+
+  /** Adds a directory; {@code path} ends with a slash. */
+  public abstract void putDirectory(String path) throws IOException;
+
+  /**
+   * Adds a file of {@code size} bytes. {@code crc} is its CRC-32 when already known, or -1 to have
+   * it computed when needed.
+   */
+  public abstract void putFile(String path, long size, long crc, Content content)
+      throws IOException;
+
+  /** Completes the archive without closing the underlying stream. */
+  public abstract void finish() throws IOException;
+
+  /**
+   * Whether a file is worth compressing: not when its first bytes show a compressed format, and,
+   * for files larger than the sample, not when the sample hardly compresses.
+   */
+  static boolean worthCompressing(byte[] head, int length, long size) {
+    if (hasCompressedMagic(head, length)) {
+      return false;
+    }
+    if (size <= length || length == 0) {
+      // small files are compressed outright; probing would cost as much
+      return true;
+    }
+    var deflater = new Deflater(Deflater.BEST_SPEED, true);
+    try {
+      deflater.setInput(head, 0, length);
+      deflater.finish();
+      byte[] buffer = new byte[length];
+      long compressed = 0;
+      while (!deflater.finished()) {
+        compressed += deflater.deflate(buffer);
+      }
+      return compressed < length * MIN_SAVING_RATIO;
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static boolean hasCompressedMagic(byte[] head, int length) {
+    return startsWith(head, length, 0x50, 0x4B, 0x03, 0x04) // zip, jar
+        || startsWith(head, length, 0x1F, 0x8B) // gzip
+        || startsWith(head, length, 0x28, 0xB5, 0x2F, 0xFD) // zstd
+        || startsWith(head, length, 0x42, 0x5A, 0x68) // bzip2
+        || startsWith(head, length, 0xFD, 0x37, 0x7A, 0x58, 0x5A, 0x00) // xz
+        || startsWith(head, length, 0x37, 0x7A, 0xBC, 0xAF, 0x27, 0x1C) // 7z
+        || startsWith(head, length, 0x04, 0x22, 0x4D, 0x18) // lz4
+        || startsWith(head, length, 0x89, 0x50, 0x4E, 0x47) // png
+        || startsWith(head, length, 0xFF, 0xD8, 0xFF); // jpeg
+  }
+
+  private static boolean startsWith(byte[] head, int length, int... magic) {
+    if (length < magic.length) {
+      return false;
+    }
+    for (int i = 0; i < magic.length; i++) {
+      if ((head[i] & 0xFF) != magic[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static final class Zip extends PackageArchiveWriter {
+    private final ZipOutputStream zos;
+    private int stored;
+    private int deflated;
+
+    Zip(OutputStream outputStream, int level) {
+      this.zos = new ZipOutputStream(outputStream);
+      zos.setLevel(level);
+    }
+
+    @Override
+    public void putDirectory(String path) throws IOException {
+      zos.putNextEntry(new ZipEntry(path));
+      zos.closeEntry();
+    }
+
+    @Override
+    public void putFile(String path, long size, long crc, Content content) throws IOException {
+      byte[] head = new byte[SNIFF_BYTES];
+      int length;
+      try (InputStream in = content.open()) {
+        length = in.readNBytes(head, 0, head.length);
+      }
+
+      var entry = new ZipEntry(path);
+      if (worthCompressing(head, length, size)) {
+        entry.setMethod(ZipEntry.DEFLATED);
+        deflated++;
+      } else {
+        // a stored entry has its size and checksum in the local header, so both are needed first
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(size);
+        entry.setCompressedSize(size);
+        entry.setCrc(crc >= 0 ? crc : crc32(content));
+        stored++;
+      }
+
+      zos.putNextEntry(entry);
+      try (InputStream in = content.open()) {
+        in.transferTo(zos);
+      }
+      zos.closeEntry();
+    }
+
+    @Override
+    public void finish() throws IOException {
+      zos.finish();
+      logger.debug("ZIP finished: {} entries deflated, {} stored", deflated, stored);
+    }
+
+    @Override
+    public void close() throws IOException {
+      zos.close();
+    }
+
+    private static long crc32(Content content) throws IOException {
+      var crc = new CRC32();
+      byte[] buffer = new byte[8192];
+      try (InputStream in = content.open()) {
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          crc.update(buffer, 0, read);
+        }
+      }
+      return crc.getValue();
+    }
+  }
+
+  private static final class Tar extends PackageArchiveWriter {
+    private final OutputStream compressed;
+    private final TarArchiveOutputStream tar;
+
+    Tar(OutputStream compressed) {
+      this.compressed = compressed;
+      this.tar = new TarArchiveOutputStream(compressed);
+      tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+      tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+    }
+
+    @Override
+    public void putDirectory(String path) throws IOException {
+      tar.putArchiveEntry(new TarArchiveEntry(path));
+      tar.closeArchiveEntry();
+    }
+
+    @Override
+    public void putFile(String path, long size, long crc, Content content) throws IOException {
+      var entry = new TarArchiveEntry(path);
+      entry.setSize(size);
+      tar.putArchiveEntry(entry);
+      try (InputStream in = content.open()) {
+        in.transferTo(tar);
+      }
+      tar.closeArchiveEntry();
+    }
+
+    @Override
+    public void finish() throws IOException {
+      tar.finish();
+      if (compressed instanceof GzipCompressorOutputStream gzip) {
+        gzip.finish();
+      } else {
+        compressed.flush();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      tar.close();
+    }
+  }
+}
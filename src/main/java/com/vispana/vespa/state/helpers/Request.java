@@ -1,10 +1,13 @@
 package com.vispana.vespa.state.helpers;
 
+import java.io.IOException;
+import java.io.InputStream;
 import org.springframework.web.client.RestClient;
 
 public class Request {
 
-  private static final RestClient restClient = RestClient.create();
+  private static final RestClient restClient =
+      RestClient.builder().requestInterceptor(new VespaCallInterceptor()).build();
 
   public static <T> T requestGet(String url, Class<T> responseType) {
     return restClient.get().uri(url).retrieve().body(responseType);
@@ -18,4 +21,26 @@ public class Request {
       return defaultValue;
     }
   }
+
+  /** Hands the response body to {@code bodyReader} as a stream instead of buffering it. */
+  public static <T> T requestGetStreaming(String url, BodyReader<T> bodyReader) {
+    return restClient
+        .get()
+        .uri(url)
+        .exchange(
+            (request, response) -> {
+              if (response.getStatusCode().isError()) {
+                throw new RuntimeException(
+                    "Request to " + url + " failed with status " + response.getStatusCode());
+              }
+              try (var body = response.getBody()) {
+                return bodyReader.read(body);
+              }
+            });
+  }
+
+  @FunctionalInterface
+  public interface BodyReader<T> {
+    T read(InputStream body) throws IOException;
+  }
 }
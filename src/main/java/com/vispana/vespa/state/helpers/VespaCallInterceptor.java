@@ -0,0 +1,211 @@
+package com.vispana.vespa.state.helpers;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * Records every call to Vespa: as client metrics by endpoint family, and in the {@link FetchTrace}
+ * of the current request when one is bound. The body is timed while it is read, not buffered, so
+ * streamed responses stay streamed; whatever time the caller spends between reads is what it took
+ * to parse the body.
+ */
+class VespaCallInterceptor implements ClientHttpRequestInterceptor {
+
+  private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+
+  @Override
+  public ClientHttpResponse intercept(
+      HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+    var trace = FetchTrace.CURRENT.isBound() ? FetchTrace.CURRENT.get() : null;
+    String source = trace == null ? null : caller();
+    long start = System.nanoTime();
+    try {
+      var response = execution.execute(request, body);
+      return new RecordedResponse(response, trace, request.getURI(), source, start);
+    } catch (IOException | RuntimeException e) {
+      long end = System.nanoTime();
+      record(request.getURI(), "IO_ERROR", end - start, 0);
+      if (trace != null) {
+        trace.add(
+            new FetchTrace.Call(request.getURI(), source, -1, 0, start, end, 0, end, e.toString()));
+      }
+      throw e;
+    }
+  }
+
+  private static void record(URI uri, String status, long nanos, long bytes) {
+    String family = family(uri.getRawPath());
+    Timer.builder("vispana.vespa.requests")
+        .description("Calls from Vispana to Vespa")
+        .tags("family", family, "status", status)
+        .publishPercentileHistogram()
+        .register(Metrics.globalRegistry)
+        .record(nanos, TimeUnit.NANOSECONDS);
+    if (bytes > 0) {
+      Counter.builder("vispana.vespa.received")
+          .baseUnit("bytes")
+          .tag("family", family)
+          .register(Metrics.globalRegistry)
+          .increment(bytes);
+    }
+  }
+
+  /** The API a path belongs to: config, application, metrics, state, search or document. */
+  static String family(String path) {
+    int start = 0;
+    while (start < path.length() && path.charAt(start) == '/') {
+      start++;
+    }
+    int end = path.indexOf('/', start);
+    String family = end < 0 ? path.substring(start) : path.substring(start, end);
+    return switch (family) {
+      case "config", "application", "metrics", "state", "search", "document" -> family;
+      default -> "other";
+    };
+  }
+
+  /** The Vispana method that made the call, e.g. {@code ContentAssembler.assemble}. */
+  private static String caller() {
+    return STACK_WALKER.walk(
+        frames ->
+            frames
+                .filter(
+                    frame ->
+                        frame.getClassName().startsWith("com.vispana.")
+                            && !frame.getClassName().startsWith(Request.class.getName())
+                            && !frame
+                                .getClassName()
+                                .startsWith(VespaCallInterceptor.class.getName()))
+                .findFirst()
+                .map(
+                    frame -> {
+                      String className = frame.getClassName();
+                      String method = frame.getMethodName();
+                      // lambda$assemble$3 was written in assemble
+                      if (method.startsWith("lambda$")) {
+                        method = method.split("\\$")[1];
+                      }
+                      return className.substring(className.lastIndexOf('.') + 1) + "." + method;
+                    })
+                .orElse("unknown"));
+  }
+
+  private static class RecordedResponse implements ClientHttpResponse {
+
+    private final ClientHttpResponse response;
+    private final FetchTrace trace;
+    private final URI uri;
+    private final String source;
+    private final long start;
+    private final long headers = System.nanoTime();
+    private final int status;
+    private final AtomicBoolean recorded = new AtomicBoolean();
+    private TimedInputStream body;
+
+    RecordedResponse(
+        ClientHttpResponse response, FetchTrace trace, URI uri, String source, long start)
+        throws IOException {
+      this.response = response;
+      this.trace = trace;
+      this.uri = uri;
+      this.source = source;
+      this.start = start;
+      this.status = response.getStatusCode().value();
+    }
+
+    @Override
+    public HttpStatusCode getStatusCode() throws IOException {
+      return response.getStatusCode();
+    }
+
+    @Override
+    public String getStatusText() throws IOException {
+      return response.getStatusText();
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      return response.getHeaders();
+    }
+
+    @Override
+    public InputStream getBody() throws IOException {
+      if (body == null) {
+        body = new TimedInputStream(response.getBody());
+      }
+      return body;
+    }
+
+    @Override
+    public void close() {
+      try {
+        response.close();
+      } finally {
+        if (recorded.compareAndSet(false, true)) {
+          long end = System.nanoTime();
+          long bytes = body == null ? 0 : body.bytes;
+          record(uri, String.valueOf(status), end - start, bytes);
+          if (trace != null) {
+            trace.add(
+                new FetchTrace.Call(
+                    uri,
+                    source,
+                    status,
+                    bytes,
+                    start,
+                    headers,
+                    body == null ? 0 : body.readNanos,
+                    end,
+                    null));
+          }
+        }
+      }
+    }
+  }
+
+  /** Counts the bytes read and the time spent blocked reading them. */
+  private static class TimedInputStream extends FilterInputStream {
+
+    private long bytes;
+    private long readNanos;
+
+    TimedInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      long start = System.nanoTime();
+      int value = super.read();
+      readNanos += System.nanoTime() - start;
+      if (value >= 0) {
+        bytes++;
+      }
+      return value;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      long start = System.nanoTime();
+      int read = super.read(buffer, offset, length);
+      readNanos += System.nanoTime() - start;
+      if (read > 0) {
+        bytes += read;
+      }
+      return read;
+    }
+  }
+}
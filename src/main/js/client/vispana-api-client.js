@@ -11,7 +11,7 @@ export default class VispanaApiClient {
             .then(response => response.json())
     }
 
-    async postQuery(containerHost, query, offset, limit) {
+    async postQuery(queryTarget, query, offset, limit, timeoutMs, signal) {
         // add offset and limit to the query
         query.offset = offset
         query.hits = limit
@@ -21,10 +21,20 @@ export default class VispanaApiClient {
             headers: {
                 'content-type': 'application/json',
             },
-            body: JSON.stringify(query)
+            body: JSON.stringify(query),
+            signal: signal
         };
 
-        return fetch(`/api/query?container_host=${containerHost}`, options)
+        // the server enforces the deadline on Vespa; without a configured route it also picks a
+        // healthy node of the cluster
+        const params = queryTarget.route
+            ? new URLSearchParams({container_host: queryTarget.route})
+            : new URLSearchParams({config_host: `${queryTarget.configHost}/`, cluster: queryTarget.cluster})
+        if (timeoutMs) {
+            params.set('timeout_ms', timeoutMs)
+        }
+        const endpoint = queryTarget.route ? '/api/query' : '/api/query/cluster'
+        return fetch(`${endpoint}?${params}`, options)
             .then(response => response.json())
     }
 }
@@ -4,27 +4,23 @@ import React, { useState, useEffect } from 'react';
  * App Package Explorer - Lazy-loading file browser for Vespa application package
  * 
  * Unlike the original FileExplorer, this component:
- * 1. Fetches only the tree structure initially (no file contents)
- * 2. Loads file content on-demand when user clicks on a file
- * 3. Provides a button to download the entire package as ZIP
+ * 1. Fetches only the top-level directory initially (no file contents)
+ * 2. Lists a directory on-demand when user expands it
+ * 3. Loads file content on-demand when user clicks on a file, one page at a time
+ * 4. Provides a button to download the entire package as ZIP, tar.gz or tar.zst
+ * 5. Searches the text files of the package for a symbol or substring
  */
 function AppPackageExplorer({ configHost }) {
     const [fileTree, setFileTree] = useState(null);
     const [loadingTree, setLoadingTree] = useState(true);
     const [error, setError] = useState(null);
+    const [archiveFormat, setArchiveFormat] = useState('zip');
 
-    // Fetch the tree structure on mount
+    // Fetch the top-level directory on mount
     useEffect(() => {
         const fetchTree = async () => {
             try {
-                const params = new URLSearchParams({ config_host: configHost });
-                const response = await fetch(`/api/apppackage/tree?${params}`);
-                
-                if (!response.ok) {
-                    throw new Error(`Failed to load file tree: ${response.status}`);
-                }
-                
-                const tree = await response.json();
+                const tree = await fetchDirectory(configHost, '');
                 setFileTree(tree);
                 setLoadingTree(false);
             } catch (err) {
@@ -37,9 +33,9 @@ function AppPackageExplorer({ configHost }) {
         fetchTree();
     }, [configHost]);
 
-    // Download the full package as ZIP
-    const downloadZip = () => {
-        const params = new URLSearchParams({ config_host: configHost });
+    // Download the full package in the selected archive format
+    const downloadArchive = () => {
+        const params = new URLSearchParams({ config_host: configHost, format: archiveFormat });
         // Trigger download by opening the URL
         window.location.href = `/api/apppackage/download?${params}`;
     };
@@ -73,31 +69,142 @@ function AppPackageExplorer({ configHost }) {
             <div className="mb-4 flex items-center justify-between border-b border-gray-600 pb-2">
                 <div>
                     <p className="text-sm text-gray-400">
-                        Files: {fileTree.totalFiles} | Directories: {fileTree.totalDirectories}
+                        Top level: {fileTree.totalFiles} files | {fileTree.totalDirectories} directories
                     </p>
                 </div>
-                <button
-                    onClick={downloadZip}
-                    className="bg-blue-600 hover:bg-blue-700 text-white px-4 py-2 rounded text-sm"
-                >
-                    📦 Download as ZIP
-                </button>
+                <div className="flex items-center gap-2">
+                    <select
+                        value={archiveFormat}
+                        onChange={(e) => setArchiveFormat(e.target.value)}
+                        className="bg-gray-700 text-white px-2 py-2 rounded text-sm"
+                    >
+                        <option value="zip">ZIP</option>
+                        <option value="tar.gz">tar.gz</option>
+                        <option value="tar.zst">tar.zst</option>
+                    </select>
+                    <button
+                        onClick={downloadArchive}
+                        className="bg-blue-600 hover:bg-blue-700 text-white px-4 py-2 rounded text-sm"
+                    >
+                        📦 Download
+                    </button>
+                </div>
             </div>
             
+            <PackageSearch configHost={configHost} />
+
             <div className="overflow-auto max-h-[600px]">
-                <FileNode node={fileTree.root} configHost={configHost} />
+                <FileNode node={fileTree.root} configHost={configHost} childrenLoaded={true} />
             </div>
         </div>
     );
 }
 
 /**
- * Individual file/directory node with lazy content loading
+ * Search box over the text files of the package, answered by /api/apppackage/search
+ */
+function PackageSearch({ configHost }) {
+    const [query, setQuery] = useState('');
+    const [mode, setMode] = useState('symbol');
+    const [result, setResult] = useState(null);
+    const [error, setError] = useState(null);
+
+    const search = async (event) => {
+        event.preventDefault();
+        if (!query.trim()) {
+            setResult(null);
+            return;
+        }
+        const params = new URLSearchParams({ config_host: configHost, q: query, mode: mode });
+        try {
+            const response = await fetch(`/api/apppackage/search?${params}`);
+            if (!response.ok) {
+                throw new Error(`Search failed: ${response.status}`);
+            }
+            setResult(await response.json());
+            setError(null);
+        } catch (err) {
+            console.error('Error searching package:', err);
+            setError(err.message);
+        }
+    };
+
+    return (
+        <div className="mb-4">
+            <form onSubmit={search} className="flex items-center gap-2">
+                <input
+                    value={query}
+                    onChange={(e) => setQuery(e.target.value)}
+                    placeholder="Search fields, functions, profiles..."
+                    className="flex-grow bg-gray-800 text-white px-2 py-1 rounded text-sm border border-gray-600"
+                />
+                <select
+                    value={mode}
+                    onChange={(e) => setMode(e.target.value)}
+                    className="bg-gray-700 text-white px-2 py-1 rounded text-sm"
+                >
+                    <option value="symbol">Symbol</option>
+                    <option value="substring">Substring</option>
+                </select>
+                <button type="submit" className="bg-blue-600 hover:bg-blue-700 text-white px-3 py-1 rounded text-sm">
+                    Search
+                </button>
+            </form>
+            {error && <p className="text-red-400 text-sm mt-1">{error}</p>}
+            {result && (
+                <div className="mt-2 text-xs">
+                    <p className="text-gray-400 mb-1">
+                        {result.hits.length}{result.truncated ? '+' : ''} matches in {result.filesIndexed} files ({result.tookMs.toFixed(1)} ms)
+                    </p>
+                    <div className="overflow-auto max-h-[300px] bg-gray-900 rounded border border-gray-700">
+                        {result.hits.map((hit, index) => (
+                            <div key={index} className="px-2 py-0.5 font-mono whitespace-pre">
+                                <span className="text-blue-400">{hit.path}:{hit.line}</span> {hit.text.trim()}
+                            </div>
+                        ))}
+                    </div>
+                </div>
+            )}
+        </div>
+    );
+}
+
+/**
+ * Lists a single directory of the application package (one level, no file contents)
+ */
+async function fetchDirectory(configHost, path) {
+    const params = new URLSearchParams({ config_host: configHost, path: path });
+    const response = await fetch(`/api/apppackage/tree?${params}`);
+
+    if (!response.ok) {
+        throw new Error(`Failed to load directory: ${response.status}`);
+    }
+
+    return response.json();
+}
+
+/**
+ * Fetches a page of a file, starting at a byte offset (the nextOffset of the previous page)
  */
-function FileNode({ node, configHost, level = 0 }) {
+async function fetchFilePage(configHost, path, offset) {
+    const params = new URLSearchParams({ config_host: configHost, file_path: path, offset: offset });
+    const response = await fetch(`/api/apppackage/file?${params}`);
+
+    if (!response.ok) {
+        throw new Error(`Failed to load file: ${response.status}`);
+    }
+
+    return response.json();
+}
+
+/**
+ * Individual file/directory node with lazy content and directory loading
+ */
+function FileNode({ node, configHost, level = 0, childrenLoaded = false }) {
     const [expanded, setExpanded] = useState(false);
     const [details, setFileDetails] = useState(null);
     const [loadingDetails, setLoadingDetails] = useState(false);
+    const [children, setChildren] = useState(childrenLoaded ? node.children : null);
 
 
     const handleClick = async () => {
@@ -110,21 +217,8 @@ function FileNode({ node, configHost, level = 0 }) {
                 if (!details && !loadingDetails) {
                     setLoadingDetails(true);
                     try {
-                        const params = new URLSearchParams({
-                            config_host: configHost,
-                            file_path: node.path
-                        });
-                        const response = await fetch(`/api/apppackage/file?${params}`);
-                        
-                        if (!response.ok) {
-                            throw new Error(`Failed to load file: ${response.status}`);
-                        }
-                        
-                        const result = await response.json();
-                        const file_url = result.url;
-                        const file_content = result.content;
-                        const details = { url: file_url, content: file_content };
-                        setFileDetails(details);
+                        const page = await fetchFilePage(configHost, node.path, 0);
+                        setFileDetails(page);
                         setExpanded(true);
                     } catch (err) {
                         console.error('Error fetching file:', err);
@@ -137,9 +231,35 @@ function FileNode({ node, configHost, level = 0 }) {
                     setExpanded(true);
                 }
             }
+        } else if (expanded) {
+            setExpanded(false);
+        } else if (children === null) {
+            // List the directory the first time it is expanded
+            setLoadingDetails(true);
+            try {
+                const listing = await fetchDirectory(configHost, node.path);
+                setChildren(listing.root.children);
+                setExpanded(true);
+            } catch (err) {
+                console.error('Error fetching directory:', err);
+            } finally {
+                setLoadingDetails(false);
+            }
         } else {
-            // Toggle directory expansion
-            setExpanded(!expanded);
+            setExpanded(true);
+        }
+    };
+
+    // Append the next page of a large file
+    const loadMore = async () => {
+        setLoadingDetails(true);
+        try {
+            const page = await fetchFilePage(configHost, node.path, details.nextOffset);
+            setFileDetails({ ...page, content: details.content + page.content });
+        } catch (err) {
+            console.error('Error fetching file:', err);
+        } finally {
+            setLoadingDetails(false);
         }
     };
 
@@ -172,9 +292,20 @@ function FileNode({ node, configHost, level = 0 }) {
             {/* Show content only for non-binary files */}
             {node.isFile && expanded && details && (
                     details.content ? (
-                        <pre className="bg-gray-900 p-2 mt-1 mb-2 text-xs overflow-x-auto rounded border border-gray-700">
-                            {details.content}
-                        </pre>
+                        <div>
+                            <pre className="bg-gray-900 p-2 mt-1 mb-2 text-xs overflow-x-auto rounded border border-gray-700">
+                                {details.content}
+                            </pre>
+                            {details.truncated && (
+                                <button
+                                    onClick={loadMore}
+                                    disabled={loadingDetails}
+                                    className="bg-gray-700 hover:bg-gray-600 text-white px-2 py-1 mb-2 rounded text-xs"
+                                >
+                                    Load more ({details.nextOffset}{details.size ? ` of ${details.size}` : ''} bytes shown)
+                                </button>
+                            )}
+                        </div>
                     ) : (
                         <p className="text-gray-400 text-sm p-2">No content available</p>
                     )
@@ -182,9 +313,9 @@ function FileNode({ node, configHost, level = 0 }) {
             }
             
             {/* Show directory children if expanded */}
-            {!node.isFile && expanded && node.children && (
+            {!node.isFile && expanded && children && (
                 <div className="border-l border-gray-600 ml-2">
-                    {Object.entries(node.children)
+                    {Object.entries(children)
                         .sort(([, a], [, b]) => {
                             // Sort: directories first, then files, alphabetically within each group
                             if (a.isFile === b.isFile) {
@@ -7,7 +7,7 @@ import TabView from "../tabs/tab-view";
 import DynamicEnhancedGrid from "../simple-grid/dynamic-enhanced-grid";
 import { createReactHeaderClickHandler } from "../../utils/query-editor-integration";
 
-function EnhancedQueryResult({containerUrl, vispanaClient, query, showResults, schema, refreshQuery, defaultPageSize = 15, useTabs = false, onHeaderClick = null}) {
+function EnhancedQueryResult({queryTarget, vispanaClient, query, showResults, schema, refreshQuery, defaultPageSize = 15, useTabs = false, onHeaderClick = null}) {
 
     // Calculate optimal values ONCE during component creation (synchronous)
     const calculateOptimalValues = () => {
@@ -79,7 +79,7 @@ function EnhancedQueryResult({containerUrl, vispanaClient, query, showResults, s
         try {
             const queryObject = JSON.parse(query)
             const response = await vispanaClient
-              .postQuery(containerUrl, queryObject, offset, perPage)
+              .postQuery(queryTarget, queryObject, offset, perPage)
               .then(response => {
                   if (response.status && response.status !== 200) {
                       const error = response.message ? response.message : "Failed to execute the query"
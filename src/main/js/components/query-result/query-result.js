@@ -6,7 +6,7 @@ import VispanaError from "../../routes/error/vispana-error";
 import TabView from "../tabs/tab-view";
 import DynamicEnhancedGrid from "../simple-grid/dynamic-enhanced-grid";
 
-function QueryResult({containerUrl, vispanaClient, query, showResults, schema, refreshQuery, defaultPageSize = 15, useTabs = false}) {
+function QueryResult({queryTarget, vispanaClient, query, showResults, schema, refreshQuery, defaultPageSize = 15, useTabs = false}) {
 
     // Calculate optimal values ONCE during component creation (synchronous)
     const calculateOptimalValues = () => {
@@ -78,7 +78,7 @@ function QueryResult({containerUrl, vispanaClient, query, showResults, schema, r
         try {
             const queryObject = JSON.parse(query)
             const response = await vispanaClient
-              .postQuery(containerUrl, queryObject, offset, perPage)
+              .postQuery(queryTarget, queryObject, offset, perPage)
               .then(response => {
                   if (response.status && response.status !== 200) {
                       const error = response.message ? response.message : "Failed to execute the query"
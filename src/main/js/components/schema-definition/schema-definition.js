@@ -30,35 +30,63 @@ function RankProfileItem({ profileName, profileContent }) {
     );
 }
 
-// Component for displaying rank profiles
-function SchemaDefinition({ schemaContent, rankProfiles }) {
+// Component for displaying rank profiles, which are only fetched once expanded
+function SchemaDefinition({ configHost, schemaName, schemaContent }) {
     const [rankProfilesExpanded, setRankProfilesExpanded] = useState(false);
-    
+    const [rankProfiles, setRankProfiles] = useState(null);
+    const [loading, setLoading] = useState(false);
+    const [error, setError] = useState(null);
+
+    const toggleRankProfiles = async () => {
+        const expand = !rankProfilesExpanded;
+        setRankProfilesExpanded(expand);
+        if (!expand || rankProfiles || loading) {
+            return;
+        }
+        setLoading(true);
+        setError(null);
+        try {
+            const response = await fetchRankProfiles(configHost, schemaName);
+            setRankProfiles(response.rankProfiles);
+        } catch (err) {
+            console.error('Error fetching rank profiles:', err);
+            setError(err.message);
+        } finally {
+            setLoading(false);
+        }
+    };
+
+    const count = rankProfiles ? ` (${Object.keys(rankProfiles).length})` : '';
+
     return (
         <div className="mb-4">
             {/* Rank Profiles Section */}
-            {rankProfiles && Object.keys(rankProfiles).length > 0 && (
-                <div className="mb-6">
-                    <div 
-                        className="cursor-pointer flex items-center text-sm text-gray-300 hover:text-white transition-colors duration-200 mb-3"
-                        onClick={() => setRankProfilesExpanded(!rankProfilesExpanded)}
-                    >
-                        <i className={`fas fa-caret-${rankProfilesExpanded ? 'down' : 'right'} text-xs mr-2`}></i>
-                        <i className="fas fa-cogs text-xs mr-2"></i>
-                        <span className="font-medium">Rank Profiles ({Object.keys(rankProfiles).length})</span>
-                    </div>
-                    {rankProfilesExpanded && (
-                        <div className="ml-6 space-y-2">
-                            {Object.entries(rankProfiles).map(([profileName, profileContent]) => (
-                                <RankProfileItem 
-                                    profileName={profileName} 
-                                    profileContent={profileContent} 
-                                />
-                            ))}
-                        </div>
-                    )}
+            <div className="mb-6">
+                <div 
+                    className="cursor-pointer flex items-center text-sm text-gray-300 hover:text-white transition-colors duration-200 mb-3"
+                    onClick={toggleRankProfiles}
+                >
+                    <i className={`fas fa-caret-${rankProfilesExpanded ? 'down' : 'right'} text-xs mr-2`}></i>
+                    <i className="fas fa-cogs text-xs mr-2"></i>
+                    <span className="font-medium">Rank Profiles{count}</span>
                 </div>
-            )}
+                {rankProfilesExpanded && (
+                    <div className="ml-6 space-y-2">
+                        {loading && <div className="text-sm text-gray-400">Loading rank profiles...</div>}
+                        {error && <div className="text-sm text-red-400">Failed to load rank profiles: {error}</div>}
+                        {rankProfiles && Object.keys(rankProfiles).length === 0 && (
+                            <div className="text-sm text-gray-400">No rank profile files</div>
+                        )}
+                        {rankProfiles && Object.entries(rankProfiles).map(([profileName, profileContent]) => (
+                            <RankProfileItem 
+                                key={profileName}
+                                profileName={profileName} 
+                                profileContent={profileContent} 
+                            />
+                        ))}
+                    </div>
+                )}
+            </div>
 
             {/* Schema Content */}
             <div className="border-t border-gray-600 pt-4">
@@ -71,4 +99,18 @@ function SchemaDefinition({ schemaContent, rankProfiles }) {
     );
 }
 
+/**
+ * Fetches the rank profiles of a schema; the server caches them per deployed generation
+ */
+async function fetchRankProfiles(configHost, schemaName) {
+    const params = new URLSearchParams({ config_host: configHost, schema: schemaName });
+    const response = await fetch(`/api/schema/rank-profiles?${params}`);
+
+    if (!response.ok) {
+        throw new Error(`Failed to load rank profiles: ${response.status}`);
+    }
+
+    return response.json();
+}
+
 export default SchemaDefinition;
\ No newline at end of file
@@ -20,7 +20,7 @@ function AppPackage() {
                         "tabName": `${data.schema.schemaName}.sd`,
                         "contentType": "schema-definition",
                         "schemaContent": data.schema.schemaContent,
-                        "rankProfiles": data.schema.schemaRankProfiles
+                        "schemaName": data.schema.schemaName
                     };
                 })
         })
@@ -111,8 +111,9 @@ function AppPackage() {
                             </div>
                         ) : tab.contentType === "schema-definition" ? (
                             <SchemaDefinition
+                                configHost={vespaState.configHost}
+                                schemaName={tab.schemaName}
                                 schemaContent={tab.schemaContent}
-                                rankProfiles={tab.rankProfiles}
                             />
                         ) : (
                             <SyntaxHighlighter language={tab.contentType} style={androidstudio}>
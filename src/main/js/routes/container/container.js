@@ -78,9 +78,12 @@ function Container() {
         .container
         .clusters
         .map(cluster => {
+            const saturation = (vespaState.saturation || []).find(pools => pools.cluster === cluster.name)
             return {
                 "header": cluster.name,
                 "content":
+                    <>
+                    {saturation && renderSaturation(saturation)}
                     <div className="grid-content-area">
                         <EnhancedGrid 
                             header="Container nodes"
@@ -95,10 +98,47 @@ function Container() {
                             gridHeight={gridHeight}
                         />
                     </div>
+                    </>
             }
         })
 
     return (<TabView tabs={tabs}></TabView>);
+
+    function renderSaturation(saturation) {
+        const percent = ratio => `${Math.round(ratio * 100)}%`
+        // a pool or queue this full leaves no room for a burst
+        const color = ratio => ratio >= 0.9 ? "text-red-400" : "text-gray-400"
+        // pools are not added up, so name the one that is closest to starving
+        const busiest = saturation.nodes
+            .filter(node => node.peakUtilization > 0)
+            .reduce((worst, node) => worst && worst.peakUtilization >= node.peakUtilization ? worst : node, null)
+        const poolName = node => !node.httpPool || (node.worstPool && node.worstPool.threads.utilization >= node.httpPool.utilization)
+            ? node.worstPool.name
+            : "HTTP pool"
+        return <div className="flex-auto mt-6 mb-6">
+            <div style={{minWidth: "200px"}}>
+                <div className="w-full max-w-sm text-center bg-standout-blue rounded-md shadow-md border border-1 "
+                     style={{padding: "1.0rem", borderColor: "#26324a"}}>
+                    <div className="text-yellow-400">
+                        Thread pools
+                    </div>
+                    <p className="mt-2 text-xs text-gray-200">
+                        <span>Busiest pool: </span> <span className={color(saturation.peakUtilization)}>{percent(saturation.peakUtilization)}</span>
+                        {' | '}
+                        <span>Fullest queue: </span> <span className={color(saturation.peakQueueFill)}>{percent(saturation.peakQueueFill)}</span>
+                        {' | '}
+                        <span>Rejected: </span>
+                        <span className={saturation.rejectedPerSecond > 0 ? "text-red-400" : "text-gray-400"}>
+                            {saturation.rejectedPerSecond == null ? '-' : saturation.rejectedPerSecond.toFixed(1)}/s
+                        </span>
+                    </p>
+                    {busiest && <p className="mt-2 text-xs text-gray-200">
+                        <span>Busiest: </span> <span className={color(busiest.peakUtilization)}>{poolName(busiest)} on {busiest.hostname}</span>
+                    </p>}
+                </div>
+            </div>
+        </div>;
+    }
 }
 
 export default Container;
@@ -60,22 +60,35 @@ function Content() {
     const tabs = vespaState
         .content
         .clusters
-        .map(cluster => (
-            {
+        .map(cluster => {
+            // rates appear once the cluster has been seen in two metrics snapshots
+            const throughput = (vespaState.throughput || []).find(rates => rates.cluster === cluster.name)
+            return {
                 "header": cluster.name,
                 "content":
                     <>
-                        {renderOverview(cluster.overview)}
-                        {renderSchemas(cluster.contentData)}
+                        {renderOverview(cluster.overview, throughput && throughput.total)}
+                        {renderSchemas(cluster.contentData, throughput && throughput.schemas)}
                         {renderGrid(cluster.nodes)}
                     </>
             }
-        ))
+        })
 
     return (<TabView tabs={tabs}></TabView>);
 
 
-    function renderOverview(overview) {
+    function renderRates(rates) {
+        const formatter = Intl.NumberFormat('en', { notation: 'compact', maximumFractionDigits: 1 });
+        return <p className="mt-2 text-xs text-gray-200">
+            <span>Feed: </span> <span className="text-gray-400">{formatter.format(rates.feedOpsPerSecond)} ops/s</span>
+            {' | '}
+            <span>Queries: </span> <span className="text-gray-400">{formatter.format(rates.queriesPerSecond)}/s</span>
+            {' | '}
+            <span>Doc growth: </span> <span className="text-gray-400">{rates.documentGrowthPerSecond == null ? '-' : `${formatter.format(rates.documentGrowthPerSecond)}/s`}</span>
+        </p>;
+    }
+
+    function renderOverview(overview, rates) {
         return <div className="flex-auto mt-6">
             <div style={{minWidth: "200px"}}>
                 <div className="w-full max-w-sm text-center bg-standout-blue rounded-md shadow-md border border-1 "
@@ -93,6 +106,7 @@ function Content() {
                             {' | '}
                             <span>Not Yet Converged: </span> <span className="text-gray-400">{overview.notYetConverged}</span>
                         </p>
+                        {rates && renderRates(rates)}
                         <p className="mt-2 text-xs">
                             <span className="font-extrabold text-yellow-400">Groups</span>
                             <div>
@@ -117,7 +131,7 @@ function Content() {
         </div>;
     }
 
-    function renderSchemas(contentData) {
+    function renderSchemas(contentData, schemaRates) {
         const formatter = Intl.NumberFormat('en', { notation: 'compact' });
 
         return (
@@ -170,6 +184,7 @@ function Content() {
                                                     {formatter.format(data.maxDocPerGroup)}
                                                 </button>
                                             </p>
+                                            {schemaRates && schemaRates[data.schema.schemaName] && renderRates(schemaRates[data.schema.schemaName])}
                                         </div>
                                     </div>
                                 </div>
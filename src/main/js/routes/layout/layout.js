@@ -199,6 +199,8 @@ export async function loader({request}) {
                     // either use the route from the url or the first node in the cluster
                     if (url.searchParams.has(routingSearchParamName(containerName))) {
                         cluster.route = url.searchParams.get(routingSearchParamName(containerName))
+                        // e.g. a load balancer or k8s service, for containers Vispana cannot reach directly
+                        cluster.routeOverridden = true
                     } else {
                         const nodeHost = cluster.nodes[0].host
                         cluster.route = 'http://' + nodeHost.hostname + ":" + nodeHost.port
@@ -6,7 +6,7 @@ import Editor from "../../components/editor/editor-hybrid";
 import VispanaApiClient from "../../client/vispana-api-client";
 import { createReactHeaderClickHandler } from "../../utils/query-editor-integration";
 
-function EnhancedQuery({containerUrl, schema, searchParams, setSearchParams, vespaState}) {
+function EnhancedQuery({queryTarget, schema, searchParams, setSearchParams, vespaState}) {
     const vispanaClient = new VispanaApiClient()
     const [query, setQuery] = useState(defaultQuery)
     const [showResults, setShowResults] = useState(false)
@@ -37,7 +37,7 @@ function EnhancedQuery({containerUrl, schema, searchParams, setSearchParams, ves
         // and save it to local storage
         const itemToHistory = {
             timestamp: new Date().toISOString(),
-            vespaInstance: containerUrl,
+            vespaInstance: queryTarget ? queryTarget.cluster : "",
             query: query
         }
         localStorage.setItem(uuidv4(), JSON.stringify(itemToHistory))
@@ -125,7 +125,7 @@ function EnhancedQuery({containerUrl, schema, searchParams, setSearchParams, ves
             <EnhancedQueryResult key="query"
                          query={query}
                          defaultPageSize={10}
-                         containerUrl={containerUrl}
+                         queryTarget={queryTarget}
                          schema={schema}
                          render={showResults}
                          refreshQuery={refreshQuery}
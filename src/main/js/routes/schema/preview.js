@@ -5,7 +5,7 @@ import VispanaApiClient from "../../client/vispana-api-client";
 import Loading from "../loading/loading";
 import VispanaError from "../error/vispana-error";
 
-function Preview({ containerUrl, schema }) {
+function Preview({ queryTarget, schema }) {
     const vispanaClient = new VispanaApiClient();
 
     // Calculate optimal values ONCE during component creation (synchronous)
@@ -78,11 +78,11 @@ function Preview({ containerUrl, schema }) {
                 return;
             }
 
-            if (!containerUrl) {
-                console.log('No container URL provided');
+            if (!queryTarget) {
+                console.log('No container cluster to query');
                 setError({
                     hasError: true,
-                    error: "Container URL not available"
+                    error: "No container cluster available to query"
                 });
                 setLoading(false);
                 return;
@@ -99,13 +99,14 @@ function Preview({ containerUrl, schema }) {
                 console.log('Executing query:', defaultQuery);
                 console.log('Pagination params - offset:', offset, 'perPage:', perPage);
 
-                // Add timeout to prevent hanging
-                const queryPromise = vispanaClient.postQuery(containerUrl, defaultQuery, offset, perPage);
-                const timeoutPromise = new Promise((_, reject) => 
-                    setTimeout(() => reject(new Error('Query timeout after 10 seconds')), 10000)
-                );
+                // Vispana enforces the deadline on the query to Vespa; aborting a bit later disconnects
+                // from Vispana, which then cancels the upstream query instead of leaving it running
+                const queryTimeoutMs = 10000;
+                const abortController = new AbortController();
+                const abortTimer = setTimeout(() => abortController.abort(), queryTimeoutMs + 2000);
 
-                const response = await Promise.race([queryPromise, timeoutPromise])
+                const response = await vispanaClient
+                    .postQuery(queryTarget, defaultQuery, offset, perPage, queryTimeoutMs, abortController.signal)
                     .then(response => {
                         console.log('Query response:', response);
                         if (response.status && response.status !== 200) {
@@ -117,8 +118,12 @@ function Preview({ containerUrl, schema }) {
                     })
                     .catch(error => {
                         console.error('Query error:', error);
-                        return { success: undefined, error: error.message }
-                    });
+                        const message = error.name === 'AbortError'
+                            ? `Query timeout after ${queryTimeoutMs / 1000} seconds`
+                            : error.message
+                        return { success: undefined, error: message }
+                    })
+                    .finally(() => clearTimeout(abortTimer));
 
                 console.log('Processed response:', response);
 
@@ -169,16 +174,16 @@ function Preview({ containerUrl, schema }) {
         if (perPage > 0) {
             fetchPreviewData();
         }
-    }, [schema, containerUrl, offset, perPage]); // Simplified dependencies
+    }, [schema, queryTarget, offset, perPage]); // Simplified dependencies
 
-    // Reset pagination when schema or containerUrl changes
+    // Reset pagination when schema or queryTarget changes
     useEffect(() => {
         if (page !== 1 || offset !== 0) {
             setPage(1);
             setOffset(0);
         }
         setError({ hasError: false, error: "" });
-    }, [schema, containerUrl]);
+    }, [schema, queryTarget]);
 
     // Process query results into grid format
     const processResult = (result) => {
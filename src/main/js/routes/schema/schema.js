@@ -1,4 +1,4 @@
-import React, {useState} from 'react'
+import React, {useMemo, useState} from 'react'
 import {useOutletContext, useParams, useSearchParams} from "react-router-dom";
 import TabView from "../../components/tabs/tab-view";
 import Preview from "./preview";
@@ -10,7 +10,8 @@ import {androidstudio} from "react-syntax-highlighter/dist/cjs/styles/hljs";
 function Schema() {
     const vespaState = useOutletContext()
     const params = useParams()
-    const containerUrl = getQueryableContainer(vespaState)
+    // memoized so the preview does not re-run its query on every render
+    const queryTarget = useMemo(() => getQueryTarget(vespaState), [vespaState])
     const schema = params.schema
     const schemaDetails = findSchemaDetails(vespaState, schema)
     const [tabIndex, setTabIndex] = useState(0);
@@ -21,7 +22,7 @@ function Schema() {
         <TabView tabs={[
             {
                 "header": "Query",
-                "content": <Query containerUrl={containerUrl} schema={schema} searchParams={searchParams} setSearchParams={setSearchParams} vespaState={vespaState}/>
+                "content": <Query queryTarget={queryTarget} schema={schema} searchParams={searchParams} setSearchParams={setSearchParams} vespaState={vespaState}/>
             },
             {
                 "header": "Query history",
@@ -29,7 +30,7 @@ function Schema() {
             },
             {
                 "header": "Data preview",
-                "content": <Preview containerUrl={containerUrl} schema={schema}/>
+                "content": <Preview queryTarget={queryTarget} schema={schema}/>
             },
             {
                 "header": "Schema",
@@ -40,17 +41,25 @@ function Schema() {
         ]} currentTab={tabIndex} tabSelector={setTabIndex} />
     </>)
 
-    /* finds a valid container to issue the query */
-    function getQueryableContainer(vespaState) {
+    /*
+     * finds a container cluster to issue the query to; Vispana spreads it over its healthy nodes,
+     * unless a route was configured for the cluster, which then receives every query
+     */
+    function getQueryTarget(vespaState) {
         const clusters = vespaState
             .container
             .clusters
             .filter(cluster => cluster.canSearch === true)
 
         if (clusters && clusters.length > 0 && clusters[0].nodes && clusters[0].nodes.length > 0) {
-            return clusters[0].route
+            const cluster = clusters[0]
+            return {
+                configHost: vespaState.configHost,
+                cluster: cluster.name,
+                route: cluster.routeOverridden ? cluster.route : null
+            }
         } else {
-            return ""
+            return null
         }
     }
 
@@ -0,0 +1,47 @@
+package com.vispana.simulator;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How a simulated endpoint responds: after {@code latency} plus a uniformly random share of {@code
+ * jitter}, and with {@code failureStatus} for a {@code failureRate} fraction of requests.
+ */
+public record EndpointBehavior(
+    Duration latency, Duration jitter, double failureRate, int failureStatus) {
+
+  public static final EndpointBehavior IMMEDIATE =
+      new EndpointBehavior(Duration.ZERO, Duration.ZERO, 0, 503);
+
+  public EndpointBehavior {
+    if (failureRate < 0 || failureRate > 1) {
+      throw new IllegalArgumentException("Failure rate must be within [0, 1]: " + failureRate);
+    }
+    latency = latency == null ? Duration.ZERO : latency;
+    jitter = jitter == null ? Duration.ZERO : jitter;
+  }
+
+  public EndpointBehavior withLatency(Duration latency) {
+    return new EndpointBehavior(latency, jitter, failureRate, failureStatus);
+  }
+
+  public EndpointBehavior withJitter(Duration jitter) {
+    return new EndpointBehavior(latency, jitter, failureRate, failureStatus);
+  }
+
+  public EndpointBehavior withFailureRate(double failureRate) {
+    return new EndpointBehavior(latency, jitter, failureRate, failureStatus);
+  }
+
+  /** The delay for one request. */
+  Duration nextDelay() {
+    if (jitter.isZero()) {
+      return latency;
+    }
+    return latency.plusNanos(ThreadLocalRandom.current().nextLong(jitter.toNanos() + 1));
+  }
+
+  boolean nextFails() {
+    return failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate;
+  }
+}
@@ -0,0 +1,34 @@
+package com.vispana.simulator;
+
+/** The groups of Vespa endpoints the simulator serves; each can be given its own behaviour. */
+public enum SimulatedEndpoint {
+  /** Config API: /config/v1 and /config/v2 */
+  CONFIG,
+  /** Application API: /application/v2, including the application package content */
+  APPLICATION,
+  /** Metrics proxy: /metrics/v2 */
+  METRICS,
+  /** Search container: /search/ */
+  SEARCH,
+  /** Document API: /document/v1 */
+  DOCUMENT;
+
+  static SimulatedEndpoint of(String path) {
+    if (path.startsWith("/config/")) {
+      return CONFIG;
+    }
+    if (path.startsWith("/application/")) {
+      return APPLICATION;
+    }
+    if (path.startsWith("/metrics/")) {
+      return METRICS;
+    }
+    if (path.startsWith("/search/")) {
+      return SEARCH;
+    }
+    if (path.startsWith("/document/")) {
+      return DOCUMENT;
+    }
+    return null;
+  }
+}
@@ -0,0 +1,88 @@
+package com.vispana.simulator;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Runs a {@link VespaSimulator} until killed, for pointing a local Vispana at a deployment of any
+ * size. Options:
+ *
+ * <pre>
+ *   --port 8080                    port to serve on, 0 for any free one (default 8080)
+ *   --bind 0.0.0.0                 address to bind to (default loopback)
+ *   --hosts 400                    generate a deployment of about this many hosts (default 50)
+ *   --topology topology.json       or read it from a file, see {@link SimulatorTopology}
+ *   --latency metrics=200ms        fixed latency of an endpoint group
+ *   --jitter metrics=100ms         random extra latency of an endpoint group
+ *   --failure-rate config=0.05     share of requests an endpoint group fails with 503
+ * </pre>
+ */
+public class SimulatorMain {
+
+  public static void main(String[] args) throws InterruptedException, UnknownHostException {
+    int port = 8080;
+    InetAddress bind = InetAddress.getLoopbackAddress();
+    SimulatorTopology topology = SimulatorTopology.ofHosts(50);
+    Map<SimulatedEndpoint, EndpointBehavior> behaviors = new EnumMap<>(SimulatedEndpoint.class);
+
+    for (int i = 0; i < args.length; i++) {
+      String option = args[i];
+      if (i + 1 >= args.length) {
+        throw new IllegalArgumentException("Missing value for " + option);
+      }
+      String value = args[++i];
+      switch (option) {
+        case "--port" -> port = Integer.parseInt(value);
+        case "--bind" -> bind = InetAddress.getByName(value);
+        case "--hosts" -> topology = SimulatorTopology.ofHosts(Integer.parseInt(value));
+        case "--topology" -> topology = SimulatorTopology.fromJson(Path.of(value));
+        case "--latency", "--jitter", "--failure-rate" -> {
+          int equals = value.indexOf('=');
+          if (equals < 0) {
+            throw new IllegalArgumentException(option + " takes endpoint=value: " + value);
+          }
+          var endpoint =
+              SimulatedEndpoint.valueOf(value.substring(0, equals).toUpperCase(Locale.ROOT));
+          String setting = value.substring(equals + 1);
+          var behavior = behaviors.getOrDefault(endpoint, EndpointBehavior.IMMEDIATE);
+          behaviors.put(
+              endpoint,
+              switch (option) {
+                case "--latency" -> behavior.withLatency(duration(setting));
+                case "--jitter" -> behavior.withJitter(duration(setting));
+                default -> behavior.withFailureRate(Double.parseDouble(setting));
+              });
+        }
+        default -> throw new IllegalArgumentException("Unknown option " + option);
+      }
+    }
+
+    var simulator = new VespaSimulator(topology);
+    behaviors.forEach(simulator::behave);
+    simulator.start(bind, port);
+    Runtime.getRuntime().addShutdownHook(new Thread(simulator::close));
+    System.out.println("Config host: " + simulator.configHost());
+    System.out.println("Container host: " + simulator.containerHost());
+    // like a metrics proxy, which takes a snapshot a minute
+    while (true) {
+      Thread.sleep(VespaSimulator.METRICS_PERIOD);
+      simulator.advanceMetrics();
+    }
+  }
+
+  /** Durations as {@code 250ms} or {@code 2s}. */
+  static Duration duration(String value) {
+    if (value.endsWith("ms")) {
+      return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+    }
+    if (value.endsWith("s")) {
+      return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+    }
+    return Duration.ofMillis(Long.parseLong(value));
+  }
+}
@@ -0,0 +1,124 @@
+package com.vispana.simulator;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * The deployment a {@link VespaSimulator} pretends to be: config servers, container clusters and
+ * content clusters with their groups and schemas. Read from JSON, e.g.
+ *
+ * <pre>{@code
+ * {
+ *   "configServers": 3,
+ *   "containerClusters": [{"name": "default", "nodes": 4}],
+ *   "contentClusters": [
+ *     {"name": "music", "groups": 2, "nodesPerGroup": 3, "schemas": ["music", "album"]}
+ *   ]
+ * }
+ * }</pre>
+ */
+public record SimulatorTopology(
+    int configServers,
+    List<ContainerCluster> containerClusters,
+    List<ContentCluster> contentClusters,
+    String vespaVersion,
+    long documentsPerSchema) {
+
+  public static final String DEFAULT_VESPA_VERSION = "8.400.0";
+  private static final int GROUP_SIZE = 10;
+
+  private static final ObjectMapper MAPPER =
+      new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+  public record ContainerCluster(String name, int nodes) {}
+
+  public record ContentCluster(
+      String name, int groups, int nodesPerGroup, int redundancy, List<String> schemas) {
+
+    public ContentCluster {
+      if (groups < 1 || nodesPerGroup < 1) {
+        throw new IllegalArgumentException("Content cluster " + name + " needs nodes");
+      }
+      redundancy = redundancy > 0 ? redundancy : Math.min(2, groups * nodesPerGroup);
+      schemas = schemas == null || schemas.isEmpty() ? List.of(name) : List.copyOf(schemas);
+    }
+
+    public int nodes() {
+      return groups * nodesPerGroup;
+    }
+  }
+
+  public SimulatorTopology {
+    if (configServers < 1) {
+      configServers = 1;
+    }
+    containerClusters = containerClusters == null ? List.of() : List.copyOf(containerClusters);
+    contentClusters = contentClusters == null ? List.of() : List.copyOf(contentClusters);
+    if (contentClusters.isEmpty()) {
+      throw new IllegalArgumentException("A topology needs at least one content cluster");
+    }
+    vespaVersion = vespaVersion == null ? DEFAULT_VESPA_VERSION : vespaVersion;
+    documentsPerSchema = documentsPerSchema > 0 ? documentsPerSchema : 10_000;
+  }
+
+  /**
+   * A deployment of about {@code hosts} hosts: three config servers, a fifth of the rest as
+   * containers and the others as content nodes in groups of ten, holding two schemas.
+   */
+  public static SimulatorTopology ofHosts(int hosts) {
+    if (hosts < 5) {
+      throw new IllegalArgumentException("A simulated deployment needs at least 5 hosts: " + hosts);
+    }
+    int rest = hosts - 3;
+    int containers = Math.max(1, rest / 5);
+    int contentNodes = rest - containers;
+    int groups = Math.max(1, contentNodes / GROUP_SIZE);
+    return new SimulatorTopology(
+        3,
+        List.of(new ContainerCluster("default", containers)),
+        List.of(
+            new ContentCluster(
+                "content", groups, contentNodes / groups, 2, List.of("music", "books"))),
+        DEFAULT_VESPA_VERSION,
+        0);
+  }
+
+  public static SimulatorTopology fromJson(Path file) {
+    try {
+      return MAPPER.readValue(file.toFile(), SimulatorTopology.class);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to read topology " + file, e);
+    }
+  }
+
+  public int hosts() {
+    return configServers
+        + containerClusters.stream().mapToInt(ContainerCluster::nodes).sum()
+        + contentClusters.stream().mapToInt(ContentCluster::nodes).sum();
+  }
+
+  public List<String> configHostNames() {
+    return hostNames("config", configServers);
+  }
+
+  public List<String> containerHostNames(ContainerCluster cluster) {
+    return hostNames(cluster.name() + "-container", cluster.nodes());
+  }
+
+  public List<String> contentHostNames(ContentCluster cluster) {
+    return hostNames(cluster.name() + "-content", cluster.nodes());
+  }
+
+  static String alias(String hostName) {
+    return hostName.substring(0, hostName.indexOf('.'));
+  }
+
+  private static List<String> hostNames(String prefix, int count) {
+    return IntStream.range(0, count).mapToObj(i -> prefix + "-" + i + ".vespa.sim").toList();
+  }
+}
@@ -0,0 +1,288 @@
+package com.vispana.simulator;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the class data sharing archive the server image starts from. Starts Vispana from its thin
+ * jar with {@code -XX:ArchiveClassesAtExit}, points it at a {@link VespaSimulator}, opens every
+ * page once so the classes behind the first requests are archived too, and stops it. The host names
+ * of the simulated containers are resolved to loopback, so queries routed over a container cluster
+ * reach the simulator. Then optionally starts it a few times with and without the archive and
+ * compares. Options:
+ *
+ * <pre>
+ *   --jar target/cds/vispana.jar      the thin jar to start, with its dependencies in lib/
+ *   --archive target/cds/vispana.jsa  the archive to write
+ *   --hosts 50                        size of the simulated deployment (default 50)
+ *   --measure 3                       starts to measure with and without the archive (default 0)
+ * </pre>
+ *
+ * The archive only matches the JVM that wrote it and the exact class path, so it has to be written
+ * with the JVM and the jar path the server is started with.
+ */
+public class StartupTraining {
+
+  private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(3);
+  private static final Duration MIRROR_TIMEOUT = Duration.ofMinutes(1);
+
+  private final Path jar;
+  private final VespaSimulator simulator;
+  private final HttpClient httpClient =
+      HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+  record Startup(Duration ready, Duration firstOverview, Duration secondOverview) {}
+
+  StartupTraining(Path jar, VespaSimulator simulator) {
+    this.jar = jar;
+    this.simulator = simulator;
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    Path jar = null;
+    Path archive = null;
+    int hosts = 50;
+    int measure = 0;
+    for (int i = 0; i < args.length; i++) {
+      String option = args[i];
+      if (i + 1 >= args.length) {
+        throw new IllegalArgumentException("Missing value for " + option);
+      }
+      String value = args[++i];
+      switch (option) {
+        case "--jar" -> jar = Path.of(value);
+        case "--archive" -> archive = Path.of(value);
+        case "--hosts" -> hosts = Integer.parseInt(value);
+        case "--measure" -> measure = Integer.parseInt(value);
+        default -> throw new IllegalArgumentException("Unknown option " + option);
+      }
+    }
+    if (jar == null || archive == null) {
+      throw new IllegalArgumentException("Usage: StartupTraining --jar file --archive file");
+    }
+
+    try (var simulator = new VespaSimulator(SimulatorTopology.ofHosts(hosts)).start()) {
+      var training = new StartupTraining(jar, simulator);
+      Files.deleteIfExists(archive);
+      var trained = training.start(List.of("-XX:ArchiveClassesAtExit=" + archive), true);
+      if (!Files.exists(archive)) {
+        throw new IllegalStateException("No archive was written to " + archive);
+      }
+      System.out.printf(
+          "Wrote %s (%d KB) after a %d ms start%n",
+          archive, Files.size(archive) / 1024, trained.ready().toMillis());
+
+      if (measure > 0) {
+        var without = new ArrayList<Startup>();
+        var with = new ArrayList<Startup>();
+        for (int i = 0; i < measure; i++) {
+          without.add(training.start(List.of(), false));
+          with.add(training.start(List.of("-XX:SharedArchiveFile=" + archive), false));
+        }
+        System.out.printf(
+            "%n%-18s %12s %16s %17s%n",
+            "median of " + measure, "ready", "first overview", "second overview");
+        print("without archive", without);
+        print("with archive", with);
+      }
+    }
+  }
+
+  /**
+   * Starts Vispana with the given JVM options, waits until it is ready, times the first two
+   * overview requests and, when training, opens the other pages once before stopping it.
+   */
+  Startup start(List<String> jvmOptions, boolean exercise)
+      throws IOException, InterruptedException {
+    int port = freePort();
+    Path mirror = Files.createTempDirectory("vispana-training");
+    List<String> command = new ArrayList<>();
+    command.add(ProcessHandle.current().info().command().orElse("java"));
+    command.add("--enable-preview");
+    command.add("-Djdk.net.hosts.file=" + hostsFile());
+    command.addAll(jvmOptions);
+    command.addAll(
+        List.of(
+            "-jar",
+            jar.toString(),
+            "--server.port=" + port,
+            "--vispana.apppackage.mirror.cache-dir=" + mirror,
+            "--vispana.metrics.virtual-threads.enabled=false"));
+    Path log = jar.resolveSibling("training.log");
+    var process =
+        new ProcessBuilder(command)
+            .redirectErrorStream(true)
+            .redirectOutput(ProcessBuilder.Redirect.to(log.toFile()))
+            .start();
+    long started = System.nanoTime();
+    try {
+      awaitReady(process, port, log);
+      var ready = Duration.ofNanos(System.nanoTime() - started);
+      var first = timed(port, overview());
+      var second = timed(port, overview());
+      if (exercise) {
+        exercise(port);
+      }
+      return new Startup(ready, first, second);
+    } finally {
+      // a normal exit, so the JVM writes the archive
+      process.destroy();
+      if (!process.waitFor(1, TimeUnit.MINUTES)) {
+        process.destroyForcibly();
+      }
+    }
+  }
+
+  private void awaitReady(Process process, int port, Path log)
+      throws IOException, InterruptedException {
+    long deadline = System.nanoTime() + STARTUP_TIMEOUT.toNanos();
+    while (System.nanoTime() < deadline) {
+      if (!process.isAlive()) {
+        throw new IllegalStateException("Vispana exited while starting, see " + log);
+      }
+      try {
+        if (send(port, "/actuator/health").statusCode() == 200) {
+          return;
+        }
+      } catch (ConnectException e) {
+        // not listening yet
+      }
+      Thread.sleep(10);
+    }
+    throw new IllegalStateException("Vispana did not start within " + STARTUP_TIMEOUT);
+  }
+
+  /**
+   * Waits for the application package mirror, which starts in the background on the first package
+   * request: until it is complete, the endpoints that need it answer 503.
+   */
+  private void awaitMirror(int port, String path) throws IOException, InterruptedException {
+    long deadline = System.nanoTime() + MIRROR_TIMEOUT.toNanos();
+    while (System.nanoTime() < deadline) {
+      var response = send(port, path);
+      if (response.statusCode() != 503) {
+        check(path, response);
+        return;
+      }
+      Thread.sleep(50);
+    }
+    throw new IllegalStateException(
+        "The application package was not mirrored within " + MIRROR_TIMEOUT);
+  }
+
+  private void exercise(int port) throws IOException, InterruptedException {
+    String configHost = encode(simulator.configHost());
+    String schema = simulator.topology().contentClusters().getFirst().schemas().getFirst();
+    for (String path :
+        List.of(
+            "/",
+            "/api/schema/rank-profiles?config_host=" + configHost + "&schema=" + schema,
+            "/api/apppackage/tree?config_host=" + configHost,
+            "/api/apppackage/file?config_host=" + configHost + "&file_path=services.xml")) {
+      check(path, send(port, path));
+    }
+    awaitMirror(port, "/api/apppackage/changes?config_host=" + configHost);
+    for (String path :
+        List.of(
+            "/api/apppackage/search?config_host=" + configHost + "&q=field",
+            "/api/apppackage/download?config_host=" + configHost,
+            "/actuator/prometheus")) {
+      check(path, send(port, path));
+    }
+
+    String query = "{\"yql\":\"select * from " + schema + " where true\",\"hits\":15}";
+    check(
+        "/api/query",
+        send(port, "/api/query?container_host=" + encode(simulator.containerHost()), query));
+    String cluster = simulator.topology().containerClusters().getFirst().name();
+    check(
+        "/api/query/cluster",
+        send(
+            port,
+            "/api/query/cluster?config_host=" + configHost + "&cluster=" + encode(cluster),
+            query));
+  }
+
+  /** A hosts file resolving localhost and every simulated container to loopback. */
+  private Path hostsFile() throws IOException {
+    var lines = new ArrayList<String>();
+    lines.add("127.0.0.1 localhost");
+    for (var cluster : simulator.topology().containerClusters()) {
+      for (String host : simulator.topology().containerHostNames(cluster)) {
+        lines.add("127.0.0.1 " + host);
+      }
+    }
+    Path hosts = Files.createTempFile("vispana-training", ".hosts");
+    return Files.write(hosts, lines);
+  }
+
+  private String overview() {
+    return "/api/overview?config_host=" + encode(simulator.configHost());
+  }
+
+  private Duration timed(int port, String path) throws IOException, InterruptedException {
+    long started = System.nanoTime();
+    check(path, send(port, path));
+    return Duration.ofNanos(System.nanoTime() - started);
+  }
+
+  private HttpResponse<byte[]> send(int port, String path)
+      throws IOException, InterruptedException {
+    return send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).build());
+  }
+
+  private HttpResponse<byte[]> send(int port, String path, String json)
+      throws IOException, InterruptedException {
+    return send(
+        HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(json))
+            .build());
+  }
+
+  private HttpResponse<byte[]> send(HttpRequest request) throws IOException, InterruptedException {
+    return httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+  }
+
+  private static void check(String path, HttpResponse<byte[]> response) {
+    if (response.statusCode() != 200) {
+      throw new IllegalStateException(path + " answered " + response.statusCode());
+    }
+  }
+
+  private static void print(String label, List<Startup> startups) {
+    System.out.printf(
+        "%-18s %9d ms %13d ms %14d ms%n",
+        label,
+        median(startups.stream().map(Startup::ready).toList()),
+        median(startups.stream().map(Startup::firstOverview).toList()),
+        median(startups.stream().map(Startup::secondOverview).toList()));
+  }
+
+  private static long median(List<Duration> durations) {
+    return durations.stream().sorted().toList().get(durations.size() / 2).toMillis();
+  }
+
+  private static String encode(String value) {
+    return URLEncoder.encode(value, StandardCharsets.UTF_8);
+  }
+
+  private static int freePort() throws IOException {
+    try (var socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+}
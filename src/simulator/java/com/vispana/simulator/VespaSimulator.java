@@ -0,0 +1,818 @@
+package com.vispana.simulator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves the Vespa APIs Vispana talks to — config, application package, metrics, search and
+ * document — for a deployment generated from a {@link SimulatorTopology}, so the overview,
+ * application package and query paths can be exercised without a Vespa cluster.
+ *
+ * <p>Every host of the topology is served from this one port; host names are only labels. Static
+ * responses are rendered once up front. Each endpoint group can be given latency, jitter and a
+ * failure rate with {@link #behave}. The metrics stay the same until {@link #advanceMetrics} moves
+ * them on by a metrics proxy period, with the active documents grown by the feed rate.
+ */
+public class VespaSimulator implements AutoCloseable {
+
+  private static final Logger logger = LoggerFactory.getLogger(VespaSimulator.class);
+
+  static final String APP_PATH = "/application/v2/tenant/default/application/default";
+  private static final String APP_CONFIG = "/config/v2/tenant/default/application/default/";
+  private static final String CONTENT_PATH = APP_PATH + "/content/";
+  private static final String JSON = "application/json";
+  private static final String TEXT = "text/plain";
+  private static final Pattern FROM_SOURCES =
+      Pattern.compile("(?i)\\bfrom\\s+(?:sources\\s+)?([^;]+?)\\s+where\\b");
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  /** How often the metrics proxy of a real deployment takes a snapshot. */
+  public static final Duration METRICS_PERIOD = Duration.ofMinutes(1);
+
+  private static final long METRICS_EPOCH_SECONDS = 1_700_000_000L;
+  // how long the services have been running at the first metrics snapshot
+  private static final long UPTIME_SECONDS = 3_600;
+
+  private final SimulatorTopology topology;
+  private final long seed;
+  private final Map<SimulatedEndpoint, EndpointBehavior> behaviors = new ConcurrentHashMap<>();
+  private final Map<SimulatedEndpoint, LongAdder> requests = new EnumMap<>(SimulatedEndpoint.class);
+  private volatile byte[] metricsJson;
+  private volatile long metricsPeriods;
+  // relative path -> content; replaced as a whole on redeploy
+  private volatile Map<String, byte[]> packageFiles;
+  private volatile long generation = 1;
+  private final Map<String, Response> responses = new HashMap<>();
+  private HttpServer server;
+  private ExecutorService executor;
+  private String baseUrl;
+
+  private record Response(byte[] body, String contentType) {}
+
+  public VespaSimulator(SimulatorTopology topology) {
+    this(topology, 42);
+  }
+
+  public VespaSimulator(SimulatorTopology topology, long seed) {
+    this.topology = topology;
+    this.seed = seed;
+    for (SimulatedEndpoint endpoint : SimulatedEndpoint.values()) {
+      requests.put(endpoint, new LongAdder());
+    }
+    this.metricsJson = json(metrics(new Random(seed)));
+    this.packageFiles = packageFiles(new Random(seed), "");
+  }
+
+  /** Starts serving on an ephemeral loopback port. */
+  public VespaSimulator start() {
+    return start(InetAddress.getLoopbackAddress(), 0);
+  }
+
+  public VespaSimulator start(InetAddress address, int port) {
+    // without it the response headers and body wait out a delayed ACK, ~40ms per request
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+    try {
+      server = HttpServer.create(new InetSocketAddress(address, port), 0);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to bind the simulator to port " + port, e);
+    }
+    baseUrl = "http://localhost:" + server.getAddress().getPort();
+    renderConfig();
+    // platform threads: the server writes a response while holding a monitor, which pins a virtual
+    // thread, and a large response then waits on an in-process client that cannot be scheduled
+    executor = Executors.newCachedThreadPool();
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+    server.start();
+    logger.info(
+        "Simulating {} hosts of Vespa {} at {}",
+        topology.hosts(),
+        topology.vespaVersion(),
+        baseUrl);
+    return this;
+  }
+
+  /** Delays and failures for one group of endpoints; immediate and never failing by default. */
+  public VespaSimulator behave(SimulatedEndpoint endpoint, EndpointBehavior behavior) {
+    behaviors.put(endpoint, behavior);
+    return this;
+  }
+
+  /** Simulates a redeploy: bumps the generation and changes services.xml. */
+  public void redeploy() {
+    generation++;
+    packageFiles = packageFiles(new Random(seed), "<!-- generation " + generation + " -->\n");
+  }
+
+  public SimulatorTopology topology() {
+    return topology;
+  }
+
+  public long generation() {
+    return generation;
+  }
+
+  /** The config host as Vispana expects it, with a trailing slash. */
+  public String configHost() {
+    return baseUrl + "/";
+  }
+
+  public String appUrl() {
+    return baseUrl + APP_PATH;
+  }
+
+  /** Where the search and document APIs of every container are served. */
+  public String containerHost() {
+    return baseUrl;
+  }
+
+  public int port() {
+    return server.getAddress().getPort();
+  }
+
+  public long requestCount(SimulatedEndpoint endpoint) {
+    return requests.get(endpoint).sum();
+  }
+
+  /** The metrics proxy response, the same on every request until the metrics are advanced. */
+  public byte[] metricsJson() {
+    return metricsJson;
+  }
+
+  /**
+   * Moves the metrics on by one {@link #METRICS_PERIOD}: later service timestamps and more active
+   * documents, grown by the feed rate.
+   */
+  public void advanceMetrics() {
+    metricsPeriods++;
+    metricsJson = json(metrics(new Random(seed)));
+  }
+
+  /** A file of the application package, or null when there is no such file. */
+  public String packageFile(String path) {
+    byte[] content = packageFiles.get(path);
+    return content == null ? null : new String(content, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public void close() {
+    if (server != null) {
+      server.stop(0);
+      executor.shutdownNow();
+    }
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      // Vispana joins the config host and paths with and without a separating slash
+      String path = exchange.getRequestURI().getPath().replaceAll("/{2,}", "/");
+      var endpoint = SimulatedEndpoint.of(path);
+      if (endpoint == null) {
+        send(exchange, 404, new Response(new byte[0], TEXT));
+        return;
+      }
+      requests.get(endpoint).increment();
+
+      var behavior = behaviors.getOrDefault(endpoint, EndpointBehavior.IMMEDIATE);
+      pause(behavior);
+      if (behavior.nextFails()) {
+        send(
+            exchange,
+            behavior.failureStatus(),
+            new Response(
+                "{\"error-code\":\"SIMULATED\",\"message\":\"Injected failure\"}"
+                    .getBytes(StandardCharsets.UTF_8),
+                JSON));
+        return;
+      }
+
+      var response =
+          switch (endpoint) {
+            case CONFIG -> responses.get(path);
+            case METRICS -> path.equals("/metrics/v2/values")
+                ? new Response(metricsJson, JSON)
+                : null;
+            case APPLICATION -> application(path, exchange.getRequestURI().getRawQuery());
+            case SEARCH -> search(exchange);
+            case DOCUMENT -> document(path, exchange.getRequestURI().getRawQuery());
+          };
+      if (response == null) {
+        send(exchange, 404, new Response(new byte[0], TEXT));
+      } else {
+        send(exchange, 200, response);
+      }
+    }
+  }
+
+  private static void pause(EndpointBehavior behavior) {
+    var delay = behavior.nextDelay();
+    if (!delay.isZero()) {
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static void send(HttpExchange exchange, int status, Response response)
+      throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", response.contentType());
+    exchange.sendResponseHeaders(status, response.body().length == 0 ? -1 : response.body().length);
+    if (response.body().length > 0) {
+      exchange.getResponseBody().write(response.body());
+    }
+  }
+
+  // config
+
+  private void renderConfig() {
+    String configV1 = baseUrl + "/config/v1/";
+
+    var model = MAPPER.createObjectNode().put("vespaVersion", topology.vespaVersion());
+    var modelHosts = model.putArray("hosts");
+    topology.configHostNames().forEach(host -> modelHosts.addObject().put("name", host));
+    config(APP_CONFIG + "cloud.config.model", model);
+
+    var clusterInfo = MAPPER.createObjectNode();
+    var clusterInfoConfigs = clusterInfo.putArray("configs");
+    clusterInfoConfigs.add(configV1 + "cloud.config.cluster-info/admin");
+    config(
+        "/config/v1/cloud.config.cluster-info/admin/cluster-controllers",
+        clusterServices("cluster-controllers", topology.configHostNames(), 19050));
+
+    for (var cluster : topology.containerClusters()) {
+      clusterInfoConfigs.add(configV1 + "cloud.config.cluster-info/" + cluster.name());
+      config(
+          "/config/v1/cloud.config.cluster-info/" + cluster.name(),
+          // the query port is this one, so container hosts mapped to loopback answer queries
+          clusterServices(cluster.name(), topology.containerHostNames(cluster), port()));
+      var components = MAPPER.createObjectNode();
+      var componentList = components.putArray("components");
+      for (String classId :
+          List.of(
+              "com.yahoo.docprocs.indexing.IndexingProcessor",
+              "com.yahoo.prelude.cluster.ClusterSearcher",
+              "com.yahoo.search.handler.SearchHandler",
+              "com.yahoo.document.restapi.resource.DocumentV1ApiHandler")) {
+        componentList.addObject().put("id", classId).put("classId", classId);
+      }
+      config("/config/v1/container.components/" + cluster.name(), components);
+    }
+    config("/config/v1/cloud.config.cluster-info/", clusterInfo);
+
+    var distribution = MAPPER.createObjectNode();
+    var distributionConfigs = distribution.putArray("configs");
+    for (var cluster : topology.contentClusters()) {
+      distributionConfigs.add(configV1 + "vespa.config.content.distribution/" + cluster.name());
+      config(
+          "/config/v1/vespa.config.content.distribution/" + cluster.name(),
+          distributionCluster(cluster));
+
+      var indexInfo = MAPPER.createObjectNode();
+      var indexConfigs = indexInfo.putArray("configs");
+      String indexInfoUrl = configV1 + "search.config.index-info/" + cluster.name() + "/";
+      indexConfigs.add(indexInfoUrl + "cluster." + cluster.name());
+      indexConfigs.add(indexInfoUrl + "union");
+      cluster.schemas().forEach(schema -> indexConfigs.add(indexInfoUrl + schema));
+      config("/config/v1/search.config.index-info/" + cluster.name() + "/", indexInfo);
+
+      // content nodes as the config of Vespa 7 and of 8 before 8.323 describe them
+      var dispatch = MAPPER.createObjectNode();
+      var dispatchNodes = dispatch.putArray("node");
+      var hostNames = topology.contentHostNames(cluster);
+      for (int i = 0; i < hostNames.size(); i++) {
+        dispatchNodes
+            .addObject()
+            .put("key", i)
+            .put("group", i / cluster.nodesPerGroup())
+            .put("host", hostNames.get(i))
+            .put("port", 19106);
+      }
+      config("/config/v1/vespa.config.search.dispatch/" + cluster.name() + "/search", dispatch);
+      config(
+          APP_CONFIG + "vespa.config.search.dispatch-nodes/" + cluster.name() + "/search",
+          dispatch);
+    }
+    config("/config/v1/vespa.config.content.distribution/", distribution);
+  }
+
+  private void config(String path, ObjectNode body) {
+    responses.put(path, new Response(json(body), JSON));
+  }
+
+  private ObjectNode clusterServices(String clusterId, List<String> hostNames, int queryPort) {
+    var cluster = MAPPER.createObjectNode();
+    cluster.put("clusterId", clusterId).put("nodeCount", hostNames.size());
+    var services = cluster.putArray("services");
+    for (int i = 0; i < hostNames.size(); i++) {
+      var service = services.addObject().put("index", i).put("hostname", hostNames.get(i));
+      var ports = service.putArray("ports");
+      ports.addObject().put("number", queryPort).put("tags", "http query");
+      ports.addObject().put("number", queryPort + 1).put("tags", "rpc admin");
+    }
+    return cluster;
+  }
+
+  private static ObjectNode distributionCluster(SimulatorTopology.ContentCluster cluster) {
+    var root = MAPPER.createObjectNode();
+    var distribution = root.putObject("cluster").putObject(cluster.name());
+    distribution
+        .put("redundancy", cluster.redundancy())
+        .put("ready_copies", cluster.redundancy())
+        .put("initial_redundancy", cluster.redundancy());
+    var groups = distribution.putArray("group");
+    groups.addObject().put("index", "invalid").put("name", "invalid").putArray("nodes");
+    for (int group = 0; group < cluster.groups(); group++) {
+      var nodes =
+          groups
+              .addObject()
+              .put("index", String.valueOf(group))
+              .put("name", "group-" + group)
+              .putArray("nodes");
+      for (int node = 0; node < cluster.nodesPerGroup(); node++) {
+        nodes
+            .addObject()
+            .put("index", group * cluster.nodesPerGroup() + node)
+            .put("retired", false);
+      }
+    }
+    return root;
+  }
+
+  // metrics
+
+  private ObjectNode metrics(Random random) {
+    long elapsed = UPTIME_SECONDS + metricsPeriods * METRICS_PERIOD.toSeconds();
+    var root = MAPPER.createObjectNode();
+    var nodes = root.putArray("nodes");
+    for (String host : topology.configHostNames()) {
+      var services = node(nodes, host, "config", random);
+      service(services, "vespa.configserver", random, 40);
+      var controller = service(services, "vespa.container-clustercontroller", random, 40);
+      metric(controller)
+          .put("cluster-controller.nodes-not-converged.max", random.nextInt(20) == 0 ? 1 : 0);
+    }
+    int containerHost = 0;
+    for (var cluster : topology.containerClusters()) {
+      for (String host : topology.containerHostNames(cluster)) {
+        var services = node(nodes, host, "container", random);
+        var container = service(services, "vespa.container", random, 120);
+        int poolSize = 64;
+        // every fourth container is overloaded: a full search handler pool, a filling queue and
+        // rejections, next to an idle default pool
+        boolean overloaded = containerHost++ % 4 == 3;
+        threadPool(container, "default-pool", poolSize, false, random);
+        threadPool(container, "search-handler", poolSize, overloaded, random);
+        metric(container)
+            .put("serverActiveThreads.max", overloaded ? 190 : 20)
+            .put("serverThreadPoolSize.max", 200);
+      }
+    }
+    int contentHost = 0;
+    for (var cluster : topology.contentClusters()) {
+      for (String host : topology.contentHostNames(cluster)) {
+        // steady rates that differ between hosts, so sums are easy to tell apart
+        long feedRate = 10L * (1 + contentHost % 5);
+        long queryRate = 5L * (1 + contentHost % 3);
+        contentHost++;
+        var services = node(nodes, host, "content", random);
+        var searchNode = service(services, "vespa.searchnode", random, 200);
+        metric(searchNode)
+            .put("content.proton.resource_usage.disk.average", random.nextDouble() * 0.8)
+            .put("content.proton.resource_usage.memory.average", random.nextDouble() * 0.8);
+        for (String schema : cluster.schemas()) {
+          // documents are spread evenly over the nodes of a group, one more for every ten feed
+          // operations; every copy a group keeps counts in the total, only one of them as active
+          long active =
+              topology.documentsPerSchema() / cluster.nodesPerGroup() + elapsed * feedRate / 10;
+          metric(searchNode, "documenttype", schema)
+              .put("content.proton.documentdb.documents.active.last", active)
+              .put(
+                  "content.proton.documentdb.documents.total.last",
+                  active * Math.max(1, cluster.redundancy() / cluster.groups()))
+              .put("content.proton.documentdb.feeding.commit.operations.rate", (double) feedRate)
+              .put("content.proton.documentdb.matching.queries.rate", (double) queryRate);
+        }
+        service(services, "vespa.distributor", random, 60);
+      }
+    }
+    return root;
+  }
+
+  private static void threadPool(
+      ArrayNode container, String name, int size, boolean overloaded, Random random) {
+    metric(container, "threadpool", name)
+        .put("jdisc.thread_pool.size.max", size)
+        .put("jdisc.thread_pool.max_allowed_size.max", size)
+        .put("jdisc.thread_pool.active_threads.max", overloaded ? size : random.nextInt(size / 4))
+        .put("jdisc.thread_pool.work_queue.size.max", overloaded ? 900 : random.nextInt(100))
+        .put("jdisc.thread_pool.work_queue.capacity.max", 1000)
+        // tasks rejected within the metrics period, two per second when overloaded
+        .put(
+            "jdisc.thread_pool.rejected_tasks.count",
+            overloaded ? 2 * METRICS_PERIOD.toSeconds() : 0);
+  }
+
+  private ArrayNode node(ArrayNode nodes, String host, String role, Random random) {
+    var node = nodes.addObject().put("hostname", host).put("role", role);
+    var services = node.putArray("services");
+    service(services, "vespa.config-sentinel", random, 10);
+    return services;
+  }
+
+  /** A service with {@code fillerValues} generic metrics, about what a real node reports. */
+  private ArrayNode service(ArrayNode services, String name, Random random, int fillerValues) {
+    long timestamp = METRICS_EPOCH_SECONDS + metricsPeriods * METRICS_PERIOD.toSeconds();
+    var service = services.addObject().put("name", name).put("timestamp", timestamp);
+    service.putObject("status").put("code", "up").put("description", "Data collected successfully");
+    var metrics = service.putArray("metrics");
+    var values =
+        metric(metrics)
+            .put("cpu_util", random.nextDouble() * 100)
+            .put("memory_rss", random.nextInt(1 << 30));
+    for (int i = 0; i < fillerValues; i++) {
+      values.put(name + ".metric_" + i + ".last", random.nextDouble() * 1000);
+    }
+    return metrics;
+  }
+
+  /** Adds a metric and returns its values; the metrics proxy always sends dimensions. */
+  private static ObjectNode metric(ArrayNode metrics, String... dimensions) {
+    var metric = metrics.addObject();
+    var values = metric.putObject("values");
+    var dimensionNode = metric.putObject("dimensions");
+    for (int i = 0; i + 1 < dimensions.length; i += 2) {
+      dimensionNode.put(dimensions[i], dimensions[i + 1]);
+    }
+    return values;
+  }
+
+  // application package
+
+  private Response application(String path, String query) {
+    if (path.equals("/application/v2/tenant/default/application/")) {
+      return jsonResponse(MAPPER.createArrayNode().add(baseUrl + APP_PATH));
+    }
+    if (path.equals(APP_PATH)) {
+      return jsonResponse(MAPPER.createObjectNode().put("generation", generation));
+    }
+    if (!path.startsWith(CONTENT_PATH)) {
+      return null;
+    }
+    var files = packageFiles;
+    String relative = path.substring(CONTENT_PATH.length());
+    if (relative.isEmpty() && query != null && query.contains("return=status")) {
+      var listing = MAPPER.createArrayNode();
+      files.forEach(
+          (file, content) ->
+              listing
+                  .addObject()
+                  .put("status", "new")
+                  .put("md5", md5(content))
+                  .put("name", baseUrl + CONTENT_PATH + file));
+      return jsonResponse(listing);
+    }
+    if (relative.isEmpty() || relative.endsWith("/")) {
+      var entries = new TreeSet<String>();
+      for (String file : files.keySet()) {
+        if (file.startsWith(relative)) {
+          String rest = file.substring(relative.length());
+          int slash = rest.indexOf('/');
+          entries.add(
+              baseUrl
+                  + CONTENT_PATH
+                  + relative
+                  + (slash < 0 ? rest : rest.substring(0, slash + 1)));
+        }
+      }
+      if (entries.isEmpty() && !relative.isEmpty()) {
+        return null;
+      }
+      var listing = MAPPER.createArrayNode();
+      entries.forEach(listing::add);
+      return jsonResponse(listing);
+    }
+    byte[] content = files.get(relative);
+    return content == null ? null : new Response(content, TEXT);
+  }
+
+  private Map<String, byte[]> packageFiles(Random random, String servicesHeader) {
+    Map<String, byte[]> files = new TreeMap<>();
+    files.put("services.xml", utf8(servicesHeader + servicesXml()));
+    files.put("hosts.xml", utf8(hostsXml()));
+    for (var cluster : topology.contentClusters()) {
+      for (String schema : cluster.schemas()) {
+        files.put("schemas/" + schema + ".sd", utf8(schemaSource(schema)));
+        for (String profile : List.of("bm25", "recency")) {
+          files.put(
+              "schemas/" + schema + "/" + profile + ".profile", utf8(rankProfileSource(profile)));
+        }
+      }
+    }
+    files.put(
+        "search/query-profiles/default.xml",
+        utf8(
+            "<query-profile id=\"default\" type=\"root\">\n  <field name=\"hits\">10</field>\n</query-profile>\n"));
+    files.put(
+        "search/query-profiles/types/root.xml",
+        utf8(
+            "<query-profile-type id=\"root\">\n  <field name=\"hits\" type=\"integer\"/>\n</query-profile-type>\n"));
+    // an incompressible model, as packages with ONNX models carry
+    byte[] model = new byte[256 * 1024];
+    random.nextBytes(model);
+    files.put("models/ranker.onnx", model);
+    return Map.copyOf(files);
+  }
+
+  private String servicesXml() {
+    var xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n");
+    xml.append("<services version=\"1.0\">\n");
+    for (var cluster : topology.containerClusters()) {
+      xml.append("  <container id=\"").append(cluster.name()).append("\" version=\"1.0\">\n");
+      xml.append("    <search/>\n    <document-api/>\n    <nodes>\n");
+      for (String host : topology.containerHostNames(cluster)) {
+        xml.append("      <node hostalias=\"")
+            .append(SimulatorTopology.alias(host))
+            .append("\"/>\n");
+      }
+      xml.append("    </nodes>\n  </container>\n");
+    }
+    for (var cluster : topology.contentClusters()) {
+      var hosts = topology.contentHostNames(cluster);
+      xml.append("  <content id=\"").append(cluster.name()).append("\" version=\"1.0\">\n");
+      xml.append("    <redundancy>").append(cluster.redundancy()).append("</redundancy>\n");
+      xml.append("    <documents>\n");
+      cluster
+          .schemas()
+          .forEach(
+              schema ->
+                  xml.append("      <document type=\"")
+                      .append(schema)
+                      .append("\" mode=\"index\"/>\n"));
+      xml.append("    </documents>\n    <group>\n");
+      xml.append("      <distribution partitions=\"1|*\"/>\n");
+      for (int group = 0; group < cluster.groups(); group++) {
+        xml.append("      <group name=\"group-")
+            .append(group)
+            .append("\" distribution-key=\"")
+            .append(group)
+            .append("\">\n");
+        for (int node = 0; node < cluster.nodesPerGroup(); node++) {
+          int key = group * cluster.nodesPerGroup() + node;
+          xml.append("        <node hostalias=\"")
+              .append(SimulatorTopology.alias(hosts.get(key)))
+              .append("\" distribution-key=\"")
+              .append(key)
+              .append("\"/>\n");
+        }
+        xml.append("      </group>\n");
+      }
+      xml.append("    </group>\n  </content>\n");
+    }
+    return xml.append("</services>\n").toString();
+  }
+
+  private String hostsXml() {
+    var xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n<hosts>\n");
+    var hostNames = new java.util.ArrayList<>(topology.configHostNames());
+    topology.containerClusters().forEach(c -> hostNames.addAll(topology.containerHostNames(c)));
+    topology.contentClusters().forEach(c -> hostNames.addAll(topology.contentHostNames(c)));
+    for (String hostName : hostNames) {
+      xml.append("  <host name=\"")
+          .append(hostName)
+          .append("\">\n    <alias>")
+          .append(SimulatorTopology.alias(hostName))
+          .append("</alias>\n  </host>\n");
+    }
+    return xml.append("</hosts>\n").toString();
+  }
+
+  private static String schemaSource(String schema) {
+    return """
+        schema %s {
+          document %s {
+            field title type string {
+              indexing: summary | index
+            }
+            field year type int {
+              indexing: summary | attribute
+            }
+          }
+          fieldset default {
+            fields: title
+          }
+        }
+        """
+        .formatted(schema, schema);
+  }
+
+  private static String rankProfileSource(String profile) {
+    return switch (profile) {
+      case "bm25" -> "rank-profile bm25 {\n  first-phase {\n    expression: bm25(title)\n  }\n}\n";
+      default -> "rank-profile %s inherits bm25 {\n  first-phase {\n    expression: attribute(year)\n  }\n}\n"
+          .formatted(profile);
+    };
+  }
+
+  // search and documents
+
+  private Response search(HttpExchange exchange) throws IOException {
+    JsonNode request;
+    if ("POST".equals(exchange.getRequestMethod())) {
+      byte[] body = exchange.getRequestBody().readAllBytes();
+      request = body.length == 0 ? MAPPER.createObjectNode() : MAPPER.readTree(body);
+    } else {
+      request = MAPPER.valueToTree(queryParameters(exchange.getRequestURI().getRawQuery()));
+    }
+    String schema = schemaOf(request.path("yql").asText(""));
+    int hits = Math.max(0, request.path("hits").asInt(10));
+    int offset = Math.max(0, request.path("offset").asInt(0));
+    String profile =
+        request.path("ranking").isObject()
+            ? request.path("ranking").path("profile").asText("default")
+            : request.path("ranking.profile").asText(request.path("ranking").asText("default"));
+    long documents = topology.documentsPerSchema();
+
+    var response = MAPPER.createObjectNode();
+    var root = response.putObject("root").put("id", "toplevel").put("relevance", 1.0);
+    root.putObject("fields").put("totalCount", documents);
+    root.putObject("coverage")
+        .put("coverage", 100)
+        .put("documents", documents)
+        .put("full", true)
+        .put("nodes", contentNodes())
+        .put("results", 1)
+        .put("resultsFull", 1);
+    var children = root.putArray("children");
+    // a fixed order per rank profile, so comparing profiles finds differences
+    long stride = 7919 + Math.abs(profile.hashCode() % 1000) * 2L;
+    for (int position = offset; position < Math.min(documents, (long) offset + hits); position++) {
+      long document = Math.floorMod(position * stride + profile.hashCode(), documents);
+      var hit = children.addObject();
+      hit.put("id", documentId(schema, document))
+          .put("relevance", 1.0 / (1 + position))
+          .put("source", topology.contentClusters().getFirst().name());
+      var fields = documentFields(schema, document);
+      fields.put("sddocname", schema).put("documentid", documentId(schema, document));
+      hit.set("fields", fields);
+    }
+    if (request.path("trace.level").asInt(request.path("trace").path("level").asInt(0)) > 0) {
+      response
+          .putObject("trace")
+          .putArray("children")
+          .addObject()
+          .put("message", "Simulated query to " + schema + " with rank profile " + profile);
+    }
+    return jsonResponse(response);
+  }
+
+  private Response document(String path, String query) {
+    // /document/v1/<namespace>/<document type>/docid[/<id>]
+    String[] parts = path.split("/");
+    if (parts.length < 6 || !"docid".equals(parts[5])) {
+      return null;
+    }
+    String schema = parts[4];
+    if (!schemas().contains(schema)) {
+      return null;
+    }
+    long documents = topology.documentsPerSchema();
+    if (parts.length > 6) {
+      long document;
+      try {
+        document = Long.parseLong(parts[6]);
+      } catch (NumberFormatException e) {
+        return null;
+      }
+      if (document < 0 || document >= documents) {
+        return null;
+      }
+      var response =
+          MAPPER.createObjectNode().put("pathId", path).put("id", documentId(schema, document));
+      response.set("fields", documentFields(schema, document));
+      return jsonResponse(response);
+    }
+
+    // visiting, one page at a time
+    var parameters = queryParameters(query);
+    long from = Long.parseLong(parameters.getOrDefault("continuation", "0"));
+    int wanted = Integer.parseInt(parameters.getOrDefault("wantedDocumentCount", "10"));
+    var response = MAPPER.createObjectNode().put("pathId", path);
+    var documentList = response.putArray("documents");
+    long to = Math.min(documents, from + Math.max(1, wanted));
+    for (long document = from; document < to; document++) {
+      documentList
+          .addObject()
+          .put("id", documentId(schema, document))
+          .set("fields", documentFields(schema, document));
+    }
+    response.put("documentCount", to - from);
+    if (to < documents) {
+      response.put("continuation", String.valueOf(to));
+    }
+    return jsonResponse(response);
+  }
+
+  private String schemaOf(String yql) {
+    var matcher = FROM_SOURCES.matcher(yql);
+    if (matcher.find()) {
+      for (String source : matcher.group(1).split(",")) {
+        if (schemas().contains(source.trim())) {
+          return source.trim();
+        }
+      }
+    }
+    return schemas().getFirst();
+  }
+
+  private List<String> schemas() {
+    return topology.contentClusters().stream().flatMap(c -> c.schemas().stream()).toList();
+  }
+
+  private int contentNodes() {
+    return topology.contentClusters().stream()
+        .mapToInt(SimulatorTopology.ContentCluster::nodes)
+        .sum();
+  }
+
+  private static String documentId(String schema, long document) {
+    return "id:" + schema + ":" + schema + "::" + document;
+  }
+
+  private static ObjectNode documentFields(String schema, long document) {
+    return MAPPER
+        .createObjectNode()
+        .put("title", schema + " title " + document)
+        .put("year", 1950 + document % 75);
+  }
+
+  private static Map<String, String> queryParameters(String rawQuery) {
+    Map<String, String> parameters = new HashMap<>();
+    if (rawQuery == null || rawQuery.isEmpty()) {
+      return parameters;
+    }
+    for (String pair : rawQuery.split("&")) {
+      int equals = pair.indexOf('=');
+      String name = equals < 0 ? pair : pair.substring(0, equals);
+      String value = equals < 0 ? "" : pair.substring(equals + 1);
+      parameters.put(
+          URLDecoder.decode(name, StandardCharsets.UTF_8),
+          URLDecoder.decode(value, StandardCharsets.UTF_8));
+    }
+    return parameters;
+  }
+
+  private static Response jsonResponse(JsonNode node) {
+    return new Response(json(node), JSON);
+  }
+
+  private static byte[] json(JsonNode node) {
+    try {
+      return MAPPER.writeValueAsBytes(node);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static byte[] utf8(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String md5(byte[] content) {
+    try {
+      return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(content));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
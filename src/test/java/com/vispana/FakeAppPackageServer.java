@@ -0,0 +1,191 @@
+package com.vispana;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves an application package from memory the way a config server does: the application list, one
+ * JSON listing per directory and the raw bytes of every file.
+ */
+public class FakeAppPackageServer implements AutoCloseable {
+
+  private final HttpServer server;
+  private final Map<String, byte[]> files = new TreeMap<>();
+  private final AtomicInteger listingsInFlight = new AtomicInteger();
+  private final AtomicInteger maxListingsInFlight = new AtomicInteger();
+  private final AtomicInteger fileRequests = new AtomicInteger();
+  private volatile long delayMillis;
+  private volatile long generation = 1;
+  private volatile boolean statusListing = true;
+
+  public FakeAppPackageServer() {
+    try {
+      server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    server.createContext("/application/v2/tenant/default/application/", this::handle);
+    server.start();
+  }
+
+  public FakeAppPackageServer withFile(String path, String content) {
+    return withFile(path, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public FakeAppPackageServer withFile(String path, byte[] content) {
+    files.put(path, content);
+    return this;
+  }
+
+  /** Simulates a redeploy: the package now reports the given generation. */
+  public FakeAppPackageServer withGeneration(long generation) {
+    this.generation = generation;
+    return this;
+  }
+
+  /** Whether the content root answers {@code return=status} with the MD5 of every file. */
+  public FakeAppPackageServer withStatusListing(boolean statusListing) {
+    this.statusListing = statusListing;
+    return this;
+  }
+
+  /** Delay added to every listing and file request. */
+  public FakeAppPackageServer withDelay(long delayMillis) {
+    this.delayMillis = delayMillis;
+    return this;
+  }
+
+  public String configHost() {
+    return "http://localhost:" + server.getAddress().getPort();
+  }
+
+  public String contentUrl() {
+    return appUrl() + "/content/";
+  }
+
+  public int maxListingsInFlight() {
+    return maxListingsInFlight.get();
+  }
+
+  public int fileRequests() {
+    return fileRequests.get();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+  }
+
+  private String appUrl() {
+    return configHost() + "/application/v2/tenant/default/application/default";
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    var path = exchange.getRequestURI().getPath();
+    if (path.endsWith("/application/")) {
+      respond(exchange, 200, ("[\"" + appUrl() + "\"]").getBytes(StandardCharsets.UTF_8));
+      return;
+    }
+    if (path.endsWith("/application/default")) {
+      respond(
+          exchange, 200, ("{\"generation\": " + generation + "}").getBytes(StandardCharsets.UTF_8));
+      return;
+    }
+    var marker = "/content/";
+    var index = path.indexOf(marker);
+    if (index < 0) {
+      respond(exchange, 404, new byte[0]);
+      return;
+    }
+    var relative = path.substring(index + marker.length());
+    var query = exchange.getRequestURI().getQuery();
+    if (relative.isEmpty() && query != null && query.contains("return=status")) {
+      if (statusListing) {
+        respond(exchange, 200, statusListing());
+      } else {
+        respond(exchange, 400, new byte[0]);
+      }
+      return;
+    }
+    if (relative.isEmpty() || relative.endsWith("/")) {
+      listingsInFlight.incrementAndGet();
+      maxListingsInFlight.accumulateAndGet(listingsInFlight.get(), Math::max);
+      try {
+        pause();
+        respond(exchange, 200, listing(relative));
+      } finally {
+        listingsInFlight.decrementAndGet();
+      }
+    } else if (files.containsKey(relative)) {
+      fileRequests.incrementAndGet();
+      pause();
+      respond(exchange, 200, files.get(relative));
+    } else {
+      respond(exchange, 404, new byte[0]);
+    }
+  }
+
+  // entries listed in reverse order, to catch callers relying on the listing order
+  private byte[] listing(String directory) {
+    var entries = new TreeSet<String>((a, b) -> b.compareTo(a));
+    for (var file : files.keySet()) {
+      if (file.startsWith(directory)) {
+        var rest = file.substring(directory.length());
+        var slash = rest.indexOf('/');
+        entries.add(contentUrl() + directory + (slash < 0 ? rest : rest.substring(0, slash + 1)));
+      }
+    }
+    var json = "[" + String.join(",", entries.stream().map(e -> "\"" + e + "\"").toList()) + "]";
+    return json.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private byte[] statusListing() {
+    var entries = new ArrayList<String>();
+    for (var file : files.entrySet()) {
+      entries.add(
+          "{\"status\": \"new\", \"md5\": \"%s\", \"name\": \"%s\"}"
+              .formatted(md5(file.getValue()), contentUrl() + file.getKey()));
+    }
+    return ("[" + String.join(",", entries) + "]").getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String md5(byte[] content) {
+    try {
+      return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(content));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private void pause() {
+    if (delayMillis > 0) {
+      try {
+        Thread.sleep(delayMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+    try (var out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+}
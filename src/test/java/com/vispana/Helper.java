@@ -21,6 +21,10 @@ public class Helper {
     return servicesXmlString("xml/services.xml");
   }
 
+  public static String resourceString(String path) {
+    return servicesXmlString(path);
+  }
+
   public static String servicesXmlString(String path) {
     ClassLoader loader = Helper.class.getClassLoader();
     File file = new File(loader.getResource(path).getFile());
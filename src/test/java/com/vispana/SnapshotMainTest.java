@@ -0,0 +1,92 @@
+package com.vispana;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vispana.simulator.SimulatorTopology;
+import com.vispana.simulator.VespaSimulator;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SnapshotMainTest {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+  private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+  private VespaSimulator simulator;
+
+  @BeforeEach
+  void start() {
+    simulator = new VespaSimulator(SimulatorTopology.ofHosts(10)).start();
+  }
+
+  @AfterEach
+  void stop() {
+    simulator.close();
+  }
+
+  @Test
+  void writesTheSnapshotOfOneConfigHost() throws IOException {
+    assertEquals(0, run(simulator.configHost()));
+
+    var root = MAPPER.readTree(out.toByteArray());
+    assertEquals(8, root.at("/vespaVersion/major").asInt());
+    assertEquals("content", root.at("/content/clusters/0/name").asText());
+    assertEquals("default", root.at("/container/clusters/0/name").asText());
+  }
+
+  @Test
+  void keysSeveralConfigHostsAndReportsTheOnesThatFail(@TempDir Path dir) throws IOException {
+    String unreachable = "http://localhost:" + freePort();
+    var output = dir.resolve("state.json");
+
+    assertEquals(
+        SnapshotMain.FAILED,
+        run(
+            "--output",
+            output.toString(),
+            "--timeout",
+            "20s",
+            simulator.configHost(),
+            unreachable));
+
+    JsonNode snapshots = MAPPER.readTree(output.toFile());
+    assertEquals(1, snapshots.size());
+    assertTrue(snapshots.has(simulator.configHost()));
+    assertTrue(err.toString(StandardCharsets.UTF_8).contains("Failed to read " + unreachable));
+    assertEquals(0, out.size());
+    assertTrue(Files.size(output) > 0);
+  }
+
+  @Test
+  void rejectsBadUsage() {
+    assertEquals(SnapshotMain.USAGE, run());
+    assertEquals(SnapshotMain.USAGE, run("--timeout", "soon", simulator.configHost()));
+    assertEquals(SnapshotMain.USAGE, run("--verbose", simulator.configHost()));
+    assertEquals(0, out.size());
+  }
+
+  private int run(String... args) {
+    return SnapshotMain.run(
+        args,
+        new PrintStream(out, true, StandardCharsets.UTF_8),
+        new PrintStream(err, true, StandardCharsets.UTF_8));
+  }
+
+  private static int freePort() throws IOException {
+    try (var socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package com.vispana.api;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+class FileRangeResponderTest {
+
+  @TempDir Path dir;
+
+  @Test
+  void parsesSingleByteRanges() {
+    assertEquals(
+        new FileRangeResponder.ByteRange(0, 99, false),
+        FileRangeResponder.requestedRange(null, 100));
+    assertEquals(
+        new FileRangeResponder.ByteRange(10, 19, true),
+        FileRangeResponder.requestedRange("bytes=10-19", 100));
+    assertEquals(
+        new FileRangeResponder.ByteRange(90, 99, true),
+        FileRangeResponder.requestedRange("bytes=90-", 100));
+    assertEquals(
+        new FileRangeResponder.ByteRange(80, 99, true),
+        FileRangeResponder.requestedRange("bytes=-20", 100));
+    assertEquals(
+        new FileRangeResponder.ByteRange(50, 99, true),
+        FileRangeResponder.requestedRange("bytes=50-500", 100));
+    // multiple ranges are not supported and answered with the whole file
+    assertFalse(FileRangeResponder.requestedRange("bytes=0-1,5-6", 100).partial());
+    assertNull(FileRangeResponder.requestedRange("bytes=100-", 100));
+    assertNull(FileRangeResponder.requestedRange("bytes=20-10", 100));
+  }
+
+  @Test
+  void servesPartialContent() throws Exception {
+    var file = Files.writeString(dir.resolve("package.zip"), "0123456789");
+    var request = new MockHttpServletRequest("GET", "/api/apppackage/download");
+    request.addHeader("Range", "bytes=2-5");
+    var response = new MockHttpServletResponse();
+
+    FileRangeResponder.serve(file, "package.zip", "abc-1", request, response);
+
+    assertEquals(206, response.getStatus());
+    assertEquals("bytes 2-5/10", response.getHeader("Content-Range"));
+    assertEquals(4, response.getContentLengthLong());
+    assertEquals("2345", response.getContentAsString());
+  }
+
+  @Test
+  void servesWholeFileWhenIfRangeDoesNotMatch() throws Exception {
+    var file = Files.writeString(dir.resolve("package.zip"), "0123456789");
+    var request = new MockHttpServletRequest("GET", "/api/apppackage/download");
+    request.addHeader("Range", "bytes=2-5");
+    request.addHeader("If-Range", "\"abc-0\"");
+    var response = new MockHttpServletResponse();
+
+    FileRangeResponder.serve(file, "package.zip", "abc-1", request, response);
+
+    assertEquals(200, response.getStatus());
+    assertEquals("bytes", response.getHeader("Accept-Ranges"));
+    assertEquals(10, response.getContentLengthLong());
+    assertEquals("0123456789", response.getContentAsString());
+  }
+
+  @Test
+  void rejectsUnsatisfiableRanges() throws Exception {
+    var file = Files.writeString(dir.resolve("package.zip"), "0123456789");
+    var request = new MockHttpServletRequest("GET", "/api/apppackage/download");
+    request.addHeader("Range", "bytes=10-");
+    var response = new MockHttpServletResponse();
+
+    FileRangeResponder.serve(file, "package.zip", "abc-1", request, response);
+
+    assertEquals(416, response.getStatus());
+    assertEquals("bytes */10", response.getHeader("Content-Range"));
+  }
+}
@@ -0,0 +1,94 @@
+package com.vispana.simulator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vispana.vespa.query.VespaQueryClient;
+import com.vispana.vespa.state.VespaStateClient;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class VespaSimulatorTest {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private VespaSimulator simulator;
+
+  @BeforeEach
+  void start() {
+    var topology =
+        new SimulatorTopology(
+            1,
+            List.of(new SimulatorTopology.ContainerCluster("feed", 2)),
+            List.of(new SimulatorTopology.ContentCluster("music", 2, 3, 2, List.of("album"))),
+            null,
+            500);
+    simulator = new VespaSimulator(topology).start();
+  }
+
+  @AfterEach
+  void stop() {
+    simulator.close();
+  }
+
+  @Test
+  void overviewAssemblesFromSimulatedDeployment() {
+    var root = new VespaStateClient().vespaState(simulator.configHost());
+
+    assertEquals(SimulatorTopology.DEFAULT_VESPA_VERSION, root.vespaVersion().toString());
+    assertEquals(1, root.config().clusters().getFirst().nodes().size());
+    var container = root.container().clusters().getFirst();
+    assertEquals("feed", container.name());
+    assertEquals(2, container.nodes().size());
+    var content = root.content().clusters().getFirst();
+    assertEquals("music", content.name());
+    assertEquals(6, content.nodes().size());
+    assertTrue(simulator.requestCount(SimulatedEndpoint.METRICS) > 0);
+  }
+
+  @Test
+  void injectedFailuresFailTheOverview() {
+    simulator.behave(SimulatedEndpoint.CONFIG, EndpointBehavior.IMMEDIATE.withFailureRate(1));
+
+    assertThrows(
+        RuntimeException.class, () -> new VespaStateClient().vespaState(simulator.configHost()));
+  }
+
+  @Test
+  void latencyDelaysResponses() {
+    simulator.behave(
+        SimulatedEndpoint.SEARCH, EndpointBehavior.IMMEDIATE.withLatency(Duration.ofMillis(200)));
+
+    long start = System.nanoTime();
+    new VespaQueryClient().query(simulator.containerHost(), "{\"yql\":\"select * from album\"}");
+
+    assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() >= 200);
+  }
+
+  @Test
+  void searchPagesThroughSchemaDocuments() throws Exception {
+    var client = new VespaQueryClient();
+    var query = "{\"yql\":\"select * from sources album where true\",\"hits\":5,\"offset\":%d}";
+
+    var first = MAPPER.readTree(client.query(simulator.containerHost(), query.formatted(0)));
+    var second = MAPPER.readTree(client.query(simulator.containerHost(), query.formatted(5)));
+
+    assertEquals(500, first.at("/root/fields/totalCount").asLong());
+    assertEquals(5, first.at("/root/children").size());
+    assertTrue(first.at("/root/children/0/id").asText().startsWith("id:album:album::"));
+    assertNotEquals(first.at("/root/children/0/id"), second.at("/root/children/0/id"));
+  }
+
+  @Test
+  void redeployChangesGenerationAndServices() {
+    var services = simulator.packageFile("services.xml");
+
+    simulator.redeploy();
+
+    assertEquals(2, simulator.generation());
+    assertNotEquals(services, simulator.packageFile("services.xml"));
+  }
+}
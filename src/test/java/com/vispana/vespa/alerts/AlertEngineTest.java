@@ -0,0 +1,227 @@
+package com.vispana.vespa.alerts;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.vispana.api.model.Host;
+import com.vispana.api.model.HostMetrics;
+import com.vispana.api.model.Status;
+import com.vispana.api.model.VespaVersion;
+import com.vispana.api.model.VispanaRoot;
+import com.vispana.api.model.alerts.Alert;
+import com.vispana.api.model.alerts.AlertKind;
+import com.vispana.api.model.alerts.AlertState;
+import com.vispana.api.model.config.ConfigCluster;
+import com.vispana.api.model.config.ConfigNode;
+import com.vispana.api.model.config.ConfigNodes;
+import com.vispana.api.model.container.ContainerNodes;
+import com.vispana.api.model.content.ContentCluster;
+import com.vispana.api.model.content.ContentData;
+import com.vispana.api.model.content.ContentNode;
+import com.vispana.api.model.content.ContentNodes;
+import com.vispana.api.model.content.ContentOverview;
+import com.vispana.api.model.content.Group;
+import com.vispana.api.model.content.GroupKey;
+import com.vispana.api.model.content.Schema;
+import com.vispana.api.model.content.SchemaDocCount;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class AlertEngineTest {
+
+  private static final String CONFIG_HOST = "http://cfg:19071/";
+  private static final GroupKey GROUP = new GroupKey("0");
+
+  private final AlertEngine engine = new AlertEngine(AlertRules.DEFAULT);
+  private long snapshots;
+
+  @Test
+  void diskAlertNeedsConsecutiveBreachesAndResolvesBelowTheClearThreshold() {
+    assertEquals(List.of(), evaluate(snapshot(90, Status.UP, 0, 1000)));
+    var fired = evaluate(snapshot(91, Status.UP, 0, 1000));
+    assertEquals(1, fired.size());
+    assertEquals(AlertKind.DISK_USAGE, fired.getFirst().kind());
+    assertEquals(AlertState.FIRING, fired.getFirst().state());
+    assertEquals("content-0", fired.getFirst().subject());
+
+    // still firing, not delivered again; between the thresholds does not resolve
+    assertEquals(List.of(), evaluate(snapshot(92, Status.UP, 0, 1000)));
+    assertEquals(List.of(), evaluate(snapshot(82, Status.UP, 0, 1000)));
+    assertEquals(List.of(), evaluate(snapshot(79, Status.UP, 0, 1000)));
+    var resolved = evaluate(snapshot(79, Status.UP, 0, 1000));
+    assertEquals(1, resolved.size());
+    assertEquals(AlertState.RESOLVED, resolved.getFirst().state());
+    assertEquals(List.of(), engine.active());
+  }
+
+  @Test
+  void hoveringAroundTheFireThresholdDoesNotFire() {
+    for (int i = 0; i < 10; i++) {
+      assertEquals(List.of(), evaluate(snapshot(i % 2 == 0 ? 86 : 84, Status.UP, 0, 1000)));
+    }
+  }
+
+  @Test
+  void downServicesAndUnconvergedNodesFire() {
+    evaluate(snapshot(10, Status.DOWN, 2, 1000));
+    var fired = evaluate(snapshot(10, Status.DOWN, 2, 1000));
+
+    assertEquals(2, fired.size());
+    var kinds = fired.stream().map(Alert::kind).toList();
+    assertTrue(kinds.contains(AlertKind.SERVICE_DOWN));
+    assertTrue(kinds.contains(AlertKind.NOT_CONVERGED));
+    assertEquals(
+        "content-0/searchnode",
+        fired.stream().filter(a -> a.kind() == AlertKind.SERVICE_DOWN).findFirst().get().subject());
+    assertEquals(2, engine.active().size());
+  }
+
+  @Test
+  void documentDropFiresAtOnce() {
+    evaluate(snapshot(10, Status.UP, 0, 1000));
+    assertEquals(List.of(), evaluate(snapshot(10, Status.UP, 0, 950)));
+
+    var fired = evaluate(snapshot(10, Status.UP, 0, 800));
+    assertEquals(1, fired.size());
+    assertEquals(AlertKind.DOC_COUNT_DROP, fired.getFirst().kind());
+    assertEquals("music/album", fired.getFirst().subject());
+    assertEquals(800.0 / 950 * 100, 100 - fired.getFirst().value(), 1e-9);
+
+    assertEquals(List.of(), evaluate(snapshot(10, Status.UP, 0, 800)));
+    assertEquals(AlertState.RESOLVED, evaluate(snapshot(10, Status.UP, 0, 810)).getFirst().state());
+  }
+
+  @Test
+  void alertsOfHostsThatAreGoneResolve() {
+    evaluate(snapshot(95, Status.UP, 0, 1000));
+    evaluate(snapshot(95, Status.UP, 0, 1000));
+    assertEquals(1, engine.active().size());
+
+    var empty =
+        new VispanaRoot(
+            new ConfigNodes(List.of()),
+            new ContainerNodes(List.of()),
+            new ContentNodes(List.of()),
+            null,
+            new VespaVersion(8, 400, 0),
+            List.of(),
+            List.of());
+    var resolved = evaluate(empty);
+
+    assertEquals(1, resolved.size());
+    assertEquals(AlertState.RESOLVED, resolved.getFirst().state());
+    assertEquals(List.of(), engine.active());
+  }
+
+  @Test
+  void alertsOfSubjectsListedWithoutDataKeepFiring() {
+    evaluate(snapshot(95, Status.DOWN, 2, 1000));
+    evaluate(snapshot(95, Status.DOWN, 2, 1000));
+    assertEquals(3, engine.active().size());
+
+    assertEquals(List.of(), evaluate(withoutData(snapshot(95, Status.DOWN, 2, 1000))));
+    assertEquals(3, engine.active().size());
+    assertEquals(List.of(), evaluate(snapshot(95, Status.DOWN, 2, 1000)));
+  }
+
+  @Test
+  void documentCountsOfRemovedSchemasAreForgotten() {
+    evaluate(snapshot(10, Status.UP, 0, 1000));
+    var withoutSchemas = snapshot(10, Status.UP, 0, 1000);
+    var cluster = withoutSchemas.content().clusters().getFirst();
+    evaluate(
+        new VispanaRoot(
+            withoutSchemas.config(),
+            withoutSchemas.container(),
+            new ContentNodes(
+                List.of(
+                    new ContentCluster(
+                        cluster.name(), cluster.overview(), List.of(), cluster.nodes()))),
+            null,
+            withoutSchemas.vespaVersion(),
+            List.of(),
+            List.of()));
+
+    // a schema deployed again is not compared with its count before it was removed
+    assertEquals(List.of(), evaluate(snapshot(10, Status.UP, 0, 100)));
+  }
+
+  @Test
+  void hostWithSeveralRolesBreachesOncePerSnapshot() {
+    // content-0 also runs the config server, so the snapshot lists it twice
+    assertEquals(List.of(), evaluate(onConfigHost(snapshot(95, Status.UP, 0, 1000))));
+    var fired = evaluate(onConfigHost(snapshot(95, Status.UP, 0, 1000)));
+
+    assertEquals(1, fired.size());
+    assertEquals(AlertKind.DISK_USAGE, fired.getFirst().kind());
+    assertEquals("content-0", fired.getFirst().subject());
+    assertEquals(1, engine.active().size());
+  }
+
+  private List<Alert> evaluate(VispanaRoot snapshot) {
+    return engine.evaluate(CONFIG_HOST, snapshot, Instant.ofEpochSecond(++snapshots * 30));
+  }
+
+  /** The snapshot with its content host also listed as a config server. */
+  private static VispanaRoot onConfigHost(VispanaRoot snapshot) {
+    var content = snapshot.content().clusters().getFirst().nodes().getFirst();
+    var configServer =
+        new ConfigNode(
+            "configserver",
+            content.host(),
+            Map.of("configserver", Status.UP),
+            content.hostMetrics());
+    return new VispanaRoot(
+        new ConfigNodes(List.of(new ConfigCluster("config", List.of(configServer)))),
+        snapshot.container(),
+        snapshot.content(),
+        null,
+        snapshot.vespaVersion(),
+        List.of(),
+        List.of());
+  }
+
+  /** The snapshot with its hosts and clusters still listed, but without metrics or state. */
+  private static VispanaRoot withoutData(VispanaRoot snapshot) {
+    var cluster = snapshot.content().clusters().getFirst();
+    var content = cluster.nodes().getFirst();
+    var node = new ContentNode(content.name(), content.host(), null, null, content.group(), null);
+    return new VispanaRoot(
+        snapshot.config(),
+        snapshot.container(),
+        new ContentNodes(List.of(new ContentCluster(cluster.name(), null, null, List.of(node)))),
+        null,
+        snapshot.vespaVersion(),
+        List.of(),
+        List.of());
+  }
+
+  private static VispanaRoot snapshot(
+      double diskUsage, Status searchnode, int notYetConverged, long documents) {
+    var node =
+        new ContentNode(
+            "0",
+            new Host("content-0", 19107),
+            Map.of("searchnode", searchnode, "distributor", Status.UP),
+            new HostMetrics(10, 50, diskUsage, 0),
+            new Group(GROUP, "0"),
+            null);
+    var cluster =
+        new ContentCluster(
+            "music",
+            new ContentOverview(1, 1, 1, notYetConverged, Map.of(GROUP, 1)),
+            List.of(
+                new ContentData(
+                    new Schema("album", ""), List.of(new SchemaDocCount(GROUP, documents)))),
+            List.of(node));
+    return new VispanaRoot(
+        new ConfigNodes(List.of()),
+        new ContainerNodes(List.of()),
+        new ContentNodes(List.of(cluster)),
+        null,
+        new VespaVersion(8, 400, 0),
+        List.of(),
+        List.of());
+  }
+}
@@ -0,0 +1,121 @@
+package com.vispana.vespa.alerts;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.sun.net.httpserver.HttpServer;
+import com.vispana.api.model.alerts.Alert;
+import com.vispana.api.model.alerts.AlertKind;
+import com.vispana.api.model.alerts.AlertState;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class WebhookNotifierTest {
+
+  private static final ObjectMapper MAPPER =
+      new ObjectMapper().registerModule(new JavaTimeModule());
+
+  private final LinkedBlockingQueue<JsonNode> received = new LinkedBlockingQueue<>();
+  private final AtomicInteger failuresLeft = new AtomicInteger();
+  private HttpServer sink;
+
+  @BeforeEach
+  void start() throws IOException {
+    sink = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    sink.createContext(
+        "/hook",
+        exchange -> {
+          var body = exchange.getRequestBody().readAllBytes();
+          if (failuresLeft.getAndDecrement() > 0) {
+            exchange.sendResponseHeaders(503, -1);
+          } else {
+            received.add(MAPPER.readTree(body));
+            exchange.sendResponseHeaders(204, -1);
+          }
+          exchange.close();
+        });
+    sink.start();
+  }
+
+  @AfterEach
+  void stop() {
+    sink.stop(0);
+  }
+
+  @Test
+  void deliversChangesInOrderAndRetriesFailures() throws InterruptedException {
+    failuresLeft.set(1);
+    var notifier =
+        new WebhookNotifier(
+            List.of(hook()), MAPPER, Duration.ofMillis(10), WebhookNotifier.MAX_PENDING);
+    notifier.send(List.of(alert(AlertState.FIRING)));
+    notifier.send(List.of(alert(AlertState.RESOLVED)));
+    notifier.close();
+
+    var first = received.poll(10, TimeUnit.SECONDS);
+    var second = received.poll(10, TimeUnit.SECONDS);
+    assertNotNull(second);
+    assertEquals("FIRING", first.at("/alerts/0/state").asText());
+    assertEquals("DISK_USAGE", first.at("/alerts/0/kind").asText());
+    assertEquals("RESOLVED", second.at("/alerts/0/state").asText());
+    assertEquals(2, notifier.delivered());
+    assertEquals(0, notifier.failed());
+  }
+
+  @Test
+  void dropsAlertsAfterTheLastAttempt() {
+    failuresLeft.set(Integer.MAX_VALUE);
+    var notifier =
+        new WebhookNotifier(
+            List.of(hook()), MAPPER, Duration.ofMillis(10), WebhookNotifier.MAX_PENDING);
+    notifier.send(List.of(alert(AlertState.FIRING)));
+    notifier.close();
+
+    assertEquals(0, notifier.delivered());
+    assertEquals(1, notifier.failed());
+  }
+
+  @Test
+  void dropsChangesWhileTooManyArePending() {
+    failuresLeft.set(Integer.MAX_VALUE);
+    var notifier = new WebhookNotifier(List.of(hook()), MAPPER, Duration.ofMillis(200), 1);
+    for (int i = 0; i < 4; i++) {
+      notifier.send(List.of(alert(AlertState.FIRING)));
+    }
+    // at least two did not fit behind the delivery in progress and were dropped at once
+    assertTrue(notifier.failed() >= 2);
+    notifier.close();
+
+    assertEquals(0, notifier.delivered());
+    assertEquals(4, notifier.failed());
+  }
+
+  private URI hook() {
+    return URI.create("http://localhost:" + sink.getAddress().getPort() + "/hook");
+  }
+
+  private static Alert alert(AlertState state) {
+    return new Alert(
+        "http://cfg:19071/",
+        AlertKind.DISK_USAGE,
+        "content-0",
+        state,
+        91,
+        85,
+        "Disk usage of content-0 is 91.0%",
+        Instant.ofEpochSecond(1_700_000_000));
+  }
+}
@@ -0,0 +1,157 @@
+package com.vispana.vespa.query;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.vispana.api.model.Host;
+import com.vispana.api.model.container.ContainerCluster;
+import com.vispana.api.model.container.ContainerNode;
+import com.vispana.simulator.SimulatorTopology;
+import com.vispana.simulator.VespaSimulator;
+import com.vispana.vespa.query.ContainerClusterRouter.NodeState;
+import com.vispana.vespa.query.ContainerClusterRouter.Strategy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class ContainerClusterRouterTest {
+
+  private static final String CONFIG_HOST = "http://cfg-0:19071/";
+
+  @Test
+  void leastOutstandingPicksIdlestNode() {
+    var busy = new NodeState("http://a:8080");
+    var idle = new NodeState("http://b:8080");
+    busy.outstanding.set(3);
+    idle.outstanding.set(1);
+
+    assertSame(
+        idle, ContainerClusterRouter.choose(List.of(busy, idle), Strategy.LEAST_OUTSTANDING));
+  }
+
+  @Test
+  void ewmaPrefersFastNodeUnlessItIsMuchBusier() {
+    var fast = new NodeState("http://a:8080");
+    var slow = new NodeState("http://b:8080");
+    fast.recordSuccess(10);
+    slow.recordSuccess(50);
+
+    assertSame(fast, ContainerClusterRouter.choose(List.of(fast, slow), Strategy.EWMA));
+
+    fast.outstanding.set(9);
+    assertSame(slow, ContainerClusterRouter.choose(List.of(fast, slow), Strategy.EWMA));
+  }
+
+  @Test
+  void ewmaProbesUntriedNodesFirst() {
+    var tried = new NodeState("http://a:8080");
+    var untried = new NodeState("http://b:8080");
+    tried.recordSuccess(1);
+
+    assertSame(untried, ContainerClusterRouter.choose(List.of(tried, untried), Strategy.EWMA));
+  }
+
+  @Test
+  void failureEjectsNodeAndCountsError() {
+    var node = new NodeState("http://a:8080");
+    node.recordFailure(true);
+
+    var stats = node.stats();
+    assertFalse(stats.healthy());
+    assertEquals(1, stats.errors());
+    assertEquals(1, stats.requests());
+  }
+
+  @Test
+  void rejectedQueryCountsErrorButKeepsNode() {
+    var node = new NodeState("http://a:8080");
+    node.recordFailure(
+        new VespaQueryException("Error querying Vespa.400: bad yql", 400, null).isNodeFailure());
+
+    var stats = node.stats();
+    assertTrue(stats.healthy());
+    assertEquals(1, stats.errors());
+  }
+
+  @Test
+  void onlyUnreachableSlowOrFailingNodesAreAtFault() {
+    assertTrue(new VespaQueryException("timeout", 0, null).isNodeFailure());
+    assertTrue(new VespaQueryException("unavailable", 503, null).isNodeFailure());
+    assertFalse(new VespaQueryException("not found", 404, null).isNodeFailure());
+  }
+
+  @Test
+  void answersFromTheExpiredTopologyWhileItIsRefreshed() throws InterruptedException {
+    var fetches = new AtomicInteger();
+    var refreshed = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+    var router =
+        new ContainerClusterRouter(
+            new VespaQueryClient(),
+            configHost -> {
+              if (fetches.incrementAndGet() > 1) {
+                refreshed.countDown();
+                await(release);
+              }
+              return List.of(cluster(new Host("container-" + fetches.get(), 8080)));
+            },
+            Duration.ZERO);
+
+    assertEquals("http://container-1:8080", router.stats(CONFIG_HOST, "default").get(0).url());
+    Thread.sleep(5);
+
+    // expired, yet answered right away while the refresh waits on the config server
+    assertEquals("http://container-1:8080", router.stats(CONFIG_HOST, "default").get(0).url());
+    assertTrue(refreshed.await(5, TimeUnit.SECONDS));
+    assertEquals(2, fetches.get());
+    release.countDown();
+  }
+
+  @Test
+  void routesAsynchronouslyAndCountsTheAnswer() throws Exception {
+    try (var simulator = new VespaSimulator(SimulatorTopology.ofHosts(10)).start()) {
+      var router =
+          new ContainerClusterRouter(
+              new VespaQueryClient(),
+              configHost -> List.of(cluster(new Host("localhost", simulator.port()))),
+              Duration.ofSeconds(30));
+
+      var response =
+          router.queryAsync(
+              CONFIG_HOST,
+              "default",
+              Strategy.EWMA,
+              "{\"yql\": \"select * from sources * where true\"}",
+              Duration.ofSeconds(5));
+
+      assertTrue(response.get(5, TimeUnit.SECONDS).contains("totalCount"));
+      var stats = router.stats(CONFIG_HOST, "default").get(0);
+      assertEquals(1, stats.requests());
+      assertEquals(0, stats.outstandingRequests());
+      assertTrue(stats.healthy());
+    }
+  }
+
+  @Test
+  void parseStrategy() {
+    assertEquals(Strategy.EWMA, Strategy.parseFrom("EWMA"));
+    assertEquals(Strategy.LEAST_OUTSTANDING, Strategy.parseFrom("least_outstanding"));
+    assertThrows(IllegalArgumentException.class, () -> Strategy.parseFrom("random"));
+  }
+
+  private static ContainerCluster cluster(Host host) {
+    return new ContainerCluster(
+        "default", List.of(new ContainerNode("0", host, Map.of(), null)), false, true);
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
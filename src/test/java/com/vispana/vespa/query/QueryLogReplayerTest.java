@@ -0,0 +1,124 @@
+package com.vispana.vespa.query;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.vispana.api.model.query.ReplayState;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class QueryLogReplayerTest {
+
+  private static final String QUERY_LOG =
+      """
+      {"yql": "select * from music where true", "totalCount": 10}
+
+      {"yql": "select * from music where artist contains 'a'", "totalCount": 3}
+      {"yql": "broken", "fail": true}
+      """;
+
+  @Test
+  void replayKeepsPerQueryResultsInLogOrder() {
+    var replayer = new QueryLogReplayer(new FakeQueryClient(0), 100);
+
+    var run = replayer.replay("http://container", stream(QUERY_LOG), 1000);
+
+    assertEquals(3, run.results().size());
+    assertEquals(1, run.errors());
+    assertEquals(2, run.latency().count());
+    assertEquals(10, run.results().get(0).totalCount());
+    assertEquals(1, run.results().get(0).hitCount());
+    assertEquals(3, run.results().get(1).totalCount());
+    assertTrue(run.results().get(2).failed());
+    assertSame(run, replayer.run(run.id()).orElseThrow());
+  }
+
+  @Test
+  void compareMatchesQueriesByIndexAndFlagsHitCountChanges() {
+    var baseline = new QueryLogReplayer(new FakeQueryClient(0), 100);
+    var baselineRun = baseline.replay("http://container", stream(QUERY_LOG), 1000);
+    var candidateLog = QUERY_LOG.replace("\"totalCount\": 3", "\"totalCount\": 4");
+    var candidateRun =
+        new QueryLogReplayer(new FakeQueryClient(20), 100)
+            .replay("http://container", stream(candidateLog), 1000);
+
+    var comparison = QueryLogReplayer.compare(baselineRun, candidateRun);
+
+    assertEquals(2, comparison.comparedQueries());
+    assertEquals(1, comparison.hitCountChanges());
+    assertTrue(comparison.p50DeltaMs() > 0);
+    assertTrue(
+        comparison.queries().get(0).latencyDeltaMs()
+            >= comparison.queries().get(1).latencyDeltaMs());
+  }
+
+  @Test
+  void replayRejectsNonPositiveRate() {
+    var replayer = new QueryLogReplayer(new FakeQueryClient(0), 100);
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> replayer.replay("http://container", stream(QUERY_LOG), 0));
+  }
+
+  @Test
+  void startedReplayIsPolledUntilItIsDone() throws InterruptedException {
+    var replayer = new QueryLogReplayer(new FakeQueryClient(0), 100);
+
+    var started = replayer.start("http://container", stream(QUERY_LOG), 1000);
+    var status = replayer.status(started.id()).orElseThrow();
+    for (int polls = 0; status.state() == ReplayState.RUNNING && polls < 100; polls++) {
+      Thread.sleep(50);
+      status = replayer.status(started.id()).orElseThrow();
+    }
+
+    assertEquals(ReplayState.DONE, status.state());
+    assertEquals(3, status.queriesSent());
+    assertEquals(started.id(), status.run().id());
+    assertEquals(3, replayer.run(started.id()).orElseThrow().results().size());
+  }
+
+  @Test
+  void oldestRunsAreForgottenOnceTheResultLimitIsExceeded() {
+    // each run has three results, so two fit
+    var replayer = new QueryLogReplayer(new FakeQueryClient(0), 6);
+
+    var first = replayer.replay("http://container", stream(QUERY_LOG), 1000);
+    var second = replayer.replay("http://container", stream(QUERY_LOG), 1000);
+    var third = replayer.replay("http://container", stream(QUERY_LOG), 1000);
+
+    assertTrue(replayer.status(first.id()).isEmpty());
+    assertTrue(replayer.run(second.id()).isPresent());
+    assertTrue(replayer.run(third.id()).isPresent());
+    assertTrue(replayer.run("unknown").isEmpty());
+  }
+
+  private static ByteArrayInputStream stream(String content) {
+    return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** Answers with the totalCount embedded in the query itself, failing when asked to. */
+  private static class FakeQueryClient extends VespaQueryClient {
+    private final long delayMs;
+
+    FakeQueryClient(long delayMs) {
+      this.delayMs = delayMs;
+    }
+
+    @Override
+    public String query(String vespaContainerHost, String query) {
+      try {
+        Thread.sleep(delayMs);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      var request = QueryResponseParser.parse(query);
+      if (request.path("fail").asBoolean(false)) {
+        throw new RuntimeException("Error querying Vespa.");
+      }
+      return """
+          {"root": {"fields": {"totalCount": %d}, "children": [{"id": "id:music:music::1"}]}}
+          """
+          .formatted(request.path("totalCount").asLong());
+    }
+  }
+}
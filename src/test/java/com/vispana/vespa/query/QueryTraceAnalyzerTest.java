@@ -0,0 +1,61 @@
+package com.vispana.vespa.query;
+
+import static com.vispana.Helper.resourceString;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class QueryTraceAnalyzerTest {
+
+  @Test
+  void analyzeBuildsSearcherStepsAndContentNodePhases() {
+    var response = QueryResponseParser.parse(resourceString("json/query-trace.json"));
+
+    var timeline = QueryTraceAnalyzer.analyze(response);
+
+    assertEquals(20, timeline.totalMs());
+    assertEquals(2, timeline.searchers().size());
+    var statistics = timeline.searchers().get(0);
+    assertEquals("com.yahoo.prelude.statistics.StatisticsSearcher", statistics.searcher());
+    assertEquals("native", statistics.chain());
+    assertEquals(20, statistics.durationMs());
+    assertEquals(2, statistics.selfMs());
+    assertEquals(
+        "com.yahoo.search.querytransform.WeakAndReplacementSearcher",
+        timeline.slowestSearcher().searcher());
+
+    assertEquals(2, timeline.contentNodes().size());
+    var slowNode = timeline.slowestContentNode();
+    assertEquals(0, slowNode.distributionKey());
+    assertEquals(1.0, slowNode.phasesMs().get(QueryTraceAnalyzer.QUERY_SETUP), 1e-9);
+    // slowest of the two match threads
+    assertEquals(6.0, slowNode.phasesMs().get(QueryTraceAnalyzer.MATCH_FIRST_PHASE), 1e-9);
+    assertEquals(3.0, slowNode.phasesMs().get(QueryTraceAnalyzer.SECOND_PHASE), 1e-9);
+    assertEquals(QueryTraceAnalyzer.MATCH_FIRST_PHASE, slowNode.slowestPhase());
+
+    assertEquals(4.0, timeline.phasesMs().get(QueryTraceAnalyzer.SUMMARY_FETCH), 1e-9);
+    assertEquals(QueryTraceAnalyzer.MATCH_FIRST_PHASE, timeline.slowestPhase());
+  }
+
+  @Test
+  void analyzeWithoutTraceReturnsEmptyTimeline() {
+    var response = QueryResponseParser.parse("{\"root\": {\"fields\": {\"totalCount\": 0}}}");
+
+    var timeline = QueryTraceAnalyzer.analyze(response);
+
+    assertTrue(timeline.searchers().isEmpty());
+    assertTrue(timeline.contentNodes().isEmpty());
+    assertNull(timeline.slowestPhase());
+  }
+
+  @Test
+  void withTracingKeepsExplicitTraceLevel() {
+    var traced = QueryResponseParser.parse(QueryTraceAnalyzer.withTracing("{\"yql\":\"q\"}"));
+    assertEquals(5, traced.path("trace.level").asInt());
+    assertTrue(traced.path("trace.timestamps").asBoolean());
+
+    var explicit = QueryResponseParser.parse(QueryTraceAnalyzer.withTracing("{\"tracelevel\":9}"));
+    assertEquals(9, explicit.path("tracelevel").asInt());
+    assertTrue(explicit.path("trace.level").isMissingNode());
+  }
+}
@@ -0,0 +1,54 @@
+package com.vispana.vespa.query;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.vispana.api.model.query.RankProfileResult;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class RankProfileComparatorTest {
+
+  @Test
+  void withProfileSetsFlatProfileAndRaisesHits() {
+    var query = RankProfileComparator.withProfile("{\"yql\":\"q\",\"hits\":5}", "bm25", 10);
+    var node = QueryResponseParser.parse(query);
+    assertEquals("bm25", node.path("ranking.profile").asText());
+    assertEquals(10, node.path("hits").asInt());
+  }
+
+  @Test
+  void withProfileKeepsNestedRankingObject() {
+    var query =
+        RankProfileComparator.withProfile(
+            "{\"yql\":\"q\",\"ranking\":{\"profile\":\"a\",\"listFeatures\":true}}", "b", 10);
+    var node = QueryResponseParser.parse(query);
+    assertEquals("b", node.path("ranking").path("profile").asText());
+    assertTrue(node.path("ranking").path("listFeatures").asBoolean());
+    assertTrue(node.path("ranking.profile").isMissingNode());
+  }
+
+  @Test
+  void pairComputesOverlapAndRankCorrelation() {
+    var result = result("a", "1", "2", "3", "4");
+    var same = result("b", "1", "2", "3", "4");
+    var reversed = result("c", "4", "3", "2", "1");
+    var disjoint = result("d", "5", "6", "7", "8");
+
+    var identical = RankProfileComparator.pair(result, same, 4);
+    assertEquals(1.0, identical.overlap());
+    assertEquals(1.0, identical.kendallTau());
+
+    var inverse = RankProfileComparator.pair(result, reversed, 4);
+    assertEquals(1.0, inverse.overlap());
+    assertEquals(-1.0, inverse.kendallTau());
+
+    var none = RankProfileComparator.pair(result, disjoint, 4);
+    assertEquals(0, none.sharedHits());
+    assertEquals(0.0, none.overlap());
+    assertNull(none.kendallTau());
+  }
+
+  private static RankProfileResult result(String profile, String... ids) {
+    return new RankProfileResult(profile, 1, ids.length, List.of(ids), null);
+  }
+}
@@ -0,0 +1,82 @@
+package com.vispana.vespa.query;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.vispana.simulator.SimulatorTopology;
+import com.vispana.simulator.VespaSimulator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class VespaQueryClientTest {
+
+  @Test
+  void withDeadlineLeavesAMissingTimeoutToVespa() {
+    var query = "{\"yql\":\"q\"}";
+    assertSame(query, VespaQueryClient.withDeadline(query, Duration.ofSeconds(10)));
+  }
+
+  @Test
+  void withDeadlineClampsLongerTimeouts() {
+    var query = VespaQueryClient.withDeadline("{\"timeout\":\"60s\"}", Duration.ofSeconds(10));
+    assertEquals("10000ms", QueryResponseParser.parse(query).path("timeout").asText());
+  }
+
+  @Test
+  void withDeadlineKeepsShorterTimeouts() {
+    var seconds = "{\"timeout\":0.5}";
+    assertSame(seconds, VespaQueryClient.withDeadline(seconds, Duration.ofSeconds(10)));
+
+    var millis = "{\"timeout\":\"200ms\"}";
+    assertSame(millis, VespaQueryClient.withDeadline(millis, Duration.ofSeconds(10)));
+  }
+
+  @Test
+  void withDeadlineLeavesInvalidQueriesAlone() {
+    assertEquals("not json", VespaQueryClient.withDeadline("not json", Duration.ofSeconds(1)));
+  }
+
+  @Test
+  void unreachableContainerFailsWithoutHanging() throws IOException {
+    int closedPort;
+    try (var socket = new ServerSocket(0)) {
+      closedPort = socket.getLocalPort();
+    }
+    var client = new VespaQueryClient();
+
+    var failure =
+        assertThrows(
+            VespaQueryException.class,
+            () -> client.query("http://localhost:" + closedPort, "{\"yql\":\"q\"}"));
+    assertTrue(failure.isNodeFailure());
+    assertEquals(0, client.stats().inFlight());
+    assertEquals(1, client.stats().failed());
+  }
+
+  @Test
+  void proxiedBytesAndOutcomesAreCounted() {
+    var registry = new SimpleMeterRegistry();
+    var client = new VespaQueryClient();
+    client.bindTo(registry);
+
+    try (var simulator = new VespaSimulator(SimulatorTopology.ofHosts(10)).start()) {
+      var result = client.query(simulator.containerHost(), "{\"yql\":\"select * from music\"}");
+
+      var received =
+          registry.get("vispana.query.proxied").tag("direction", "received").functionCounter();
+      assertEquals(result.length(), received.count());
+      assertTrue(
+          registry.get("vispana.query.proxied").tag("direction", "sent").functionCounter().count()
+              > 0);
+      assertEquals(
+          1,
+          registry
+              .get("vispana.query.requests")
+              .tag("outcome", "completed")
+              .functionCounter()
+              .count());
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package com.vispana.vespa.state;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.vispana.FakeAppPackageServer;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RankProfileCacheTest {
+
+  private FakeAppPackageServer server;
+
+  @BeforeEach
+  void startServer() {
+    server =
+        new FakeAppPackageServer()
+            .withFile("services.xml", "<services/>")
+            .withFile("schemas/music.sd", "schema music {}")
+            .withFile("schemas/music/bm25.profile", "rank-profile bm25 {}")
+            .withFile("schemas/music/closeness.profile", "rank-profile closeness {}")
+            .withFile("schemas/books.sd", "schema books {}")
+            .withFile("schemas/books/default.profile", "rank-profile default {}");
+  }
+
+  @AfterEach
+  void stopServer() {
+    server.close();
+  }
+
+  @Test
+  void fetchesProfilesOncePerGeneration() {
+    var cache = new RankProfileCache(1 << 20);
+
+    var music = cache.rankProfiles(server.configHost(), "music");
+    assertEquals("music", music.schemaName());
+    assertEquals(1, music.generation());
+    assertEquals(List.of("bm25", "closeness"), List.copyOf(music.rankProfiles().keySet()));
+    assertEquals("rank-profile bm25 {}", music.rankProfiles().get("bm25"));
+    assertEquals(2, server.fileRequests());
+
+    assertSame(music, cache.rankProfiles(server.configHost(), "music"));
+    assertEquals(2, server.fileRequests());
+
+    server.withGeneration(2).withFile("schemas/music/bm25.profile", "rank-profile bm25 { }");
+    var redeployed = cache.rankProfiles(server.configHost(), "music");
+    assertEquals(2, redeployed.generation());
+    assertEquals("rank-profile bm25 { }", redeployed.rankProfiles().get("bm25"));
+    assertEquals(4, server.fileRequests());
+  }
+
+  @Test
+  void schemaWithoutProfilesIsEmpty() {
+    var cache = new RankProfileCache(1 << 20);
+
+    assertTrue(cache.rankProfiles(server.configHost(), "unknown").rankProfiles().isEmpty());
+  }
+
+  @Test
+  void evictsLeastRecentlyUsedSchemaBeyondByteBound() {
+    // room for the profiles of one schema only
+    var cache = new RankProfileCache(150);
+
+    var music = cache.rankProfiles(server.configHost(), "music");
+    cache.rankProfiles(server.configHost(), "books");
+    assertTrue(cache.cachedBytes() <= 150);
+    assertEquals(3, server.fileRequests());
+
+    assertNotSame(music, cache.rankProfiles(server.configHost(), "music"));
+    assertEquals(5, server.fileRequests());
+  }
+}
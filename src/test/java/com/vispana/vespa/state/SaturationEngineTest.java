@@ -0,0 +1,164 @@
+package com.vispana.vespa.state;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.vispana.api.model.Host;
+import com.vispana.api.model.container.ContainerCluster;
+import com.vispana.api.model.container.ContainerNode;
+import com.vispana.api.model.container.ContainerNodes;
+import com.vispana.api.model.saturation.ClusterSaturation;
+import com.vispana.api.model.saturation.PoolUsage;
+import com.vispana.api.model.saturation.QueueUsage;
+import com.vispana.client.vespa.model.Dimensions;
+import com.vispana.client.vespa.model.Metric;
+import com.vispana.client.vespa.model.MetricsNode;
+import com.vispana.client.vespa.model.MetricsNodeService;
+import com.vispana.client.vespa.model.Values;
+import com.vispana.simulator.SimulatorTopology;
+import com.vispana.simulator.VespaSimulator;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class SaturationEngineTest {
+
+  @Test
+  void keepsPoolsApartAndReportsTheWorstPerNodeAndCluster() {
+    var cluster =
+        derive(
+            Map.of(
+                "container-0", container(20, pool("default-pool", 32, 100, 0)),
+                "container-1",
+                    container(
+                        190, pool("default-pool", 2, 0, 0), pool("search-handler", 64, 900, 0))));
+
+    assertEquals(1.0, cluster.peakUtilization());
+    assertEquals(0.9, cluster.peakQueueFill());
+
+    // summed with the idle default pool, the full search handler would look half busy
+    var saturated = cluster.nodes().get(1);
+    assertEquals("container-1", saturated.hostname());
+    assertEquals(2, saturated.handlerPools().size());
+    assertEquals("search-handler", saturated.worstPool().name());
+    assertEquals(new PoolUsage(64, 64), saturated.worstPool().threads());
+    assertEquals(new QueueUsage(900, 1000), saturated.worstPool().queue());
+    assertEquals(0.95, saturated.httpPool().utilization());
+    assertEquals(0.5, cluster.nodes().getFirst().peakUtilization());
+  }
+
+  @Test
+  void rejectionsAreTheCountOfTheMetricsPeriod() {
+    var cluster =
+        derive(
+            Map.of(
+                "container-0",
+                container(
+                    200,
+                    pool("default-pool", 32, 1000, 60),
+                    pool("search-handler", 64, 1000, 120))));
+
+    var node = cluster.nodes().getFirst();
+    assertEquals(2.0, node.worstPool().rejectedPerSecond());
+    assertEquals(3.0, node.rejectedPerSecond());
+    assertEquals(3.0, cluster.rejectedPerSecond());
+  }
+
+  @Test
+  void rejectionsAreSpreadOverTheConfiguredPeriod() {
+    var cluster =
+        derive(
+            Map.of("container-0", container(200, pool("search-handler", 64, 1000, 60))),
+            Duration.ofSeconds(30));
+
+    assertEquals(2.0, cluster.rejectedPerSecond());
+  }
+
+  @Test
+  void leavesOutWhatANodeDoesNotReport() {
+    var cluster = derive(Map.of());
+
+    assertEquals(1, cluster.nodes().size());
+    assertEquals(List.of(), cluster.nodes().getFirst().handlerPools());
+    assertNull(cluster.nodes().getFirst().worstPool());
+    assertNull(cluster.nodes().getFirst().httpPool());
+    assertNull(cluster.rejectedPerSecond());
+    assertEquals(0, cluster.peakUtilization());
+  }
+
+  @Test
+  void findsTheOverloadedSimulatedContainer() {
+    // four containers, of which the simulator overloads the search handler of the last
+    try (var simulator = new VespaSimulator(SimulatorTopology.ofHosts(23)).start()) {
+      var cluster =
+          new VespaStateClient().vespaState(simulator.configHost()).saturation().getFirst();
+
+      assertEquals(4, cluster.nodes().size());
+      assertEquals(1.0, cluster.peakUtilization());
+      assertEquals(0.9, cluster.peakQueueFill());
+      assertEquals(2.0, cluster.rejectedPerSecond());
+      var overloaded = cluster.nodes().getLast();
+      assertEquals("search-handler", overloaded.worstPool().name());
+      assertEquals(2.0, overloaded.rejectedPerSecond());
+    }
+  }
+
+  /** One cluster of the containers named, which report the given metrics if any. */
+  private static ClusterSaturation derive(Map<String, MetricsNode> metrics) {
+    return derive(metrics, SaturationEngine.DEFAULT_METRICS_PERIOD);
+  }
+
+  private static ClusterSaturation derive(Map<String, MetricsNode> metrics, Duration period) {
+    var hostnames = metrics.isEmpty() ? List.of("container-0") : metrics.keySet();
+    var nodes =
+        hostnames.stream()
+            .sorted()
+            .map(hostname -> new ContainerNode("0", new Host(hostname, 8080), null, null))
+            .toList();
+    var containers =
+        new ContainerNodes(List.of(new ContainerCluster("default", nodes, false, true)));
+    var saturation = new SaturationEngine(period).derive(containers, new HashMap<>(metrics));
+    assertEquals(1, saturation.size());
+    return saturation.getFirst();
+  }
+
+  /**
+   * A 64 thread handler pool with a 1000 task queue and the tasks it rejected in the metrics
+   * period.
+   */
+  private static Metric pool(String name, long activeThreads, long queued, long rejected) {
+    var values = new Values();
+    values.setJdiscThreadPoolActiveThreadsMax(activeThreads);
+    values.setJdiscThreadPoolMaxAllowedSizeMax(64L);
+    values.setJdiscThreadPoolWorkQueueSizeMax(queued);
+    values.setJdiscThreadPoolWorkQueueCapacityMax(1000L);
+    values.setAdditionalProperty("jdisc.thread_pool.rejected_tasks.count", rejected);
+    var dimensions = new Dimensions();
+    dimensions.setThreadpool(name);
+    var metric = new Metric();
+    metric.setValues(values);
+    metric.setDimensions(dimensions);
+    return metric;
+  }
+
+  /** A container with a 200 thread HTTP pool and the given handler pools. */
+  private static MetricsNode container(long httpThreads, Metric... pools) {
+    var http = new Values();
+    http.setServerActiveThreadsMax(httpThreads);
+    http.setServerThreadPoolSizeMax(200L);
+    var httpMetric = new Metric();
+    httpMetric.setValues(http);
+    httpMetric.setDimensions(new Dimensions());
+
+    var metrics = new ArrayList<>(List.of(pools));
+    metrics.add(httpMetric);
+    var service = new MetricsNodeService();
+    service.setName("vespa.container");
+    service.setMetrics(metrics);
+    var node = new MetricsNode();
+    node.setServices(List.of(service));
+    return node;
+  }
+}
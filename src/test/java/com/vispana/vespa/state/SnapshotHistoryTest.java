@@ -0,0 +1,41 @@
+package com.vispana.vespa.state;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.vispana.api.model.VespaVersion;
+import com.vispana.api.model.VispanaRoot;
+import com.vispana.api.model.config.ConfigNodes;
+import com.vispana.api.model.container.ContainerNodes;
+import com.vispana.api.model.content.ContentNodes;
+import com.vispana.api.model.history.HistorySample;
+import java.time.Instant;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class SnapshotHistoryTest {
+
+  @Test
+  void keepsTheLatestSamplesOfEachConfigHost() {
+    var history = new SnapshotHistory(3);
+    var snapshot =
+        new VispanaRoot(
+            new ConfigNodes(List.of()),
+            new ContainerNodes(List.of()),
+            new ContentNodes(List.of()),
+            null,
+            new VespaVersion(8, 400, 0),
+            List.of(),
+            List.of());
+
+    for (int i = 1; i <= 5; i++) {
+      history.onSnapshot("http://cfg-0:19071/", snapshot, Instant.ofEpochSecond(i * 30));
+    }
+    history.onSnapshot("http://cfg-1:19071/", snapshot, Instant.ofEpochSecond(30));
+
+    assertEquals(
+        List.of(Instant.ofEpochSecond(90), Instant.ofEpochSecond(120), Instant.ofEpochSecond(150)),
+        history.history("http://cfg-0:19071/").stream().map(HistorySample::takenAt).toList());
+    assertEquals(1, history.history("http://cfg-1:19071/").size());
+    assertEquals(List.of(), history.history("http://cfg-2:19071/"));
+  }
+}
@@ -0,0 +1,77 @@
+package com.vispana.vespa.state;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.vispana.api.model.VispanaRoot;
+import com.vispana.simulator.EndpointBehavior;
+import com.vispana.simulator.SimulatedEndpoint;
+import com.vispana.simulator.SimulatorTopology;
+import com.vispana.simulator.VespaSimulator;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.jupiter.api.Test;
+
+class SnapshotPollerTest {
+
+  @Test
+  void handsEverySnapshotToTheListenersAndSkipsFailedPolls() {
+    try (var healthy = new VespaSimulator(SimulatorTopology.ofHosts(10)).start();
+        var failing = new VespaSimulator(SimulatorTopology.ofHosts(10)).start()) {
+      failing.behave(SimulatedEndpoint.METRICS, EndpointBehavior.IMMEDIATE.withFailureRate(1));
+      Map<String, VispanaRoot> received = new ConcurrentHashMap<>();
+      // without the trailing slash the overview endpoint gets
+      String healthyHost = healthy.configHost().substring(0, healthy.configHost().length() - 1);
+      var poller =
+          new SnapshotPoller(
+              new VespaStateClient(),
+              List.of((configHost, snapshot, takenAt) -> received.put(configHost, snapshot)),
+              List.of(healthyHost, failing.configHost()),
+              false,
+              Duration.ofSeconds(30));
+
+      poller.poll();
+
+      assertEquals(List.of(healthy.configHost(), failing.configHost()), poller.configHosts());
+      assertEquals(1, received.size());
+      assertEquals(
+          "content", received.get(healthy.configHost()).content().clusters().getFirst().name());
+    }
+  }
+
+  @Test
+  void pollsConfigHostsOpenedInTheUi() {
+    try (var simulator = new VespaSimulator(SimulatorTopology.ofHosts(10)).start()) {
+      Map<String, VispanaRoot> received = new ConcurrentHashMap<>();
+      var poller =
+          new SnapshotPoller(
+              new VespaStateClient(),
+              List.of((configHost, snapshot, takenAt) -> received.put(configHost, snapshot)),
+              List.of(),
+              true,
+              Duration.ofSeconds(30));
+      assertEquals(List.of(), poller.configHosts());
+
+      String configHost = simulator.configHost();
+      poller.opened(configHost.substring(0, configHost.length() - 1));
+      poller.opened(configHost);
+      poller.poll();
+
+      assertEquals(List.of(configHost), poller.configHosts());
+      assertEquals(Set.of(configHost), received.keySet());
+    }
+  }
+
+  @Test
+  void pollsOnlyTheListedConfigHostsWhenAskedTo() {
+    var poller =
+        new SnapshotPoller(
+            new VespaStateClient(), List.of(), List.of(), false, Duration.ofSeconds(30));
+
+    poller.opened("http://cfg-0:19071/");
+
+    assertEquals(List.of(), poller.configHosts());
+  }
+}
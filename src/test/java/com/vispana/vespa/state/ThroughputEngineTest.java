@@ -0,0 +1,156 @@
+package com.vispana.vespa.state;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.vispana.api.model.Host;
+import com.vispana.api.model.content.ContentCluster;
+import com.vispana.api.model.content.ContentNode;
+import com.vispana.api.model.content.ContentNodes;
+import com.vispana.api.model.content.Group;
+import com.vispana.api.model.content.GroupKey;
+import com.vispana.api.model.throughput.ClusterThroughput;
+import com.vispana.api.model.throughput.Throughput;
+import com.vispana.client.vespa.model.Dimensions;
+import com.vispana.client.vespa.model.Metric;
+import com.vispana.client.vespa.model.MetricsNode;
+import com.vispana.client.vespa.model.MetricsNodeService;
+import com.vispana.client.vespa.model.Values;
+import com.vispana.simulator.SimulatorTopology;
+import com.vispana.simulator.VespaSimulator;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ThroughputEngineTest {
+
+  private static final String CONFIG_HOST = "http://cfg-0:19071/";
+
+  private final ThroughputEngine engine = new ThroughputEngine();
+
+  @Test
+  void reportsTheRatesOfTheMetricsPeriodAndGrowthBetweenTwoSnapshots() {
+    var first = derive(content(sample(0, 100, 50, 10_000)));
+
+    assertEquals(new Throughput(100, 50, null), first.getFirst().total());
+
+    var throughput = derive(content(sample(60, 120, 40, 10_600)));
+
+    assertEquals(1, throughput.size());
+    assertEquals("music", throughput.getFirst().cluster());
+    assertEquals(new Throughput(120, 40, 10.0), throughput.getFirst().total());
+    assertEquals(new Throughput(120, 40, 10.0), throughput.getFirst().schemas().get("album"));
+  }
+
+  @Test
+  void countsFeedAndDocumentsOfOneGroupAndQueriesOfEvery() {
+    // two groups of two nodes, each group holding all documents
+    derive(
+        grouped(
+            2,
+            sample(0, 0, 0, 500),
+            sample(0, 0, 0, 500),
+            sample(0, 0, 0, 400),
+            sample(0, 0, 0, 400)));
+
+    var throughput =
+        derive(
+            grouped(
+                2,
+                sample(10, 30, 20, 600),
+                sample(10, 30, 20, 600),
+                sample(10, 28, 8, 450),
+                sample(10, 28, 10, 450)));
+
+    // a query is matched on every node of the group it is dispatched to
+    assertEquals(new Throughput(60, 30, 20.0), throughput.getFirst().total());
+  }
+
+  @Test
+  void keepsTheLastGrowthWhenTheProxyHasNotTakenANewSnapshot() {
+    derive(content(sample(0, 0, 0, 0)));
+    var first = derive(content(sample(60, 10, 10, 60)));
+
+    // the same proxy snapshot again, e.g. fetched by the page right after the poller
+    var again = derive(content(sample(60, 10, 10, 60)));
+
+    assertEquals(first, again);
+  }
+
+  @Test
+  void derivesRatesFromTheSimulatedMetrics() {
+    try (var simulator = new VespaSimulator(SimulatorTopology.ofHosts(10)).start()) {
+      var client = new VespaStateClient();
+      assertNull(
+          client
+              .vespaState(simulator.configHost())
+              .throughput()
+              .getFirst()
+              .total()
+              .documentGrowthPerSecond());
+
+      simulator.advanceMetrics();
+      var snapshot = client.vespaState(simulator.configHost());
+
+      var cluster = snapshot.throughput().getFirst();
+      assertEquals(snapshot.content().clusters().getFirst().name(), cluster.cluster());
+      assertEquals(
+          simulator.topology().contentClusters().getFirst().schemas().stream().sorted().toList(),
+          List.copyOf(cluster.schemas().keySet()));
+      assertTrue(cluster.total().feedOpsPerSecond() > 0);
+      assertTrue(cluster.total().queriesPerSecond() > 0);
+      // the simulator adds a document for every ten feed operations
+      assertEquals(
+          cluster.total().feedOpsPerSecond() / 10, cluster.total().documentGrowthPerSecond(), 1e-9);
+    }
+  }
+
+  private List<ClusterThroughput> derive(ContentNodes content) {
+    return engine.derive(CONFIG_HOST, content, Instant.EPOCH);
+  }
+
+  private static ContentNodes content(MetricsNode... samples) {
+    return grouped(samples.length, samples);
+  }
+
+  private static ContentNodes grouped(int nodesPerGroup, MetricsNode... samples) {
+    List<ContentNode> nodes = new ArrayList<>();
+    for (int i = 0; i < samples.length; i++) {
+      samples[i].setHostname("content-" + i);
+      nodes.add(
+          new ContentNode(
+              "music",
+              new Host("content-" + i, 19107),
+              null,
+              null,
+              new Group(new GroupKey("group-" + i / nodesPerGroup), String.valueOf(i)),
+              samples[i]));
+    }
+    return new ContentNodes(List.of(new ContentCluster("music", null, List.of(), nodes)));
+  }
+
+  /**
+   * A searchnode reporting the rates and active documents of one schema at a proxy timestamp in
+   * seconds, along with the redundant copies it keeps, which must not count as documents.
+   */
+  private static MetricsNode sample(
+      long timestamp, double feedOps, double queries, long activeDocuments) {
+    var values = new Values();
+    values.setContentProtonDocumentdbFeedingCommitOperationsRate(feedOps);
+    values.setContentProtonDocumentdbMatchingQueriesRate(queries);
+    values.setContentProtonDocumentdbDocumentsActiveLast(activeDocuments);
+    values.setContentProtonDocumentdbDocumentsTotalLast(activeDocuments * 2);
+    var dimensions = new Dimensions();
+    dimensions.setDocumenttype("album");
+    var metric = new Metric();
+    metric.setValues(values);
+    metric.setDimensions(dimensions);
+    var service = new MetricsNodeService();
+    service.setName("vespa.searchnode");
+    service.setTimestamp(timestamp);
+    service.setMetrics(List.of(metric));
+    var node = new MetricsNode();
+    node.setServices(List.of(service));
+    return node;
+  }
+}
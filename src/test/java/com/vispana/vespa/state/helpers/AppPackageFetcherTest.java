@@ -0,0 +1,86 @@
+package com.vispana.vespa.state.helpers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.vispana.FakeAppPackageServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipInputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class AppPackageFetcherTest {
+
+  private final byte[] largeFile = new byte[64 * 1024];
+  private FakeAppPackageServer server;
+
+  @BeforeEach
+  void startServer() {
+    new Random(42).nextBytes(largeFile);
+    server =
+        new FakeAppPackageServer()
+            .withDelay(10)
+            .withFile("services.xml", "<services/>")
+            .withFile("schemas/music.sd", "schema music {}")
+            .withFile("schemas/music/rank.profile", "rank-profile rank {}")
+            .withFile("models/model.onnx", largeFile);
+    for (int i = 0; i < 20; i++) {
+      server.withFile("constants/c%02d.json".formatted(i), "{\"value\": %d}".formatted(i));
+    }
+  }
+
+  @AfterEach
+  void stopServer() {
+    server.close();
+  }
+
+  @Test
+  void streamAppPackageAsZipWritesEveryEntryInOrderWithParentsFirst() throws Exception {
+    // a tiny in-memory limit forces the large file through the disk spill path
+    var fetcher = new AppPackageFetcher(4, 1024, 4, PackageArchiveWriter.Settings.DEFAULT);
+    var zip = new ByteArrayOutputStream();
+
+    fetcher.streamAppPackageAsZip(server.configHost(), zip);
+
+    var entries = unzip(zip.toByteArray());
+    var names = new ArrayList<>(entries.keySet());
+    assertEquals(
+        List.of("constants/", "constants/c00.json", "constants/c01.json"), names.subList(0, 3));
+    assertTrue(names.indexOf("schemas/") < names.indexOf("schemas/music/"));
+    assertTrue(names.indexOf("schemas/music/") < names.indexOf("schemas/music/rank.profile"));
+    assertEquals(20 + 3 + 1 + 4, names.size());
+    assertEquals("schema music {}", new String(entries.get("schemas/music.sd")));
+    assertArrayEquals(largeFile, entries.get("models/model.onnx"));
+  }
+
+  @Test
+  void prefetchedFileSpillsToDiskAboveMemoryLimit() throws Exception {
+    var inMemory =
+        AppPackageFetcher.PrefetchedFile.read("a", new ByteArrayInputStream(new byte[100]), 1024);
+    assertFalse(inMemory.isSpilled());
+
+    try (var spilled =
+        AppPackageFetcher.PrefetchedFile.read("b", new ByteArrayInputStream(largeFile), 1024)) {
+      assertTrue(spilled.isSpilled());
+      assertEquals(largeFile.length, spilled.size);
+      try (var in = spilled.open()) {
+        assertArrayEquals(largeFile, in.readAllBytes());
+      }
+    }
+  }
+
+  private static LinkedHashMap<String, byte[]> unzip(byte[] zip) throws Exception {
+    var entries = new LinkedHashMap<String, byte[]>();
+    try (var in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+      for (var entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+        entries.put(entry.getName(), in.readAllBytes());
+      }
+    }
+    return entries;
+  }
+}
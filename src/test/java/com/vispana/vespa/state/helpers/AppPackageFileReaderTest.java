@@ -0,0 +1,69 @@
+package com.vispana.vespa.state.helpers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.vispana.api.model.apppackage.AppPackageFilePage;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class AppPackageFileReaderTest {
+
+  private static final String TEXT = "line 0\nline 1\nline 2\nline 3\n";
+
+  @Test
+  void pagesByByteOffsetEndingOnCompleteLines() throws Exception {
+    var page = read(TEXT, 0, null, 10);
+    assertEquals("line 0\n", page.content());
+    assertTrue(page.truncated());
+    assertEquals(7, page.nextOffset());
+
+    var next = read(TEXT, page.nextOffset(), null, 100);
+    assertEquals("line 1\nline 2\nline 3\n", next.content());
+    assertFalse(next.truncated());
+    assertEquals(TEXT.length(), next.nextOffset());
+    assertEquals(TEXT.length(), next.size());
+  }
+
+  @Test
+  void pagesByLine() throws Exception {
+    var page = read(TEXT, 0, 2L, 10);
+    assertEquals("line 2\n", page.content());
+    assertEquals(14, page.offset());
+    assertEquals(3L, page.nextLine());
+
+    var past = read(TEXT, 0, 10L, 10);
+    assertEquals("", past.content());
+    assertFalse(past.truncated());
+  }
+
+  @Test
+  void neverSplitsMultiByteCharacters() throws Exception {
+    // no newline to end on: the page ends before the cut character instead
+    var page = read("ééééé", 0, null, 5);
+    assertEquals("éé", page.content());
+    assertEquals(4, page.nextOffset());
+  }
+
+  @Test
+  void detectsBinaryFromContent() throws Exception {
+    var nul = new byte[] {'o', 'n', 'n', 'x', 0, 1, 2};
+    var page =
+        AppPackageFileReader.readPage("url", new ByteArrayInputStream(nul), 7L, 0, null, 100);
+    assertTrue(page.binary());
+    assertEquals(AppPackageFileReader.BINARY_PLACEHOLDER, page.content());
+
+    assertTrue(AppPackageFileReader.isBinary(new byte[] {(byte) 0xC3, 0x28}, true));
+    // a sample cut in the middle of a character is still text
+    var cut = "aé".getBytes(StandardCharsets.UTF_8);
+    assertFalse(AppPackageFileReader.isBinary(new byte[] {cut[0], cut[1]}, false));
+    assertTrue(AppPackageFileReader.isBinary(new byte[] {cut[0], cut[1]}, true));
+  }
+
+  private static AppPackageFilePage read(String text, long offset, Long line, int maxBytes)
+      throws Exception {
+    var bytes = text.getBytes(StandardCharsets.UTF_8);
+    return AppPackageFileReader.readPage(
+        "url", new ByteArrayInputStream(bytes), (long) bytes.length, offset, line, maxBytes);
+  }
+}
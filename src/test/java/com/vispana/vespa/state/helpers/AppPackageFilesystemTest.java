@@ -0,0 +1,83 @@
+package com.vispana.vespa.state.helpers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.vispana.FakeAppPackageServer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class AppPackageFilesystemTest {
+
+  private static final int DIRECTORIES = 12;
+  private static final int FILES_PER_DIRECTORY = 3;
+
+  private FakeAppPackageServer server;
+
+  @BeforeEach
+  void startServer() {
+    server = new FakeAppPackageServer().withDelay(20).withFile("services.xml", "<services/>");
+    for (int i = 0; i < DIRECTORIES; i++) {
+      for (int j = 0; j < FILES_PER_DIRECTORY; j++) {
+        server.withFile("dir%02d/file%d.txt".formatted(i, j), "content");
+      }
+    }
+    server.withFile("dir00/nested/file.txt", "content");
+  }
+
+  @AfterEach
+  void stopServer() {
+    server.close();
+  }
+
+  @Test
+  void buildFileTreeListsEveryDirectoryWithinConcurrencyLimit() {
+    var tree = AppPackageFilesystem.buildFileTree(server.configHost(), 4);
+
+    assertEquals(DIRECTORIES + 1, tree.getTotalDirectories());
+    assertEquals(DIRECTORIES * FILES_PER_DIRECTORY + 2, tree.getTotalFiles());
+    assertTrue(
+        server.maxListingsInFlight() <= 4, "in-flight listings: " + server.maxListingsInFlight());
+
+    var root = tree.getRoot();
+    // listed in reverse, returned sorted
+    var names = new ArrayList<>(root.getChildren().keySet());
+    assertEquals("dir00", names.getFirst());
+    assertEquals(names.stream().sorted().toList(), names);
+    var nested = root.getChildren().get("dir00").getChildren().get("nested");
+    assertEquals("dir00/nested/", nested.getPath());
+    assertTrue(nested.getChildren().get("file.txt").isFile());
+  }
+
+  @Test
+  void listDirectoryListsOnlyOneLevel() {
+    var listing = AppPackageFilesystem.listDirectory(server.configHost(), "/dir00");
+
+    assertEquals("dir00", listing.getRoot().getName());
+    assertEquals("dir00/", listing.getRoot().getPath());
+    assertEquals(FILES_PER_DIRECTORY, listing.getTotalFiles());
+    assertEquals(1, listing.getTotalDirectories());
+    var nested = listing.getRoot().getChildren().get("nested");
+    assertFalse(nested.isFile());
+    assertTrue(nested.getChildren().isEmpty());
+
+    var root = AppPackageFilesystem.listDirectory(server.configHost(), "");
+    assertEquals("/", root.getRoot().getPath());
+    assertEquals(DIRECTORIES, root.getTotalDirectories());
+    assertEquals(
+        List.of("services.xml"),
+        root.getRoot().getChildren().values().stream()
+            .filter(AppPackageFilesystem.FileNode::isFile)
+            .map(AppPackageFilesystem.FileNode::getName)
+            .toList());
+  }
+
+  @Test
+  void listDirectoryRejectsParentReferences() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> AppPackageFilesystem.listDirectory(server.configHost(), "dir00/../../"));
+  }
+}
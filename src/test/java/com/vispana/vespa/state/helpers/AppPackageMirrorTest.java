@@ -0,0 +1,214 @@
+package com.vispana.vespa.state.helpers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.vispana.FakeAppPackageServer;
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipInputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AppPackageMirrorTest {
+
+  @TempDir Path cacheDir;
+
+  private FakeAppPackageServer server;
+
+  @BeforeEach
+  void startServer() {
+    server =
+        new FakeAppPackageServer()
+            .withFile("services.xml", "<services/>")
+            .withFile("schemas/music.sd", "schema music {}")
+            .withFile("schemas/copy.sd", "schema music {}");
+  }
+
+  @AfterEach
+  void stopServer() {
+    server.close();
+  }
+
+  @Test
+  void mirrorsOncePerGeneration() throws Exception {
+    var mirror = new AppPackageMirror(cacheDir);
+
+    var snapshot = mirror.snapshot(server.configHost());
+    assertEquals(1, snapshot.getGeneration());
+    assertEquals(3, snapshot.getTree().getTotalFiles());
+    assertEquals(1, snapshot.getTree().getTotalDirectories());
+    assertEquals("schema music {}", read(snapshot, "/schemas/music.sd"));
+    assertTrue(snapshot.blob("missing.xml").isEmpty());
+    assertEquals(3, server.fileRequests());
+
+    // same generation: served without downloading again, also after a restart
+    assertSame(snapshot, mirror.snapshot(server.configHost()));
+    var restarted = new AppPackageMirror(cacheDir).snapshot(server.configHost());
+    assertEquals(snapshot.getKey(), restarted.getKey());
+    assertEquals(3, server.fileRequests());
+
+    server.withGeneration(2).withFile("services.xml", "<services version=\"2\"/>");
+    var redeployed = mirror.snapshot(server.configHost());
+    assertEquals(2, redeployed.getGeneration());
+    assertEquals("<services version=\"2\"/>", read(redeployed, "services.xml"));
+    // only the changed file is fetched again
+    assertEquals(4, server.fileRequests());
+  }
+
+  @Test
+  void summarisesChangesBetweenGenerations() {
+    var mirror = new AppPackageMirror(cacheDir);
+    var first = mirror.snapshot(server.configHost()).getChanges();
+    assertNull(first.fromGeneration());
+    assertEquals(3, first.added().size());
+    assertEquals("incremental", first.syncMode());
+
+    server
+        .withGeneration(5)
+        .withFile("services.xml", "<services version=\"2\"/>")
+        .withFile("schemas/album.sd", "schema music {}");
+    var changes = mirror.snapshot(server.configHost()).getChanges();
+
+    assertEquals(1L, changes.fromGeneration());
+    assertEquals(5, changes.toGeneration());
+    assertEquals(List.of("schemas/album.sd"), changes.added());
+    assertEquals(List.of("services.xml"), changes.changed());
+    assertEquals(List.of(), changes.removed());
+    assertEquals(2, changes.unchanged());
+    // the new schema has the content of an existing one, so only services.xml is downloaded
+    assertEquals(1, changes.filesDownloaded());
+    assertEquals("<services version=\"2\"/>".length(), changes.bytesDownloaded());
+  }
+
+  @Test
+  void fetchesEverythingWithoutHashedListing() {
+    server.withStatusListing(false);
+    var mirror = new AppPackageMirror(cacheDir);
+    mirror.snapshot(server.configHost());
+
+    server.withGeneration(2);
+    var changes = mirror.snapshot(server.configHost()).getChanges();
+
+    assertEquals("full", changes.syncMode());
+    assertEquals(3, changes.unchanged());
+    assertEquals(6, server.fileRequests());
+  }
+
+  @Test
+  void storesIdenticalContentOnceAndDropsOldGenerations() throws Exception {
+    var mirror = new AppPackageMirror(cacheDir);
+    var snapshot = mirror.snapshot(server.configHost());
+
+    assertEquals(
+        snapshot.blob("schemas/music.sd").orElseThrow(),
+        snapshot.blob("schemas/copy.sd").orElseThrow());
+    assertEquals(2, countFiles(cacheDir.resolve("blobs")));
+
+    server.withGeneration(2).withFile("services.xml", "<services version=\"2\"/>");
+    mirror.snapshot(server.configHost());
+
+    assertEquals(1, countFiles(cacheDir.resolve("manifests")));
+    // the old services.xml is no longer referenced
+    assertEquals(2, countFiles(cacheDir.resolve("blobs")));
+  }
+
+  @Test
+  void leasesOnlyOnceMirroredInTheBackground() {
+    server.withDelay(200);
+    var mirror = new AppPackageMirror(cacheDir);
+
+    // the request that finds the generation missing goes to the config server itself
+    assertTrue(mirror.tryLease(server.configHost()).isEmpty());
+
+    var snapshot = mirror.snapshot(server.configHost());
+    try (var lease = mirror.tryLease(server.configHost()).orElseThrow()) {
+      assertSame(snapshot, lease.snapshot());
+    }
+  }
+
+  @Test
+  void keepsReplacedGenerationUntilItsLastLeaseIsClosed() throws Exception {
+    var mirror = new AppPackageMirror(cacheDir);
+    mirror.snapshot(server.configHost());
+    var lease = mirror.tryLease(server.configHost()).orElseThrow();
+
+    server.withGeneration(2).withFile("services.xml", "<services version=\"2\"/>");
+    mirror.snapshot(server.configHost());
+
+    // still readable, and no new lease is handed out on it
+    assertEquals("<services/>", read(lease.snapshot(), "services.xml"));
+    try (var current = mirror.tryLease(server.configHost()).orElseThrow()) {
+      assertEquals(2, current.snapshot().getGeneration());
+    }
+    assertEquals(3, countFiles(cacheDir.resolve("blobs")));
+
+    lease.close();
+    assertEquals(1, countFiles(cacheDir.resolve("manifests")));
+    assertEquals(2, countFiles(cacheDir.resolve("blobs")));
+  }
+
+  @Test
+  void zipIsBuiltOnceFromTheMirror() throws Exception {
+    var mirror = new AppPackageMirror(cacheDir);
+    var snapshot = mirror.snapshot(server.configHost());
+
+    var zip = mirror.archive(snapshot, ArchiveFormat.ZIP);
+    assertEquals(zip, mirror.archive(snapshot, ArchiveFormat.ZIP));
+
+    var names = new ArrayList<String>();
+    try (var in = new ZipInputStream(new ByteArrayInputStream(Files.readAllBytes(zip)))) {
+      for (var entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+        names.add(entry.getName());
+      }
+    }
+    assertEquals(List.of("schemas/", "schemas/copy.sd", "schemas/music.sd", "services.xml"), names);
+  }
+
+  @Test
+  void downloadsDoNotWaitForTheArchiveToBeBuilt() throws Exception {
+    var mirror = new AppPackageMirror(cacheDir);
+    mirror.snapshot(server.configHost());
+
+    try (var lease = mirror.tryLease(server.configHost()).orElseThrow()) {
+      assertTrue(mirror.tryArchive(lease, ArchiveFormat.TAR_GZ).isEmpty());
+    }
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (true) {
+      try (var lease = mirror.tryLease(server.configHost()).orElseThrow()) {
+        var archive = mirror.tryArchive(lease, ArchiveFormat.TAR_GZ);
+        if (archive.isPresent()) {
+          assertTrue(Files.size(archive.get()) > 0);
+          return;
+        }
+      }
+      assertTrue(System.nanoTime() < deadline, "archive not built in the background");
+      Thread.sleep(20);
+    }
+  }
+
+  @Test
+  void listsDirectoriesFromTheMirroredTree() {
+    var snapshot = new AppPackageMirror(cacheDir).snapshot(server.configHost());
+
+    var schemas = snapshot.listDirectory("schemas");
+    assertEquals("schemas/", schemas.getRoot().getPath());
+    assertEquals(2, schemas.getTotalFiles());
+    assertThrows(IllegalArgumentException.class, () -> snapshot.listDirectory("nothing/"));
+  }
+
+  private static String read(AppPackageSnapshot snapshot, String path) throws Exception {
+    return Files.readString(snapshot.blob(path).orElseThrow());
+  }
+
+  private static long countFiles(Path dir) throws Exception {
+    try (var files = Files.walk(dir)) {
+      return files.filter(Files::isRegularFile).count();
+    }
+  }
+}
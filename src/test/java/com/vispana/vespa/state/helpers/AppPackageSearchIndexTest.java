@@ -0,0 +1,106 @@
+package com.vispana.vespa.state.helpers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.vispana.FakeAppPackageServer;
+import com.vispana.api.model.apppackage.AppPackageSearchHit;
+import com.vispana.api.model.apppackage.AppPackageSearchResult;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AppPackageSearchIndexTest {
+
+  private static final String SCHEMA =
+      """
+      schema music {
+        document music {
+          field title type string {
+            indexing: summary | index
+          }
+        }
+        rank-profile bm25_title {
+          first-phase { expression: bm25(title) }
+        }
+      }
+      """;
+
+  @TempDir Path cacheDir;
+
+  private FakeAppPackageServer server;
+  private AppPackageMirror mirror;
+  private AppPackageSearchIndex index;
+
+  @BeforeEach
+  void setUp() {
+    server =
+        new FakeAppPackageServer()
+            .withFile("schemas/music.sd", SCHEMA)
+            .withFile("services.xml", "<services>\n  <document type=\"music\"/>\n</services>")
+            .withFile("models/model.onnx", new byte[] {8, 0, 1, 2, 3});
+    mirror = new AppPackageMirror(cacheDir);
+    index = new AppPackageSearchIndex(4 * 1024 * 1024);
+  }
+
+  @AfterEach
+  void tearDown() {
+    server.close();
+  }
+
+  @Test
+  void findsSymbolsAsWholeTokens() {
+    var result = search("title", AppPackageSearchIndex.Mode.SYMBOL);
+
+    assertEquals(2, result.filesIndexed());
+    assertEquals(
+        List.of(
+            new AppPackageSearchHit("schemas/music.sd", 3, 11, "    field title type string {"),
+            new AppPackageSearchHit(
+                "schemas/music.sd", 8, 36, "    first-phase { expression: bm25(title) }")),
+        result.hits());
+    // not a token of its own
+    assertTrue(search("titl", AppPackageSearchIndex.Mode.SYMBOL).hits().isEmpty());
+    // every word of the query on the same line
+    assertEquals(1, search("field TITLE", AppPackageSearchIndex.Mode.SYMBOL).hits().size());
+  }
+
+  @Test
+  void findsSubstringsAcrossFiles() {
+    var result = search("music", AppPackageSearchIndex.Mode.SUBSTRING);
+
+    assertEquals(
+        List.of("schemas/music.sd:1", "schemas/music.sd:2", "services.xml:2"),
+        result.hits().stream().map(hit -> hit.path() + ":" + hit.line()).toList());
+    assertEquals(1, search("bm25(title)", AppPackageSearchIndex.Mode.SUBSTRING).hits().size());
+    assertTrue(search("bm25(titles)", AppPackageSearchIndex.Mode.SUBSTRING).hits().isEmpty());
+  }
+
+  @Test
+  void stopsAtTheLimit() {
+    var snapshot = mirror.snapshot(server.configHost());
+    var result = index.search(snapshot, "e", AppPackageSearchIndex.Mode.SUBSTRING, false, 3);
+
+    assertEquals(3, result.hits().size());
+    assertTrue(result.truncated());
+  }
+
+  @Test
+  void reindexesOnlyChangedFilesOnNewGeneration() {
+    search("music", AppPackageSearchIndex.Mode.SYMBOL);
+    assertEquals(2, index.filesIndexed());
+
+    server.withGeneration(2).withFile("services.xml", "<services/>");
+    var result = search("music", AppPackageSearchIndex.Mode.SYMBOL);
+
+    assertEquals(2, result.generation());
+    assertEquals(3, index.filesIndexed());
+    assertTrue(result.hits().stream().noneMatch(hit -> hit.path().equals("services.xml")));
+  }
+
+  private AppPackageSearchResult search(String query, AppPackageSearchIndex.Mode mode) {
+    return index.search(mirror.snapshot(server.configHost()), query, mode, false, 100);
+  }
+}
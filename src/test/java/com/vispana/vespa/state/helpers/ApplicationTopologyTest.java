@@ -0,0 +1,58 @@
+package com.vispana.vespa.state.helpers;
+
+import static com.vispana.Helper.defaultHostsXmlString;
+import static com.vispana.Helper.defaultServicesXmlString;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.vispana.api.model.apppackage.ApplicationPackage;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class ApplicationTopologyTest {
+
+  @Test
+  void indexesHostsByAlias() {
+    var topology = ApplicationTopology.parse(defaultServicesXmlString(), defaultHostsXmlString());
+
+    assertEquals(2, topology.getNodes().size());
+    assertEquals(
+        "vespa-content-0-1.vespa.test.svc.cluster.local", topology.hostName("content-0-1"));
+    assertNull(topology.hostName("missing"));
+  }
+
+  @Test
+  void parsesEachPackageOnce() {
+    var appPackage =
+        new ApplicationPackage(
+            "7", defaultServicesXmlString(), defaultHostsXmlString(), Map.of(), Map.of());
+    var samePackage =
+        new ApplicationPackage(
+            "7", defaultServicesXmlString(), defaultHostsXmlString(), Map.of(), Map.of());
+
+    assertSame(ApplicationTopology.of(appPackage), ApplicationTopology.of(samePackage));
+  }
+
+  @Test
+  void sameGenerationOfAnotherPackageIsParsedAgain() {
+    var appPackage =
+        new ApplicationPackage(
+            "8", defaultServicesXmlString(), defaultHostsXmlString(), Map.of(), Map.of());
+    var otherHosts =
+        defaultHostsXmlString().replace("vespa.test.svc.cluster.local", "other.cluster.local");
+    var otherPackage =
+        new ApplicationPackage("8", defaultServicesXmlString(), otherHosts, Map.of(), Map.of());
+
+    assertNotSame(ApplicationTopology.of(appPackage), ApplicationTopology.of(otherPackage));
+  }
+
+  @Test
+  void failsOnUnknownHostAlias() {
+    String hosts = "<hosts><host name=\"other.local\"><alias>other</alias></host></hosts>";
+
+    var exception =
+        assertThrows(
+            RuntimeException.class,
+            () -> ApplicationTopology.parse(defaultServicesXmlString(), hosts));
+    assertTrue(exception.getMessage().startsWith("Failed to find host for alias"));
+  }
+}
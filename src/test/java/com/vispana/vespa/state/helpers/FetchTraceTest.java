@@ -0,0 +1,92 @@
+package com.vispana.vespa.state.helpers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.vispana.api.model.trace.FetchSpan;
+import com.vispana.simulator.EndpointBehavior;
+import com.vispana.simulator.SimulatedEndpoint;
+import com.vispana.simulator.SimulatorTopology;
+import com.vispana.simulator.VespaSimulator;
+import com.vispana.vespa.state.VespaStateClient;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class FetchTraceTest {
+
+  @Test
+  void templateReplacesDeploymentSpecificParts() {
+    assertEquals(
+        "/config/v1/cloud.config.cluster-info/",
+        FetchTrace.template("/config/v1/cloud.config.cluster-info/"));
+    assertEquals(
+        "/config/v1/cloud.config.cluster-info/{id}",
+        FetchTrace.template("/config/v1/cloud.config.cluster-info/admin/cluster-controllers"));
+    assertEquals(
+        "/config/v2/tenant/{tenant}/application/{application}/vespa.config.search.dispatch-nodes/{id}",
+        FetchTrace.template(
+            "/config/v2/tenant/default/application/default/vespa.config.search.dispatch-nodes/music/search"));
+    assertEquals(
+        "/application/v2/tenant/{tenant}/application/{application}/content/{path}",
+        FetchTrace.template("/application/v2/tenant/a/application/b/content/schemas/music.sd"));
+    assertEquals(
+        "/config/v2/tenant/{tenant}/application/{application}/cloud.config.model",
+        FetchTrace.template("//config/v2/tenant/default/application/default/cloud.config.model"));
+    assertEquals("/metrics/v2/values", FetchTrace.template("/metrics/v2/values"));
+  }
+
+  @Test
+  void overviewCallsAreRecordedWithTheSlowCallOnTheCriticalPath() {
+    try (var simulator = new VespaSimulator(SimulatorTopology.ofHosts(10)).start()) {
+      simulator.behave(
+          SimulatedEndpoint.METRICS,
+          EndpointBehavior.IMMEDIATE.withLatency(Duration.ofMillis(150)));
+      var trace = new FetchTrace("GET /api/overview");
+
+      ScopedValue.where(FetchTrace.CURRENT, trace)
+          .run(() -> new VespaStateClient().vespaState(simulator.configHost()));
+      trace.finish();
+
+      var waterfall = trace.waterfall();
+      assertTrue(waterfall.spans().size() > 5);
+      assertTrue(waterfall.spans().stream().allMatch(span -> span.status() == 200));
+      var metrics =
+          waterfall.spans().stream()
+              .filter(span -> span.template().equals("/metrics/v2/values"))
+              .findFirst()
+              .orElseThrow();
+      assertEquals("MetricsFetcher.fetchMetrics", metrics.source());
+      assertTrue(metrics.bytes() > 0);
+      assertTrue(metrics.waitMs() >= 150);
+      assertTrue(metrics.criticalPath());
+      assertTrue(waterfall.criticalPathMs() <= waterfall.durationMs());
+      assertTrue(waterfall.fetchMs() >= waterfall.criticalPathMs());
+      assertTrue(waterfall.spans().stream().anyMatch(span -> !span.criticalPath()));
+    }
+  }
+
+  @Test
+  void callsOutsideATraceAreNotRecorded() {
+    try (var simulator = new VespaSimulator(SimulatorTopology.ofHosts(10)).start()) {
+      var trace = new FetchTrace("unbound");
+
+      VespaVersionFetcher.fetch(simulator.configHost());
+
+      assertTrue(trace.isEmpty());
+    }
+  }
+
+  @Test
+  void failedCallsAreRecorded() {
+    var trace = new FetchTrace("GET /api/overview");
+
+    assertThrows(
+        RuntimeException.class,
+        () ->
+            ScopedValue.where(FetchTrace.CURRENT, trace)
+                .run(() -> Request.requestGet("http://localhost:1/config/v1/", String.class)));
+
+    FetchSpan span = trace.waterfall().spans().getFirst();
+    assertEquals(-1, span.status());
+    assertNotNull(span.error());
+  }
+}
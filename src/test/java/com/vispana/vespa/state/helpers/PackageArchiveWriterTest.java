@@ -0,0 +1,118 @@
+package com.vispana.vespa.state.helpers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+import org.junit.jupiter.api.Test;
+
+class PackageArchiveWriterTest {
+
+  private static final byte[] TEXT =
+      "field title type string { indexing: summary | index }\n"
+          .repeat(4000)
+          .getBytes(StandardCharsets.UTF_8);
+  private static final byte[] RANDOM = new byte[200 * 1024];
+
+  static {
+    new Random(7).nextBytes(RANDOM);
+  }
+
+  @Test
+  void compressesTextButNotIncompressibleData() {
+    assertTrue(PackageArchiveWriter.worthCompressing(TEXT, sniff(TEXT), TEXT.length));
+    assertFalse(PackageArchiveWriter.worthCompressing(RANDOM, sniff(RANDOM), RANDOM.length));
+
+    byte[] jar = {0x50, 0x4B, 0x03, 0x04, 0, 0, 0, 0};
+    assertFalse(PackageArchiveWriter.worthCompressing(jar, jar.length, jar.length));
+    byte[] small = "<services/>".getBytes(StandardCharsets.UTF_8);
+    assertTrue(PackageArchiveWriter.worthCompressing(small, small.length, small.length));
+  }
+
+  @Test
+  void zipStoresIncompressibleEntries() throws Exception {
+    var out = new ByteArrayOutputStream();
+    try (var writer =
+        PackageArchiveWriter.open(ArchiveFormat.ZIP, out, PackageArchiveWriter.Settings.DEFAULT)) {
+      writePackage(writer);
+      writer.finish();
+    }
+
+    var methods = new LinkedHashMap<String, Integer>();
+    var contents = new LinkedHashMap<String, byte[]>();
+    try (var in = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+      for (var entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+        methods.put(entry.getName(), entry.getMethod());
+        contents.put(entry.getName(), in.readAllBytes());
+      }
+    }
+    assertEquals(ZipEntry.DEFLATED, methods.get("schemas/music.sd"));
+    assertEquals(ZipEntry.STORED, methods.get("models/model.onnx"));
+    assertArrayEquals(TEXT, contents.get("schemas/music.sd"));
+    assertArrayEquals(RANDOM, contents.get("models/model.onnx"));
+  }
+
+  @Test
+  void tarFormatsRoundTrip() throws Exception {
+    for (var format : new ArchiveFormat[] {ArchiveFormat.TAR_GZ, ArchiveFormat.TAR_ZST}) {
+      var out = new ByteArrayOutputStream();
+      try (var writer =
+          PackageArchiveWriter.open(format, out, PackageArchiveWriter.Settings.DEFAULT)) {
+        writePackage(writer);
+        writer.finish();
+      }
+
+      var in = new ByteArrayInputStream(out.toByteArray());
+      InputStream decompressed =
+          format == ArchiveFormat.TAR_GZ
+              ? new GzipCompressorInputStream(in)
+              : new ZstdCompressorInputStream(in);
+      var contents = new LinkedHashMap<String, byte[]>();
+      try (var tar = new TarArchiveInputStream(decompressed)) {
+        for (var entry = tar.getNextEntry(); entry != null; entry = tar.getNextEntry()) {
+          contents.put(entry.getName(), tar.readAllBytes());
+        }
+      }
+      assertEquals(
+          List.of("models/", "models/model.onnx", "schemas/", "schemas/music.sd"),
+          List.copyOf(contents.keySet()),
+          format.toString());
+      assertArrayEquals(RANDOM, contents.get("models/model.onnx"));
+      assertArrayEquals(TEXT, contents.get("schemas/music.sd"));
+    }
+  }
+
+  @Test
+  void parsesFormatNames() {
+    assertEquals(ArchiveFormat.TAR_ZST, ArchiveFormat.parseFrom("tar.zst"));
+    assertEquals(ArchiveFormat.ZIP, ArchiveFormat.parseFrom("ZIP"));
+    assertThrows(IllegalArgumentException.class, () -> ArchiveFormat.parseFrom("rar"));
+  }
+
+  private static void writePackage(PackageArchiveWriter writer) throws Exception {
+    for (var entry :
+        Map.of("models/", RANDOM, "schemas/", TEXT).entrySet().stream()
+            .sorted(Map.Entry.comparingByKey())
+            .toList()) {
+      writer.putDirectory(entry.getKey());
+      var path = entry.getKey() + (entry.getValue() == RANDOM ? "model.onnx" : "music.sd");
+      writer.putFile(
+          path, entry.getValue().length, -1, () -> new ByteArrayInputStream(entry.getValue()));
+    }
+  }
+
+  private static int sniff(byte[] content) {
+    return Math.min(content.length, PackageArchiveWriter.SNIFF_BYTES);
+  }
+}
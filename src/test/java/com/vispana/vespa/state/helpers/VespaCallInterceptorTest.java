@@ -0,0 +1,38 @@
+package com.vispana.vespa.state.helpers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.vispana.simulator.SimulatorTopology;
+import com.vispana.simulator.VespaSimulator;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+class VespaCallInterceptorTest {
+
+  @Test
+  void familyIsTheFirstPathSegment() {
+    assertEquals("config", VespaCallInterceptor.family("//config/v1/cloud.config.cluster-info/"));
+    assertEquals("application", VespaCallInterceptor.family("/application/v2/tenant/default"));
+    assertEquals("metrics", VespaCallInterceptor.family("/metrics/v2/values"));
+    assertEquals("other", VespaCallInterceptor.family("/nodes/v2/node"));
+    assertEquals("other", VespaCallInterceptor.family("/"));
+  }
+
+  @Test
+  void callsAreTimedByFamily() {
+    var registry = new SimpleMeterRegistry();
+    Metrics.addRegistry(registry);
+    try (var simulator = new VespaSimulator(SimulatorTopology.ofHosts(10)).start()) {
+      MetricsFetcher.fetchMetrics(simulator.configHost());
+
+      var timer = registry.get("vispana.vespa.requests").tags("family", "metrics", "status", "200");
+      assertEquals(1, timer.timer().count());
+      assertEquals(
+          simulator.metricsJson().length,
+          registry.get("vispana.vespa.received").tag("family", "metrics").counter().count());
+    } finally {
+      Metrics.removeRegistry(registry);
+    }
+  }
+}